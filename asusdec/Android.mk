@@ -2,7 +2,7 @@ LOCAL_PATH := $(call my-dir)
 
 include $(CLEAR_VARS)
 LOCAL_SRC_FILES := \
-       $(call all-subdir-java-files)
+       $(call all-java-files-under, java)
 
 LOCAL_MODULE_TAGS := optional
 LOCAL_MODULE:= com.cyanogenmod.asusdec
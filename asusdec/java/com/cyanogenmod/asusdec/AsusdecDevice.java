@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.asusdec;
+
+/**
+ * Command channel to the asusdec EC driver.
+ *
+ * All callers share one handle on the control node. It is opened on first
+ * use, kept open while the dock is connected and reopened lazily after
+ * {@link #close()} or when the driver reports the node gone.
+ */
+public final class AsusdecDevice {
+
+    public static final String DEFAULT_PATH = "/dev/asusdec";
+
+    static {
+        AsusdecNative.registerNatives(AsusdecNative.CLASS_ASUSDEC_DEVICE);
+    }
+
+    private AsusdecDevice() {
+    }
+
+    /**
+     * Runs a batch of ioctl commands, in order, on the shared handle.
+     *
+     * @param requests the ioctl request codes
+     * @param args the integer argument of each request
+     * @param results receives the return value of each request, or -errno
+     * @return the number of requests that succeeded
+     */
+    public static int ioctl(int[] requests, int[] args, int[] results) {
+        return nativeIoctl(requests, args, results);
+    }
+
+    /**
+     * Closes the shared handle, ie. when the dock is removed. The next
+     * command reopens it.
+     */
+    public static void close() {
+        nativeClose();
+    }
+
+    /**
+     * Points the channel to another device node, ie. a stand-in for testing.
+     */
+    public static void setDevicePath(String path) {
+        nativeSetPath(path);
+    }
+
+    private static native int nativeIoctl(int[] requests, int[] args, int[] results);
+    private static native void nativeClose();
+    private static native void nativeSetPath(String path);
+}
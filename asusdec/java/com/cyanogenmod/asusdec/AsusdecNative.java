@@ -16,20 +16,54 @@
 
 package com.cyanogenmod.asusdec;
 
+import android.os.SystemClock;
 import android.util.Log;
 
 public final class AsusdecNative {
 
     private static final String TAG = "AsusdecNative";
 
+    /* Classes with natives, registered separately on first use */
+    static final int CLASS_KEY_HANDLER = 0;
+    static final int CLASS_DOCK_BATTERY_HANDLER = 1;
+    static final int CLASS_ASUSDEC_DEVICE = 2;
+    static final int CLASS_DOCK_KEY_READER = 3;
+    static final int CLASS_DOCK_STATE = 4;
+    private static final int CLASS_COUNT = 5;
+
     private static boolean sLoaded = false;
+    private static long sLoadTime;
+    private static final boolean[] sRegistered = new boolean[CLASS_COUNT];
 
     public static synchronized void loadAsusdecLib() {
         if (!sLoaded) {
+            sLoadTime = SystemClock.elapsedRealtime();
             System.loadLibrary("asusdec_jni");
             sLoaded = true;
             Log.i(TAG, "Asusdec native library loaded");
         }
     }
 
+    /**
+     * Loads the library if needed and registers the natives of one class.
+     * Called from the static initializer of each class with natives, so a
+     * process only pays for the classes it actually uses.
+     */
+    static synchronized void registerNatives(int cls) {
+        loadAsusdecLib();
+        if (sRegistered[cls]) {
+            return;
+        }
+        long start = SystemClock.elapsedRealtime();
+        if (!nativeRegister(cls)) {
+            throw new UnsatisfiedLinkError("Unable to register asusdec natives " + cls);
+        }
+        sRegistered[cls] = true;
+        long now = SystemClock.elapsedRealtime();
+        Log.i(TAG, "Registered natives " + cls + " in " + (now - start)
+                + "ms, " + (now - sLoadTime) + "ms after load");
+    }
+
+    private static native boolean nativeRegister(int cls);
+
 }
@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.asusdec;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Always-on counters and latency histograms of the asusdec subsystem.
+ *
+ * Recording is lock-free and doesn't allocate. Histograms use fixed
+ * power-of-two microsecond buckets: bucket 0 counts samples under 1us,
+ * bucket i samples in [2^(i-1), 2^i) us and the last one everything above.
+ */
+public final class AsusdecStats {
+
+    static final int BUCKET_COUNT = 20;
+
+    private static final int STRIPES = 8;
+    // Spread the stripes over separate cache lines
+    private static final int STRIPE_PADDING = 8;
+
+    private static final int EXPORT_MAGIC = 0x41534443; // "ASDC"
+    private static final int EXPORT_VERSION = 1;
+
+    /**
+     * A counter striped by thread, so that concurrent writers don't contend
+     * on the same cache line.
+     */
+    static final class Counter {
+        private final String mName;
+        private final AtomicLongArray mStripes = new AtomicLongArray(STRIPES * STRIPE_PADDING);
+
+        Counter(String name) {
+            mName = name;
+        }
+
+        void increment() {
+            int stripe = (int) (Thread.currentThread().getId() & (STRIPES - 1));
+            mStripes.incrementAndGet(stripe * STRIPE_PADDING);
+        }
+
+        long get() {
+            long sum = 0;
+            for (int i = 0; i < STRIPES; i++) {
+                sum += mStripes.get(i * STRIPE_PADDING);
+            }
+            return sum;
+        }
+    }
+
+    /**
+     * A set of latency histograms sharing the same name, indexed by key
+     * (ie. scan code).
+     */
+    static final class Histograms {
+        private final String mName;
+        private final int mSize;
+        private final AtomicLongArray mBuckets;
+
+        Histograms(String name, int size) {
+            mName = name;
+            mSize = size;
+            mBuckets = new AtomicLongArray(size * BUCKET_COUNT);
+        }
+
+        void record(int key, long nanos) {
+            if (key < 0 || key >= mSize) {
+                return;
+            }
+            mBuckets.incrementAndGet(key * BUCKET_COUNT + getBucket(nanos));
+        }
+
+        void record(long nanos) {
+            record(0, nanos);
+        }
+
+        long getCount(int key) {
+            long count = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                count += mBuckets.get(key * BUCKET_COUNT + i);
+            }
+            return count;
+        }
+
+        private void dump(PrintWriter pw) {
+            for (int key = 0; key < mSize; key++) {
+                long count = getCount(key);
+                if (count == 0) {
+                    continue;
+                }
+                pw.print("  ");
+                pw.print(mName);
+                if (mSize > 1) {
+                    pw.print("[");
+                    pw.print(key);
+                    pw.print("]");
+                }
+                pw.print(": count=");
+                pw.print(count);
+                pw.print(" buckets(us)=");
+                for (int i = 0; i < BUCKET_COUNT; i++) {
+                    long value = mBuckets.get(key * BUCKET_COUNT + i);
+                    if (value != 0) {
+                        pw.print(" <");
+                        pw.print(1 << i);
+                        pw.print(":");
+                        pw.print(value);
+                    }
+                }
+                pw.println();
+            }
+        }
+
+        private void writeTo(DataOutputStream out) throws IOException {
+            out.writeUTF(mName);
+            out.writeShort(mSize);
+            for (int key = 0; key < mSize; key++) {
+                for (int i = 0; i < BUCKET_COUNT; i++) {
+                    out.writeLong(mBuckets.get(key * BUCKET_COUNT + i));
+                }
+            }
+        }
+    }
+
+    static int getBucket(long nanos) {
+        long micros = nanos / 1000;
+        if (micros <= 0) {
+            return 0;
+        }
+        int bucket = 64 - Long.numberOfLeadingZeros(micros);
+        return bucket < BUCKET_COUNT ? bucket : BUCKET_COUNT - 1;
+    }
+
+    static final Histograms KEY_EVENT = new Histograms("handleKeyEvent",
+            KeyActionTable.MAX_SCANCODE + 1);
+    static final Histograms NATIVE_TOGGLE_TOUCHPAD =
+            new Histograms("nativeToggleTouchpad", 1);
+    static final Histograms NATIVE_DOCK_BATTERY_READ =
+            new Histograms("nativeDockBatteryRead", 1);
+    static final Histograms NATIVE_DOCK_BATTERY_UPDATE =
+            new Histograms("nativeDockBatteryUpdate", 1);
+    static final Counter HAS_NEW_DATA_HIT = new Counter("hasNewData.hit");
+    static final Counter HAS_NEW_DATA_MISS = new Counter("hasNewData.miss");
+
+    private static final Histograms[] sHistograms = {
+        KEY_EVENT, NATIVE_TOGGLE_TOUCHPAD, NATIVE_DOCK_BATTERY_READ, NATIVE_DOCK_BATTERY_UPDATE,
+    };
+    private static final Counter[] sCounters = {
+        HAS_NEW_DATA_HIT, HAS_NEW_DATA_MISS,
+    };
+
+    private AsusdecStats() {
+    }
+
+    public static void dump(PrintWriter pw) {
+        pw.println("Asusdec stats:");
+        for (Counter counter : sCounters) {
+            pw.print("  ");
+            pw.print(counter.mName);
+            pw.print("=");
+            pw.println(counter.get());
+        }
+        for (Histograms histograms : sHistograms) {
+            histograms.dump(pw);
+        }
+    }
+
+    /**
+     * Writes all the counters and histograms in a compact big-endian binary
+     * form, for offline analysis.
+     */
+    public static void export(OutputStream os) throws IOException {
+        DataOutputStream out = new DataOutputStream(os);
+        out.writeInt(EXPORT_MAGIC);
+        out.writeShort(EXPORT_VERSION);
+        out.writeShort(BUCKET_COUNT);
+        out.writeShort(sCounters.length);
+        for (Counter counter : sCounters) {
+            out.writeUTF(counter.mName);
+            out.writeLong(counter.get());
+        }
+        out.writeShort(sHistograms.length);
+        for (Histograms histograms : sHistograms) {
+            histograms.writeTo(out);
+        }
+        out.flush();
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.asusdec;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+
+/**
+ * Ring buffer of the last key events and dock power-supply reads.
+ *
+ * The trace can be exported in a compact big-endian binary form and read
+ * back with {@link #replay(InputStream, Replayer)}, in order to feed the
+ * exact same inputs to the key and battery handlers again. Recording
+ * doesn't allocate.
+ */
+public final class AsusdecTrace {
+
+    static final int CAPACITY = 512;
+
+    static final int TYPE_KEY = 1;
+    static final int TYPE_POWER = 2;
+
+    // Type followed by up to MAX_ARGS arguments
+    private static final int MAX_ARGS = 7;
+    private static final int RECORD_INTS = 1 + MAX_ARGS;
+
+    private static final int EXPORT_MAGIC = 0x41535452; // "ASTR"
+    private static final int EXPORT_VERSION = 1;
+
+    /**
+     * Receives the records of an exported trace, oldest first.
+     */
+    public interface Replayer {
+        void onKey(long timeNanos, int scanCode, int action, int repeatCount);
+        void onPower(long timeNanos, int attrMask, int[] values);
+    }
+
+    // Guarded by sLock
+    private static final Object sLock = new Object();
+    private static final long[] sTimes = new long[CAPACITY];
+    private static final int[] sRecords = new int[CAPACITY * RECORD_INTS];
+    private static int sNext;
+    private static long sTotal;
+
+    private AsusdecTrace() {
+    }
+
+    static void recordKey(int scanCode, int action, int repeatCount) {
+        long now = System.nanoTime();
+        synchronized (sLock) {
+            int base = beginLocked(now, TYPE_KEY);
+            sRecords[base + 1] = scanCode;
+            sRecords[base + 2] = action;
+            sRecords[base + 3] = repeatCount;
+        }
+    }
+
+    static void recordPower(int attrMask, int[] values) {
+        long now = System.nanoTime();
+        int count = Math.min(values.length, MAX_ARGS - 1);
+        synchronized (sLock) {
+            int base = beginLocked(now, TYPE_POWER);
+            sRecords[base + 1] = attrMask;
+            System.arraycopy(values, 0, sRecords, base + 2, count);
+        }
+    }
+
+    private static int beginLocked(long now, int type) {
+        int index = sNext;
+        sNext = (index + 1) % CAPACITY;
+        sTotal++;
+        sTimes[index] = now;
+        int base = index * RECORD_INTS;
+        for (int i = 0; i < RECORD_INTS; i++) {
+            sRecords[base + i] = 0;
+        }
+        sRecords[base] = type;
+        return base;
+    }
+
+    public static void dump(PrintWriter pw) {
+        synchronized (sLock) {
+            pw.print("Asusdec trace: recorded=");
+            pw.print(sTotal);
+            pw.print(" buffered=");
+            pw.println(Math.min(sTotal, CAPACITY));
+        }
+    }
+
+    /**
+     * Writes the buffered records, oldest first.
+     */
+    public static void export(OutputStream os) throws IOException {
+        DataOutputStream out = new DataOutputStream(os);
+        synchronized (sLock) {
+            int count = (int) Math.min(sTotal, CAPACITY);
+            int first = sTotal > CAPACITY ? sNext : 0;
+            out.writeInt(EXPORT_MAGIC);
+            out.writeShort(EXPORT_VERSION);
+            out.writeShort(RECORD_INTS);
+            out.writeInt(count);
+            for (int i = 0; i < count; i++) {
+                int index = (first + i) % CAPACITY;
+                out.writeLong(sTimes[index]);
+                for (int j = 0; j < RECORD_INTS; j++) {
+                    out.writeInt(sRecords[index * RECORD_INTS + j]);
+                }
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Reads a trace written by {@link #export(OutputStream)} and hands its
+     * records to the replayer. Unknown record types are skipped.
+     */
+    public static void replay(InputStream is, Replayer replayer) throws IOException {
+        DataInputStream in = new DataInputStream(is);
+        if (in.readInt() != EXPORT_MAGIC) {
+            throw new IOException("Not an asusdec trace");
+        }
+        int version = in.readUnsignedShort();
+        int recordInts = in.readUnsignedShort();
+        if (version != EXPORT_VERSION || recordInts != RECORD_INTS) {
+            throw new IOException("Unsupported trace version " + version);
+        }
+        int count = in.readInt();
+        int[] record = new int[RECORD_INTS];
+        int[] values = new int[MAX_ARGS - 1];
+        for (int i = 0; i < count; i++) {
+            long time = in.readLong();
+            for (int j = 0; j < RECORD_INTS; j++) {
+                record[j] = in.readInt();
+            }
+            switch (record[0]) {
+                case TYPE_KEY:
+                    replayer.onKey(time, record[1], record[2], record[3]);
+                    break;
+                case TYPE_POWER:
+                    System.arraycopy(record, 2, values, 0, values.length);
+                    replayer.onPower(time, record[1], values);
+                    break;
+            }
+        }
+    }
+}
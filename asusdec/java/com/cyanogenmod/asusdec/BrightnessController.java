@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.asusdec;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+
+/**
+ * Coalesces brightness key presses and repeats.
+ *
+ * The level of the current gesture is kept in memory. The temporary override
+ * is applied at most once per frame, and the level is only persisted once the
+ * keys have been released for {@link #SETTLE_DELAY_MS}.
+ */
+final class BrightnessController {
+
+    /**
+     * The brightness sinks, in the order they are used during a gesture.
+     */
+    interface Backend {
+        /** Reads the persisted brightness, at the start of a gesture. */
+        int readBrightness(int def);
+        /** Switches to manual brightness, once per gesture. */
+        void setManualMode();
+        /** Applies a temporary brightness override. */
+        void setTemporaryBrightness(int value);
+        /** Persists the brightness, once the gesture settled. */
+        void persistBrightness(int value);
+    }
+
+    private static final int MSG_APPLY = 1;
+    private static final int MSG_PERSIST = 2;
+
+    private static final int BRIGHTNESS_STEP = 10;
+    // Every REPEATS_PER_ACCELERATION repeats add a step, up to MAX_ACCELERATION
+    private static final int REPEATS_PER_ACCELERATION = 4;
+    private static final int MAX_ACCELERATION = 3;
+
+    private static final long FRAME_DELAY_MS = 16;
+    static final long SETTLE_DELAY_MS = 500;
+
+    private final Backend mBackend;
+    private final int mMinimum;
+    private final int mMaximum;
+    private final Handler mHandler;
+
+    // Only accessed on the looper thread; -1 when no gesture is in progress
+    private int mLevel = -1;
+
+    BrightnessController(Looper looper, Backend backend, int minimum, int maximum) {
+        mBackend = backend;
+        mMinimum = minimum;
+        mMaximum = maximum;
+        mHandler = new Handler(looper) {
+            @Override
+            public void handleMessage(Message msg) {
+                switch (msg.what) {
+                    case MSG_APPLY:
+                        mBackend.setTemporaryBrightness(mLevel);
+                        break;
+                    case MSG_PERSIST:
+                        mBackend.persistBrightness(mLevel);
+                        mLevel = -1;
+                        break;
+                }
+            }
+        };
+    }
+
+    /**
+     * Steps the brightness up or down. Must be called on the looper thread,
+     * ie. by the key action executor for every key down and repeat.
+     *
+     * @param up whether to raise the brightness
+     * @param repeatCount the key repeat count, used for acceleration
+     */
+    void adjust(boolean up, int repeatCount) {
+        int direction = up ? 1 : -1;
+        if (mLevel < 0) {
+            mBackend.setManualMode();
+            mLevel = mBackend.readBrightness(direction > 0 ? mMaximum : mMinimum);
+        }
+
+        int acceleration = Math.min(1 + repeatCount / REPEATS_PER_ACCELERATION,
+                MAX_ACCELERATION);
+        int value = mLevel + direction * BRIGHTNESS_STEP * acceleration;
+        if (value < mMinimum) {
+            value = mMinimum;
+        } else if (value > mMaximum) {
+            value = mMaximum;
+        }
+        mLevel = value;
+
+        if (!mHandler.hasMessages(MSG_APPLY)) {
+            mHandler.sendEmptyMessageDelayed(MSG_APPLY, FRAME_DELAY_MS);
+        }
+        mHandler.removeMessages(MSG_PERSIST);
+        mHandler.sendEmptyMessageDelayed(MSG_PERSIST, SETTLE_DELAY_MS);
+    }
+}
@@ -19,9 +19,19 @@ package com.cyanogenmod.asusdec;
 import android.content.Context;
 import android.os.BatteryManager;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+import android.os.SystemProperties;
+import android.util.Log;
 
 import com.android.internal.os.DeviceDockBatteryHandler;
 
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+
 public final class DockBatteryHandler implements DeviceDockBatteryHandler {
     private static final String TAG = "AsusdecDockBatteryHandler";
 
@@ -34,9 +44,30 @@ public final class DockBatteryHandler implements DeviceDockBatteryHandler {
     private static final int DOCK_BATTERY_STATUS_NOT_CHARGING =
                                         BatteryManager.BATTERY_STATUS_NOT_CHARGING;
 
+    private static final String HISTORY_FILE = "/data/system/dock_battery_history.bin";
+    private static final int HISTORY_CAPACITY = 4096;
+
+    // Set the fields with nativeDockBatteryUpdate(), one JNI call per value,
+    // instead of the batched nativeDockBatteryRead()
+    private static final String PROP_LEGACY_UPDATE = "persist.sys.asusdec.legacy_battery";
+
     private Context mContext;
 
-    /* Begin native fields: All of these fields are set by native code. */
+    // Indices of the values filled by nativeDockBatteryRead(). These must
+    // match the attribute order used by the JNI.
+    private static final int VALUE_STATUS = 0;
+    private static final int VALUE_LEVEL = 1;
+    private static final int VALUE_PRESENT = 2;
+    private static final int VALUE_PAD_USB_ONLINE = 3;
+    private static final int VALUE_AC_ONLINE = 4;
+    private static final int VALUE_DOCK_AC_ONLINE = 5;
+    private static final int VALUE_COUNT = 6;
+    private static final int VALUE_MASK_ALL = (1 << VALUE_COUNT) - 1;
+
+    private final int[] mNativeValues = new int[VALUE_COUNT];
+
+    // Decoded from mNativeValues by readNativeValuesLocked(), or set by
+    // nativeDockBatteryUpdate() on the legacy path; guarded by mLock
     private int mDockBatteryStatus;
     private int mDockBatteryLevel;
     private boolean mDockBatteryPresent;
@@ -44,45 +75,226 @@ public final class DockBatteryHandler implements DeviceDockBatteryHandler {
     private boolean mPadUsbOnline;
     private boolean mAcOnline;
     private boolean mDockAcOnline;
-    /* End native fields. */
 
     private boolean mInitial;
-    private int mLastDockBatteryStatus;
-    private int mLastDockBatteryLevel;
-    private boolean mLastDockBatteryPresent;
-    private int mLastDockBatteryPlugged;
-    private boolean mLastPadUsbOnline;
-    private boolean mLastAcOnline;
-    private boolean mLastDockAcOnline;
+    private int mLastState;
+
+    // The last notify bundle is handed out for as long as the state is
+    // unchanged. It is never changed once built, a new state gets a new one.
+    private Bundle mNotifyData;
+    private int mNotifyDataState;
 
     private Object mLock = new Object();
+    private final boolean mLegacyUpdate;
     private boolean mIgnoreUpdates = false;
+    private OnDockPowerChangedListener mListener;
+
+    // Opened and forced on mHistoryHandler, appended to under mLock
+    private volatile DockBatteryHistory mHistory;
+    private final Handler mHistoryHandler;
+    private final DockDrainEstimator mEstimator = new DockDrainEstimator();
+    private final DockState mDockState;
+
+    /**
+     * Interface definition for a callback to be invoked when the dock power
+     * state changed while monitoring uevents. It is called on the native
+     * monitor thread, after the changed attributes were re-read and processed.
+     */
+    public interface OnDockPowerChangedListener {
+        void onDockPowerChanged(DockBatteryHandler handler);
+    }
 
     static {
-        AsusdecNative.loadAsusdecLib();
+        AsusdecNative.registerNatives(AsusdecNative.CLASS_DOCK_BATTERY_HANDLER);
     }
 
     public DockBatteryHandler(Context context) {
         mContext = context;
         mInitial = true;
+        mLegacyUpdate = SystemProperties.getBoolean(PROP_LEGACY_UPDATE, false);
+
+        // Keep the history file I/O off the battery service thread
+        HandlerThread thread = new HandlerThread(TAG + "History",
+                Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        mHistoryHandler = new Handler(thread.getLooper());
+        mHistoryHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mHistory = new DockBatteryHistory(new File(HISTORY_FILE),
+                            HISTORY_CAPACITY);
+                } catch (IOException e) {
+                    Log.e(TAG, "Could not open " + HISTORY_FILE + ", history disabled", e);
+                }
+            }
+        });
+
+        mDockState = DockState.get();
+        mDockState.addListener(mDockListener);
     }
 
     @Override
     public void update() {
+        boolean present;
+        synchronized (mLock) {
+            readNativeValuesLocked(VALUE_MASK_ALL);
+            present = mDockBatteryPresent;
+        }
+        reportDockPresence(present);
+    }
+
+    private void readNativeValuesLocked(int mask) {
+        // The dock presence comes from the shared dock state, and only
+        // from ec_dock when the dock switch can't be read
+        boolean hasSwitch = mDockState.hasSwitch();
+        if (mLegacyUpdate) {
+            updateLegacyLocked(hasSwitch);
+            return;
+        }
+        if (hasSwitch) {
+            mask &= ~(1 << VALUE_PRESENT);
+        }
+        long start = System.nanoTime();
+        boolean read = nativeDockBatteryRead(mask, mNativeValues);
+        AsusdecStats.NATIVE_DOCK_BATTERY_READ.record(System.nanoTime() - start);
+        if (!read) {
+            return;
+        }
+        if (hasSwitch) {
+            mNativeValues[VALUE_PRESENT] = mDockState.isDocked() ? 1 : 0;
+            mask |= 1 << VALUE_PRESENT;
+        }
+        AsusdecTrace.recordPower(mask, mNativeValues);
+        mDockBatteryStatus = mNativeValues[VALUE_STATUS];
+        mDockBatteryLevel = mNativeValues[VALUE_LEVEL];
+        mDockBatteryPresent = mNativeValues[VALUE_PRESENT] != 0;
+        mPadUsbOnline = mNativeValues[VALUE_PAD_USB_ONLINE] != 0;
+        mAcOnline = mNativeValues[VALUE_AC_ONLINE] != 0;
+        mDockAcOnline = mNativeValues[VALUE_DOCK_AC_ONLINE] != 0;
+    }
+
+    // Reads every attribute, whatever changed
+    private void updateLegacyLocked(boolean hasSwitch) {
+        long start = System.nanoTime();
         nativeDockBatteryUpdate();
+        AsusdecStats.NATIVE_DOCK_BATTERY_UPDATE.record(System.nanoTime() - start);
+        if (hasSwitch) {
+            mDockBatteryPresent = mDockState.isDocked();
+        }
     }
 
     @Override
     public void process() {
-        mDockBatteryPlugged = 0;
-        if (this.mDockAcOnline || this.mAcOnline) {
-            mDockBatteryPlugged = BatteryManager.BATTERY_PLUGGED_AC;
-        } else if (this.mPadUsbOnline) {
-            mDockBatteryPlugged = BatteryManager.BATTERY_PLUGGED_USB;
+        synchronized (mLock) {
+            mDockBatteryPlugged = 0;
+            if (this.mDockAcOnline || this.mAcOnline) {
+                mDockBatteryPlugged = BatteryManager.BATTERY_PLUGGED_AC;
+            } else if (this.mPadUsbOnline) {
+                mDockBatteryPlugged = BatteryManager.BATTERY_PLUGGED_USB;
+            }
+        }
+    }
+
+    /**
+     * Start listening to power_supply uevents of the dock supplies instead of
+     * waiting for the next update() poll.
+     *
+     * @return false if the monitor is already running or couldn't be started
+     */
+    public boolean startMonitoring(OnDockPowerChangedListener listener) {
+        return startMonitoring(listener, null);
+    }
+
+    /**
+     * Same as {@link #startMonitoring(OnDockPowerChangedListener)} but reads
+     * the uevent messages from the given descriptor instead of the kernel
+     * netlink socket.
+     */
+    /* package */ boolean startMonitoring(OnDockPowerChangedListener listener,
+            FileDescriptor ueventSource) {
+        if (!nativeStartUeventMonitor(ueventSource)) {
+            return false;
+        }
+        synchronized (mLock) {
+            mListener = listener;
+        }
+        return true;
+    }
+
+    public void stopMonitoring() {
+        // Don't hold mLock here, the monitor thread may be waiting for it
+        nativeStopUeventMonitor();
+        synchronized (mLock) {
+            mListener = null;
+        }
+    }
+
+    // Without a dock switch, ec_dock is the dock state source. Must not be
+    // called with mLock held, the dock state listeners take it.
+    private void reportDockPresence(boolean present) {
+        if (!mDockState.hasSwitch()) {
+            mDockState.setDocked(present);
         }
     }
 
+    // Called by the native uevent monitor thread
+    private void onNativeDockPowerChanged(int attrMask) {
+        OnDockPowerChangedListener listener;
+        boolean present;
+        synchronized (mLock) {
+            readNativeValuesLocked(attrMask);
+            process();
+            listener = mListener;
+            present = mDockBatteryPresent;
+        }
+        reportDockPresence(present);
+        if (listener != null) {
+            listener.onDockPowerChanged(this);
+        }
+    }
+
+    // Called on the thread that detected the dock transition
+    private final DockState.Listener mDockListener = new DockState.Listener() {
+        @Override
+        public void onDockStateChanged(boolean docked, int generation) {
+            OnDockPowerChangedListener listener;
+            synchronized (mLock) {
+                if (docked) {
+                    // The dock supplies may be registered under new names
+                    nativeRediscoverDockAttrs();
+                } else {
+                    // Their nodes are gone, they aren't read until the next
+                    // dock
+                    nativeInvalidateDockAttrs();
+                }
+                readNativeValuesLocked(VALUE_MASK_ALL);
+                process();
+                listener = mListener;
+            }
+            if (listener != null) {
+                listener.onDockPowerChanged(DockBatteryHandler.this);
+            }
+        }
+    };
+
+    /**
+     * Returns a snapshot of the dock power state, shared by every caller
+     * until the state changes. It must not be changed; a caller that needs
+     * to, eg. to add its own extras, has to copy it first.
+     */
     public Bundle getNotifyData() {
+        synchronized (mLock) {
+            return getNotifyDataLocked();
+        }
+    }
+
+    private Bundle getNotifyDataLocked() {
+        int state = getStateLocked();
+        if (mNotifyData != null && mNotifyDataState == state) {
+            return mNotifyData;
+        }
+
         Bundle bundle = new Bundle();
         // Common data
         bundle.putInt(BatteryManager.EXTRA_DOCK_STATUS, this.mDockBatteryStatus);
@@ -95,39 +307,105 @@ public final class DockBatteryHandler implements DeviceDockBatteryHandler {
         bundle.putBoolean("ac_online", this.mAcOnline);
         bundle.putBoolean("dock_ac_online", this.mDockAcOnline);
 
+        mNotifyData = bundle;
+        mNotifyDataState = state;
         return bundle;
     }
 
     @Override
     public boolean hasNewData() {
+        synchronized (mLock) {
+            return hasNewDataLocked();
+        }
+    }
+
+    private boolean hasNewDataLocked() {
         // Has anything changed?
-        boolean hasNewData =
-            mInitial ||
-            mDockBatteryLevel != mLastDockBatteryLevel ||
-            mDockBatteryStatus != mLastDockBatteryStatus ||
-            mDockBatteryPresent != mLastDockBatteryPresent ||
-            mDockBatteryPlugged != mLastDockBatteryPlugged ||
-            mPadUsbOnline != mLastPadUsbOnline ||
-            mAcOnline != mLastAcOnline ||
-            mDockAcOnline != mLastDockAcOnline;
+        int state = getStateLocked();
+        boolean hasNewData = mInitial || state != mLastState;
 
         // Save data
         mInitial = false;
-        mLastDockBatteryLevel = mDockBatteryLevel;
-        mLastDockBatteryStatus = mDockBatteryStatus;
-        mLastDockBatteryPresent = mDockBatteryPresent;
-        mLastDockBatteryPlugged = mDockBatteryPlugged;
-        mLastPadUsbOnline = mPadUsbOnline;
-        mLastAcOnline = mAcOnline;
-        mLastDockAcOnline = mDockAcOnline;
+        mLastState = state;
 
+        if (hasNewData) {
+            recordSampleLocked(state);
+            AsusdecStats.HAS_NEW_DATA_HIT.increment();
+        } else {
+            AsusdecStats.HAS_NEW_DATA_MISS.increment();
+        }
         return hasNewData;
     }
 
+    private void recordSampleLocked(int state) {
+        // Monotonic time for the rate, wall time for offline analysis
+        mEstimator.onSample(SystemClock.elapsedRealtime(), state);
+        long now = System.currentTimeMillis();
+
+        // Samples taken before the file is open aren't recorded
+        DockBatteryHistory history = mHistory;
+        if (history != null && history.append(now, state)) {
+            mHistoryHandler.post(mForceHistory);
+        }
+    }
+
+    private final Runnable mForceHistory = new Runnable() {
+        @Override
+        public void run() {
+            mHistory.force();
+        }
+    };
+
+    /**
+     * @return the estimated milliseconds until the dock battery is empty, or
+     *         -1 if it isn't draining or there is no estimate yet
+     */
+    public long getTimeToEmptyMillis() {
+        synchronized (mLock) {
+            return mEstimator.getTimeToEmptyMillis();
+        }
+    }
+
+    /**
+     * @return the estimated milliseconds until the dock battery is full, or
+     *         -1 if it isn't charging or there is no estimate yet
+     */
+    public long getTimeToFullMillis() {
+        synchronized (mLock) {
+            return mEstimator.getTimeToFullMillis();
+        }
+    }
+
+    /**
+     * Returns the current dock power state packed as a {@link DockPowerState}
+     * word.
+     */
+    public int getState() {
+        synchronized (mLock) {
+            return getStateLocked();
+        }
+    }
+
+    private int getStateLocked() {
+        return DockPowerState.pack(mDockBatteryLevel, mDockBatteryStatus,
+                mDockBatteryPlugged, mDockBatteryPresent, mPadUsbOnline,
+                mAcOnline, mDockAcOnline);
+    }
+
     @Override
     public boolean isPlugged() {
-        return mDockBatteryPresent && mDockBatteryPlugged != 0;
+        synchronized (mLock) {
+            return mDockBatteryPresent && mDockBatteryPlugged != 0;
+        }
     }
 
-    private native void nativeDockBatteryUpdate();
+    // Package-private for the host benchmarks, which compare both paths
+    // without the decoding of readNativeValuesLocked()
+    /* package */ native boolean nativeDockBatteryRead(int attrMask, int[] values);
+    // Legacy path, sets every native field with its own JNI call
+    /* package */ native void nativeDockBatteryUpdate();
+    private native boolean nativeStartUeventMonitor(FileDescriptor ueventSource);
+    private native void nativeStopUeventMonitor();
+    private native void nativeInvalidateDockAttrs();
+    private native void nativeRediscoverDockAttrs();
 }
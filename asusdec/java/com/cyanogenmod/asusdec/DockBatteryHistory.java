@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.asusdec;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Fixed-size ring of dock power samples, memory-mapped from a file.
+ *
+ * <pre>
+ *   header  int magic, int version, int capacity, int next, long sequence
+ *   record  long timestamp, int state (see DockPowerState), int sequence
+ * </pre>
+ *
+ * A record is only valid when its sequence matches its position in the
+ * ring: the sequence is written last, so a record torn by a crash is
+ * ignored on reload. The mapping is only forced to disk every
+ * {@link #FORCE_INTERVAL} samples, the page cache keeps the rest.
+ *
+ * Opening the file and {@link #force()} do disk I/O; the owner runs them
+ * off its own thread. {@link #append(long, int)} only writes to memory.
+ */
+final class DockBatteryHistory {
+
+    private static final int MAGIC = 0x44424849; // "DBHI"
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 24;
+    private static final int RECORD_SIZE = 16;
+
+    private static final int OFFSET_CAPACITY = 8;
+    private static final int OFFSET_NEXT = 12;
+    private static final int OFFSET_SEQUENCE = 16;
+
+    private static final int FORCE_INTERVAL = 32;
+
+    private final int mCapacity;
+    private final MappedByteBuffer mBuffer;
+    private int mNext;
+    private long mSequence;
+    private int mUnforced;
+
+    DockBatteryHistory(File file, int capacity) throws IOException {
+        mCapacity = capacity;
+
+        boolean valid;
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            long size = HEADER_SIZE + (long) capacity * RECORD_SIZE;
+            valid = raf.length() == size && raf.readInt() == MAGIC
+                    && raf.readInt() == VERSION && raf.readInt() == capacity;
+            if (!valid) {
+                // Let the file system hand out zeroed blocks instead of
+                // clearing the old records one by one
+                raf.setLength(0);
+                raf.setLength(size);
+            }
+            mBuffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } finally {
+            // The mapping stays valid after the channel is closed
+            raf.close();
+        }
+
+        if (valid) {
+            mNext = mBuffer.getInt(OFFSET_NEXT);
+            mSequence = mBuffer.getLong(OFFSET_SEQUENCE);
+            valid = mNext >= 0 && mNext < capacity && mSequence >= 0;
+        }
+        if (!valid) {
+            reset();
+        }
+    }
+
+    // The records must already be zeroed
+    private void reset() {
+        mBuffer.putInt(0, MAGIC);
+        mBuffer.putInt(4, VERSION);
+        mBuffer.putInt(OFFSET_CAPACITY, mCapacity);
+        mNext = 0;
+        mSequence = 0;
+        writeHeader();
+    }
+
+    private void writeHeader() {
+        mBuffer.putInt(OFFSET_NEXT, mNext);
+        mBuffer.putLong(OFFSET_SEQUENCE, mSequence);
+    }
+
+    /**
+     * @return true every {@link #FORCE_INTERVAL} samples, when the mapping
+     *         should be forced
+     */
+    boolean append(long timestamp, int state) {
+        int offset = HEADER_SIZE + mNext * RECORD_SIZE;
+        mSequence++;
+        mBuffer.putLong(offset, timestamp);
+        mBuffer.putInt(offset + 8, state);
+        mBuffer.putInt(offset + 12, (int) mSequence);
+
+        mNext = (mNext + 1) % mCapacity;
+        writeHeader();
+
+        if (++mUnforced < FORCE_INTERVAL) {
+            return false;
+        }
+        mUnforced = 0;
+        return true;
+    }
+
+    /**
+     * Writes the mapping back to the file. May be called from any thread.
+     */
+    void force() {
+        mBuffer.force();
+    }
+
+    /**
+     * @return the number of valid records, at most the capacity
+     */
+    int size() {
+        return (int) Math.min(mSequence, mCapacity);
+    }
+
+    /**
+     * @param index 0 for the oldest record, size() - 1 for the newest
+     */
+    long getTimestamp(int index) {
+        return mBuffer.getLong(getOffset(index));
+    }
+
+    int getState(int index) {
+        return mBuffer.getInt(getOffset(index) + 8);
+    }
+
+    boolean isValid(int index) {
+        long sequence = mSequence - size() + index + 1;
+        return mBuffer.getInt(getOffset(index) + 12) == (int) sequence;
+    }
+
+    private int getOffset(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("index " + index + " size " + size());
+        }
+        int slot = (mNext - size() + index + mCapacity) % mCapacity;
+        return HEADER_SIZE + slot * RECORD_SIZE;
+    }
+}
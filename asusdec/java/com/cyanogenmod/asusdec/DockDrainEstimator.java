@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.asusdec;
+
+/**
+ * Incremental time-to-empty and time-to-full estimation of the dock battery.
+ *
+ * Keeps an exponentially weighted average of the level change rate, updated
+ * in O(1) on every level change. The average restarts whenever the plugged
+ * state changes, since the charge and drain rates are unrelated.
+ *
+ * Rates are only measured between two level changes: the time from a
+ * restart to the first change covers an unknown part of a level, so that
+ * change only anchors the next measurement.
+ */
+final class DockDrainEstimator {
+
+    // Weight of the newest rate sample
+    private static final double ALPHA = 0.25;
+
+    private static final int FULL_LEVEL = 100;
+
+    private boolean mHasSample;
+    // Whether mLastTimestamp is the time of a level change
+    private boolean mHasEdge;
+    private long mLastTimestamp;
+    private int mLastLevel;
+    private int mLastPlugged;
+    // Level change per millisecond; negative while draining
+    private double mRate;
+    private boolean mHasRate;
+
+    /**
+     * @param timestamp a monotonic timestamp, in milliseconds
+     * @param state the sampled {@link DockPowerState}
+     */
+    void onSample(long timestamp, int state) {
+        int level = DockPowerState.getLevel(state);
+        int plugged = DockPowerState.getPlugged(state);
+
+        if (!mHasSample || plugged != mLastPlugged
+                || !DockPowerState.isPresent(state) || timestamp < mLastTimestamp) {
+            mHasSample = DockPowerState.isPresent(state);
+            mHasEdge = false;
+            mHasRate = false;
+            mLastTimestamp = timestamp;
+            mLastLevel = level;
+            mLastPlugged = plugged;
+            return;
+        }
+        if (level == mLastLevel || timestamp == mLastTimestamp) {
+            return;
+        }
+        if (!mHasEdge) {
+            mHasEdge = true;
+            mLastTimestamp = timestamp;
+            mLastLevel = level;
+            return;
+        }
+
+        double rate = (double) (level - mLastLevel) / (timestamp - mLastTimestamp);
+        mRate = mHasRate ? ALPHA * rate + (1 - ALPHA) * mRate : rate;
+        mHasRate = true;
+        mLastTimestamp = timestamp;
+        mLastLevel = level;
+    }
+
+    /**
+     * @return the estimated milliseconds until the dock battery is empty, or
+     *         -1 if it isn't draining or there is no estimate yet
+     */
+    long getTimeToEmptyMillis() {
+        if (!mHasRate || mRate >= 0) {
+            return -1;
+        }
+        return (long) (mLastLevel / -mRate);
+    }
+
+    /**
+     * @return the estimated milliseconds until the dock battery is full, or
+     *         -1 if it isn't charging or there is no estimate yet
+     */
+    long getTimeToFullMillis() {
+        if (!mHasRate || mRate <= 0) {
+            return -1;
+        }
+        return (long) (Math.max(FULL_LEVEL - mLastLevel, 0) / mRate);
+    }
+}
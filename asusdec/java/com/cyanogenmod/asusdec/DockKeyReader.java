@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.asusdec;
+
+import java.io.FileDescriptor;
+
+/**
+ * Reads the dock hotkeys straight from the dock's evdev node, bypassing the
+ * input pipeline. The node is epolled by a native thread that decodes the
+ * input events in bulk and hands the requested scan codes over in batches,
+ * with one JNI call per read. The other events are dropped.
+ *
+ * The device isn't grabbed, InputReader still gets all of its events. The
+ * owner has to consume the delivered keys it gets from the input pipeline
+ * without acting on them again.
+ */
+final class DockKeyReader {
+
+    // Name of the dock keyboard input device
+    static final String DOCK_INPUT_NAME = "asusdec";
+
+    // Key values, as in the input_event value
+    static final int KEY_UP = 0;
+    static final int KEY_DOWN = 1;
+    static final int KEY_REPEAT = 2;
+
+    /**
+     * Receives the keys on the native reader thread.
+     */
+    interface Callback {
+        /**
+         * @param repeatCount the number of autorepeats since the key went
+         *        down, 0 for the initial press and for KEY_UP
+         */
+        void onDockKey(int scanCode, int value, int repeatCount);
+    }
+
+    static {
+        AsusdecNative.registerNatives(AsusdecNative.CLASS_DOCK_KEY_READER);
+    }
+
+    private final Callback mCallback;
+    private final int[] mRepeatCounts = new int[KeyActionTable.MAX_SCANCODE + 1];
+
+    DockKeyReader(Callback callback) {
+        mCallback = callback;
+    }
+
+    /**
+     * Starts reading the dock keyboard device.
+     *
+     * @param scanCodes the scan codes to deliver
+     * @return whether the device was found and the reader started
+     */
+    boolean start(int[] scanCodes) {
+        return start(scanCodes, null);
+    }
+
+    /**
+     * Same as {@link #start(int[])} but reads recorded input_event structs
+     * from the given descriptor, ie. a pipe, instead of the device. The
+     * events that are not delivered are dropped.
+     */
+    boolean start(int[] scanCodes, FileDescriptor source) {
+        return nativeStart(source, DOCK_INPUT_NAME, scanCodes);
+    }
+
+    /**
+     * Changes the scan codes to deliver, the running reader picks them up
+     * from its next read.
+     */
+    void setScanCodes(int[] scanCodes) {
+        nativeSetScanCodes(scanCodes);
+    }
+
+    void stop() {
+        nativeStop();
+    }
+
+    /**
+     * Returns whether the reader is running, it stops by itself when the
+     * device goes away.
+     */
+    boolean isRunning() {
+        return nativeIsRunning();
+    }
+
+    // Called by the native reader thread; keys is reused between calls
+    private void onNativeKeys(int[] keys, int count) {
+        for (int i = 0; i < count; i++) {
+            int scanCode = keys[i] & 0xffff;
+            int value = keys[i] >>> 16;
+            int repeatCount = 0;
+            if (value == KEY_REPEAT) {
+                repeatCount = ++mRepeatCounts[scanCode];
+            } else {
+                mRepeatCounts[scanCode] = 0;
+            }
+            mCallback.onDockKey(scanCode, value, repeatCount);
+        }
+    }
+
+    private native boolean nativeStart(FileDescriptor source, String deviceName,
+            int[] scanCodes);
+    private native void nativeStop();
+    private native void nativeSetScanCodes(int[] scanCodes);
+    private native boolean nativeIsRunning();
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.asusdec;
+
+/**
+ * Packs the whole dock power state in a single int word, so that it can be
+ * compared, stored and passed around without allocating.
+ *
+ * <pre>
+ *   bits  0-7   dock battery level (clamped to 0-255)
+ *   bits  8-11  dock battery status (BatteryManager.BATTERY_STATUS_*)
+ *   bits 12-15  dock battery plugged (BatteryManager.BATTERY_PLUGGED_*)
+ *   bit  16     dock battery present
+ *   bit  17     pad usb online
+ *   bit  18     ac online
+ *   bit  19     dock ac online
+ * </pre>
+ */
+public final class DockPowerState {
+
+    private static final int LEVEL_SHIFT = 0;
+    private static final int LEVEL_MASK = 0xff;
+    private static final int STATUS_SHIFT = 8;
+    private static final int STATUS_MASK = 0xf;
+    private static final int PLUGGED_SHIFT = 12;
+    private static final int PLUGGED_MASK = 0xf;
+
+    public static final int FLAG_PRESENT = 1 << 16;
+    public static final int FLAG_PAD_USB_ONLINE = 1 << 17;
+    public static final int FLAG_AC_ONLINE = 1 << 18;
+    public static final int FLAG_DOCK_AC_ONLINE = 1 << 19;
+
+    private DockPowerState() {
+    }
+
+    public static int pack(int level, int status, int plugged, boolean present,
+            boolean padUsbOnline, boolean acOnline, boolean dockAcOnline) {
+        if (level < 0) {
+            level = 0;
+        } else if (level > LEVEL_MASK) {
+            level = LEVEL_MASK;
+        }
+        int state = (level << LEVEL_SHIFT)
+                | ((status & STATUS_MASK) << STATUS_SHIFT)
+                | ((plugged & PLUGGED_MASK) << PLUGGED_SHIFT);
+        if (present) {
+            state |= FLAG_PRESENT;
+        }
+        if (padUsbOnline) {
+            state |= FLAG_PAD_USB_ONLINE;
+        }
+        if (acOnline) {
+            state |= FLAG_AC_ONLINE;
+        }
+        if (dockAcOnline) {
+            state |= FLAG_DOCK_AC_ONLINE;
+        }
+        return state;
+    }
+
+    public static int getLevel(int state) {
+        return (state >> LEVEL_SHIFT) & LEVEL_MASK;
+    }
+
+    public static int getStatus(int state) {
+        return (state >> STATUS_SHIFT) & STATUS_MASK;
+    }
+
+    public static int getPlugged(int state) {
+        return (state >> PLUGGED_SHIFT) & PLUGGED_MASK;
+    }
+
+    public static boolean isPresent(int state) {
+        return (state & FLAG_PRESENT) != 0;
+    }
+
+    public static boolean isPadUsbOnline(int state) {
+        return (state & FLAG_PAD_USB_ONLINE) != 0;
+    }
+
+    public static boolean isAcOnline(int state) {
+        return (state & FLAG_AC_ONLINE) != 0;
+    }
+
+    public static boolean isDockAcOnline(int state) {
+        return (state & FLAG_DOCK_AC_ONLINE) != 0;
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.asusdec;
+
+import android.util.Log;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+
+/**
+ * The dock connection state, shared by the key and battery handlers.
+ *
+ * The dock switch is watched by a native uevent monitor, started with the
+ * first listener. Listeners are only called on actual dock and undock
+ * transitions, in order, each tagged with a generation that is bumped on
+ * every transition. Bouncing or repeated reports of the same state are
+ * dropped before they reach them.
+ */
+final class DockState {
+    private static final String TAG = "AsusdecDockState";
+
+    /**
+     * Receives the dock transitions, on the thread that detected them.
+     */
+    interface Listener {
+        /**
+         * @param generation the generation of this state, listeners may
+         *        compare it with {@link DockState#getGeneration()} to skip
+         *        work for a state that is already gone
+         */
+        void onDockStateChanged(boolean docked, int generation);
+    }
+
+    static {
+        AsusdecNative.registerNatives(AsusdecNative.CLASS_DOCK_STATE);
+    }
+
+    private static DockState sInstance;
+
+    // Held while listeners are called, so transitions are seen in order
+    private final Object mNotifyLock = new Object();
+    private final Object mLock = new Object();
+    private final ArrayList<Listener> mListeners = new ArrayList<Listener>();
+    private boolean mDocked;
+    private int mGeneration;
+    private boolean mMonitoring;
+    private boolean mHasSwitch;
+    private long mNativeReads;
+    private long mDuplicates;
+
+    static synchronized DockState get() {
+        if (sInstance == null) {
+            sInstance = new DockState();
+        }
+        return sInstance;
+    }
+
+    private DockState() {
+        synchronized (mLock) {
+            mDocked = readDockedLocked(false);
+        }
+    }
+
+    boolean isDocked() {
+        synchronized (mLock) {
+            return mDocked;
+        }
+    }
+
+    int getGeneration() {
+        synchronized (mLock) {
+            return mGeneration;
+        }
+    }
+
+    /**
+     * Returns whether the dock switch node could be read the last time. If
+     * not, the state only changes through {@link #setDocked(boolean)}, the
+     * dock battery handler then reports the EC dock detection.
+     */
+    boolean hasSwitch() {
+        synchronized (mLock) {
+            return mHasSwitch;
+        }
+    }
+
+    /**
+     * Returns whether the native monitor runs. If not, the owner of a
+     * listener must report the transitions with {@link #setDocked(boolean)}.
+     */
+    boolean isMonitoring() {
+        synchronized (mLock) {
+            return mMonitoring;
+        }
+    }
+
+    void addListener(Listener listener) {
+        startMonitoring(null);
+        synchronized (mLock) {
+            mListeners.add(listener);
+        }
+    }
+
+    void removeListener(Listener listener) {
+        synchronized (mLock) {
+            mListeners.remove(listener);
+        }
+    }
+
+    /**
+     * Starts the native monitor, reading the uevents from the given
+     * descriptor instead of the kernel netlink socket if not null.
+     */
+    /* package */ void startMonitoring(FileDescriptor ueventSource) {
+        boolean docked;
+        synchronized (mLock) {
+            if (mMonitoring) {
+                return;
+            }
+            mMonitoring = nativeStartMonitor(ueventSource, mDocked ? 1 : 0);
+            if (!mMonitoring) {
+                Log.w(TAG, "Could not start the dock monitor");
+                return;
+            }
+            // Don't miss a change made before the monitor was listening
+            docked = readDockedLocked(mDocked);
+        }
+        setDocked(docked);
+    }
+
+    void stopMonitoring() {
+        // Don't hold mLock here, the monitor thread may be waiting for it
+        nativeStopMonitor();
+        synchronized (mLock) {
+            mMonitoring = false;
+        }
+    }
+
+    /**
+     * Reports the dock state, from the native monitor or a fallback source.
+     * Does nothing unless the state changed.
+     */
+    void setDocked(boolean docked) {
+        synchronized (mNotifyLock) {
+            Listener[] listeners;
+            int generation;
+            synchronized (mLock) {
+                if (mDocked == docked) {
+                    mDuplicates++;
+                    return;
+                }
+                mDocked = docked;
+                generation = ++mGeneration;
+                listeners = mListeners.toArray(new Listener[mListeners.size()]);
+            }
+            for (Listener listener : listeners) {
+                listener.onDockStateChanged(docked, generation);
+            }
+        }
+    }
+
+    /**
+     * Points the state to another switch node, ie. a stand-in for testing.
+     */
+    static void setSwitchPath(String path) {
+        nativeSetPath(path);
+    }
+
+    private boolean readDockedLocked(boolean def) {
+        mNativeReads++;
+        int state = nativeReadState();
+        mHasSwitch = state >= 0;
+        return state < 0 ? def : state != 0;
+    }
+
+    // Called by the native monitor thread
+    private static void onNativeDockChanged(int state) {
+        get().setDocked(state != 0);
+    }
+
+    void dump(PrintWriter pw) {
+        synchronized (mLock) {
+            pw.print("Dock state: docked=");
+            pw.print(mDocked);
+            pw.print(" generation=");
+            pw.print(mGeneration);
+            pw.print(" monitoring=");
+            pw.print(mMonitoring);
+            pw.print(" hasSwitch=");
+            pw.print(mHasSwitch);
+            pw.print(" nativeReads=");
+            pw.print(mNativeReads);
+            pw.print(" duplicates=");
+            pw.println(mDuplicates);
+        }
+    }
+
+    private static native int nativeReadState();
+    private static native boolean nativeStartMonitor(FileDescriptor ueventSource, int state);
+    private static native void nativeStopMonitor();
+    private static native void nativeSetPath(String path);
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.asusdec;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs key actions in order on a dedicated thread, so that a slow binder
+ * call or settings write never delays the dispatch of the next key.
+ *
+ * The queue is bounded: once capacity actions are pending, further requests
+ * are dropped instead of piling up behind a stalled action.
+ */
+final class KeyActionExecutor {
+    private static final String TAG = "AsusdecKeyActionExecutor";
+
+    private static final int MSG_RUN_ACTION = 1;
+
+    // Dropped actions are logged at most this often, the counter has them all
+    private static final long REJECT_LOG_INTERVAL_MS = 5000;
+
+    private final int mCapacity;
+    private final Handler mHandler;
+    private final AtomicInteger mQueueDepth = new AtomicInteger();
+    private volatile int mMaxQueueDepth;
+    private final AtomicLong mRejectedCount = new AtomicLong();
+    private final AtomicLong mLastRejectLogTime = new AtomicLong(-REJECT_LOG_INTERVAL_MS);
+
+    KeyActionExecutor(int capacity) {
+        mCapacity = capacity;
+
+        HandlerThread thread = new HandlerThread(TAG, Process.THREAD_PRIORITY_FOREGROUND);
+        thread.start();
+        mHandler = new Handler(thread.getLooper()) {
+            @Override
+            public void handleMessage(Message msg) {
+                if (msg.what == MSG_RUN_ACTION) {
+                    runAction((KeyActionTable.Action) msg.obj, msg.arg1, msg.getWhen());
+                }
+            }
+        };
+    }
+
+    /**
+     * Queues an action.
+     *
+     * @param repeatCount the repeat count of the key event, handed to
+     *        {@link KeyActionTable.Action#run(int)}
+     * @return false if the queue is full and the action was dropped
+     */
+    boolean execute(KeyActionTable.Action action, int repeatCount) {
+        int depth = mQueueDepth.incrementAndGet();
+        if (depth > mCapacity) {
+            mQueueDepth.decrementAndGet();
+            long rejected = mRejectedCount.incrementAndGet();
+            long now = SystemClock.uptimeMillis();
+            long last = mLastRejectLogTime.get();
+            if (now - last >= REJECT_LOG_INTERVAL_MS
+                    && mLastRejectLogTime.compareAndSet(last, now)) {
+                Log.w(TAG, "Action queue full, dropping " + action.getName()
+                        + " (" + rejected + " dropped so far)");
+            }
+            return false;
+        }
+        if (depth > mMaxQueueDepth) {
+            mMaxQueueDepth = depth;
+        }
+        mHandler.sendMessage(mHandler.obtainMessage(MSG_RUN_ACTION, repeatCount, 0, action));
+        return true;
+    }
+
+    private void runAction(KeyActionTable.Action action, int repeatCount, long queuedAt) {
+        try {
+            action.run(repeatCount);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Action " + action.getName() + " failed", e);
+        } finally {
+            mQueueDepth.decrementAndGet();
+            action.recordLatency(SystemClock.uptimeMillis() - queuedAt);
+        }
+    }
+
+    /**
+     * Runs a task on the executor thread, outside of the bounded action queue.
+     */
+    void post(Runnable task) {
+        mHandler.post(task);
+    }
+
+    void postDelayed(Runnable task, long delayMs) {
+        mHandler.postDelayed(task, delayMs);
+    }
+
+    Looper getLooper() {
+        return mHandler.getLooper();
+    }
+
+    int getQueueDepth() {
+        return mQueueDepth.get();
+    }
+
+    int getMaxQueueDepth() {
+        return mMaxQueueDepth;
+    }
+
+    long getRejectedCount() {
+        return mRejectedCount.get();
+    }
+
+    void dump(PrintWriter pw) {
+        pw.println("Key action executor:");
+        pw.print("  queueDepth=");
+        pw.print(getQueueDepth());
+        pw.print(" maxQueueDepth=");
+        pw.print(getMaxQueueDepth());
+        pw.print(" capacity=");
+        pw.print(mCapacity);
+        pw.print(" rejected=");
+        pw.println(getRejectedCount());
+    }
+}
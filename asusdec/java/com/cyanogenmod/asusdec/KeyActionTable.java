@@ -0,0 +1,277 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.asusdec;
+
+import android.os.FileObserver;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Map;
+
+/**
+ * Scan code to action dispatch table.
+ *
+ * The table is a dense array indexed by scan code. It starts from the
+ * built-in defaults, overlaid with the bindings of an optional config file
+ * using the same "key &lt;scancode&gt; &lt;ACTION&gt;" syntax as the key layout files.
+ * The config file is watched and the table is rebuilt and swapped whenever
+ * it changes, so lookups never lock nor allocate.
+ */
+final class KeyActionTable {
+    private static final String TAG = "AsusdecKeyActionTable";
+
+    static final int MAX_SCANCODE = 255;
+
+    private static final String ACTION_NONE = "NONE";
+
+    /**
+     * An action bound to a scan code. Whether the key event is consumed is
+     * known up front, the action itself is run by a {@link KeyActionExecutor}.
+     */
+    static abstract class Action implements Runnable {
+        private final String mName;
+        private final boolean mConsumesEvent;
+        private final boolean mAcceptsRepeats;
+
+        // Only updated by the executor thread
+        private volatile long mRunCount;
+        private volatile long mTotalLatencyMs;
+        private volatile long mMaxLatencyMs;
+        private volatile long mFirstLatencyMs = -1;
+
+        Action(String name, boolean consumesEvent) {
+            this(name, consumesEvent, false);
+        }
+
+        Action(String name, boolean consumesEvent, boolean acceptsRepeats) {
+            mName = name;
+            mConsumesEvent = consumesEvent;
+            mAcceptsRepeats = acceptsRepeats;
+        }
+
+        /**
+         * Called on the input thread, or the evdev reader thread, for every
+         * key down event the action accepts. Must not block; the default
+         * queues the action on executor.
+         *
+         * @return true if the key event was consumed
+         */
+        boolean dispatch(int repeatCount, KeyActionExecutor executor) {
+            executor.execute(this, repeatCount);
+            return mConsumesEvent;
+        }
+
+        /**
+         * Called on the executor thread. Only actions accepting repeats see
+         * a repeat count other than 0; the default ignores it.
+         */
+        void run(int repeatCount) {
+            run();
+        }
+
+        String getName() {
+            return mName;
+        }
+
+        boolean consumesEvent() {
+            return mConsumesEvent;
+        }
+
+        boolean acceptsRepeats() {
+            return mAcceptsRepeats;
+        }
+
+        void recordLatency(long latencyMs) {
+            if (mRunCount == 0) {
+                mFirstLatencyMs = latencyMs;
+            }
+            mRunCount++;
+            mTotalLatencyMs += latencyMs;
+            if (latencyMs > mMaxLatencyMs) {
+                mMaxLatencyMs = latencyMs;
+            }
+        }
+
+        void dump(PrintWriter pw) {
+            long count = mRunCount;
+            pw.print("  ");
+            pw.print(mName);
+            pw.print(": runs=");
+            pw.print(count);
+            pw.print(" avgLatencyMs=");
+            pw.print(count == 0 ? 0 : mTotalLatencyMs / count);
+            pw.print(" maxLatencyMs=");
+            pw.print(mMaxLatencyMs);
+            pw.print(" firstLatencyMs=");
+            pw.println(mFirstLatencyMs);
+        }
+    }
+
+    /**
+     * Notified on the loading thread whenever the table was rebuilt.
+     */
+    interface Listener {
+        void onTableLoaded();
+    }
+
+    private final File mConfigFile;
+    private final Action[] mDefaults;
+    private final Map<String, Action> mActionsByName;
+    private volatile Action[] mTable;
+    private volatile Listener mListener;
+    private FileObserver mObserver;
+
+    /**
+     * @param configFile the bindings file, may not exist
+     * @param defaults the default bindings, indexed by scan code
+     * @param actionsByName the actions that can be named in the config file
+     */
+    KeyActionTable(File configFile, Action[] defaults, Map<String, Action> actionsByName) {
+        mConfigFile = configFile;
+        mDefaults = new Action[MAX_SCANCODE + 1];
+        System.arraycopy(defaults, 0, mDefaults, 0, Math.min(defaults.length, mDefaults.length));
+        mActionsByName = actionsByName;
+        mTable = mDefaults;
+    }
+
+    Action get(int scanCode) {
+        if (scanCode < 0 || scanCode > MAX_SCANCODE) {
+            return null;
+        }
+        return mTable[scanCode];
+    }
+
+    void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Returns the scan codes that currently have an action.
+     */
+    int[] getBoundScanCodes() {
+        Action[] table = mTable;
+        int count = 0;
+        for (Action action : table) {
+            if (action != null) {
+                count++;
+            }
+        }
+        int[] scanCodes = new int[count];
+        for (int i = 0, j = 0; i < table.length; i++) {
+            if (table[i] != null) {
+                scanCodes[j++] = i;
+            }
+        }
+        return scanCodes;
+    }
+
+    void load() {
+        Action[] table = mDefaults.clone();
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(mConfigFile));
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                parseLine(table, line.trim(), lineNumber);
+            }
+        } catch (FileNotFoundException e) {
+            // No overrides, use the defaults
+        } catch (IOException e) {
+            Log.e(TAG, "Could not read " + mConfigFile, e);
+            return;
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+        mTable = table;
+
+        Listener listener = mListener;
+        if (listener != null) {
+            listener.onTableLoaded();
+        }
+    }
+
+    private void parseLine(Action[] table, String line, int lineNumber) {
+        if (line.length() == 0 || line.charAt(0) == '#') {
+            return;
+        }
+        String[] tokens = line.split("\\s+");
+        if (tokens.length != 3 || !"key".equals(tokens[0])) {
+            Log.w(TAG, mConfigFile + ":" + lineNumber + ": expected 'key <scancode> <action>'");
+            return;
+        }
+
+        int scanCode;
+        try {
+            scanCode = Integer.parseInt(tokens[1]);
+        } catch (NumberFormatException e) {
+            scanCode = -1;
+        }
+        if (scanCode < 0 || scanCode > MAX_SCANCODE) {
+            Log.w(TAG, mConfigFile + ":" + lineNumber + ": invalid scan code " + tokens[1]);
+            return;
+        }
+
+        if (ACTION_NONE.equals(tokens[2])) {
+            table[scanCode] = null;
+            return;
+        }
+        Action action = mActionsByName.get(tokens[2]);
+        if (action == null) {
+            Log.w(TAG, mConfigFile + ":" + lineNumber + ": unknown action " + tokens[2]);
+            return;
+        }
+        table[scanCode] = action;
+    }
+
+    void dump(PrintWriter pw) {
+        pw.println("Key actions:");
+        for (Action action : mActionsByName.values()) {
+            action.dump(pw);
+        }
+    }
+
+    void startWatching() {
+        if (mObserver != null) {
+            return;
+        }
+        // Watch the directory, editors and adb push replace the file itself
+        final String name = mConfigFile.getName();
+        mObserver = new FileObserver(mConfigFile.getParent(), FileObserver.CLOSE_WRITE
+                | FileObserver.MOVED_TO | FileObserver.DELETE | FileObserver.MOVED_FROM) {
+            @Override
+            public void onEvent(int event, String path) {
+                if (name.equals(path)) {
+                    Log.i(TAG, "Reloading " + mConfigFile);
+                    load();
+                }
+            }
+        };
+        mObserver.startWatching();
+    }
+}
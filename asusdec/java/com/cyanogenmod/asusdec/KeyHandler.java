@@ -19,28 +19,25 @@ package com.cyanogenmod.asusdec;
 import android.bluetooth.BluetoothAdapter;
 import android.content.ActivityNotFoundException;
 import android.content.BroadcastReceiver;
-import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
-import android.content.ServiceConnection;
 import android.media.AudioManager;
 import android.net.wifi.WifiManager;
-import android.os.Handler;
-import android.os.IBinder;
-import android.os.IPowerManager;
-import android.os.Message;
-import android.os.Messenger;
 import android.os.RemoteException;
-import android.os.ServiceManager;
+import android.os.SystemProperties;
 import android.provider.Settings;
-import android.provider.Settings.SettingNotFoundException;
 import android.util.Log;
 import android.util.Slog;
 import android.view.KeyEvent;
 
 import com.android.internal.os.DeviceKeyHandler;
 
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.Map;
+
 public final class KeyHandler implements DeviceKeyHandler {
     private static final String TAG = "AsusdecKeyHandler";
 
@@ -48,7 +45,6 @@ public final class KeyHandler implements DeviceKeyHandler {
 
     private static final int MINIMUM_BACKLIGHT = android.os.PowerManager.BRIGHTNESS_OFF + 1;
     private static final int MAXIMUM_BACKLIGHT = android.os.PowerManager.BRIGHTNESS_ON;
-    private static final String SETTING_TOUCHPAD_STATUS = "touchpad_status";
 
     // Use specific scan codes from device instead of aosp keycodes
     private static final int SCANCODE_TOGGLE_WIFI     = 238;
@@ -61,23 +57,41 @@ public final class KeyHandler implements DeviceKeyHandler {
     private static final int SCANCODE_SETTINGS        =  62;  // KEYCODE_F4
     private static final int SCANCODE_VOLUME_MUTE     = 113;  // KEYCODE_VOLUME_MUTE
 
+    // Overrides of the scan code bindings, see keylayout/asusdec_actions.conf
+    private static final String ACTIONS_CONFIG_FILE =
+            "/system/usr/keylayout/asusdec_actions.conf";
+
+    // Key presses beyond this many pending actions are dropped
+    private static final int ACTION_QUEUE_CAPACITY = 16;
+
+    // How long the screenshot service stays bound after the last capture
+    private static final long SCREENSHOT_IDLE_TIMEOUT_MS = 30000;
+
+    // Read the bound dock keys from evdev instead of the input pipeline
+    private static final String PROP_EVDEV_KEYS = "persist.sys.asusdec.evdev_keys";
+
+    // The evdev node may show up a little after the dock switch
+    private static final int KEY_READER_START_RETRIES = 10;
+    private static final long KEY_READER_RETRY_DELAY_MS = 200;
+
     private final Context mContext;
-    private final Handler mHandler;
     private final Intent mSettingsIntent;
     private final boolean mAutomaticAvailable;
-    private boolean mTouchpadEnabled = true;
-    private WifiManager mWifiManager;
-    private AudioManager mAudioManager;
-    private BluetoothAdapter mBluetoothAdapter;
-    private IPowerManager mPowerManager;
+    private volatile boolean mTouchpadEnabled = true;
+    private final KeyServices mServices;
+    private final KeyActionTable mActionTable;
+    private final KeyActionExecutor mActionExecutor;
+    private final KeySettings mSettings;
+    private final BrightnessController mBrightnessController;
+    private final ScreenshotConnection mScreenshotConnection;
+    private final DockKeyReader mKeyReader;
 
     static {
-        AsusdecNative.loadAsusdecLib();
+        AsusdecNative.registerNatives(AsusdecNative.CLASS_KEY_HANDLER);
     }
 
     public KeyHandler(Context context) {
         mContext = context;
-        mHandler = new Handler();
 
         mSettingsIntent = new Intent(Intent.ACTION_MAIN, null);
         mSettingsIntent.setAction(Settings.ACTION_SETTINGS);
@@ -87,18 +101,157 @@ public final class KeyHandler implements DeviceKeyHandler {
         mAutomaticAvailable = context.getResources().getBoolean(
                 com.android.internal.R.bool.config_automatic_brightness_available);
 
-        try {
-            if (Settings.Secure.getInt(mContext.getContentResolver(),
-                    SETTING_TOUCHPAD_STATUS) == 0) {
-                mTouchpadEnabled = false;
-                nativeToggleTouchpad(false);
+        mServices = new KeyServices(context);
+        mActionExecutor = new KeyActionExecutor(ACTION_QUEUE_CAPACITY);
+        mSettings = new KeySettings(context.getContentResolver(),
+                mActionExecutor.getLooper());
+        mBrightnessController = new BrightnessController(mActionExecutor.getLooper(),
+                mBrightnessBackend, MINIMUM_BACKLIGHT, MAXIMUM_BACKLIGHT);
+        mScreenshotConnection = new ScreenshotConnection(context,
+                mActionExecutor.getLooper(), SCREENSHOT_IDLE_TIMEOUT_MS);
+        mActionTable = createActionTable();
+        mKeyReader = SystemProperties.getBoolean(PROP_EVDEV_KEYS, false)
+                ? new DockKeyReader(mDockKeyCallback) : null;
+
+        // Keep the constructor cheap, system_server is still starting
+        mActionExecutor.post(new Runnable() {
+            @Override
+            public void run() {
+                mSettings.load();
+                restoreTouchpadState();
+                if (mKeyReader != null) {
+                    mActionTable.setListener(mTableListener);
+                }
+                mActionTable.load();
+                mActionTable.startWatching();
+
+                DockState dockState = DockState.get();
+                startKeyReader(dockState.getGeneration(), KEY_READER_START_RETRIES);
+                dockState.addListener(mDockListener);
+                if (!dockState.isMonitoring()) {
+                    // Fall back to the framework dock broadcasts
+                    mContext.registerReceiver(mDockReceiver,
+                            new IntentFilter(Intent.ACTION_DOCK_EVENT));
+                }
             }
-        } catch (SettingNotFoundException e) {
+        });
+
+        IntentFilter filter = new IntentFilter(Intent.ACTION_BOOT_COMPLETED);
+        context.registerReceiver(mBootCompletedReceiver, filter);
+
+        filter = new IntentFilter(Intent.ACTION_SHUTDOWN);
+        context.registerReceiver(mShutdownReceiver, filter);
+    }
+
+    private void restoreTouchpadState() {
+        if (!mSettings.isTouchpadEnabled()) {
+            mTouchpadEnabled = false;
+            setTouchpadState(false);
+        }
+    }
+
+    BroadcastReceiver mShutdownReceiver = new BroadcastReceiver() {
+        public void onReceive(Context context, Intent intent) {
+            // Don't lose the settings still waiting for the write-behind
+            mSettings.flush();
         }
+    };
+
+    BroadcastReceiver mBootCompletedReceiver = new BroadcastReceiver() {
+        public void onReceive(Context context, Intent intent) {
+            mContext.unregisterReceiver(this);
+            mActionExecutor.post(new Runnable() {
+                @Override
+                public void run() {
+                    mServices.warmUp();
+                }
+            });
+        }
+    };
+
+    private KeyActionTable createActionTable() {
+        Map<String, KeyActionTable.Action> actionsByName =
+                new HashMap<String, KeyActionTable.Action>();
+        KeyActionTable.Action[] defaults =
+                new KeyActionTable.Action[KeyActionTable.MAX_SCANCODE + 1];
+
+        addAction(actionsByName, defaults, SCANCODE_TOGGLE_WIFI,
+                new KeyActionTable.Action("TOGGLE_WIFI", true) {
+            public void run() {
+                toggleWifi();
+            }
+        });
+        addAction(actionsByName, defaults, SCANCODE_TOGGLE_BT,
+                new KeyActionTable.Action("TOGGLE_BT", true) {
+            public void run() {
+                toggleBluetooth();
+            }
+        });
+        addAction(actionsByName, defaults, SCANCODE_TOGGLE_TOUCHPAD,
+                new KeyActionTable.Action("TOGGLE_TOUCHPAD", true) {
+            public void run() {
+                toggleTouchpad();
+            }
+        });
+        addAction(actionsByName, defaults, SCANCODE_BRIGHTNESS_DOWN,
+                new KeyActionTable.Action("BRIGHTNESS_DOWN", true, true) {
+            @Override
+            void run(int repeatCount) {
+                mBrightnessController.adjust(false, repeatCount);
+            }
+
+            public void run() {
+                run(0);
+            }
+        });
+        addAction(actionsByName, defaults, SCANCODE_BRIGHTNESS_UP,
+                new KeyActionTable.Action("BRIGHTNESS_UP", true, true) {
+            @Override
+            void run(int repeatCount) {
+                mBrightnessController.adjust(true, repeatCount);
+            }
+
+            public void run() {
+                run(0);
+            }
+        });
+        addAction(actionsByName, defaults, SCANCODE_BRIGHTNESS_AUTO,
+                new KeyActionTable.Action("BRIGHTNESS_AUTO", true) {
+            public void run() {
+                toggleAutoBrightness();
+            }
+        });
+        addAction(actionsByName, defaults, SCANCODE_SCREENSHOT,
+                new KeyActionTable.Action("SCREENSHOT", true) {
+            public void run() {
+                takeScreenshot();
+            }
+        });
+        addAction(actionsByName, defaults, SCANCODE_SETTINGS,
+                new KeyActionTable.Action("SETTINGS", true) {
+            public void run() {
+                launchSettings();
+            }
+        });
+        addAction(actionsByName, defaults, SCANCODE_VOLUME_MUTE,
+                new KeyActionTable.Action("VOLUME_MUTE", false) {
+            public void run() {
+                // KEYCODE_VOLUME_MUTE is part of the aosp keyevent intercept handling, but
+                // aosp uses it stop ringing in phone devices (no system volume mute toggle).
+                // Since transformer devices doesn't have a telephony subsystem, we handle and
+                // treat this event as a volume mute toggle action. the asusdec KeyHandler
+                // mustn't mark the key event as consumed.
+                toggleAudioMute();
+            }
+        });
 
-        IntentFilter filter = new IntentFilter();
-        filter.addAction(Intent.ACTION_DOCK_EVENT);
-        context.registerReceiver(mDockReceiver, filter);
+        return new KeyActionTable(new File(ACTIONS_CONFIG_FILE), defaults, actionsByName);
+    }
+
+    private static void addAction(Map<String, KeyActionTable.Action> actionsByName,
+            KeyActionTable.Action[] defaults, int scanCode, KeyActionTable.Action action) {
+        actionsByName.put(action.getName(), action);
+        defaults[scanCode] = action;
     }
 
     BroadcastReceiver mDockReceiver = new BroadcastReceiver() {
@@ -106,15 +259,44 @@ public final class KeyHandler implements DeviceKeyHandler {
             if (Intent.ACTION_DOCK_EVENT.equals(intent.getAction())) {
                 int dockMode = intent.getIntExtra(Intent.EXTRA_DOCK_STATE,
                         Intent.EXTRA_DOCK_STATE_UNDOCKED);
-                if (dockMode != Intent.EXTRA_DOCK_STATE_UNDOCKED) {
-                    nativeToggleTouchpad(mTouchpadEnabled);
-                }
+                DockState.get().setDocked(dockMode != Intent.EXTRA_DOCK_STATE_UNDOCKED);
             }
         }
     };
 
+    // Only called on actual transitions, the touchpad is set up once per dock
+    private final DockState.Listener mDockListener = new DockState.Listener() {
+        @Override
+        public void onDockStateChanged(final boolean docked, final int generation) {
+            mActionExecutor.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (docked) {
+                        // Undocked again in the meantime
+                        if (generation != DockState.get().getGeneration()) {
+                            return;
+                        }
+                        setTouchpadState(mTouchpadEnabled);
+                        startKeyReader(generation, KEY_READER_START_RETRIES);
+                    } else {
+                        // The control node goes away with the dock
+                        AsusdecDevice.close();
+                        if (mKeyReader != null) {
+                            mKeyReader.stop();
+                        }
+                    }
+                }
+            });
+        }
+    };
+
     @Override
     public boolean handleKeyEvent(KeyEvent event) {
+        // Only the bound keys, the rest may be typed text
+        if (mActionTable.get(event.getScanCode()) != null) {
+            AsusdecTrace.recordKey(event.getScanCode(), event.getAction(),
+                    event.getRepeatCount());
+        }
 
         if (DEBUG_KEYEVENT) {
             Log.d(TAG, "KeyEvent: action=" + event.getAction()
@@ -126,59 +308,104 @@ public final class KeyHandler implements DeviceKeyHandler {
                     + ", repeatCount=" + event.getRepeatCount());
         }
 
-        if (event.getAction() != KeyEvent.ACTION_DOWN
-                || event.getRepeatCount() != 0) {
+        long start = System.nanoTime();
+        boolean consumed = dispatchKeyEvent(event);
+        AsusdecStats.KEY_EVENT.record(event.getScanCode(), System.nanoTime() - start);
+        return consumed;
+    }
+
+    private boolean dispatchKeyEvent(KeyEvent event) {
+        if (event.getAction() != KeyEvent.ACTION_DOWN) {
             return false;
         }
 
-        switch (event.getScanCode()) {
-            case SCANCODE_TOGGLE_WIFI:
-                toggleWifi();
-                break;
-            case SCANCODE_TOGGLE_BT:
-                toggleBluetooth();
-                break;
-            case SCANCODE_TOGGLE_TOUCHPAD:
-                toggleTouchpad();
-                break;
-            case SCANCODE_BRIGHTNESS_DOWN:
-                brightnessDown();
-                break;
-            case SCANCODE_BRIGHTNESS_UP:
-                brightnessUp();
-                break;
-            case SCANCODE_BRIGHTNESS_AUTO:
-                toggleAutoBrightness();
-                break;
-            case SCANCODE_SCREENSHOT:
-                takeScreenshot();
-                break;
-            case SCANCODE_SETTINGS:
-                launchSettings();
-                break;
-            case SCANCODE_VOLUME_MUTE:
-                // KEYCODE_VOLUME_MUTE is part of the aosp keyevent intercept handling, but
-                // aosp uses it stop ringing in phone devices (no system volume mute toggle).
-                // Since transformer devices doesn't have a telephony subsystem, we handle and
-                // treat this event as a volume mute toggle action. the asusdec KeyHandler
-                // mustn't mark the key event as consumed.
-                toggleAudioMute();
-                return false;
+        KeyActionTable.Action action = mActionTable.get(event.getScanCode());
+        if (action == null
+                || (event.getRepeatCount() != 0 && !action.acceptsRepeats())) {
+            return false;
+        }
+        // The evdev reader got the key first and ran its action already
+        if (mKeyReader != null && mKeyReader.isRunning()) {
+            return action.consumesEvent();
+        }
+        // The side effects (binder calls, settings writes, ioctls) are run
+        // off the input pipeline; only the consumed state is decided here.
+        return action.dispatch(event.getRepeatCount(), mActionExecutor);
+    }
+
+    // Called on the executor thread, retries while the dock stays docked
+    private void startKeyReader(final int generation, final int retries) {
+        if (mKeyReader == null || mKeyReader.isRunning()
+                || mKeyReader.start(mActionTable.getBoundScanCodes()) || retries == 0) {
+            return;
+        }
+        mActionExecutor.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                DockState dockState = DockState.get();
+                if (dockState.isDocked() && generation == dockState.getGeneration()) {
+                    startKeyReader(generation, retries - 1);
+                }
+            }
+        }, KEY_READER_RETRY_DELAY_MS);
+    }
+
+    // Keeps the reader filter in step with the bindings; run on the executor
+    // so a reload can't race a start with the previous bindings
+    private final KeyActionTable.Listener mTableListener = new KeyActionTable.Listener() {
+        @Override
+        public void onTableLoaded() {
+            mActionExecutor.post(mUpdateKeyReader);
+        }
+    };
 
-            default:
-                return false;
+    private final Runnable mUpdateKeyReader = new Runnable() {
+        @Override
+        public void run() {
+            mKeyReader.setScanCodes(mActionTable.getBoundScanCodes());
         }
+    };
 
-        return true;
+    private final DockKeyReader.Callback mDockKeyCallback = new DockKeyReader.Callback() {
+        @Override
+        public void onDockKey(int scanCode, int value, int repeatCount) {
+            AsusdecTrace.recordKey(scanCode,
+                    value == DockKeyReader.KEY_UP ? KeyEvent.ACTION_UP : KeyEvent.ACTION_DOWN,
+                    repeatCount);
+            if (value == DockKeyReader.KEY_UP) {
+                return;
+            }
+            KeyActionTable.Action action = mActionTable.get(scanCode);
+            if (action == null || (repeatCount != 0 && !action.acceptsRepeats())) {
+                return;
+            }
+            long start = System.nanoTime();
+            action.dispatch(repeatCount, mActionExecutor);
+            AsusdecStats.KEY_EVENT.record(scanCode, System.nanoTime() - start);
+        }
+    };
+
+    /**
+     * Dumps the key action metrics and the asusdec stats.
+     */
+    public void dump(PrintWriter pw) {
+        mActionExecutor.dump(pw);
+        mActionTable.dump(pw);
+        mServices.dump(pw);
+        mSettings.dump(pw);
+        DockState.get().dump(pw);
+        if (mKeyReader != null) {
+            pw.println("Evdev key reader: running=" + mKeyReader.isRunning());
+        }
+        AsusdecStats.dump(pw);
+        AsusdecTrace.dump(pw);
     }
 
     private void toggleWifi() {
-        if (mWifiManager == null) {
-            mWifiManager = (WifiManager) mContext.getSystemService(Context.WIFI_SERVICE);
-        }
+        WifiManager wifiManager = mServices.getWifiManager();
 
-        int state = mWifiManager.getWifiState();
-        int apState = mWifiManager.getWifiApState();
+        int state = wifiManager.getWifiState();
+        int apState = wifiManager.getWifiApState();
 
         if (state == WifiManager.WIFI_STATE_ENABLING
                 || state == WifiManager.WIFI_STATE_DISABLING) {
@@ -191,76 +418,44 @@ public final class KeyHandler implements DeviceKeyHandler {
 
         if (state == WifiManager.WIFI_STATE_ENABLED
                 || apState == WifiManager.WIFI_AP_STATE_ENABLED) {
-            mWifiManager.setWifiEnabled(false);
-            mWifiManager.setWifiApEnabled(null, false);
+            wifiManager.setWifiEnabled(false);
+            wifiManager.setWifiApEnabled(null, false);
 
         } else if (state == WifiManager.WIFI_STATE_DISABLED
                 && apState == WifiManager.WIFI_AP_STATE_DISABLED) {
-            mWifiManager.setWifiEnabled(true);
+            wifiManager.setWifiEnabled(true);
         }
     }
 
     private void toggleBluetooth() {
-        if (mBluetoothAdapter == null) {
-            mBluetoothAdapter = BluetoothAdapter.getDefaultAdapter();
-        }
+        BluetoothAdapter bluetoothAdapter = mServices.getBluetoothAdapter();
 
-        int state = mBluetoothAdapter.getState();
+        int state = bluetoothAdapter.getState();
 
         if (state == BluetoothAdapter.STATE_TURNING_OFF
                 || state == BluetoothAdapter.STATE_TURNING_ON) {
             return;
         }
         if (state == BluetoothAdapter.STATE_OFF) {
-            mBluetoothAdapter.enable();
+            bluetoothAdapter.enable();
         }
         if (state == BluetoothAdapter.STATE_ON) {
-            mBluetoothAdapter.disable();
+            bluetoothAdapter.disable();
         }
     }
 
     private void toggleTouchpad() {
         mTouchpadEnabled = !mTouchpadEnabled;
-        nativeToggleTouchpad(mTouchpadEnabled);
-
-        int enabled = mTouchpadEnabled ? 1 : 0;
-        Settings.Secure.putInt(mContext.getContentResolver(),
-                SETTING_TOUCHPAD_STATUS, enabled);
-    }
-
-    private void brightnessDown() {
-        setBrightnessMode(Settings.System.SCREEN_BRIGHTNESS_MODE_MANUAL);
-
-        int value = getBrightness(MINIMUM_BACKLIGHT);
-
-        value -= 10;
-        if (value < MINIMUM_BACKLIGHT) {
-            value = MINIMUM_BACKLIGHT;
-        }
-        setBrightness(value);
-    }
-
-    private void brightnessUp() {
-        setBrightnessMode(Settings.System.SCREEN_BRIGHTNESS_MODE_MANUAL);
-
-        int value = getBrightness(MAXIMUM_BACKLIGHT);
+        setTouchpadState(mTouchpadEnabled);
 
-        value += 10;
-        if (value > MAXIMUM_BACKLIGHT) {
-            value = MAXIMUM_BACKLIGHT;
-        }
-        setBrightness(value);
+        mSettings.setTouchpadEnabled(mTouchpadEnabled);
     }
 
     private void toggleAutoBrightness() {
         if (!mAutomaticAvailable) {
             return;
         }
-        int currentValue =
-                Settings.System.getInt(
-                    mContext.getContentResolver(),
-                    Settings.System.SCREEN_BRIGHTNESS_MODE,
-                    Settings.System.SCREEN_BRIGHTNESS_MODE_MANUAL);
+        int currentValue = mSettings.getBrightnessMode();
         setBrightnessMode(
                 currentValue == Settings.System.SCREEN_BRIGHTNESS_MODE_MANUAL ?
                 Settings.System.SCREEN_BRIGHTNESS_MODE_AUTOMATIC :
@@ -268,33 +463,35 @@ public final class KeyHandler implements DeviceKeyHandler {
     }
 
     private void setBrightnessMode(int mode) {
-        Settings.System.putInt(mContext.getContentResolver(),
-                Settings.System.SCREEN_BRIGHTNESS_MODE, mode);
+        mSettings.setBrightnessMode(mode);
     }
 
-    private void setBrightness(int value) {
-        if (mPowerManager == null) {
-            mPowerManager = IPowerManager.Stub.asInterface(
-                    ServiceManager.getService("power"));
+    private final BrightnessController.Backend mBrightnessBackend =
+            new BrightnessController.Backend() {
+        @Override
+        public int readBrightness(int def) {
+            return mSettings.getBrightness(def);
         }
-        try {
-            mPowerManager.setTemporaryScreenBrightnessSettingOverride(value);
-        } catch (RemoteException ex) {
-            Slog.e(TAG, "Could not set backlight brightness", ex);
+
+        @Override
+        public void setManualMode() {
+            setBrightnessMode(Settings.System.SCREEN_BRIGHTNESS_MODE_MANUAL);
         }
-        Settings.System.putInt(mContext.getContentResolver(),
-                Settings.System.SCREEN_BRIGHTNESS, value);
-    }
 
-    private int getBrightness(int def) {
-        int value = def;
-        try {
-            value = Settings.System.getInt(mContext.getContentResolver(),
-                    Settings.System.SCREEN_BRIGHTNESS);
-        } catch (SettingNotFoundException ex) {
+        @Override
+        public void setTemporaryBrightness(int value) {
+            try {
+                mServices.getPowerManager().setTemporaryScreenBrightnessSettingOverride(value);
+            } catch (RemoteException ex) {
+                Slog.e(TAG, "Could not set backlight brightness", ex);
+            }
         }
-        return value;
-    }
+
+        @Override
+        public void persistBrightness(int value) {
+            mSettings.setBrightness(value);
+        }
+    };
 
     private void launchSettings() {
         try {
@@ -305,93 +502,30 @@ public final class KeyHandler implements DeviceKeyHandler {
     }
 
     private void toggleAudioMute() {
-        if (mAudioManager == null) {
-            mAudioManager = (AudioManager)mContext.getSystemService(Context.AUDIO_SERVICE);
-        }
+        AudioManager audioManager = mServices.getAudioManager();
         // We only act in normal mode (rings, calls, ... are handled by aosp)
-        if (mAudioManager.getMode() == AudioManager.MODE_NORMAL) {
+        if (audioManager.getMode() == AudioManager.MODE_NORMAL) {
             // TODO: If an alarm is sound then don't toggle the volume mute. In this case,
             // is better to ignore the key event and let the alarm app to handle it.
 
             // Just toggle between normal and silent (by now we are not going to handle
             // vibration here)
             int newValue =
-                    mAudioManager.getRingerMode() != AudioManager.RINGER_MODE_NORMAL ?
+                    audioManager.getRingerMode() != AudioManager.RINGER_MODE_NORMAL ?
                     AudioManager.RINGER_MODE_NORMAL :
                     AudioManager.RINGER_MODE_SILENT;
-            mAudioManager.setRingerMode(newValue);
+            audioManager.setRingerMode(newValue);
         }
     }
 
-    /*
-     * Screenshot stuff kanged from PhoneWindowManager
-     */
-
-    final Object mScreenshotLock = new Object();
-    ServiceConnection mScreenshotConnection = null;
-
-    final Runnable mScreenshotTimeout = new Runnable() {
-        @Override
-        public void run() {
-            synchronized (mScreenshotLock) {
-                if (mScreenshotConnection != null) {
-                    mContext.unbindService(mScreenshotConnection);
-                    mScreenshotConnection = null;
-                }
-            }
-        }
-    };
-
-    // Assume this is called from the Handler thread.
     private void takeScreenshot() {
-        synchronized (mScreenshotLock) {
-            if (mScreenshotConnection != null) {
-                return;
-            }
-            ComponentName cn = new ComponentName("com.android.systemui",
-                    "com.android.systemui.screenshot.TakeScreenshotService");
-            Intent intent = new Intent();
-            intent.setComponent(cn);
-            ServiceConnection conn = new ServiceConnection() {
-                @Override
-                public void onServiceConnected(ComponentName name, IBinder service) {
-                    synchronized (mScreenshotLock) {
-                        if (mScreenshotConnection != this) {
-                            return;
-                        }
-                        Messenger messenger = new Messenger(service);
-                        Message msg = Message.obtain(null, 1);
-                        final ServiceConnection myConn = this;
-                        Handler h = new Handler(mHandler.getLooper()) {
-                            @Override
-                            public void handleMessage(Message msg) {
-                                synchronized (mScreenshotLock) {
-                                    if (mScreenshotConnection == myConn) {
-                                        mContext.unbindService(mScreenshotConnection);
-                                        mScreenshotConnection = null;
-                                        mHandler.removeCallbacks(mScreenshotTimeout);
-                                    }
-                                }
-                            }
-                        };
-                        msg.replyTo = new Messenger(h);
-                        msg.arg1 = msg.arg2 = 0;
-                        try {
-                            messenger.send(msg);
-                        } catch (RemoteException e) {
-                        }
-                    }
-                }
+        mScreenshotConnection.takeScreenshot();
+    }
 
-                @Override
-                public void onServiceDisconnected(ComponentName name) {
-                }
-            };
-            if (mContext.bindService(intent, conn, Context.BIND_AUTO_CREATE)) {
-                mScreenshotConnection = conn;
-                mHandler.postDelayed(mScreenshotTimeout, 10000);
-            }
-        }
+    private static void setTouchpadState(boolean enabled) {
+        long start = System.nanoTime();
+        nativeToggleTouchpad(enabled);
+        AsusdecStats.NATIVE_TOGGLE_TOUCHPAD.record(System.nanoTime() - start);
     }
 
     /*
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.asusdec;
+
+import android.bluetooth.BluetoothAdapter;
+import android.content.Context;
+import android.media.AudioManager;
+import android.net.wifi.WifiManager;
+import android.os.IPowerManager;
+import android.os.ServiceManager;
+import android.os.SystemClock;
+
+import java.io.PrintWriter;
+
+/**
+ * Holds the system services used by the key actions.
+ *
+ * Each service is resolved on first use, or ahead of time by
+ * {@link #warmUp()} once the boot completed. Only meant to be used from the
+ * key action executor thread.
+ */
+final class KeyServices {
+
+    private final Context mContext;
+    private WifiManager mWifiManager;
+    private AudioManager mAudioManager;
+    private BluetoothAdapter mBluetoothAdapter;
+    private IPowerManager mPowerManager;
+
+    private long mWarmUpTimeMs = -1;
+
+    KeyServices(Context context) {
+        mContext = context;
+    }
+
+    WifiManager getWifiManager() {
+        if (mWifiManager == null) {
+            mWifiManager = (WifiManager) mContext.getSystemService(Context.WIFI_SERVICE);
+        }
+        return mWifiManager;
+    }
+
+    AudioManager getAudioManager() {
+        if (mAudioManager == null) {
+            mAudioManager = (AudioManager) mContext.getSystemService(Context.AUDIO_SERVICE);
+        }
+        return mAudioManager;
+    }
+
+    BluetoothAdapter getBluetoothAdapter() {
+        if (mBluetoothAdapter == null) {
+            mBluetoothAdapter = BluetoothAdapter.getDefaultAdapter();
+        }
+        return mBluetoothAdapter;
+    }
+
+    IPowerManager getPowerManager() {
+        if (mPowerManager == null) {
+            mPowerManager = IPowerManager.Stub.asInterface(
+                    ServiceManager.getService("power"));
+        }
+        return mPowerManager;
+    }
+
+    /**
+     * Resolves all the services, so that the first key press doesn't pay
+     * for the service lookups and binder proxy creation.
+     */
+    void warmUp() {
+        long start = SystemClock.uptimeMillis();
+        getWifiManager();
+        getAudioManager();
+        getBluetoothAdapter();
+        getPowerManager();
+        mWarmUpTimeMs = SystemClock.uptimeMillis() - start;
+    }
+
+    void dump(PrintWriter pw) {
+        pw.println("Key services:");
+        pw.print("  warmUpTimeMs=");
+        pw.println(mWarmUpTimeMs);
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.asusdec;
+
+import android.content.ContentResolver;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+import android.provider.Settings;
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+/**
+ * Write-behind cache of the settings the key actions read and write.
+ *
+ * Reads are served from memory. Writes are kept pending and written to the
+ * settings provider together, {@link #FLUSH_DELAY_MS} after the last one, or
+ * on {@link #flush()}. The brightness settings are the exception and are
+ * flushed right away: the power manager only switches modes once the mode
+ * is written, and the brightness is only set once the keys settled, see
+ * {@link BrightnessController#SETTLE_DELAY_MS}.
+ * Changes made by others are picked up through a content observer, unless
+ * a write of ours to the same setting is pending. The notifications of our
+ * own writes are skipped without reading the setting back.
+ */
+final class KeySettings {
+    private static final String TOUCHPAD_STATUS = "touchpad_status";
+
+    static final long FLUSH_DELAY_MS = 2000;
+
+    private static final int MSG_FLUSH = 1;
+    private static final int MSG_FLUSH_NOW = 2;
+
+    // Indices of the cached settings
+    private static final int TOUCHPAD = 0;
+    private static final int BRIGHTNESS = 1;
+    private static final int BRIGHTNESS_MODE = 2;
+    private static final int COUNT = 3;
+
+    // Value of a setting that isn't set in the provider
+    private static final int UNSET = Integer.MIN_VALUE;
+
+    private static final Uri[] URIS = new Uri[] {
+        Settings.Secure.getUriFor(TOUCHPAD_STATUS),
+        Settings.System.getUriFor(Settings.System.SCREEN_BRIGHTNESS),
+        Settings.System.getUriFor(Settings.System.SCREEN_BRIGHTNESS_MODE),
+    };
+
+    private final ContentResolver mResolver;
+    private final Handler mHandler;
+    private final ContentObserver mObserver;
+
+    // Guarded by this
+    private final int[] mValues = new int[COUNT];
+    private final boolean[] mDirty = new boolean[COUNT];
+    // The value last read from or written to the provider
+    private final int[] mStored = new int[COUNT];
+    // Change notifications still to come for our own writes
+    private final int[] mPendingEchoes = new int[COUNT];
+    private long mReads;
+    private long mWrites;
+
+    KeySettings(ContentResolver resolver, Looper looper) {
+        mResolver = resolver;
+        mHandler = new Handler(looper) {
+            @Override
+            public void handleMessage(Message msg) {
+                if (msg.what == MSG_FLUSH || msg.what == MSG_FLUSH_NOW) {
+                    flush();
+                }
+            }
+        };
+        // Changes are reloaded on the handler thread, off the binder threads
+        mObserver = new ContentObserver(mHandler) {
+            @Override
+            public void onChange(boolean selfChange, Uri uri) {
+                for (int i = 0; i < COUNT; i++) {
+                    if (URIS[i].equals(uri)) {
+                        if (!consumeEcho(i)) {
+                            reload(i);
+                        }
+                        return;
+                    }
+                }
+            }
+        };
+        Arrays.fill(mValues, UNSET);
+        Arrays.fill(mStored, UNSET);
+    }
+
+    /**
+     * Reads all the settings and starts observing them.
+     */
+    void load() {
+        for (int i = 0; i < COUNT; i++) {
+            mResolver.registerContentObserver(URIS[i], false, mObserver);
+            reload(i);
+        }
+    }
+
+    boolean isTouchpadEnabled() {
+        return get(TOUCHPAD, 1) != 0;
+    }
+
+    void setTouchpadEnabled(boolean enabled) {
+        put(TOUCHPAD, enabled ? 1 : 0, false);
+    }
+
+    int getBrightness(int def) {
+        return get(BRIGHTNESS, def);
+    }
+
+    void setBrightness(int value) {
+        put(BRIGHTNESS, value, true);
+    }
+
+    int getBrightnessMode() {
+        return get(BRIGHTNESS_MODE, Settings.System.SCREEN_BRIGHTNESS_MODE_MANUAL);
+    }
+
+    void setBrightnessMode(int mode) {
+        put(BRIGHTNESS_MODE, mode, true);
+    }
+
+    private synchronized int get(int index, int def) {
+        int value = mValues[index];
+        return value != UNSET ? value : def;
+    }
+
+    private void put(int index, int value, boolean now) {
+        synchronized (this) {
+            if (mValues[index] == value && !mDirty[index]) {
+                return;
+            }
+            mValues[index] = value;
+            mDirty[index] = true;
+        }
+        if (now) {
+            if (!mHandler.hasMessages(MSG_FLUSH_NOW)) {
+                mHandler.sendEmptyMessage(MSG_FLUSH_NOW);
+            }
+        } else {
+            mHandler.removeMessages(MSG_FLUSH);
+            mHandler.sendEmptyMessageDelayed(MSG_FLUSH, FLUSH_DELAY_MS);
+        }
+    }
+
+    /**
+     * Writes the pending settings now. May be called from any thread.
+     */
+    void flush() {
+        mHandler.removeMessages(MSG_FLUSH);
+        mHandler.removeMessages(MSG_FLUSH_NOW);
+        int[] values = new int[COUNT];
+        boolean[] dirty = new boolean[COUNT];
+        synchronized (this) {
+            for (int i = 0; i < COUNT; i++) {
+                values[i] = mValues[i];
+                // The provider doesn't notify writes of the stored value,
+                // so they are skipped altogether
+                dirty[i] = mDirty[i] && mValues[i] != mStored[i];
+                mDirty[i] = false;
+                if (dirty[i]) {
+                    mStored[i] = mValues[i];
+                    mPendingEchoes[i]++;
+                }
+            }
+        }
+        for (int i = 0; i < COUNT; i++) {
+            if (dirty[i]) {
+                write(i, values[i]);
+            }
+        }
+    }
+
+    private void write(int index, int value) {
+        boolean written = false;
+        switch (index) {
+            case TOUCHPAD:
+                written = Settings.Secure.putInt(mResolver, TOUCHPAD_STATUS, value);
+                break;
+            case BRIGHTNESS:
+                written = Settings.System.putInt(mResolver,
+                        Settings.System.SCREEN_BRIGHTNESS, value);
+                break;
+            case BRIGHTNESS_MODE:
+                written = Settings.System.putInt(mResolver,
+                        Settings.System.SCREEN_BRIGHTNESS_MODE, value);
+                break;
+        }
+        synchronized (this) {
+            mWrites++;
+            // No notification is coming for a failed write
+            if (!written) {
+                if (mPendingEchoes[index] > 0) {
+                    mPendingEchoes[index]--;
+                }
+                mStored[index] = UNSET;
+            }
+        }
+    }
+
+    private synchronized boolean consumeEcho(int index) {
+        if (mPendingEchoes[index] == 0) {
+            return false;
+        }
+        mPendingEchoes[index]--;
+        return true;
+    }
+
+    private void reload(int index) {
+        int value = UNSET;
+        switch (index) {
+            case TOUCHPAD:
+                value = Settings.Secure.getInt(mResolver, TOUCHPAD_STATUS, UNSET);
+                break;
+            case BRIGHTNESS:
+                value = Settings.System.getInt(mResolver,
+                        Settings.System.SCREEN_BRIGHTNESS, UNSET);
+                break;
+            case BRIGHTNESS_MODE:
+                value = Settings.System.getInt(mResolver,
+                        Settings.System.SCREEN_BRIGHTNESS_MODE, UNSET);
+                break;
+        }
+        synchronized (this) {
+            mReads++;
+            mStored[index] = value;
+            // A pending write of ours is newer
+            if (!mDirty[index]) {
+                mValues[index] = value;
+            }
+        }
+    }
+
+    synchronized void dump(PrintWriter pw) {
+        pw.println("Key settings:");
+        pw.print("  touchpad=");
+        pw.print(mValues[TOUCHPAD]);
+        pw.print(" brightness=");
+        pw.print(mValues[BRIGHTNESS]);
+        pw.print(" brightnessMode=");
+        pw.print(mValues[BRIGHTNESS_MODE]);
+        pw.print(" pending=");
+        pw.print(mDirty[TOUCHPAD] || mDirty[BRIGHTNESS] || mDirty[BRIGHTNESS_MODE]);
+        pw.print(" reads=");
+        pw.print(mReads);
+        pw.print(" writes=");
+        pw.println(mWrites);
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.asusdec;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Messenger;
+import android.os.RemoteException;
+import android.util.Log;
+
+/**
+ * Connection to the SystemUI screenshot service.
+ *
+ * The binding is kept for an idle window after the last capture, so that
+ * presses in a row don't bind again. Presses made while a capture is in
+ * flight are queued, up to {@link #MAX_PENDING_REQUESTS}; any further ones
+ * are coalesced into the queued ones.
+ */
+final class ScreenshotConnection implements ServiceConnection {
+    private static final String TAG = "AsusdecScreenshotConnection";
+
+    private static final ComponentName SCREENSHOT_SERVICE = new ComponentName(
+            "com.android.systemui", "com.android.systemui.screenshot.TakeScreenshotService");
+
+    private static final int MAX_PENDING_REQUESTS = 3;
+    // Give up on a capture the service never replied to
+    private static final long CAPTURE_TIMEOUT_MS = 10000;
+
+    private static final int MSG_TAKE_SCREENSHOT = 1;
+    private static final int MSG_CONNECTED = 2;
+    private static final int MSG_DISCONNECTED = 3;
+    private static final int MSG_CAPTURE_TIMEOUT = 4;
+    private static final int MSG_IDLE_TIMEOUT = 5;
+
+    private final Context mContext;
+    private final long mIdleTimeoutMs;
+    private final Handler mHandler;
+    private final Messenger mReplyMessenger;
+
+    // Only accessed on the handler thread
+    private boolean mBound;
+    private Messenger mService;
+    private boolean mCaptureInFlight;
+    private int mPendingRequests;
+
+    ScreenshotConnection(Context context, Looper looper, long idleTimeoutMs) {
+        mContext = context;
+        mIdleTimeoutMs = idleTimeoutMs;
+        mHandler = new Handler(looper) {
+            @Override
+            public void handleMessage(Message msg) {
+                switch (msg.what) {
+                    case MSG_TAKE_SCREENSHOT:
+                        handleTakeScreenshot();
+                        break;
+                    case MSG_CONNECTED:
+                        handleConnected((IBinder) msg.obj);
+                        break;
+                    case MSG_DISCONNECTED:
+                        handleDisconnected();
+                        break;
+                    case MSG_CAPTURE_TIMEOUT:
+                        handleCaptureDone();
+                        break;
+                    case MSG_IDLE_TIMEOUT:
+                        unbind();
+                        break;
+                }
+            }
+        };
+        // The service replies to the same messenger for every capture
+        mReplyMessenger = new Messenger(new Handler(looper) {
+            @Override
+            public void handleMessage(Message msg) {
+                handleCaptureDone();
+            }
+        });
+    }
+
+    void takeScreenshot() {
+        mHandler.sendEmptyMessage(MSG_TAKE_SCREENSHOT);
+    }
+
+    @Override
+    public void onServiceConnected(ComponentName name, IBinder service) {
+        mHandler.sendMessage(mHandler.obtainMessage(MSG_CONNECTED, service));
+    }
+
+    @Override
+    public void onServiceDisconnected(ComponentName name) {
+        mHandler.sendEmptyMessage(MSG_DISCONNECTED);
+    }
+
+    private void handleTakeScreenshot() {
+        if (mPendingRequests < MAX_PENDING_REQUESTS) {
+            mPendingRequests++;
+        }
+        mHandler.removeMessages(MSG_IDLE_TIMEOUT);
+
+        if (!mBound) {
+            Intent intent = new Intent();
+            intent.setComponent(SCREENSHOT_SERVICE);
+            mBound = mContext.bindService(intent, this, Context.BIND_AUTO_CREATE);
+            if (!mBound) {
+                Log.e(TAG, "Could not bind to the screenshot service");
+                mPendingRequests = 0;
+            }
+            return;
+        }
+        sendNextCapture();
+    }
+
+    private void handleConnected(IBinder service) {
+        if (!mBound) {
+            return;
+        }
+        mService = new Messenger(service);
+        sendNextCapture();
+    }
+
+    private void handleDisconnected() {
+        // The binding stays, the service is restarted and connects again
+        mService = null;
+        if (mCaptureInFlight) {
+            mCaptureInFlight = false;
+            mHandler.removeMessages(MSG_CAPTURE_TIMEOUT);
+        }
+    }
+
+    private void handleCaptureDone() {
+        mCaptureInFlight = false;
+        mHandler.removeMessages(MSG_CAPTURE_TIMEOUT);
+        sendNextCapture();
+    }
+
+    private void sendNextCapture() {
+        if (mService == null || mCaptureInFlight) {
+            return;
+        }
+        if (mPendingRequests == 0) {
+            mHandler.sendEmptyMessageDelayed(MSG_IDLE_TIMEOUT, mIdleTimeoutMs);
+            return;
+        }
+
+        Message msg = Message.obtain(null, 1);
+        msg.replyTo = mReplyMessenger;
+        msg.arg1 = msg.arg2 = 0;
+        try {
+            mService.send(msg);
+        } catch (RemoteException e) {
+            Log.e(TAG, "Could not request a screenshot", e);
+            mPendingRequests = 0;
+            unbind();
+            return;
+        }
+        mPendingRequests--;
+        mCaptureInFlight = true;
+        mHandler.sendEmptyMessageDelayed(MSG_CAPTURE_TIMEOUT, CAPTURE_TIMEOUT_MS);
+    }
+
+    private void unbind() {
+        mHandler.removeMessages(MSG_IDLE_TIMEOUT);
+        mHandler.removeMessages(MSG_CAPTURE_TIMEOUT);
+        if (mBound) {
+            mContext.unbindService(this);
+            mBound = false;
+        }
+        mService = null;
+        mCaptureInFlight = false;
+    }
+}
@@ -4,6 +4,10 @@ include $(CLEAR_VARS)
 LOCAL_SRC_FILES:= \
     com_cyanogenmod_asusdec_KeyHandler.cpp \
     com_cyanogenmod_asusdec_DockBatteryHandler.cpp \
+    com_cyanogenmod_asusdec_AsusdecDevice.cpp \
+    com_cyanogenmod_asusdec_DockKeyReader.cpp \
+    com_cyanogenmod_asusdec_DockState.cpp \
+    asusdec_uevent.cpp \
     com_cyanogenmod_asusdec_AsusdecNative.cpp
 
 LOCAL_C_INCLUDES += \
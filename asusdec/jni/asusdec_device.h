@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#ifndef ASUSDEC_DEVICE_H
+#define ASUSDEC_DEVICE_H
+
+namespace asusdec {
+
+#define ASUSDEC_DEV "/dev/asusdec"
+
+// copied from drivers/input/asusec/asusdec.h
+#define ASUSDEC_TP_ON   1
+#define ASUSDEC_TP_OFF  0
+#define ASUSDEC_IOC_MAGIC   0xf4
+#define ASUSDEC_TP_CONTROL      _IOR(ASUSDEC_IOC_MAGIC, 5,  int)
+
+/*
+ * Shared handle on the asusdec control node. The node is opened on first
+ * use and kept open until asusdec_device_close() (ie. undock) or until
+ * the driver reports it gone, and then lazily reopened.
+ */
+
+// Runs count ioctl commands in order under a single lock/open.
+// results[i] is the ioctl return value or -errno. Returns the number of
+// commands that succeeded.
+int asusdec_device_ioctl(const int* requests, const int* args, int* results, int count);
+
+void asusdec_device_close();
+
+// Replaces the device node path (for testing against a stand-in) and closes
+// the current handle.
+void asusdec_device_set_path(const char* path);
+
+} /* namespace asusdec */
+
+#endif // ASUSDEC_DEVICE_H
@@ -0,0 +1,382 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#define LOG_TAG "AsusdecUevent"
+
+#include "jni.h"
+#include <utils/Log.h>
+#include <utils/misc.h>
+
+#include <stdio.h>
+#include <string.h>
+#include <errno.h>
+#include <fcntl.h>
+#include <poll.h>
+#include <pthread.h>
+#include <unistd.h>
+#include <sys/socket.h>
+
+#include <cutils/uevent.h>
+
+#include "asusdec_uevent.h"
+
+namespace asusdec {
+
+#define UEVENT_MSG_LEN 2048
+#define UEVENT_SOCKET_SIZE (64 * 1024)
+#define MAX_CLIENTS 4
+
+// The kernel socket is reopened after a failure, waiting longer after
+// each attempt that fails
+#define REOPEN_DELAY_MS 1000
+#define REOPEN_MAX_DELAY_MS (60 * 1000)
+
+struct UeventMonitor {
+    JavaVM* vm;
+    int fd;
+    bool netlink;
+    int wakeFds[2];
+    pthread_t thread;
+    bool running;
+    volatile bool exited;
+    // Guarded by gClientsLock
+    UeventClient* clients[MAX_CLIENTS];
+    int clientCount;
+};
+static UeventMonitor gMonitor;
+// Held while the monitor is started or stopped
+static pthread_mutex_t gMonitorLock = PTHREAD_MUTEX_INITIALIZER;
+static pthread_mutex_t gClientsLock = PTHREAD_MUTEX_INITIALIZER;
+// Held by the monitor thread while it calls the clients
+static pthread_mutex_t gDispatchLock = PTHREAD_MUTEX_INITIALIZER;
+
+// Returns the SUBSYSTEM= value of a message, or NULL
+static const char* getSubsystem(const char* msg, ssize_t length)
+{
+    const char* end = msg + length;
+
+    while (msg < end) {
+        if (strncmp(msg, "SUBSYSTEM=", 10) == 0) {
+            return msg + 10;
+        }
+        msg += strlen(msg) + 1;
+    }
+    return NULL;
+}
+
+// Copies the registered clients, they are called without gClientsLock
+static int getClients(UeventClient** clients)
+{
+    pthread_mutex_lock(&gClientsLock);
+    int count = gMonitor.clientCount;
+    memcpy(clients, gMonitor.clients, count * sizeof(clients[0]));
+    pthread_mutex_unlock(&gClientsLock);
+    return count;
+}
+
+static ssize_t recvUevent(char* buf, size_t size)
+{
+    if (gMonitor.netlink) {
+        // Drops anything that wasn't sent by the kernel
+        return uevent_kernel_multicast_recv(gMonitor.fd, buf, size);
+    }
+    return recv(gMonitor.fd, buf, size, 0);
+}
+
+static int openNetlinkSocket()
+{
+    int fd = uevent_open_socket(UEVENT_SOCKET_SIZE, true);
+    if (fd >= 0) {
+        fcntl(fd, F_SETFL, fcntl(fd, F_GETFL) | O_NONBLOCK);
+    }
+    return fd;
+}
+
+// Replaces a kernel socket that failed. Returns false if the monitor was
+// stopped meanwhile.
+static bool reopenNetlinkSocket(struct pollfd* wakeFd)
+{
+    close(gMonitor.fd);
+    gMonitor.fd = -1;
+
+    int delayMs = REOPEN_DELAY_MS;
+    for (;;) {
+        int fd = openNetlinkSocket();
+        if (fd >= 0) {
+            gMonitor.fd = fd;
+            ALOGW("uevent socket reopened");
+            return true;
+        }
+        if (delayMs == REOPEN_DELAY_MS) {
+            ALOGE("Could not reopen uevent socket (%s), retrying", strerror(errno));
+        }
+        if (poll(wakeFd, 1, delayMs) != 0) {
+            return false;
+        }
+        delayMs = delayMs * 2 < REOPEN_MAX_DELAY_MS ? delayMs * 2 : REOPEN_MAX_DELAY_MS;
+    }
+}
+
+// Drops the clients of a monitor that gave up, they can be registered again
+static void dropClients()
+{
+    pthread_mutex_lock(&gClientsLock);
+    int count = gMonitor.clientCount;
+    for (int i = 0; i < count; i++) {
+        gMonitor.clients[i]->active = false;
+        gMonitor.clients[i]->pending = false;
+    }
+    gMonitor.clientCount = 0;
+    pthread_mutex_unlock(&gClientsLock);
+
+    if (count > 0) {
+        ALOGE("uevent monitor stopped, %d clients dropped", count);
+    }
+}
+
+static void* ueventThread(void*)
+{
+    JNIEnv* env = NULL;
+    if (gMonitor.vm->AttachCurrentThread(&env, NULL) != JNI_OK) {
+        ALOGE("Could not attach uevent monitor thread");
+        dropClients();
+        gMonitor.exited = true;
+        return NULL;
+    }
+
+    char buf[UEVENT_MSG_LEN + 1];
+    UeventClient* clients[MAX_CLIENTS];
+    struct pollfd fds[2];
+    fds[0].fd = gMonitor.fd;
+    fds[0].events = POLLIN;
+    fds[1].fd = gMonitor.wakeFds[0];
+    fds[1].events = POLLIN;
+
+    bool stopped = false;
+    bool eof = false;
+    while (!eof) {
+        if (poll(fds, 2, -1) < 0) {
+            if (errno == EINTR)
+                continue;
+            ALOGE("uevent poll failed (%s)", strerror(errno));
+            break;
+        }
+        if (fds[1].revents) {
+            stopped = true;
+            break;
+        }
+
+        pthread_mutex_lock(&gDispatchLock);
+        int count = getClients(clients);
+
+        // Drain everything that is already queued so that a burst of events
+        // (eg. a dock plug toggling several supplies) is reported only once
+        bool lost = false;
+        bool failed = false;
+        for (;;) {
+            ssize_t n = recvUevent(buf, UEVENT_MSG_LEN);
+            if (n > 0) {
+                buf[n] = '\0';
+                const char* subsystem = getSubsystem(buf, n);
+                for (int i = 0; subsystem && i < count; i++) {
+                    if (strcmp(clients[i]->subsystem, subsystem) == 0) {
+                        clients[i]->pending = true;
+                        clients[i]->onMessage(buf, n);
+                    }
+                }
+            } else if (n < 0 && errno == EIO) {
+                // Not sent by the kernel, or unicast; skip it
+                continue;
+            } else if (n < 0 && errno == ENOBUFS) {
+                // The socket overflowed and events were lost, every client
+                // has to catch up
+                ALOGW("uevent socket overflow, events were lost");
+                lost = true;
+                continue;
+            } else {
+                if (n < 0 && (errno == EAGAIN || errno == EINTR)) {
+                    break;
+                }
+                if (n == 0) {
+                    ALOGE("uevent source closed");
+                } else {
+                    ALOGE("uevent recv failed (%s)", strerror(errno));
+                }
+                // The kernel socket is replaced, an injected source is done
+                failed = gMonitor.netlink;
+                eof = !gMonitor.netlink;
+                break;
+            }
+        }
+
+        if (failed) {
+            if (!reopenNetlinkSocket(&fds[1])) {
+                pthread_mutex_unlock(&gDispatchLock);
+                stopped = true;
+                break;
+            }
+            fds[0].fd = gMonitor.fd;
+            // Whatever was sent meanwhile is gone
+            lost = true;
+        }
+
+        for (int i = 0; i < count; i++) {
+            if (clients[i]->pending || lost) {
+                clients[i]->pending = false;
+                clients[i]->onBurstEnd(env, lost);
+            }
+        }
+        pthread_mutex_unlock(&gDispatchLock);
+    }
+
+    // Unless stopped with the last client, the clients aren't called
+    // anymore; a new registration starts a new monitor
+    if (!stopped) {
+        dropClients();
+    }
+    gMonitor.exited = true;
+    gMonitor.vm->DetachCurrentThread();
+    return NULL;
+}
+
+// Must be called with gMonitorLock held
+static void stopLocked()
+{
+    if (!gMonitor.running) {
+        return;
+    }
+
+    write(gMonitor.wakeFds[1], "", 1);
+    pthread_join(gMonitor.thread, NULL);
+
+    close(gMonitor.wakeFds[0]);
+    close(gMonitor.wakeFds[1]);
+    if (gMonitor.fd != -1) {
+        close(gMonitor.fd);
+    }
+    gMonitor.running = false;
+}
+
+// Must be called with gMonitorLock held
+static bool startLocked(int fd)
+{
+    if (fd != -1) {
+        // Injected source; the caller keeps ownership of its own descriptor
+        gMonitor.fd = dup(fd);
+        gMonitor.netlink = false;
+        if (gMonitor.fd >= 0) {
+            fcntl(gMonitor.fd, F_SETFL, fcntl(gMonitor.fd, F_GETFL) | O_NONBLOCK);
+        }
+    } else {
+        gMonitor.fd = openNetlinkSocket();
+        gMonitor.netlink = true;
+    }
+    if (gMonitor.fd < 0) {
+        ALOGE("Could not open uevent source (%s)", strerror(errno));
+        return false;
+    }
+
+    if (pipe(gMonitor.wakeFds) != 0) {
+        ALOGE("Could not create uevent wake pipe (%s)", strerror(errno));
+        close(gMonitor.fd);
+        return false;
+    }
+
+    gMonitor.exited = false;
+    if (pthread_create(&gMonitor.thread, NULL, ueventThread, NULL) != 0) {
+        ALOGE("Could not start uevent monitor thread");
+        close(gMonitor.wakeFds[0]);
+        close(gMonitor.wakeFds[1]);
+        close(gMonitor.fd);
+        return false;
+    }
+    gMonitor.running = true;
+    return true;
+}
+
+bool asusdec_uevent_add(JNIEnv* env, UeventClient* client, int fd)
+{
+    pthread_mutex_lock(&gMonitorLock);
+    if (gMonitor.vm == NULL) {
+        env->GetJavaVM(&gMonitor.vm);
+    }
+
+    // The previous source went away (eg. an injected one was closed), clean
+    // up after it. Its clients were dropped and have to register again.
+    if (gMonitor.running && gMonitor.exited) {
+        stopLocked();
+    }
+    if (gMonitor.running && (client->active || fd != -1)) {
+        pthread_mutex_unlock(&gMonitorLock);
+        return false;
+    }
+
+    bool added = false;
+    if (!client->active) {
+        if (gMonitor.clientCount == MAX_CLIENTS) {
+            pthread_mutex_unlock(&gMonitorLock);
+            return false;
+        }
+        pthread_mutex_lock(&gClientsLock);
+        client->pending = false;
+        client->active = true;
+        gMonitor.clients[gMonitor.clientCount++] = client;
+        pthread_mutex_unlock(&gClientsLock);
+        added = true;
+    }
+
+    bool running = gMonitor.running || startLocked(fd);
+    if (!running && added) {
+        pthread_mutex_lock(&gClientsLock);
+        client->active = false;
+        gMonitor.clientCount--;
+        pthread_mutex_unlock(&gClientsLock);
+    }
+
+    pthread_mutex_unlock(&gMonitorLock);
+    return running;
+}
+
+void asusdec_uevent_remove(UeventClient* client)
+{
+    pthread_mutex_lock(&gMonitorLock);
+    if (!client->active) {
+        pthread_mutex_unlock(&gMonitorLock);
+        return;
+    }
+
+    pthread_mutex_lock(&gClientsLock);
+    for (int i = 0; i < gMonitor.clientCount; i++) {
+        if (gMonitor.clients[i] == client) {
+            gMonitor.clients[i] = gMonitor.clients[--gMonitor.clientCount];
+            break;
+        }
+    }
+    client->active = false;
+    int remaining = gMonitor.clientCount;
+    pthread_mutex_unlock(&gClientsLock);
+
+    if (remaining == 0) {
+        stopLocked();
+    } else {
+        // Wait for a burst that may still be handed to the client
+        pthread_mutex_lock(&gDispatchLock);
+        pthread_mutex_unlock(&gDispatchLock);
+    }
+    pthread_mutex_unlock(&gMonitorLock);
+}
+
+} /* namespace asusdec */
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#ifndef ASUSDEC_UEVENT_H
+#define ASUSDEC_UEVENT_H
+
+#include <sys/types.h>
+
+#include "jni.h"
+
+namespace asusdec {
+
+/*
+ * One uevent socket and monitor thread, shared by the natives that follow
+ * kernel uevents. Each client gets the messages of its subsystem. A burst
+ * of queued messages is drained before the clients are told it ended, so
+ * they act once per burst.
+ */
+struct UeventClient {
+    // The SUBSYSTEM= value of the messages the client gets
+    const char* subsystem;
+    // Called on the monitor thread for every message of the subsystem,
+    // msg holds length bytes of NUL separated KEY=value strings
+    void (*onMessage)(const char* msg, ssize_t length);
+    // Called on the monitor thread after a burst with a message of the
+    // subsystem, or after messages were lost (lost is then true)
+    void (*onBurstEnd)(JNIEnv* env, bool lost);
+    // Only used by the monitor
+    bool active;
+    bool pending;
+};
+
+// Registers a client, starting the monitor if needed. The monitor reads
+// the kernel netlink socket, or a dup of fd if it isn't -1 (ie. a socket
+// pair fed with recorded messages). A client registering while the
+// monitor runs shares its source, whatever it is. Returns false if the
+// client is already registered, the monitor couldn't be started or fd
+// can't be used because the monitor already runs.
+//
+// The kernel socket is reopened if it fails, the clients are then told
+// messages were lost. The monitor stops when an injected source is closed
+// or fails: its clients are dropped, ie. no longer active, and can be
+// registered again.
+bool asusdec_uevent_add(JNIEnv* env, UeventClient* client, int fd);
+
+// Unregisters a client, stopping the monitor with the last one. Once it
+// returns, the client callbacks aren't running and won't be called again.
+// Must not be called from a client callback.
+void asusdec_uevent_remove(UeventClient* client);
+
+} /* namespace asusdec */
+
+#endif // ASUSDEC_UEVENT_H
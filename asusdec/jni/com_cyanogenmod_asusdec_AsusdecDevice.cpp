@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#define LOG_TAG "AsusdecDevice"
+
+#include "JNIHelp.h"
+#include "jni.h"
+#include <utils/Log.h>
+#include <utils/misc.h>
+
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+#include <errno.h>
+#include <fcntl.h>
+#include <limits.h>
+#include <pthread.h>
+#include <unistd.h>
+#include <sys/ioctl.h>
+
+#include "asusdec_device.h"
+
+namespace asusdec {
+
+struct AsusdecDevice {
+    char path[PATH_MAX];
+    int fd;
+    pthread_mutex_t lock;
+};
+static AsusdecDevice gDevice = { ASUSDEC_DEV, -1, PTHREAD_MUTEX_INITIALIZER };
+
+static void closeLocked()
+{
+    if (gDevice.fd != -1) {
+        close(gDevice.fd);
+        gDevice.fd = -1;
+    }
+}
+
+static bool openLocked()
+{
+    if (gDevice.fd == -1) {
+        gDevice.fd = open(gDevice.path, O_RDONLY | O_NONBLOCK | O_CLOEXEC);
+        if (gDevice.fd == -1) {
+            ALOGE("Could not open device %s (%s)\n", gDevice.path, strerror(errno));
+            return false;
+        }
+    }
+    return true;
+}
+
+// The node goes away with the dock; these mean the handle is stale
+static bool isStaleError(int err)
+{
+    return err == ENODEV || err == ENXIO || err == EBADF;
+}
+
+int asusdec_device_ioctl(const int* requests, const int* args, int* results, int count)
+{
+    int succeeded = 0;
+
+    pthread_mutex_lock(&gDevice.lock);
+    for (int i = 0; i < count; i++) {
+        if (!openLocked()) {
+            results[i] = -errno;
+            continue;
+        }
+
+        int ret = ioctl(gDevice.fd, requests[i], args[i]);
+        if (ret < 0 && isStaleError(errno)) {
+            closeLocked();
+            if (openLocked()) {
+                ret = ioctl(gDevice.fd, requests[i], args[i]);
+            }
+        }
+
+        if (ret < 0) {
+            results[i] = -errno;
+            ALOGE("Error calling ioctl 0x%x on %s (%s)\n", requests[i], gDevice.path,
+                    strerror(errno));
+        } else {
+            results[i] = ret;
+            succeeded++;
+        }
+    }
+    pthread_mutex_unlock(&gDevice.lock);
+
+    return succeeded;
+}
+
+void asusdec_device_close()
+{
+    pthread_mutex_lock(&gDevice.lock);
+    closeLocked();
+    pthread_mutex_unlock(&gDevice.lock);
+}
+
+void asusdec_device_set_path(const char* path)
+{
+    pthread_mutex_lock(&gDevice.lock);
+    closeLocked();
+    snprintf(gDevice.path, sizeof(gDevice.path), "%s", path);
+    pthread_mutex_unlock(&gDevice.lock);
+}
+
+static jint asusdec_AsusdecDevice_nativeIoctl(JNIEnv* env, jclass cls,
+        jintArray requests, jintArray args, jintArray results)
+{
+    if (requests == NULL || args == NULL || results == NULL) {
+        jniThrowException(env, "java/lang/NullPointerException", NULL);
+        return 0;
+    }
+    jsize count = env->GetArrayLength(requests);
+    if (env->GetArrayLength(args) < count || env->GetArrayLength(results) < count) {
+        jniThrowException(env, "java/lang/IllegalArgumentException",
+                "args and results must be as long as requests");
+        return 0;
+    }
+
+    jint* req = env->GetIntArrayElements(requests, NULL);
+    jint* arg = env->GetIntArrayElements(args, NULL);
+    jint* res = env->GetIntArrayElements(results, NULL);
+
+    int succeeded = asusdec_device_ioctl(req, arg, res, count);
+
+    env->ReleaseIntArrayElements(results, res, 0);
+    env->ReleaseIntArrayElements(args, arg, JNI_ABORT);
+    env->ReleaseIntArrayElements(requests, req, JNI_ABORT);
+    return succeeded;
+}
+
+static void asusdec_AsusdecDevice_nativeClose(JNIEnv* env, jclass cls)
+{
+    asusdec_device_close();
+}
+
+static void asusdec_AsusdecDevice_nativeSetPath(JNIEnv* env, jclass cls, jstring path)
+{
+    const char* chars = env->GetStringUTFChars(path, NULL);
+    if (chars == NULL) {
+        return;
+    }
+    asusdec_device_set_path(chars);
+    env->ReleaseStringUTFChars(path, chars);
+}
+
+static JNINativeMethod sMethods[] = {
+     /* name, signature, funcPtr */
+    {"nativeIoctl", "([I[I[I)I", (void*)asusdec_AsusdecDevice_nativeIoctl},
+    {"nativeClose", "()V", (void*)asusdec_AsusdecDevice_nativeClose},
+    {"nativeSetPath", "(Ljava/lang/String;)V", (void*)asusdec_AsusdecDevice_nativeSetPath},
+};
+
+int register_asusdec_AsusdecDevice(JNIEnv* env)
+{
+    return jniRegisterNativeMethods(env, "com/cyanogenmod/asusdec/AsusdecDevice", sMethods, NELEM(sMethods));
+}
+
+} /* namespace asusdec */
@@ -22,10 +22,37 @@
 namespace asusdec {
 int register_asusdec_KeyHandler(JNIEnv* env);
 int register_asusdec_DockBatteryHandler(JNIEnv* env);
+int register_asusdec_AsusdecDevice(JNIEnv* env);
+int register_asusdec_DockKeyReader(JNIEnv* env);
+int register_asusdec_DockState(JNIEnv* env);
 };
 
 using namespace asusdec;
 
+// Indexed by the AsusdecNative.CLASS_* constants
+static int (*const sRegisterFuncs[])(JNIEnv*) = {
+    register_asusdec_KeyHandler,
+    register_asusdec_DockBatteryHandler,
+    register_asusdec_AsusdecDevice,
+    register_asusdec_DockKeyReader,
+    register_asusdec_DockState,
+};
+
+static jboolean asusdec_AsusdecNative_nativeRegister(JNIEnv* env, jclass clazz, jint cls)
+{
+    if (cls < 0 || cls >= (jint) NELEM(sRegisterFuncs)) {
+        ALOGE("Unknown native class %d", cls);
+        return JNI_FALSE;
+    }
+
+    return sRegisterFuncs[cls](env) < 0 ? JNI_FALSE : JNI_TRUE;
+}
+
+static JNINativeMethod sMethods[] = {
+     /* name, signature, funcPtr */
+     {"nativeRegister", "(I)Z", (void*)asusdec_AsusdecNative_nativeRegister},
+};
+
 extern "C" jint JNI_OnLoad(JavaVM* vm, void* reserved)
 {
     JNIEnv* env = NULL;
@@ -37,8 +64,11 @@ extern "C" jint JNI_OnLoad(JavaVM* vm, void* reserved)
     }
     ALOG_ASSERT(env, "Could not retrieve the env!");
 
-    register_asusdec_KeyHandler(env);
-    register_asusdec_DockBatteryHandler(env);
+    // The classes register their own natives on first use
+    if (jniRegisterNativeMethods(env, "com/cyanogenmod/asusdec/AsusdecNative",
+            sMethods, NELEM(sMethods)) < 0) {
+        return result;
+    }
 
     return JNI_VERSION_1_4;
 }
@@ -23,17 +23,24 @@
 
 #include <stdio.h>
 #include <stdlib.h>
+#include <string.h>
+#include <errno.h>
 #include <fcntl.h>
 #include <dirent.h>
+#include <unistd.h>
+#include <pthread.h>
 #include <sys/ioctl.h>
-
-
+#include <sys/utsname.h>
 
 #include <linux/ioctl.h>
 
+#include "asusdec_uevent.h"
+
 namespace asusdec {
 
 #define POWER_SUPPLY_PATH "/sys/class/power_supply"
+#define POWER_SUPPLY_CACHE_PATH "/data/system/asusdec_power_supply.cache"
+#define POWER_SUPPLY_CACHE_VERSION "1"
 
 struct FieldIds {
     // members
@@ -53,15 +60,64 @@ struct BatteryManagerConstants {
 };
 static BatteryManagerConstants gConstants;
 
-struct PowerSupplyPaths {
-    char* dockBatteryStatusPath;
-    char* dockBatteryCapacityPath;
-    char* dockBatteryPresentPath;
-    char* padUsbOnlinePath;
-    char* acOnlinePath;
-    char* dockAcOnlinePath;
+// A power_supply attribute discovered at registration. The fd is kept open
+// for the lifetime of the process and re-read with pread() on every update.
+// supply is the power_supply name the attribute belongs to, used to map
+// uevents back to the attributes they invalidate.
+struct AttrFile {
+    char* path;
+    char* supply;
+    int fd;
+    // Set once a failure was logged, until the next successful read. A
+    // missing node is retried on every update, that is only logged once.
+    bool failing;
 };
-static PowerSupplyPaths gPaths;
+
+enum {
+    ATTR_DOCK_BATTERY_STATUS,
+    ATTR_DOCK_BATTERY_CAPACITY,
+    ATTR_DOCK_BATTERY_PRESENT,
+    ATTR_PAD_USB_ONLINE,
+    ATTR_AC_ONLINE,
+    ATTR_DOCK_AC_ONLINE,
+    ATTR_COUNT
+};
+
+static const char* const sAttrNames[ATTR_COUNT] = {
+    "dockBatteryStatusPath",
+    "dockBatteryCapacityPath",
+    "dockBatteryPresentPath",
+    "padUsbOnlinePath",
+    "acOnlinePath",
+    "dockAcOnlinePath",
+};
+
+#define ATTR_MASK_ALL ((1 << ATTR_COUNT) - 1)
+
+// The attributes of the dock supplies, which go away with the dock
+#define ATTR_MASK_DOCK ((1 << ATTR_DOCK_BATTERY_STATUS) | \
+        (1 << ATTR_DOCK_BATTERY_CAPACITY) | (1 << ATTR_DOCK_BATTERY_PRESENT) | \
+        (1 << ATTR_DOCK_AC_ONLINE))
+
+// ec_dock belongs to the EC rather than the dock and is still read while
+// undocked, it is the fallback dock presence source
+#define ATTR_MASK_STALE (ATTR_MASK_DOCK & ~(1 << ATTR_DOCK_BATTERY_PRESENT))
+
+// Guarded by gAttrsLock, the uevent monitor maps supplies to attributes
+// while the Java side reads them
+static AttrFile gAttrs[ATTR_COUNT];
+// Set on undock, the stale attributes are not read until the next dock
+static bool gDockAttrsStale;
+static pthread_mutex_t gAttrsLock = PTHREAD_MUTEX_INITIALIZER;
+
+// Only used by the uevent monitor thread, once started
+struct PowerSupplyMonitor {
+    jobject handler;
+    jmethodID onChanged;
+    // The attributes changed by the burst being drained
+    int burstMask;
+};
+static PowerSupplyMonitor gMonitor;
 
 static jint getDockBatteryStatus(const char* status)
 {
@@ -99,69 +155,294 @@ static int readFromFile(const char* path, char* buf, size_t size)
     return count;
 }
 
-static void setBooleanField(JNIEnv* env, jobject obj, const char* path, jfieldID fieldID)
+static void openAttr(AttrFile* attr)
 {
-    const int SIZE = 16;
-    char buf[SIZE];
+    attr->fd = open(attr->path, O_RDONLY | O_CLOEXEC, 0);
+    if (attr->fd == -1 && !attr->failing) {
+        ALOGE("Could not open '%s' (%s)", attr->path, strerror(errno));
+        attr->failing = true;
+    }
+}
+
+static int readFromAttr(AttrFile* attr, char* buf, size_t size)
+{
+    buf[0] = '\0';
+    if (!attr->path)
+        return -1;
+
+    // The node is only reopened when the kernel tells us the old one is
+    // gone (ie. the dock was hot-unplugged and the supply re-registered).
+    for (int retry = 0; retry < 2; retry++) {
+        if (attr->fd == -1) {
+            openAttr(attr);
+            if (attr->fd == -1)
+                return -1;
+        }
 
-    jboolean value = false;
-    if (readFromFile(path, buf, SIZE) > 0) {
-        if (buf[0] != '0') {
-            value = true;
+        ssize_t count = pread(attr->fd, buf, size - 1, 0);
+        if (count >= 0) {
+            while (count > 0 && buf[count-1] == '\n')
+                count--;
+            buf[count] = '\0';
+            attr->failing = false;
+            return count;
         }
+
+        if (errno != ENODEV && errno != ESTALE) {
+            if (!attr->failing) {
+                ALOGE("Could not read '%s' (%s)", attr->path, strerror(errno));
+                attr->failing = true;
+            }
+            return -1;
+        }
+        close(attr->fd);
+        attr->fd = -1;
     }
-    env->SetBooleanField(obj, fieldID, value);
+    return -1;
 }
 
-static void setIntField(JNIEnv* env, jobject obj, const char* path, jfieldID fieldID, int def)
+// Reads and decodes a single attribute into the value the Java side expects.
+// Must be called with gAttrsLock held.
+static jint readAttrValue(int attr)
 {
     const int SIZE = 128;
     char buf[SIZE];
 
-    jint value = def;
-    if (readFromFile(path, buf, SIZE) > 0) {
-        value = atoi(buf);
+    // Nothing to read until the next dock, same as a failed read
+    if (gDockAttrsStale && (ATTR_MASK_STALE & (1 << attr))) {
+        return attr == ATTR_DOCK_BATTERY_STATUS ? gConstants.dockStatusUnknown : 0;
+    }
+
+    switch (attr) {
+        case ATTR_DOCK_BATTERY_CAPACITY:
+            if (readFromAttr(&gAttrs[attr], buf, SIZE) > 0) {
+                return atoi(buf);
+            }
+            return 0;
+
+        case ATTR_DOCK_BATTERY_STATUS:
+            if (readFromAttr(&gAttrs[attr], buf, SIZE) > 0) {
+                return getDockBatteryStatus(buf);
+            }
+            return gConstants.dockStatusUnknown;
+
+        case ATTR_DOCK_BATTERY_PRESENT:
+            if (readFromAttr(&gAttrs[attr], buf, SIZE) >= 15) {
+                // should return "dock detect = 1"
+                if (buf[14] == '1') {
+                    return 1;
+                }
+            }
+            return 0;
+
+        default:
+            // PadUsbOnline, AcOnline, DockAcOnline
+            if (readFromAttr(&gAttrs[attr], buf, SIZE) > 0) {
+                if (buf[0] != '0') {
+                    return 1;
+                }
+            }
+            return 0;
     }
-    env->SetIntField(obj, fieldID, value);
 }
 
+// Legacy path: writes every value back with its own Set<Type>Field call
 static void asusdec_DockBatteryHandler_nativeDockBatteryUpdate(JNIEnv* env, jobject obj)
 {
-    const int SIZE = 128;
-    char buf[SIZE];
-
+    pthread_mutex_lock(&gAttrsLock);
     // Level
-    setIntField(env, obj, gPaths.dockBatteryCapacityPath, gFieldIds.mDockBatteryLevel, 0);
+    env->SetIntField(obj, gFieldIds.mDockBatteryLevel,
+            readAttrValue(ATTR_DOCK_BATTERY_CAPACITY));
     // Status
-    if (readFromFile(gPaths.dockBatteryStatusPath, buf, SIZE) > 0) {
-        env->SetIntField(obj, gFieldIds.mDockBatteryStatus, getDockBatteryStatus(buf));
-    }
-    else {
-        env->SetIntField(obj, gFieldIds.mDockBatteryStatus, gConstants.dockStatusUnknown);
-    }
+    env->SetIntField(obj, gFieldIds.mDockBatteryStatus,
+            readAttrValue(ATTR_DOCK_BATTERY_STATUS));
     // Present
-    jboolean present = false;
-    if (readFromFile(gPaths.dockBatteryPresentPath, buf, SIZE) >= 15) {
-        // should return "dock detect = 1"
-        if (buf[14] == '1') {
-            present = true;
-        }
-    }
-    env->SetBooleanField(obj, gFieldIds.mDockBatteryPresent, present);
+    env->SetBooleanField(obj, gFieldIds.mDockBatteryPresent,
+            readAttrValue(ATTR_DOCK_BATTERY_PRESENT) != 0);
     // PadUsbOnline
-    setBooleanField(env, obj, gPaths.padUsbOnlinePath, gFieldIds.mPadUsbOnline);
+    env->SetBooleanField(obj, gFieldIds.mPadUsbOnline,
+            readAttrValue(ATTR_PAD_USB_ONLINE) != 0);
     // AcOnline
-    setBooleanField(env, obj, gPaths.acOnlinePath, gFieldIds.mAcOnline);
+    env->SetBooleanField(obj, gFieldIds.mAcOnline,
+            readAttrValue(ATTR_AC_ONLINE) != 0);
     // DockAcOnline
-    setBooleanField(env, obj, gPaths.dockAcOnlinePath, gFieldIds.mDockAcOnline);
+    env->SetBooleanField(obj, gFieldIds.mDockAcOnline,
+            readAttrValue(ATTR_DOCK_AC_ONLINE) != 0);
+    pthread_mutex_unlock(&gAttrsLock);
 }
 
-static JNINativeMethod sMethods[] = {
-     /* name, signature, funcPtr */
-     {"nativeDockBatteryUpdate", "()V", (void*)asusdec_DockBatteryHandler_nativeDockBatteryUpdate},
+// Reads the attributes selected by mask into values[attr], leaving the
+// other entries untouched. The whole array is pinned once.
+static jboolean asusdec_DockBatteryHandler_nativeDockBatteryRead(JNIEnv* env, jobject obj,
+        jint mask, jintArray values)
+{
+    if (values == NULL || env->GetArrayLength(values) < ATTR_COUNT) {
+        jniThrowException(env, "java/lang/IllegalArgumentException",
+                "values must hold at least ATTR_COUNT entries");
+        return false;
+    }
+
+    // Do the (possibly blocking) sysfs reads before entering the critical region
+    jint read[ATTR_COUNT];
+    pthread_mutex_lock(&gAttrsLock);
+    for (int i = 0; i < ATTR_COUNT; i++) {
+        if (mask & (1 << i)) {
+            read[i] = readAttrValue(i);
+        }
+    }
+    pthread_mutex_unlock(&gAttrsLock);
+
+    jint* out = (jint*) env->GetPrimitiveArrayCritical(values, NULL);
+    if (out == NULL) {
+        return false;
+    }
+    for (int i = 0; i < ATTR_COUNT; i++) {
+        if (mask & (1 << i)) {
+            out[i] = read[i];
+        }
+    }
+    env->ReleasePrimitiveArrayCritical(values, out, 0);
+    return true;
+}
+
+/*
+ * Uevent monitor
+ */
+
+static void rediscoverDockAttrsLocked();
+
+static int getSupplyAttrMaskLocked(const char* supply)
+{
+    int mask = 0;
+    for (int i = 0; i < ATTR_COUNT; i++) {
+        if (gAttrs[i].supply && strcmp(gAttrs[i].supply, supply) == 0) {
+            mask |= 1 << i;
+        }
+    }
+    return mask;
+}
+
+static bool hasMissingDockAttrLocked()
+{
+    for (int i = 0; i < ATTR_COUNT; i++) {
+        if ((ATTR_MASK_DOCK & (1 << i)) && gAttrs[i].path == NULL) {
+            return true;
+        }
+    }
+    return false;
+}
+
+// Returns the mask of the attributes invalidated by a single power_supply
+// uevent message, or 0 if it isn't a change of one of the watched supplies
+static int getUeventAttrMask(const char* msg, ssize_t length)
+{
+    const char* end = msg + length;
+    const char* supply = NULL;
+    const char* devpath = NULL;
+
+    while (msg < end) {
+        if (strncmp(msg, "POWER_SUPPLY_NAME=", 18) == 0) {
+            supply = msg + 18;
+        } else if (strncmp(msg, "DEVPATH=", 8) == 0) {
+            devpath = msg + 8;
+        }
+        msg += strlen(msg) + 1;
+    }
+    if (!supply && devpath) {
+        supply = strrchr(devpath, '/');
+        supply = supply ? supply + 1 : devpath;
+    }
+    if (!supply) {
+        return 0;
+    }
+
+    pthread_mutex_lock(&gAttrsLock);
+    int mask = getSupplyAttrMaskLocked(supply);
+    // A dock supply that probed after the dock switch flipped
+    if (mask == 0 && !gDockAttrsStale && hasMissingDockAttrLocked()) {
+        rediscoverDockAttrsLocked();
+        mask = getSupplyAttrMaskLocked(supply);
+    }
+    pthread_mutex_unlock(&gAttrsLock);
+    return mask;
+}
+
+static void onPowerSupplyMessage(const char* msg, ssize_t length)
+{
+    gMonitor.burstMask |= getUeventAttrMask(msg, length);
+}
+
+static void onPowerSupplyBurstEnd(JNIEnv* env, bool lost)
+{
+    // Every attribute may have changed with the lost events
+    int mask = lost ? ATTR_MASK_ALL : gMonitor.burstMask;
+    gMonitor.burstMask = 0;
+    if (mask == 0) {
+        return;
+    }
+
+    env->CallVoidMethod(gMonitor.handler, gMonitor.onChanged, mask);
+    if (env->ExceptionCheck()) {
+        ALOGE("Exception in dock power change callback");
+        env->ExceptionDescribe();
+        env->ExceptionClear();
+    }
+}
+
+static UeventClient sPowerSupplyClient = {
+    "power_supply", onPowerSupplyMessage, onPowerSupplyBurstEnd
 };
 
-int register_asusdec_DockBatteryHandler(JNIEnv* env)
+static jboolean asusdec_DockBatteryHandler_nativeStartUeventMonitor(JNIEnv* env, jobject obj,
+        jobject fileDescriptor)
+{
+    if (sPowerSupplyClient.active) {
+        return false;
+    }
+
+    // The monitor thread doesn't run this client yet. It may have been
+    // dropped by a monitor that stopped, without being stopped here.
+    if (gMonitor.handler != NULL) {
+        env->DeleteGlobalRef(gMonitor.handler);
+    }
+    gMonitor.handler = env->NewGlobalRef(obj);
+    gMonitor.burstMask = 0;
+    int fd = fileDescriptor != NULL ? jniGetFDFromFileDescriptor(env, fileDescriptor) : -1;
+    if (!asusdec_uevent_add(env, &sPowerSupplyClient, fd)) {
+        env->DeleteGlobalRef(gMonitor.handler);
+        gMonitor.handler = NULL;
+        return false;
+    }
+    return true;
+}
+
+// Must not be called from the monitor callback itself
+static void asusdec_DockBatteryHandler_nativeStopUeventMonitor(JNIEnv* env, jobject obj)
+{
+    // Also releases the handler of a client the monitor dropped
+    asusdec_uevent_remove(&sPowerSupplyClient);
+    if (gMonitor.handler != NULL) {
+        env->DeleteGlobalRef(gMonitor.handler);
+        gMonitor.handler = NULL;
+    }
+}
+
+static void setAttrPath(int mask, int attr, const char* supply, const char* file)
+{
+    char path[PATH_MAX];
+
+    if (!(mask & (1 << attr))) {
+        return;
+    }
+    snprintf(path, sizeof(path), "%s/%s/%s", POWER_SUPPLY_PATH, supply, file);
+    if (access(path, R_OK) == 0) {
+        gAttrs[attr].path = strdup(path);
+        gAttrs[attr].supply = strdup(supply);
+    }
+}
+
+// Finds the attributes selected by mask, which must not be set yet
+static void scanAttrs(int mask)
 {
     char    path[PATH_MAX];
     struct dirent* entry;
@@ -187,48 +468,218 @@ int register_asusdec_DockBatteryHandler(JNIEnv* env)
                     buf[length - 1] = 0;
 
                 if (strcmp(buf, "Mains") == 0) {
-                    snprintf(path, sizeof(path), "%s/%s/online", POWER_SUPPLY_PATH, name);
-                    if (access(path, R_OK) == 0)
-                        gPaths.acOnlinePath = strdup(path);
+                    setAttrPath(mask, ATTR_AC_ONLINE, name, "online");
                 }
                 else if (strcmp(buf, "USB") == 0) {
-                    snprintf(path, sizeof(path), "%s/%s/online", POWER_SUPPLY_PATH, name);
-                    if (access(path, R_OK) == 0)
-                        gPaths.padUsbOnlinePath = strdup(path);
+                    setAttrPath(mask, ATTR_PAD_USB_ONLINE, name, "online");
                 }
                 else if(strcmp(buf, "DockBattery") == 0) {
-                    snprintf(path, sizeof(path), "%s/%s/status", POWER_SUPPLY_PATH, name);
-                    if (access(path, R_OK) == 0)
-                        gPaths.dockBatteryStatusPath = strdup(path);
-                    snprintf(path, sizeof(path), "%s/%s/capacity", POWER_SUPPLY_PATH, name);
-                    if (access(path, R_OK) == 0)
-                        gPaths.dockBatteryCapacityPath = strdup(path);
-                    snprintf(path, sizeof(path), "%s/%s/device/ec_dock", POWER_SUPPLY_PATH, name);
-                    if (access(path, R_OK) == 0)
-                        gPaths.dockBatteryPresentPath = strdup(path);
+                    setAttrPath(mask, ATTR_DOCK_BATTERY_STATUS, name, "status");
+                    setAttrPath(mask, ATTR_DOCK_BATTERY_CAPACITY, name, "capacity");
+                    setAttrPath(mask, ATTR_DOCK_BATTERY_PRESENT, name, "device/ec_dock");
 
                 } else if(strcmp(buf, "DockAC") == 0) {
-                    snprintf(path, sizeof(path), "%s/%s/online", POWER_SUPPLY_PATH, name);
-                    if (access(path, R_OK) == 0)
-                        gPaths.dockAcOnlinePath = strdup(path);
+                    setAttrPath(mask, ATTR_DOCK_AC_ONLINE, name, "online");
                 }
             }
         }
         closedir(dir);
     }
+}
 
-    if (!gPaths.dockBatteryStatusPath)
-        ALOGE("dockBatteryStatusPath not found");
-    if (!gPaths.dockBatteryCapacityPath)
-        ALOGE("dockBatteryCapacityPath not found");
-    if (!gPaths.dockBatteryPresentPath)
-        ALOGE("dockBatteryPresentPath not found");
-    if (!gPaths.padUsbOnlinePath)
-        ALOGE("padUsbOnlinePath not found");
-    if (!gPaths.dockAcOnlinePath)
-        ALOGE("dockAcOnlinePath not found");
-    if (!gPaths.acOnlinePath)
-        ALOGE("acOnlinePath not found");
+static void clearAttrs(int mask)
+{
+    for (int i = 0; i < ATTR_COUNT; i++) {
+        if (!(mask & (1 << i))) {
+            continue;
+        }
+        free(gAttrs[i].path);
+        free(gAttrs[i].supply);
+        gAttrs[i].path = NULL;
+        gAttrs[i].supply = NULL;
+        gAttrs[i].failing = false;
+    }
+}
+
+// The power supplies only change with the kernel, so the scan result is
+// keyed by its release and build string
+static void getKernelBuild(char* buf, size_t size)
+{
+    struct utsname name;
+
+    if (uname(&name) < 0) {
+        buf[0] = 0;
+    } else {
+        snprintf(buf, size, "%s %s", name.release, name.version);
+    }
+}
+
+static bool readCacheLine(FILE* file, char* buf, size_t size)
+{
+    if (fgets(buf, size, file) == NULL) {
+        return false;
+    }
+    buf[strcspn(buf, "\n")] = 0;
+    return true;
+}
+
+// Loads the attribute paths of a previous scan. Any mismatch, vanished or
+// missing path makes the cache stale and leaves gAttrs empty for a rescan.
+static bool loadAttrCache(const char* build)
+{
+    char line[PATH_MAX + 128];
+    char supply[128];
+    char path[PATH_MAX];
+    int attr;
+
+    FILE* file = fopen(POWER_SUPPLY_CACHE_PATH, "r");
+    if (file == NULL) {
+        return false;
+    }
+
+    bool valid = readCacheLine(file, line, sizeof(line)) &&
+            strcmp(line, POWER_SUPPLY_CACHE_VERSION) == 0 &&
+            readCacheLine(file, line, sizeof(line)) &&
+            strcmp(line, build) == 0;
+    while (valid && readCacheLine(file, line, sizeof(line))) {
+        if (sscanf(line, "%d %127s %4095s", &attr, supply, path) != 3 ||
+                attr < 0 || attr >= ATTR_COUNT || gAttrs[attr].path != NULL ||
+                access(path, R_OK) != 0) {
+            valid = false;
+            break;
+        }
+        gAttrs[attr].path = strdup(path);
+        gAttrs[attr].supply = strdup(supply);
+    }
+    fclose(file);
+
+    // A supply missing from the last scan may only have been late to
+    // probe, so an incomplete result is always rescanned
+    for (int i = 0; valid && i < ATTR_COUNT; i++) {
+        valid = gAttrs[i].path != NULL;
+    }
+
+    if (!valid) {
+        clearAttrs(ATTR_MASK_ALL);
+    }
+    return valid;
+}
+
+static void saveAttrCache(const char* build)
+{
+    const char* tmpPath = POWER_SUPPLY_CACHE_PATH ".tmp";
+
+    FILE* file = fopen(tmpPath, "w");
+    if (file == NULL) {
+        ALOGW("Could not write %s: %s", tmpPath, strerror(errno));
+        return;
+    }
+
+    fprintf(file, "%s\n%s\n", POWER_SUPPLY_CACHE_VERSION, build);
+    for (int i = 0; i < ATTR_COUNT; i++) {
+        if (gAttrs[i].path) {
+            fprintf(file, "%d %s %s\n", i, gAttrs[i].supply, gAttrs[i].path);
+        }
+    }
+
+    bool failed = ferror(file);
+    if (fclose(file) != 0 || failed || rename(tmpPath, POWER_SUPPLY_CACHE_PATH) < 0) {
+        ALOGW("Could not write %s", POWER_SUPPLY_CACHE_PATH);
+        unlink(tmpPath);
+    }
+}
+
+static void closeAttrs(int mask)
+{
+    for (int i = 0; i < ATTR_COUNT; i++) {
+        if ((mask & (1 << i)) && gAttrs[i].fd != -1) {
+            close(gAttrs[i].fd);
+            gAttrs[i].fd = -1;
+        }
+    }
+}
+
+// Closes the nodes of the dock supplies and stops reading them until the
+// next dock. Called by the Java side under its lock, like the reads.
+static void asusdec_DockBatteryHandler_nativeInvalidateDockAttrs(JNIEnv* env, jobject obj)
+{
+    pthread_mutex_lock(&gAttrsLock);
+    closeAttrs(ATTR_MASK_DOCK);
+    gDockAttrsStale = true;
+    pthread_mutex_unlock(&gAttrsLock);
+}
+
+// Looks the dock supplies up again and updates the discovery cache if they
+// moved. Must be called with gAttrsLock held.
+static void rediscoverDockAttrsLocked()
+{
+    char* oldPaths[ATTR_COUNT];
+    char build[512];
+    bool changed = false;
+
+    closeAttrs(ATTR_MASK_DOCK);
+    for (int i = 0; i < ATTR_COUNT; i++) {
+        oldPaths[i] = (ATTR_MASK_DOCK & (1 << i)) && gAttrs[i].path ?
+                strdup(gAttrs[i].path) : NULL;
+    }
+    clearAttrs(ATTR_MASK_DOCK);
+    scanAttrs(ATTR_MASK_DOCK);
+    for (int i = 0; i < ATTR_COUNT; i++) {
+        if (ATTR_MASK_DOCK & (1 << i)) {
+            if ((oldPaths[i] == NULL) != (gAttrs[i].path == NULL) ||
+                    (oldPaths[i] && strcmp(oldPaths[i], gAttrs[i].path) != 0)) {
+                changed = true;
+            }
+            free(oldPaths[i]);
+        }
+    }
+    gDockAttrsStale = false;
+    if (changed) {
+        getKernelBuild(build, sizeof(build));
+        saveAttrCache(build);
+    }
+}
+
+// The dock supplies may be registered under other names than before the
+// undock. Called by the Java side under its lock, like the reads.
+static void asusdec_DockBatteryHandler_nativeRediscoverDockAttrs(JNIEnv* env, jobject obj)
+{
+    pthread_mutex_lock(&gAttrsLock);
+    rediscoverDockAttrsLocked();
+    pthread_mutex_unlock(&gAttrsLock);
+}
+
+static JNINativeMethod sMethods[] = {
+     /* name, signature, funcPtr */
+     {"nativeDockBatteryUpdate", "()V", (void*)asusdec_DockBatteryHandler_nativeDockBatteryUpdate},
+     {"nativeDockBatteryRead", "(I[I)Z", (void*)asusdec_DockBatteryHandler_nativeDockBatteryRead},
+     {"nativeStartUeventMonitor", "(Ljava/io/FileDescriptor;)Z",
+             (void*)asusdec_DockBatteryHandler_nativeStartUeventMonitor},
+     {"nativeStopUeventMonitor", "()V", (void*)asusdec_DockBatteryHandler_nativeStopUeventMonitor},
+     {"nativeInvalidateDockAttrs", "()V",
+             (void*)asusdec_DockBatteryHandler_nativeInvalidateDockAttrs},
+     {"nativeRediscoverDockAttrs", "()V",
+             (void*)asusdec_DockBatteryHandler_nativeRediscoverDockAttrs},
+};
+
+int register_asusdec_DockBatteryHandler(JNIEnv* env)
+{
+    char build[512];
+
+    getKernelBuild(build, sizeof(build));
+    if (!loadAttrCache(build)) {
+        scanAttrs(ATTR_MASK_ALL);
+        saveAttrCache(build);
+    }
+
+    for (int i = 0; i < ATTR_COUNT; i++) {
+        if (!gAttrs[i].path) {
+            ALOGE("%s not found", sAttrNames[i]);
+            gAttrs[i].fd = -1;
+        } else {
+            openAttr(&gAttrs[i]);
+        }
+    }
 
     // Fields
     jclass clazz = env->FindClass("com/cyanogenmod/asusdec/DockBatteryHandler");
@@ -254,6 +705,9 @@ int register_asusdec_DockBatteryHandler(JNIEnv* env)
             "Unable to find DockBatteryHandler.AC_ONLINE_PATH");
     LOG_FATAL_IF(gFieldIds.mDockAcOnline == NULL,
             "Unable to find DockBatteryHandler.DOCK_AC_ONLINE_PATH");
+    gMonitor.onChanged = env->GetMethodID(clazz, "onNativeDockPowerChanged", "(I)V");
+    LOG_FATAL_IF(gMonitor.onChanged == NULL,
+            "Unable to find DockBatteryHandler.onNativeDockPowerChanged");
 
     // Constants
     clazz = env->FindClass("android/os/BatteryManager");
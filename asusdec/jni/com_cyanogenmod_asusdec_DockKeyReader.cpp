@@ -0,0 +1,367 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#define LOG_TAG "AsusdecDockKeyReader"
+
+#include "JNIHelp.h"
+#include "jni.h"
+#include <utils/Log.h>
+#include <utils/misc.h>
+
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+#include <errno.h>
+#include <fcntl.h>
+#include <dirent.h>
+#include <unistd.h>
+#include <pthread.h>
+#include <sys/epoll.h>
+#include <sys/ioctl.h>
+
+#include <linux/input.h>
+
+namespace asusdec {
+
+#define INPUT_DEV_PATH "/dev/input"
+
+// Events read from the source in one go, also the most keys delivered to
+// Java in one call
+#define EVENT_BATCH 64
+
+#define MAX_SCANCODE 255
+
+// Delivered keys are packed as scan code | value << 16, where value is the
+// input_event value (0 up, 1 down, 2 autorepeat)
+#define KEY_VALUE_SHIFT 16
+
+struct KeyReader {
+    JavaVM* vm;
+    jobject reader;
+    jintArray batch;
+    jmethodID onKeys;
+    int fd;
+    int epollFd;
+    int wakeFds[2];
+    pthread_t thread;
+    bool running;
+    volatile bool exited;
+    // The scan codes to deliver, every other event is dropped. Guarded by
+    // gFilterLock, the reader thread holds it while it sorts a read.
+    uint32_t filter[(MAX_SCANCODE + 1) / 32];
+};
+static KeyReader gReader;
+static pthread_mutex_t gReaderLock = PTHREAD_MUTEX_INITIALIZER;
+static pthread_mutex_t gFilterLock = PTHREAD_MUTEX_INITIALIZER;
+
+static bool isFiltered(const struct input_event* event)
+{
+    return event->type == EV_KEY && event->code <= MAX_SCANCODE &&
+            (gReader.filter[event->code / 32] & (1u << (event->code % 32)));
+}
+
+static void deliverKeys(JNIEnv* env, const jint* keys, int count)
+{
+    env->SetIntArrayRegion(gReader.batch, 0, count, keys);
+    env->CallVoidMethod(gReader.reader, gReader.onKeys, gReader.batch, count);
+    if (env->ExceptionCheck()) {
+        ALOGE("Exception in dock key callback");
+        env->ExceptionDescribe();
+        env->ExceptionClear();
+    }
+}
+
+static void* keyReaderThread(void*)
+{
+    JNIEnv* env = NULL;
+    if (gReader.vm->AttachCurrentThread(&env, NULL) != JNI_OK) {
+        ALOGE("Could not attach dock key reader thread");
+        gReader.exited = true;
+        return NULL;
+    }
+
+    // A pipe may hand over a partial event, it is carried to the next read
+    struct input_event events[EVENT_BATCH];
+    char* buf = (char*) events;
+    size_t pending = 0;
+    jint keys[EVENT_BATCH];
+
+    bool eof = false;
+    while (!eof) {
+        struct epoll_event ready[2];
+        int n = epoll_wait(gReader.epollFd, ready, 2, -1);
+        if (n < 0) {
+            if (errno == EINTR)
+                continue;
+            ALOGE("epoll_wait failed (%s)", strerror(errno));
+            break;
+        }
+        bool wake = false;
+        for (int i = 0; i < n; i++) {
+            if (ready[i].data.fd == gReader.wakeFds[0])
+                wake = true;
+        }
+        if (wake) {
+            break;
+        }
+
+        // Drain the source, each read is decoded in bulk and its keys are
+        // handed to Java in a single call
+        for (;;) {
+            ssize_t len = read(gReader.fd, buf + pending, sizeof(events) - pending);
+            if (len < 0) {
+                if (errno == EINTR)
+                    continue;
+                // ENODEV when the dock is removed
+                if (errno != EAGAIN)
+                    eof = true;
+                break;
+            }
+            if (len == 0) {
+                eof = true;
+                break;
+            }
+
+            size_t total = pending + len;
+            size_t count = total / sizeof(struct input_event);
+            int nkeys = 0;
+            pthread_mutex_lock(&gFilterLock);
+            for (size_t i = 0; i < count; i++) {
+                if (isFiltered(&events[i])) {
+                    keys[nkeys++] = events[i].code | (events[i].value << KEY_VALUE_SHIFT);
+                }
+            }
+            pthread_mutex_unlock(&gFilterLock);
+            pending = total % sizeof(struct input_event);
+            if (pending) {
+                memmove(buf, buf + count * sizeof(struct input_event), pending);
+            }
+
+            if (nkeys > 0) {
+                deliverKeys(env, keys, nkeys);
+            }
+        }
+    }
+
+    gReader.exited = true;
+    gReader.vm->DetachCurrentThread();
+    return NULL;
+}
+
+static int openInputByName(const char* name)
+{
+    char path[PATH_MAX];
+    char devName[80];
+    struct dirent* entry;
+
+    DIR* dir = opendir(INPUT_DEV_PATH);
+    if (dir == NULL) {
+        ALOGE("Could not open %s", INPUT_DEV_PATH);
+        return -1;
+    }
+
+    int fd = -1;
+    while (fd < 0 && (entry = readdir(dir))) {
+        if (strncmp(entry->d_name, "event", 5) != 0) {
+            continue;
+        }
+        snprintf(path, sizeof(path), "%s/%s", INPUT_DEV_PATH, entry->d_name);
+        fd = open(path, O_RDONLY | O_CLOEXEC);
+        if (fd < 0) {
+            continue;
+        }
+        devName[0] = '\0';
+        if (ioctl(fd, EVIOCGNAME(sizeof(devName) - 1), devName) < 1 ||
+                strcmp(devName, name) != 0) {
+            close(fd);
+            fd = -1;
+        }
+    }
+    closedir(dir);
+
+    return fd;
+}
+
+static void fillFilter(JNIEnv* env, jintArray scanCodes, uint32_t* filter)
+{
+    memset(filter, 0, sizeof(gReader.filter));
+    jsize count = env->GetArrayLength(scanCodes);
+    jint* codes = env->GetIntArrayElements(scanCodes, NULL);
+    for (jsize i = 0; i < count; i++) {
+        if (codes[i] >= 0 && codes[i] <= MAX_SCANCODE) {
+            filter[codes[i] / 32] |= 1u << (codes[i] % 32);
+        }
+    }
+    env->ReleaseIntArrayElements(scanCodes, codes, JNI_ABORT);
+}
+
+// Must be called with gReaderLock held and not from the reader thread
+static void stopLocked(JNIEnv* env)
+{
+    if (!gReader.running) {
+        return;
+    }
+
+    write(gReader.wakeFds[1], "", 1);
+    pthread_join(gReader.thread, NULL);
+
+    close(gReader.wakeFds[0]);
+    close(gReader.wakeFds[1]);
+    close(gReader.epollFd);
+    close(gReader.fd);
+    gReader.fd = -1;
+    env->DeleteGlobalRef(gReader.batch);
+    env->DeleteGlobalRef(gReader.reader);
+    gReader.batch = NULL;
+    gReader.reader = NULL;
+    gReader.running = false;
+}
+
+static bool addToEpoll(int fd)
+{
+    struct epoll_event event;
+    memset(&event, 0, sizeof(event));
+    event.events = EPOLLIN;
+    event.data.fd = fd;
+    return epoll_ctl(gReader.epollFd, EPOLL_CTL_ADD, fd, &event) == 0;
+}
+
+static jboolean asusdec_DockKeyReader_nativeStart(JNIEnv* env, jobject obj,
+        jobject fileDescriptor, jstring deviceName, jintArray scanCodes)
+{
+    pthread_mutex_lock(&gReaderLock);
+
+    // The previous source went away (eg. undock), clean up after it
+    if (gReader.running && gReader.exited) {
+        stopLocked(env);
+    }
+    if (gReader.running) {
+        pthread_mutex_unlock(&gReaderLock);
+        return false;
+    }
+
+    uint32_t filter[NELEM(gReader.filter)];
+    fillFilter(env, scanCodes, filter);
+    pthread_mutex_lock(&gFilterLock);
+    memcpy(gReader.filter, filter, sizeof(filter));
+    pthread_mutex_unlock(&gFilterLock);
+
+    if (fileDescriptor != NULL) {
+        // Injected source; the caller keeps ownership of its own descriptor
+        gReader.fd = dup(jniGetFDFromFileDescriptor(env, fileDescriptor));
+    } else {
+        // Not grabbed, InputReader still gets every event of the device
+        const char* name = env->GetStringUTFChars(deviceName, NULL);
+        gReader.fd = openInputByName(name);
+        env->ReleaseStringUTFChars(deviceName, name);
+    }
+    if (gReader.fd < 0) {
+        ALOGE("Could not open dock key source");
+        pthread_mutex_unlock(&gReaderLock);
+        return false;
+    }
+    fcntl(gReader.fd, F_SETFL, fcntl(gReader.fd, F_GETFL) | O_NONBLOCK);
+
+    gReader.epollFd = epoll_create(2);
+    if (gReader.epollFd < 0 || pipe(gReader.wakeFds) != 0) {
+        ALOGE("Could not set up dock key reader (%s)", strerror(errno));
+        if (gReader.epollFd >= 0)
+            close(gReader.epollFd);
+        close(gReader.fd);
+        pthread_mutex_unlock(&gReaderLock);
+        return false;
+    }
+    if (!addToEpoll(gReader.fd) || !addToEpoll(gReader.wakeFds[0])) {
+        ALOGE("Could not watch dock key source (%s)", strerror(errno));
+        close(gReader.wakeFds[0]);
+        close(gReader.wakeFds[1]);
+        close(gReader.epollFd);
+        close(gReader.fd);
+        pthread_mutex_unlock(&gReaderLock);
+        return false;
+    }
+
+    gReader.reader = env->NewGlobalRef(obj);
+    gReader.batch = (jintArray) env->NewGlobalRef(env->NewIntArray(EVENT_BATCH));
+    gReader.exited = false;
+    if (pthread_create(&gReader.thread, NULL, keyReaderThread, NULL) != 0) {
+        ALOGE("Could not start dock key reader thread");
+        env->DeleteGlobalRef(gReader.batch);
+        env->DeleteGlobalRef(gReader.reader);
+        close(gReader.wakeFds[0]);
+        close(gReader.wakeFds[1]);
+        close(gReader.epollFd);
+        close(gReader.fd);
+        pthread_mutex_unlock(&gReaderLock);
+        return false;
+    }
+    gReader.running = true;
+
+    pthread_mutex_unlock(&gReaderLock);
+    return true;
+}
+
+// Must not be called from the key callback itself
+static void asusdec_DockKeyReader_nativeStop(JNIEnv* env, jobject obj)
+{
+    pthread_mutex_lock(&gReaderLock);
+    stopLocked(env);
+    pthread_mutex_unlock(&gReaderLock);
+}
+
+static void asusdec_DockKeyReader_nativeSetScanCodes(JNIEnv* env, jobject obj,
+        jintArray scanCodes)
+{
+    uint32_t filter[NELEM(gReader.filter)];
+    fillFilter(env, scanCodes, filter);
+
+    // Swapped whole, a read is sorted with either the old or the new set
+    pthread_mutex_lock(&gFilterLock);
+    memcpy(gReader.filter, filter, sizeof(filter));
+    pthread_mutex_unlock(&gFilterLock);
+}
+
+static jboolean asusdec_DockKeyReader_nativeIsRunning(JNIEnv* env, jobject obj)
+{
+    return gReader.running && !gReader.exited;
+}
+
+static JNINativeMethod sMethods[] = {
+     /* name, signature, funcPtr */
+     {"nativeStart", "(Ljava/io/FileDescriptor;Ljava/lang/String;[I)Z",
+             (void*)asusdec_DockKeyReader_nativeStart},
+     {"nativeStop", "()V", (void*)asusdec_DockKeyReader_nativeStop},
+     {"nativeSetScanCodes", "([I)V", (void*)asusdec_DockKeyReader_nativeSetScanCodes},
+     {"nativeIsRunning", "()Z", (void*)asusdec_DockKeyReader_nativeIsRunning},
+};
+
+int register_asusdec_DockKeyReader(JNIEnv* env)
+{
+    jclass clazz = env->FindClass("com/cyanogenmod/asusdec/DockKeyReader");
+    if (clazz == NULL) {
+        ALOGE("Can't find com/cyanogenmod/asusdec/DockKeyReader");
+        return -1;
+    }
+    gReader.onKeys = env->GetMethodID(clazz, "onNativeKeys", "([II)V");
+    LOG_FATAL_IF(gReader.onKeys == NULL,
+            "Unable to find DockKeyReader.onNativeKeys");
+    env->GetJavaVM(&gReader.vm);
+
+    return jniRegisterNativeMethods(env, "com/cyanogenmod/asusdec/DockKeyReader",
+            sMethods, NELEM(sMethods));
+}
+
+} /* namespace asusdec */
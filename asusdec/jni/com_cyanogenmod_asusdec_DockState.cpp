@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#define LOG_TAG "AsusdecDockState"
+
+#include "JNIHelp.h"
+#include "jni.h"
+#include <utils/Log.h>
+#include <utils/misc.h>
+
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+#include <errno.h>
+#include <fcntl.h>
+#include <limits.h>
+#include <pthread.h>
+#include <unistd.h>
+
+#include "asusdec_uevent.h"
+
+namespace asusdec {
+
+// The dock switch the framework DockObserver reports ACTION_DOCK_EVENT from
+#define DOCK_SWITCH_STATE_PATH "/sys/class/switch/dock/state"
+#define DOCK_SWITCH_NAME "dock"
+
+// The switch state node, kept open and re-read with pread()
+struct DockSwitch {
+    char path[PATH_MAX];
+    int fd;
+    pthread_mutex_t lock;
+};
+static DockSwitch gSwitch = { DOCK_SWITCH_STATE_PATH, -1, PTHREAD_MUTEX_INITIALIZER };
+
+// Only used by the uevent monitor thread, once started
+struct DockMonitor {
+    jclass clazz;
+    jmethodID onChanged;
+    int lastState;
+    // The state reported by the burst being drained, see getUeventState()
+    int burstState;
+};
+static DockMonitor gMonitor;
+
+static void closeSwitchLocked()
+{
+    if (gSwitch.fd != -1) {
+        close(gSwitch.fd);
+        gSwitch.fd = -1;
+    }
+}
+
+// Returns the switch state (0 undocked, otherwise the dock type) or -1
+static int readSwitchState()
+{
+    char buf[16];
+    int state = -1;
+
+    pthread_mutex_lock(&gSwitch.lock);
+    for (int retry = 0; retry < 2 && state < 0; retry++) {
+        if (gSwitch.fd == -1) {
+            gSwitch.fd = open(gSwitch.path, O_RDONLY | O_CLOEXEC);
+            if (gSwitch.fd == -1) {
+                ALOGE("Could not open '%s' (%s)", gSwitch.path, strerror(errno));
+                break;
+            }
+        }
+
+        ssize_t count = pread(gSwitch.fd, buf, sizeof(buf) - 1, 0);
+        if (count > 0) {
+            buf[count] = '\0';
+            state = atoi(buf);
+        } else if (count < 0 && (errno == ENODEV || errno == ESTALE)) {
+            closeSwitchLocked();
+        } else {
+            ALOGE("Could not read '%s' (%s)", gSwitch.path, strerror(errno));
+            break;
+        }
+    }
+    pthread_mutex_unlock(&gSwitch.lock);
+    return state;
+}
+
+// Returns the state carried by a switch uevent, -2 if the message doesn't
+// carry one (so the node must be read) or -1 if it isn't the dock switch
+static int getUeventState(const char* msg, ssize_t length)
+{
+    const char* end = msg + length;
+    const char* state = NULL;
+    bool dockSwitch = false;
+
+    while (msg < end) {
+        if (strcmp(msg, "SWITCH_NAME=" DOCK_SWITCH_NAME) == 0) {
+            dockSwitch = true;
+        } else if (strncmp(msg, "SWITCH_STATE=", 13) == 0) {
+            state = msg + 13;
+        }
+        msg += strlen(msg) + 1;
+    }
+    if (!dockSwitch) {
+        return -1;
+    }
+    return state ? atoi(state) : -2;
+}
+
+static void onSwitchMessage(const char* msg, ssize_t length)
+{
+    // Only the last state of a burst (ie. a bouncing connector) counts
+    int state = getUeventState(msg, length);
+    if (state != -1) {
+        gMonitor.burstState = state;
+    }
+}
+
+static void onSwitchBurstEnd(JNIEnv* env, bool lost)
+{
+    int state = lost ? -2 : gMonitor.burstState;
+    gMonitor.burstState = -1;
+
+    if (state == -2) {
+        state = readSwitchState();
+    }
+    if (state < 0 || (state != 0) == (gMonitor.lastState != 0)) {
+        return;
+    }
+    gMonitor.lastState = state;
+
+    env->CallStaticVoidMethod(gMonitor.clazz, gMonitor.onChanged, state);
+    if (env->ExceptionCheck()) {
+        ALOGE("Exception in dock state callback");
+        env->ExceptionDescribe();
+        env->ExceptionClear();
+    }
+}
+
+static UeventClient sSwitchClient = { "switch", onSwitchMessage, onSwitchBurstEnd };
+
+static jint asusdec_DockState_nativeReadState(JNIEnv* env, jclass clazz)
+{
+    return readSwitchState();
+}
+
+static jboolean asusdec_DockState_nativeStartMonitor(JNIEnv* env, jclass clazz,
+        jobject fileDescriptor, jint state)
+{
+    // Transitions are reported relative to the state the caller knows;
+    // the monitor thread doesn't run this client yet
+    if (!sSwitchClient.active) {
+        gMonitor.lastState = state;
+        gMonitor.burstState = -1;
+    }
+    int fd = fileDescriptor != NULL ? jniGetFDFromFileDescriptor(env, fileDescriptor) : -1;
+    return asusdec_uevent_add(env, &sSwitchClient, fd);
+}
+
+// Must not be called from the monitor callback itself
+static void asusdec_DockState_nativeStopMonitor(JNIEnv* env, jclass clazz)
+{
+    asusdec_uevent_remove(&sSwitchClient);
+}
+
+static void asusdec_DockState_nativeSetPath(JNIEnv* env, jclass clazz, jstring path)
+{
+    const char* chars = env->GetStringUTFChars(path, NULL);
+    if (chars == NULL) {
+        return;
+    }
+    pthread_mutex_lock(&gSwitch.lock);
+    closeSwitchLocked();
+    snprintf(gSwitch.path, sizeof(gSwitch.path), "%s", chars);
+    pthread_mutex_unlock(&gSwitch.lock);
+    env->ReleaseStringUTFChars(path, chars);
+}
+
+static JNINativeMethod sMethods[] = {
+     /* name, signature, funcPtr */
+    {"nativeReadState", "()I", (void*)asusdec_DockState_nativeReadState},
+    {"nativeStartMonitor", "(Ljava/io/FileDescriptor;I)Z",
+            (void*)asusdec_DockState_nativeStartMonitor},
+    {"nativeStopMonitor", "()V", (void*)asusdec_DockState_nativeStopMonitor},
+    {"nativeSetPath", "(Ljava/lang/String;)V", (void*)asusdec_DockState_nativeSetPath},
+};
+
+int register_asusdec_DockState(JNIEnv* env)
+{
+    jclass clazz = env->FindClass("com/cyanogenmod/asusdec/DockState");
+    if (clazz == NULL) {
+        ALOGE("Can't find com/cyanogenmod/asusdec/DockState");
+        return -1;
+    }
+    gMonitor.onChanged = env->GetStaticMethodID(clazz, "onNativeDockChanged", "(I)V");
+    LOG_FATAL_IF(gMonitor.onChanged == NULL,
+            "Unable to find DockState.onNativeDockChanged");
+    gMonitor.clazz = (jclass) env->NewGlobalRef(clazz);
+
+    return jniRegisterNativeMethods(env, "com/cyanogenmod/asusdec/DockState", sMethods, NELEM(sMethods));
+}
+
+} /* namespace asusdec */
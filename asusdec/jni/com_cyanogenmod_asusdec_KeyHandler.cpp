@@ -26,36 +26,18 @@
 #include <fcntl.h>
 #include <sys/ioctl.h>
 
-namespace asusdec {
-
-#define ASUSDEC_DEV "/dev/asusdec"
-
-// copied from drivers/input/asusec/asusdec.h
-#define ASUSDEC_TP_ON   1
-#define ASUSDEC_TP_OFF  0
-#define ASUSDEC_IOC_MAGIC   0xf4
-#define ASUSDEC_TP_CONTROL      _IOR(ASUSDEC_IOC_MAGIC, 5,  int)
+#include "asusdec_device.h"
 
+namespace asusdec {
 
 JNIEXPORT jboolean JNICALL asusdec_KeyHandler_nativeToggleTouchpad
   (JNIEnv *env, jclass cls, jboolean status) {
     ALOGD("Switching touchpad %d\n", status);
 
-    int fd = open(ASUSDEC_DEV, O_RDONLY | O_NONBLOCK);
-
-    if (fd < 0) {
-        ALOGE("Could  open device %s\n", ASUSDEC_DEV);
-        return -1;
-    }
-
+    int request = ASUSDEC_TP_CONTROL;
     int on = (status == 0) ? ASUSDEC_TP_OFF : ASUSDEC_TP_ON;
-    int success = ioctl(fd, ASUSDEC_TP_CONTROL, on);
-
-    if (success != 0) {
-        ALOGE("Error calling ioctl, %d\n", success);
-    }
-
-    close(fd);
+    int result;
+    asusdec_device_ioctl(&request, &on, &result, 1);
 
     ALOGD("Touchpad is %d\n", on);
     return (jboolean) ((on == 1) ? true : false);
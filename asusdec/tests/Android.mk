@@ -0,0 +1,54 @@
+# Host side tests and benchmarks of com.cyanogenmod.asusdec, run them with
+# run-host-tests.sh. The library is built against stand-ins of the framework
+# classes it uses (stubs/), and its JNI against a fake sysfs and device root
+# (jni/host_root.cpp).
+
+ifeq ($(HOST_OS),linux)
+
+LOCAL_PATH := $(call my-dir)
+
+include $(CLEAR_VARS)
+LOCAL_SRC_FILES := \
+    $(call all-java-files-under, ../java) \
+    $(call all-java-files-under, stubs) \
+    $(call all-java-files-under, src)
+
+LOCAL_JAVA_LIBRARIES := junit
+
+LOCAL_MODULE_TAGS := optional
+LOCAL_MODULE := asusdec-host-tests
+
+include $(BUILD_HOST_JAVA_LIBRARY)
+
+include $(CLEAR_VARS)
+LOCAL_SRC_FILES := \
+    ../jni/com_cyanogenmod_asusdec_KeyHandler.cpp \
+    ../jni/com_cyanogenmod_asusdec_DockBatteryHandler.cpp \
+    ../jni/com_cyanogenmod_asusdec_AsusdecDevice.cpp \
+    ../jni/com_cyanogenmod_asusdec_DockKeyReader.cpp \
+    ../jni/com_cyanogenmod_asusdec_DockState.cpp \
+    ../jni/asusdec_uevent.cpp \
+    ../jni/com_cyanogenmod_asusdec_AsusdecNative.cpp \
+    jni/host_jnihelp.cpp \
+    jni/host_uevent.cpp \
+    jni/host_root.cpp
+
+# The stand-in headers go first
+LOCAL_C_INCLUDES += \
+    $(LOCAL_PATH)/jni/include \
+    $(JNI_H_INCLUDE)
+
+LOCAL_CFLAGS += -U_FORTIFY_SOURCE
+
+# Resolves the absolute paths of the JNI below the fake root
+ASUSDEC_HOST_WRAPPED := open open64 opendir access fopen fopen64 rename unlink \
+    pread pread64 ioctl uname
+LOCAL_LDFLAGS += $(foreach f, $(ASUSDEC_HOST_WRAPPED), -Wl,--wrap=$(f))
+LOCAL_LDLIBS += -lpthread
+
+LOCAL_MODULE_TAGS := optional
+LOCAL_MODULE := libasusdec_jni
+
+include $(BUILD_HOST_SHARED_LIBRARY)
+
+endif # HOST_OS == linux
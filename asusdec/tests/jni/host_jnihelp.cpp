@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/*
+ * Host implementations of the libnativehelper and liblog functions used by
+ * the asusdec JNI.
+ */
+
+#include "JNIHelp.h"
+#include "jni.h"
+#include <utils/Log.h>
+
+#include <stdarg.h>
+#include <stdio.h>
+
+// The warnings and errors logged so far, see FakeSysfs.getErrorLogCount()
+static volatile long gErrorLogCount;
+
+extern "C" void asusdec_host_log(char priority, const char* tag, const char* fmt, ...)
+{
+    // Only what would be worth a look in logcat
+    if (priority != 'W' && priority != 'E' && priority != 'F') {
+        return;
+    }
+    __sync_fetch_and_add(&gErrorLogCount, 1);
+
+    va_list args;
+    va_start(args, fmt);
+    fprintf(stderr, "%c/%s: ", priority, tag ? tag : "asusdec");
+    vfprintf(stderr, fmt, args);
+    fputc('\n', stderr);
+    va_end(args);
+}
+
+int jniRegisterNativeMethods(JNIEnv* env, const char* className,
+        const JNINativeMethod* methods, int numMethods)
+{
+    jclass clazz = env->FindClass(className);
+    if (clazz == NULL) {
+        ALOGE("Native registration unable to find class '%s'", className);
+        return -1;
+    }
+    int result = env->RegisterNatives(clazz, methods, numMethods) < 0 ? -1 : 0;
+    if (result < 0) {
+        ALOGE("RegisterNatives failed for '%s'", className);
+    }
+    env->DeleteLocalRef(clazz);
+    return result;
+}
+
+int jniThrowException(JNIEnv* env, const char* className, const char* msg)
+{
+    jclass clazz = env->FindClass(className);
+    if (clazz == NULL) {
+        ALOGE("Unable to find exception class %s", className);
+        return -1;
+    }
+    int result = env->ThrowNew(clazz, msg) != JNI_OK ? -1 : 0;
+    env->DeleteLocalRef(clazz);
+    return result;
+}
+
+// The host JDK keeps the descriptor in FileDescriptor.fd
+static jfieldID getDescriptorField(JNIEnv* env)
+{
+    static jfieldID field;
+    if (field == NULL) {
+        jclass clazz = env->FindClass("java/io/FileDescriptor");
+        field = env->GetFieldID(clazz, "fd", "I");
+        env->DeleteLocalRef(clazz);
+    }
+    return field;
+}
+
+int jniGetFDFromFileDescriptor(JNIEnv* env, jobject fileDescriptor)
+{
+    return env->GetIntField(fileDescriptor, getDescriptorField(env));
+}
+
+jobject jniCreateFileDescriptor(JNIEnv* env, int fd)
+{
+    jclass clazz = env->FindClass("java/io/FileDescriptor");
+    jobject fileDescriptor = env->NewObject(clazz,
+            env->GetMethodID(clazz, "<init>", "()V"));
+    if (fileDescriptor != NULL) {
+        env->SetIntField(fileDescriptor, getDescriptorField(env), fd);
+    }
+    env->DeleteLocalRef(clazz);
+    return fileDescriptor;
+}
+
+extern "C" JNIEXPORT jlong JNICALL Java_com_cyanogenmod_asusdec_FakeSysfs_nativeGetErrorLogCount(
+        JNIEnv* env, jclass clazz)
+{
+    return gErrorLogCount;
+}
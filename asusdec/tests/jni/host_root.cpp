@@ -0,0 +1,493 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#define LOG_TAG "AsusdecHostRoot"
+
+/*
+ * Fake root for the asusdec JNI on the host.
+ *
+ * The host library is linked with --wrap for the libc calls below (see
+ * Android.mk), so the absolute paths the JNI uses (/sys, /dev, /data)
+ * resolve below the directory set by FakeSysfs. The calls are also counted,
+ * so tests can check how many native operations a scenario costs, and uname()
+ * can report another kernel release. Only the calls made by this library are
+ * wrapped, the JVM's own are untouched.
+ */
+
+#include "JNIHelp.h"
+#include "jni.h"
+#include <utils/Log.h>
+
+#include <stdarg.h>
+#include <stdio.h>
+#include <stdint.h>
+#include <stdlib.h>
+#include <string.h>
+#include <errno.h>
+#include <fcntl.h>
+#include <dirent.h>
+#include <limits.h>
+#include <unistd.h>
+#include <sys/ioctl.h>
+#include <sys/socket.h>
+#include <sys/stat.h>
+#include <sys/utsname.h>
+
+#include <linux/input.h>
+
+// Must match the FakeSysfs.OP_* constants
+enum {
+    OP_OPEN,
+    OP_OPENDIR,
+    OP_PREAD,
+    OP_IOCTL,
+    OP_COUNT
+};
+
+// Set once, before the natives of the library look anything up
+static char gRoot[PATH_MAX];
+static size_t gRootLength;
+
+// Replaces the kernel release uname() reports, see FakeSysfs.setKernelRelease()
+static char gKernelRelease[sizeof(((struct utsname*) 0)->release)];
+
+static volatile long gOpCounts[OP_COUNT];
+static volatile int gLastIoctlRequest;
+static volatile int gLastIoctlArg;
+
+// Injected pread() and ioctl() failures, see FakeSysfs.failPreads() and
+// FakeSysfs.failIoctls()
+static volatile int gPreadFailures;
+static volatile int gPreadErrno;
+static volatile int gIoctlFailures;
+static volatile int gIoctlErrno;
+
+// The attribute paths read by the simulated legacy path
+#define MAX_LEGACY_PATHS 8
+static char gLegacyPaths[MAX_LEGACY_PATHS][PATH_MAX];
+static int gLegacyPathCount;
+
+static void countOp(int op)
+{
+    __sync_fetch_and_add(&gOpCounts[op], 1);
+}
+
+// Takes one of the injected failures, setting errno
+static bool takeFailure(volatile int* failures, int error)
+{
+    for (;;) {
+        int left = *failures;
+        if (left <= 0) {
+            return false;
+        }
+        if (__sync_bool_compare_and_swap(failures, left, left - 1)) {
+            errno = error;
+            return true;
+        }
+    }
+}
+
+// Returns path below the fake root, unless it is relative or already there
+static const char* rebase(const char* path, char* buf, size_t size)
+{
+    if (gRootLength == 0 || path == NULL || path[0] != '/' ||
+            (strncmp(path, gRoot, gRootLength) == 0 &&
+            (path[gRootLength] == '/' || path[gRootLength] == '\0'))) {
+        return path;
+    }
+    snprintf(buf, size, "%s%s", gRoot, path);
+    return buf;
+}
+
+extern "C" {
+
+int __real_open(const char* path, int flags, ...);
+int __real_open64(const char* path, int flags, ...);
+DIR* __real_opendir(const char* path);
+int __real_access(const char* path, int mode);
+FILE* __real_fopen(const char* path, const char* mode);
+FILE* __real_fopen64(const char* path, const char* mode);
+int __real_rename(const char* oldPath, const char* newPath);
+int __real_unlink(const char* path);
+ssize_t __real_pread(int fd, void* buf, size_t count, off_t offset);
+ssize_t __real_pread64(int fd, void* buf, size_t count, off64_t offset);
+int __real_ioctl(int fd, unsigned long request, ...);
+int __real_uname(struct utsname* name);
+
+static mode_t getOpenMode(int flags, va_list args)
+{
+    return (flags & O_CREAT) ? (mode_t) va_arg(args, int) : 0;
+}
+
+int __wrap_open(const char* path, int flags, ...)
+{
+    char buf[PATH_MAX];
+    va_list args;
+    va_start(args, flags);
+    mode_t mode = getOpenMode(flags, args);
+    va_end(args);
+
+    countOp(OP_OPEN);
+    return __real_open(rebase(path, buf, sizeof(buf)), flags, mode);
+}
+
+int __wrap_open64(const char* path, int flags, ...)
+{
+    char buf[PATH_MAX];
+    va_list args;
+    va_start(args, flags);
+    mode_t mode = getOpenMode(flags, args);
+    va_end(args);
+
+    countOp(OP_OPEN);
+    return __real_open64(rebase(path, buf, sizeof(buf)), flags, mode);
+}
+
+DIR* __wrap_opendir(const char* path)
+{
+    char buf[PATH_MAX];
+    countOp(OP_OPENDIR);
+    return __real_opendir(rebase(path, buf, sizeof(buf)));
+}
+
+int __wrap_access(const char* path, int mode)
+{
+    char buf[PATH_MAX];
+    return __real_access(rebase(path, buf, sizeof(buf)), mode);
+}
+
+FILE* __wrap_fopen(const char* path, const char* mode)
+{
+    char buf[PATH_MAX];
+    return __real_fopen(rebase(path, buf, sizeof(buf)), mode);
+}
+
+FILE* __wrap_fopen64(const char* path, const char* mode)
+{
+    char buf[PATH_MAX];
+    return __real_fopen64(rebase(path, buf, sizeof(buf)), mode);
+}
+
+int __wrap_rename(const char* oldPath, const char* newPath)
+{
+    char oldBuf[PATH_MAX];
+    char newBuf[PATH_MAX];
+    return __real_rename(rebase(oldPath, oldBuf, sizeof(oldBuf)),
+            rebase(newPath, newBuf, sizeof(newBuf)));
+}
+
+int __wrap_unlink(const char* path)
+{
+    char buf[PATH_MAX];
+    return __real_unlink(rebase(path, buf, sizeof(buf)));
+}
+
+ssize_t __wrap_pread(int fd, void* buf, size_t count, off_t offset)
+{
+    countOp(OP_PREAD);
+    if (takeFailure(&gPreadFailures, gPreadErrno)) {
+        return -1;
+    }
+    return __real_pread(fd, buf, count, offset);
+}
+
+ssize_t __wrap_pread64(int fd, void* buf, size_t count, off64_t offset)
+{
+    countOp(OP_PREAD);
+    if (takeFailure(&gPreadFailures, gPreadErrno)) {
+        return -1;
+    }
+    return __real_pread64(fd, buf, count, offset);
+}
+
+// The fake device nodes are regular files, they accept every request
+int __wrap_ioctl(int fd, unsigned long request, ...)
+{
+    va_list args;
+    va_start(args, request);
+    unsigned long arg = va_arg(args, unsigned long);
+    va_end(args);
+
+    countOp(OP_IOCTL);
+    if (takeFailure(&gIoctlFailures, gIoctlErrno)) {
+        return -1;
+    }
+    struct stat st;
+    if (fstat(fd, &st) == 0 && S_ISREG(st.st_mode)) {
+        gLastIoctlRequest = (int) request;
+        gLastIoctlArg = (int) arg;
+        return 0;
+    }
+    return __real_ioctl(fd, request, arg);
+}
+
+int __wrap_uname(struct utsname* name)
+{
+    int result = __real_uname(name);
+    if (result == 0 && gKernelRelease[0] != '\0') {
+        snprintf(name->release, sizeof(name->release), "%s", gKernelRelease);
+    }
+    return result;
+}
+
+} /* extern "C" */
+
+/*
+ * Natives of com.cyanogenmod.asusdec.FakeSysfs
+ */
+
+extern "C" JNIEXPORT void JNICALL Java_com_cyanogenmod_asusdec_FakeSysfs_nativeSetRoot(
+        JNIEnv* env, jclass clazz, jstring root)
+{
+    const char* chars = env->GetStringUTFChars(root, NULL);
+    if (chars == NULL) {
+        return;
+    }
+    snprintf(gRoot, sizeof(gRoot), "%s", chars);
+    gRootLength = strlen(gRoot);
+    env->ReleaseStringUTFChars(root, chars);
+}
+
+extern "C" JNIEXPORT void JNICALL Java_com_cyanogenmod_asusdec_FakeSysfs_nativeSetKernelRelease(
+        JNIEnv* env, jclass clazz, jstring release)
+{
+    const char* chars = env->GetStringUTFChars(release, NULL);
+    if (chars == NULL) {
+        return;
+    }
+    snprintf(gKernelRelease, sizeof(gKernelRelease), "%s", chars);
+    env->ReleaseStringUTFChars(release, chars);
+}
+
+extern "C" JNIEXPORT jlong JNICALL Java_com_cyanogenmod_asusdec_FakeSysfs_nativeGetOpCount(
+        JNIEnv* env, jclass clazz, jint op)
+{
+    if (op < 0 || op >= OP_COUNT) {
+        jniThrowException(env, "java/lang/IllegalArgumentException", "Unknown op");
+        return 0;
+    }
+    return __sync_fetch_and_add(&gOpCounts[op], 0);
+}
+
+extern "C" JNIEXPORT void JNICALL Java_com_cyanogenmod_asusdec_FakeSysfs_nativeResetOpCounts(
+        JNIEnv* env, jclass clazz)
+{
+    for (int i = 0; i < OP_COUNT; i++) {
+        __sync_lock_test_and_set(&gOpCounts[i], 0);
+    }
+}
+
+extern "C" JNIEXPORT void JNICALL Java_com_cyanogenmod_asusdec_FakeSysfs_nativeGetLastIoctl(
+        JNIEnv* env, jclass clazz, jintArray requestAndArg)
+{
+    jint values[2] = { gLastIoctlRequest, gLastIoctlArg };
+    env->SetIntArrayRegion(requestAndArg, 0, 2, values);
+}
+
+static jobjectArray newFileDescriptorPair(JNIEnv* env, int* fds)
+{
+    jclass fdClass = env->FindClass("java/io/FileDescriptor");
+    jobjectArray pair = env->NewObjectArray(2, fdClass, NULL);
+    for (int i = 0; pair != NULL && i < 2; i++) {
+        jobject fileDescriptor = jniCreateFileDescriptor(env, fds[i]);
+        env->SetObjectArrayElement(pair, i, fileDescriptor);
+        env->DeleteLocalRef(fileDescriptor);
+    }
+    env->DeleteLocalRef(fdClass);
+    return pair;
+}
+
+extern "C" JNIEXPORT jobjectArray JNICALL Java_com_cyanogenmod_asusdec_FakeSysfs_nativeSocketPair(
+        JNIEnv* env, jclass clazz)
+{
+    int fds[2];
+    if (socketpair(AF_UNIX, SOCK_SEQPACKET | SOCK_CLOEXEC, 0, fds) != 0) {
+        jniThrowException(env, "java/io/IOException", strerror(errno));
+        return NULL;
+    }
+    return newFileDescriptorPair(env, fds);
+}
+
+// The read end first, as pipe() returns them
+extern "C" JNIEXPORT jobjectArray JNICALL Java_com_cyanogenmod_asusdec_FakeSysfs_nativePipe(
+        JNIEnv* env, jclass clazz)
+{
+    int fds[2];
+    if (pipe2(fds, O_CLOEXEC) != 0) {
+        jniThrowException(env, "java/io/IOException", strerror(errno));
+        return NULL;
+    }
+    return newFileDescriptorPair(env, fds);
+}
+
+// Writes all of bytes, blocking until the pipe has room for them
+extern "C" JNIEXPORT void JNICALL Java_com_cyanogenmod_asusdec_FakeSysfs_nativeWrite(
+        JNIEnv* env, jclass clazz, jobject fileDescriptor, jbyteArray bytes, jint length)
+{
+    int fd = jniGetFDFromFileDescriptor(env, fileDescriptor);
+    jbyte* buf = env->GetByteArrayElements(bytes, NULL);
+    if (buf == NULL) {
+        return;
+    }
+    ssize_t written = 0;
+    while (written < length) {
+        ssize_t n = write(fd, buf + written, length - written);
+        if (n < 0 && errno == EINTR) {
+            continue;
+        }
+        if (n < 0) {
+            break;
+        }
+        written += n;
+    }
+    env->ReleaseByteArrayElements(bytes, buf, JNI_ABORT);
+    if (written < length) {
+        jniThrowException(env, "java/io/IOException", strerror(errno));
+    }
+}
+
+// The size of the events a DockKeyReader source carries, as built
+extern "C" JNIEXPORT jint JNICALL Java_com_cyanogenmod_asusdec_FakeSysfs_nativeInputEventSize(
+        JNIEnv* env, jclass clazz)
+{
+    return sizeof(struct input_event);
+}
+
+// Sends one message, blocking until the peer has room for it
+extern "C" JNIEXPORT void JNICALL Java_com_cyanogenmod_asusdec_FakeSysfs_nativeSend(
+        JNIEnv* env, jclass clazz, jobject fileDescriptor, jbyteArray message, jint length)
+{
+    int fd = jniGetFDFromFileDescriptor(env, fileDescriptor);
+    jbyte* bytes = env->GetByteArrayElements(message, NULL);
+    if (bytes == NULL) {
+        return;
+    }
+    ssize_t sent;
+    do {
+        sent = send(fd, bytes, length, MSG_NOSIGNAL);
+    } while (sent < 0 && errno == EINTR);
+    env->ReleaseByteArrayElements(message, bytes, JNI_ABORT);
+    if (sent < 0) {
+        jniThrowException(env, "java/io/IOException", strerror(errno));
+    }
+}
+
+extern "C" JNIEXPORT void JNICALL Java_com_cyanogenmod_asusdec_FakeSysfs_nativeClose(
+        JNIEnv* env, jclass clazz, jobject fileDescriptor)
+{
+    int fd = jniGetFDFromFileDescriptor(env, fileDescriptor);
+    if (fd >= 0) {
+        close(fd);
+        env->SetIntField(fileDescriptor, env->GetFieldID(
+                env->GetObjectClass(fileDescriptor), "fd", "I"), -1);
+    }
+}
+
+// The next count pread() calls fail with error
+extern "C" JNIEXPORT void JNICALL Java_com_cyanogenmod_asusdec_FakeSysfs_nativeFailPreads(
+        JNIEnv* env, jclass clazz, jint count, jint error)
+{
+    gPreadErrno = error;
+    __sync_lock_test_and_set(&gPreadFailures, count);
+}
+
+// The next count ioctl() calls fail with error
+extern "C" JNIEXPORT void JNICALL Java_com_cyanogenmod_asusdec_FakeSysfs_nativeFailIoctls(
+        JNIEnv* env, jclass clazz, jint count, jint error)
+{
+    gIoctlErrno = error;
+    __sync_lock_test_and_set(&gIoctlFailures, count);
+}
+
+extern "C" JNIEXPORT void JNICALL Java_com_cyanogenmod_asusdec_FakeSysfs_nativeSetLegacyPaths(
+        JNIEnv* env, jclass clazz, jobjectArray paths)
+{
+    int count = env->GetArrayLength(paths);
+    if (count > MAX_LEGACY_PATHS) {
+        jniThrowException(env, "java/lang/IllegalArgumentException", "Too many paths");
+        return;
+    }
+    for (int i = 0; i < count; i++) {
+        jstring path = (jstring) env->GetObjectArrayElement(paths, i);
+        const char* chars = env->GetStringUTFChars(path, NULL);
+        if (chars == NULL) {
+            return;
+        }
+        snprintf(gLegacyPaths[i], sizeof(gLegacyPaths[i]), "%s", chars);
+        env->ReleaseStringUTFChars(path, chars);
+        env->DeleteLocalRef(path);
+    }
+    gLegacyPathCount = count;
+}
+
+// BatteryManager.BATTERY_STATUS_*
+#define STATUS_UNKNOWN 1
+#define STATUS_CHARGING 2
+#define STATUS_NOT_CHARGING 4
+
+// Decodes an attribute the way readAttrValue() of the JNI does
+static jint decodeLegacyValue(int attr, const char* buf, ssize_t length)
+{
+    switch (attr) {
+        case 0: // status
+            if (length <= 0) {
+                return STATUS_UNKNOWN;
+            }
+            return buf[0] == 'C' ? STATUS_CHARGING :
+                    buf[0] == 'N' ? STATUS_NOT_CHARGING : STATUS_UNKNOWN;
+        case 1: // capacity
+            return length > 0 ? atoi(buf) : 0;
+        case 2: // ec_dock, "dock detect = 1"
+            return length >= 15 && buf[14] == '1';
+        default:
+            return length > 0 && buf[0] != '0';
+    }
+}
+
+/*
+ * What a battery tick cost before the attribute files were kept open: an
+ * open/read/close of every attribute, as the removed readFromFile() loop
+ * of nativeDockBatteryUpdate() did, decoded into values like
+ * nativeDockBatteryRead() does.
+ */
+extern "C" JNIEXPORT jboolean JNICALL Java_com_cyanogenmod_asusdec_FakeSysfs_nativeReadLegacy(
+        JNIEnv* env, jclass clazz, jintArray values)
+{
+    if (values == NULL || env->GetArrayLength(values) < gLegacyPathCount) {
+        jniThrowException(env, "java/lang/IllegalArgumentException",
+                "values must hold an entry per path");
+        return false;
+    }
+
+    char buf[128];
+    jint decoded[MAX_LEGACY_PATHS];
+    for (int i = 0; i < gLegacyPathCount; i++) {
+        ssize_t count = -1;
+        int fd = open(gLegacyPaths[i], O_RDONLY, 0);
+        if (fd != -1) {
+            count = read(fd, buf, sizeof(buf) - 1);
+            close(fd);
+        }
+        while (count > 0 && buf[count - 1] == '\n') {
+            count--;
+        }
+        buf[count > 0 ? count : 0] = '\0';
+        decoded[i] = decodeLegacyValue(i, buf, count);
+    }
+
+    env->SetIntArrayRegion(values, 0, gLegacyPathCount, decoded);
+    return true;
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/*
+ * Host stand-in of libcutils' uevent socket. There is no kernel to listen
+ * to, a test may hand in a socket pair to be opened in its place; without
+ * one, opening the socket fails.
+ */
+
+#include "JNIHelp.h"
+#include "jni.h"
+
+#include <cutils/uevent.h>
+
+#include <errno.h>
+#include <pthread.h>
+#include <unistd.h>
+#include <sys/socket.h>
+
+static pthread_mutex_t gKernelLock = PTHREAD_MUTEX_INITIALIZER;
+static int gKernelSource = -1;
+
+extern "C" int uevent_open_socket(int buf_sz, bool passcred)
+{
+    int fd = -1;
+    errno = EAFNOSUPPORT;
+    pthread_mutex_lock(&gKernelLock);
+    if (gKernelSource != -1) {
+        fd = dup(gKernelSource);
+    }
+    pthread_mutex_unlock(&gKernelLock);
+    return fd;
+}
+
+extern "C" ssize_t uevent_kernel_multicast_recv(int socket, void* buffer, size_t length)
+{
+    // Everything sent by a test passes as sent by the kernel
+    return recv(socket, buffer, length, 0);
+}
+
+extern "C" JNIEXPORT void JNICALL Java_com_cyanogenmod_asusdec_FakeUevents_nativeSetKernelSource(
+        JNIEnv* env, jclass clazz, jobject fileDescriptor)
+{
+    pthread_mutex_lock(&gKernelLock);
+    gKernelSource = fileDescriptor != NULL ? jniGetFDFromFileDescriptor(env, fileDescriptor) : -1;
+    pthread_mutex_unlock(&gKernelLock);
+}
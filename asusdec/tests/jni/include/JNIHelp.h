@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/*
+ * The parts of libnativehelper's JNIHelp used by the asusdec JNI, for the
+ * host build. See host_jnihelp.cpp.
+ */
+
+#ifndef ASUSDEC_HOST_JNIHELP_H
+#define ASUSDEC_HOST_JNIHELP_H
+
+#include "jni.h"
+
+#ifndef NELEM
+# define NELEM(x) ((int) (sizeof(x) / sizeof((x)[0])))
+#endif
+
+int jniRegisterNativeMethods(JNIEnv* env, const char* className,
+        const JNINativeMethod* methods, int numMethods);
+
+int jniThrowException(JNIEnv* env, const char* className, const char* msg);
+
+// Reads the descriptor of a java.io.FileDescriptor, -1 if it is closed
+int jniGetFDFromFileDescriptor(JNIEnv* env, jobject fileDescriptor);
+
+jobject jniCreateFileDescriptor(JNIEnv* env, int fd);
+
+#endif // ASUSDEC_HOST_JNIHELP_H
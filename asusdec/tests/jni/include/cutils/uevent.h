@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/*
+ * Host stand-in of libcutils' uevent helpers. The host tests feed recorded
+ * uevents through a socket pair instead, see FakeSysfs.
+ */
+
+#ifndef ASUSDEC_HOST_UEVENT_H
+#define ASUSDEC_HOST_UEVENT_H
+
+#include <stdbool.h>
+#include <sys/types.h>
+
+#ifdef __cplusplus
+extern "C" {
+#endif
+
+int uevent_open_socket(int buf_sz, bool passcred);
+ssize_t uevent_kernel_multicast_recv(int socket, void* buffer, size_t length);
+
+#ifdef __cplusplus
+}
+#endif
+
+#endif // ASUSDEC_HOST_UEVENT_H
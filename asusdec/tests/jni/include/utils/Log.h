@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/*
+ * Host stand-in of the logging macros used by the asusdec JNI. Errors and
+ * warnings go to stderr, the rest is compiled but dropped.
+ */
+
+#ifndef ASUSDEC_HOST_LOG_H
+#define ASUSDEC_HOST_LOG_H
+
+#include <stdlib.h>
+
+#ifndef LOG_TAG
+#define LOG_TAG NULL
+#endif
+
+#ifdef __cplusplus
+extern "C" {
+#endif
+
+void asusdec_host_log(char priority, const char* tag, const char* fmt, ...)
+        __attribute__((format(printf, 3, 4)));
+
+#ifdef __cplusplus
+}
+#endif
+
+#define ALOGV(...) ((void) 0)
+#define ALOGD(...) asusdec_host_log('D', LOG_TAG, __VA_ARGS__)
+#define ALOGI(...) asusdec_host_log('I', LOG_TAG, __VA_ARGS__)
+#define ALOGW(...) asusdec_host_log('W', LOG_TAG, __VA_ARGS__)
+#define ALOGE(...) asusdec_host_log('E', LOG_TAG, __VA_ARGS__)
+
+#define LOG_FATAL_IF(cond, ...) \
+    do { \
+        if (cond) { \
+            asusdec_host_log('F', LOG_TAG, __VA_ARGS__); \
+            abort(); \
+        } \
+    } while (0)
+
+#define ALOG_ASSERT(cond, ...) ((void) 0)
+
+#endif // ASUSDEC_HOST_LOG_H
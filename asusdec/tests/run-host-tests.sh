@@ -0,0 +1,60 @@
+#!/bin/sh
+#
+# Copyright (C) 2013 The CyanogenMod Project
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#      http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+# Runs the asusdec host tests against the host build of the JNI, each test
+# class in a JVM of its own: the natives discover the fake power supplies
+# once per process and the dock state is a singleton. With --bench, runs
+# the benchmarks instead.
+#
+# Build first with: mmm device/asus/tf101/asusdec/tests
+#
+# Usage: run-host-tests.sh [--bench] [<test class>...]
+
+OUT=${ANDROID_HOST_OUT:?"run lunch first, or set ANDROID_HOST_OUT"}
+JAR=$OUT/framework/asusdec-host-tests.jar
+CP=$JAR:$OUT/framework/junit.jar
+JAVA="java -Djava.library.path=$OUT/lib -cp $CP"
+PKG=com.cyanogenmod.asusdec
+
+if [ ! -f "$JAR" ]; then
+    echo "$JAR not found, build asusdec/tests first"
+    exit 1
+fi
+
+if [ "$1" = "--bench" ]; then
+    exec $JAVA $PKG.AsusdecBenchmarks
+fi
+
+if [ $# -eq 0 ]; then
+    set -- $(unzip -Z1 "$JAR" | sed -n 's#^\(com/cyanogenmod/asusdec/[A-Za-z]*Test\)\.class$#\1#p' \
+            | tr / .)
+fi
+
+failed=0
+for test in "$@"; do
+    case $test in
+        *.*) ;;
+        *) test=$PKG.$test ;;
+    esac
+    echo "== $test"
+    $JAVA org.junit.runner.JUnitCore $test || failed=1
+done
+
+if [ $failed -ne 0 ]; then
+    echo "FAILED"
+    exit 1
+fi
+echo "PASSED"
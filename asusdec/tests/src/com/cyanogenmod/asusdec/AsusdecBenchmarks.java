@@ -0,0 +1,392 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.asusdec;
+
+import android.content.Context;
+import android.os.Looper;
+import android.view.KeyEvent;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Host benchmarks of the hot paths: key dispatch latency on the input
+ * thread, the cost of a battery service tick, and what both allocate; and
+ * of bringing up the dock battery natives at boot. Run by
+ * run-host-tests.sh --bench.
+ */
+public final class AsusdecBenchmarks {
+
+    private static final int SCANCODE_UNBOUND = 30;  // KEY_A
+    private static final int SCANCODE_TOGGLE_WIFI = 238;
+    private static final int SCANCODE_TOGGLE_BT = 237;
+    private static final int SCANCODE_TOGGLE_TOUCHPAD = 60;
+    private static final int SCANCODE_BRIGHTNESS_DOWN = 224;
+    private static final int SCANCODE_BRIGHTNESS_UP = 225;
+    private static final int SCANCODE_BRIGHTNESS_AUTO = 61;
+    private static final int SCANCODE_SCREENSHOT = 212;
+    private static final int SCANCODE_SETTINGS = 62;
+    private static final int SCANCODE_VOLUME_MUTE = 113;
+
+    // The bound keys, then typed text
+    private static final int[] DISPATCHED_SCANCODES = {
+        SCANCODE_TOGGLE_WIFI, SCANCODE_TOGGLE_BT, SCANCODE_TOGGLE_TOUCHPAD,
+        SCANCODE_BRIGHTNESS_DOWN, SCANCODE_BRIGHTNESS_UP, SCANCODE_BRIGHTNESS_AUTO,
+        SCANCODE_SCREENSHOT, SCANCODE_SETTINGS, SCANCODE_VOLUME_MUTE,
+        16, 17, 18, 30, 31, 57, 28,
+    };
+
+    private static final long IDLE_TIMEOUT_MS = 5000;
+
+    private static final int DISCOVERY_RUNS = 21;
+    private static final String DISCOVERY_KERNEL = "2.6.39.4-tf101";
+
+    private AsusdecBenchmarks() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        FakeSysfs.get();
+        Context context = new Context();
+        final KeyHandler keyHandler = new KeyHandler(context);
+        final DockBatteryHandler batteryHandler = new DockBatteryHandler(context);
+        Looper.waitForIdle(IDLE_TIMEOUT_MS);
+
+        List<Bench.Result> results = new ArrayList<Bench.Result>();
+        results.addAll(benchDispatch(keyHandler));
+        results.addAll(benchDispatchTable());
+        results.addAll(benchBatteryTick(batteryHandler));
+        results.addAll(benchSysfsRead(batteryHandler));
+        results.addAll(benchJniBoundary(batteryHandler));
+        results.addAll(benchDiscovery());
+
+        for (Bench.Result result : results) {
+            System.out.println(result);
+        }
+    }
+
+    static List<Bench.Result> benchDispatch(final KeyHandler keyHandler) throws Exception {
+        List<Bench.Result> results = new ArrayList<Bench.Result>();
+
+        final KeyEvent unbound = new KeyEvent(0, 0, KeyEvent.ACTION_DOWN,
+                KeyEvent.KEYCODE_UNKNOWN, 0, 0, 0, SCANCODE_UNBOUND);
+        results.add(Bench.run("dispatch, unbound key", 100000, new Bench.Task() {
+            @Override
+            void run(int count) {
+                for (int i = 0; i < count; i++) {
+                    keyHandler.handleKeyEvent(unbound);
+                }
+            }
+        }));
+
+        final KeyEvent boundUp = new KeyEvent(0, 0, KeyEvent.ACTION_UP,
+                KeyEvent.KEYCODE_UNKNOWN, 0, 0, 0, SCANCODE_VOLUME_MUTE);
+        results.add(Bench.run("dispatch, bound key up", 100000, new Bench.Task() {
+            @Override
+            void run(int count) {
+                for (int i = 0; i < count; i++) {
+                    keyHandler.handleKeyEvent(boundUp);
+                }
+            }
+        }));
+
+        // Batches stay below the executor queue capacity, so that no press
+        // is dropped, and are drained between batches
+        final KeyEvent boundDown = new KeyEvent(0, 0, KeyEvent.ACTION_DOWN,
+                KeyEvent.KEYCODE_UNKNOWN, 0, 0, 0, SCANCODE_VOLUME_MUTE);
+        results.add(Bench.run("dispatch, bound key down", 8, new Bench.Task() {
+            @Override
+            void run(int count) {
+                for (int i = 0; i < count; i++) {
+                    keyHandler.handleKeyEvent(boundDown);
+                }
+            }
+
+            @Override
+            void settle() {
+                Looper.waitForIdle(IDLE_TIMEOUT_MS);
+            }
+        }));
+        return results;
+    }
+
+    static List<Bench.Result> benchBatteryTick(final DockBatteryHandler batteryHandler)
+            throws Exception {
+        List<Bench.Result> results = new ArrayList<Bench.Result>();
+
+        // What BatteryService does on every update, nothing changed
+        results.add(Bench.run("battery tick, unchanged", 10000, new Bench.Task() {
+            @Override
+            void run(int count) {
+                for (int i = 0; i < count; i++) {
+                    batteryHandler.update();
+                    batteryHandler.process();
+                    if (batteryHandler.hasNewData()) {
+                        batteryHandler.getNotifyData();
+                    }
+                }
+            }
+        }));
+
+        results.add(Bench.run("battery getNotifyData, unchanged", 100000, new Bench.Task() {
+            @Override
+            void run(int count) {
+                for (int i = 0; i < count; i++) {
+                    batteryHandler.getNotifyData();
+                }
+            }
+        }));
+        return results;
+    }
+
+    // The per-tick sysfs cost of the six attributes, an open/read/close
+    // each as before against a pread() on the kept files. Both are a single
+    // JNI crossing that decodes the values into the same array.
+    static List<Bench.Result> benchSysfsRead(final DockBatteryHandler batteryHandler)
+            throws Exception {
+        List<Bench.Result> results = new ArrayList<Bench.Result>();
+        final int mask = (1 << FakeSysfs.ATTR_COUNT) - 1;
+        final int[] values = new int[FakeSysfs.ATTR_COUNT];
+
+        FakeSysfs.get().setUpLegacyRead();
+        results.add(Bench.run("sysfs tick, open/read/close (before)", 10000, new Bench.Task() {
+            @Override
+            void run(int count) {
+                for (int i = 0; i < count; i++) {
+                    FakeSysfs.readLegacy(values);
+                }
+            }
+        }));
+
+        results.add(Bench.run("sysfs tick, pread on kept files (after)", 10000, new Bench.Task() {
+            @Override
+            void run(int count) {
+                for (int i = 0; i < count; i++) {
+                    batteryHandler.nativeDockBatteryRead(mask, values);
+                }
+            }
+        }));
+        return results;
+    }
+
+    // Both JNI boundaries over 1M simulated ticks (10 timed batches) on the
+    // fake sysfs, each reading the six attributes: the legacy
+    // nativeDockBatteryUpdate() setting every field with its own call,
+    // against the single crossing of nativeDockBatteryRead() and the Java
+    // side decode
+    static List<Bench.Result> benchJniBoundary(final DockBatteryHandler batteryHandler)
+            throws Exception {
+        List<Bench.Result> results = new ArrayList<Bench.Result>();
+        final int mask = (1 << FakeSysfs.ATTR_COUNT) - 1;
+        final int[] values = new int[FakeSysfs.ATTR_COUNT];
+        final boolean[] decoded = new boolean[FakeSysfs.ATTR_COUNT];
+
+        results.add(Bench.run("JNI boundary, per field (legacy)", 100000, new Bench.Task() {
+            @Override
+            void run(int count) {
+                for (int i = 0; i < count; i++) {
+                    batteryHandler.nativeDockBatteryUpdate();
+                }
+            }
+        }));
+
+        results.add(Bench.run("JNI boundary, batched", 100000, new Bench.Task() {
+            @Override
+            void run(int count) {
+                for (int i = 0; i < count; i++) {
+                    if (batteryHandler.nativeDockBatteryRead(mask, values)) {
+                        for (int j = FakeSysfs.ATTR_DOCK_BATTERY_PRESENT; j < values.length; j++) {
+                            decoded[j] = values[j] != 0;
+                        }
+                    }
+                }
+            }
+        }));
+        return results;
+    }
+
+    // Load to first use of DockBatteryHandler, from its class loading to its
+    // first update(), in a fresh process each: with the power supplies
+    // scanned as on the first boot of a kernel, and loaded from the
+    // discovery cache as on later ones. The median of the runs, the time
+    // taken by the registration alone separately.
+    static List<Bench.Result> benchDiscovery() throws Exception {
+        List<Bench.Result> results = new ArrayList<Bench.Result>();
+        File root = File.createTempFile("asusdec-discovery", "", FakeSysfs.getScratchDir());
+        if (!root.delete() || !root.mkdir()) {
+            throw new IllegalStateException("Could not create " + root);
+        }
+        File cache = new File(root, DiscoveryProbe.CACHE_FILE);
+
+        try {
+            long[] registerNs = new long[DISCOVERY_RUNS];
+            long[] firstUseNs = new long[DISCOVERY_RUNS];
+            for (int i = 0; i < DISCOVERY_RUNS; i++) {
+                cache.delete();
+                DiscoveryProbe.Result result = DiscoveryProbe.run(root, DISCOVERY_KERNEL);
+                registerNs[i] = result.registerNs;
+                firstUseNs[i] = result.firstUseNs;
+            }
+            results.add(new Bench.Result("discovery scan, register", median(registerNs), -1));
+            results.add(new Bench.Result("discovery scan, load to first use",
+                    median(firstUseNs), -1));
+
+            for (int i = 0; i < DISCOVERY_RUNS; i++) {
+                DiscoveryProbe.Result result = DiscoveryProbe.run(root, DISCOVERY_KERNEL);
+                if (result.opendirs != 0) {
+                    throw new IllegalStateException("Discovery cache not used");
+                }
+                registerNs[i] = result.registerNs;
+                firstUseNs[i] = result.firstUseNs;
+            }
+            results.add(new Bench.Result("discovery cache, register", median(registerNs), -1));
+            results.add(new Bench.Result("discovery cache, load to first use",
+                    median(firstUseNs), -1));
+        } finally {
+            FakeSysfs.delete(root);
+        }
+        return results;
+    }
+
+    private static double median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    // The dispatch decision alone, the scan code table of KeyHandler against
+    // the switch it replaced, over a mix of bound keys and typed text. Both
+    // hand the chosen action to the same counter instead of the executor.
+    static List<Bench.Result> benchDispatchTable() throws Exception {
+        List<Bench.Result> results = new ArrayList<Bench.Result>();
+
+        final int[] runs = new int[DISPATCHED_SCANCODES.length];
+        KeyActionTable.Action[] defaults =
+                new KeyActionTable.Action[KeyActionTable.MAX_SCANCODE + 1];
+        for (int i = 0; i < 9; i++) {
+            defaults[DISPATCHED_SCANCODES[i]] = new CountingAction(runs, i,
+                    DISPATCHED_SCANCODES[i] != SCANCODE_VOLUME_MUTE);
+        }
+        final KeyActionTable table = new KeyActionTable(new File("/nonexistent"), defaults,
+                new HashMap<String, KeyActionTable.Action>());
+        table.load();
+
+        final KeyEvent[] events = new KeyEvent[DISPATCHED_SCANCODES.length];
+        for (int i = 0; i < events.length; i++) {
+            events[i] = new KeyEvent(0, 0, KeyEvent.ACTION_DOWN, KeyEvent.KEYCODE_UNKNOWN,
+                    0, 0, 0, DISPATCHED_SCANCODES[i]);
+        }
+
+        results.add(Bench.run("dispatch decision, switch (before)", 160000, new Bench.Task() {
+            @Override
+            void run(int count) {
+                for (int i = 0; i < count; i++) {
+                    dispatchSwitch(events[i & 15], runs);
+                }
+            }
+        }));
+
+        results.add(Bench.run("dispatch decision, table (after)", 160000, new Bench.Task() {
+            @Override
+            void run(int count) {
+                for (int i = 0; i < count; i++) {
+                    dispatchTable(events[i & 15], table);
+                }
+            }
+        }));
+        return results;
+    }
+
+    // As the removed switch of KeyHandler.handleKeyEvent()
+    private static boolean dispatchSwitch(KeyEvent event, int[] runs) {
+        if (event.getAction() != KeyEvent.ACTION_DOWN
+                || event.getRepeatCount() != 0) {
+            return false;
+        }
+
+        switch (event.getScanCode()) {
+            case SCANCODE_TOGGLE_WIFI:
+                runs[0]++;
+                break;
+            case SCANCODE_TOGGLE_BT:
+                runs[1]++;
+                break;
+            case SCANCODE_TOGGLE_TOUCHPAD:
+                runs[2]++;
+                break;
+            case SCANCODE_BRIGHTNESS_DOWN:
+                runs[3]++;
+                break;
+            case SCANCODE_BRIGHTNESS_UP:
+                runs[4]++;
+                break;
+            case SCANCODE_BRIGHTNESS_AUTO:
+                runs[5]++;
+                break;
+            case SCANCODE_SCREENSHOT:
+                runs[6]++;
+                break;
+            case SCANCODE_SETTINGS:
+                runs[7]++;
+                break;
+            case SCANCODE_VOLUME_MUTE:
+                runs[8]++;
+                return false;
+
+            default:
+                return false;
+        }
+        return true;
+    }
+
+    // As KeyHandler.dispatchKeyEvent()
+    private static boolean dispatchTable(KeyEvent event, KeyActionTable table) {
+        if (event.getAction() != KeyEvent.ACTION_DOWN) {
+            return false;
+        }
+
+        KeyActionTable.Action action = table.get(event.getScanCode());
+        if (action == null
+                || (event.getRepeatCount() != 0 && !action.acceptsRepeats())) {
+            return false;
+        }
+        return action.dispatch(event.getRepeatCount(), null);
+    }
+
+    private static final class CountingAction extends KeyActionTable.Action {
+        private final int[] mRuns;
+        private final int mIndex;
+
+        CountingAction(int[] runs, int index, boolean consumesEvent) {
+            super("ACTION_" + index, consumesEvent);
+            mRuns = runs;
+            mIndex = index;
+        }
+
+        @Override
+        boolean dispatch(int repeatCount, KeyActionExecutor executor) {
+            mRuns[mIndex]++;
+            return consumesEvent();
+        }
+
+        @Override
+        public void run() {
+        }
+    }
+}
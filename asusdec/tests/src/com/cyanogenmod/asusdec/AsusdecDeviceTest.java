@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.asusdec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Smoke tests of the shared EC command channel on the fake device node:
+ * opened once and kept, a failed open reported per command, and a handle
+ * the driver reports gone reopened once for the command that saw it.
+ */
+public class AsusdecDeviceTest {
+
+    // _IOR(ASUSDEC_IOC_MAGIC, 5, int), ASUSDEC_TP_CONTROL of the driver
+    private static final int TP_CONTROL = 0x8004f405;
+    private static final int TP_ON = 1;
+    private static final int TP_OFF = 0;
+
+    private static final int[] REQUESTS = { TP_CONTROL, TP_CONTROL, TP_CONTROL };
+    private static final int[] ARGS = { TP_OFF, TP_ON, TP_OFF };
+
+    private int[] mResults;
+
+    @BeforeClass
+    public static void setUpRoot() {
+        FakeSysfs.get();
+    }
+
+    @Before
+    public void setUp() {
+        AsusdecDevice.close();
+        FakeSysfs.resetOpCounts();
+        mResults = new int[REQUESTS.length];
+    }
+
+    @After
+    public void tearDown() {
+        FakeSysfs.failIoctls(0, 0);
+        AsusdecDevice.setDevicePath(AsusdecDevice.DEFAULT_PATH);
+    }
+
+    @Test
+    public void opensOnceForAllCommands() {
+        assertEquals(REQUESTS.length, AsusdecDevice.ioctl(REQUESTS, ARGS, mResults));
+        assertArrayEquals(new int[REQUESTS.length], mResults);
+        assertEquals(REQUESTS.length, AsusdecDevice.ioctl(REQUESTS, ARGS, mResults));
+
+        assertEquals(1, FakeSysfs.getOpCount(FakeSysfs.OP_OPEN));
+        assertEquals(2 * REQUESTS.length, FakeSysfs.getOpCount(FakeSysfs.OP_IOCTL));
+        assertArrayEquals(new int[] { TP_CONTROL, TP_OFF }, FakeSysfs.getLastIoctl());
+    }
+
+    @Test
+    public void closeReopensOnNextCommand() {
+        AsusdecDevice.ioctl(REQUESTS, ARGS, mResults);
+        AsusdecDevice.close();
+        assertEquals(REQUESTS.length, AsusdecDevice.ioctl(REQUESTS, ARGS, mResults));
+        assertEquals(2, FakeSysfs.getOpCount(FakeSysfs.OP_OPEN));
+    }
+
+    @Test
+    public void failedOpenIsReportedPerCommand() {
+        AsusdecDevice.setDevicePath("/dev/asusdec-missing");
+        long errors = FakeSysfs.getErrorLogCount();
+
+        assertEquals(0, AsusdecDevice.ioctl(REQUESTS, ARGS, mResults));
+        int[] expected = new int[REQUESTS.length];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = -FakeSysfs.ENOENT;
+        }
+        assertArrayEquals(expected, mResults);
+        // Each command tries again, none reaches the driver
+        assertEquals(REQUESTS.length, FakeSysfs.getOpCount(FakeSysfs.OP_OPEN));
+        assertEquals(0, FakeSysfs.getOpCount(FakeSysfs.OP_IOCTL));
+        assertTrue(FakeSysfs.getErrorLogCount() > errors);
+
+        // Back on the node, the channel works again
+        AsusdecDevice.setDevicePath(AsusdecDevice.DEFAULT_PATH);
+        assertEquals(REQUESTS.length, AsusdecDevice.ioctl(REQUESTS, ARGS, mResults));
+    }
+
+    @Test
+    public void staleHandleIsReopened() {
+        AsusdecDevice.ioctl(REQUESTS, ARGS, mResults);
+        FakeSysfs.resetOpCounts();
+
+        FakeSysfs.failIoctls(1, FakeSysfs.ENODEV);
+        assertEquals(REQUESTS.length, AsusdecDevice.ioctl(REQUESTS, ARGS, mResults));
+        assertArrayEquals(new int[REQUESTS.length], mResults);
+        // The failed command is retried once on the new handle
+        assertEquals(1, FakeSysfs.getOpCount(FakeSysfs.OP_OPEN));
+        assertEquals(REQUESTS.length + 1, FakeSysfs.getOpCount(FakeSysfs.OP_IOCTL));
+    }
+
+    @Test
+    public void staleRetryFailureIsReported() {
+        AsusdecDevice.ioctl(REQUESTS, ARGS, mResults);
+        FakeSysfs.resetOpCounts();
+
+        FakeSysfs.failIoctls(2, FakeSysfs.ENODEV);
+        assertEquals(REQUESTS.length - 1, AsusdecDevice.ioctl(REQUESTS, ARGS, mResults));
+        assertArrayEquals(new int[] { -FakeSysfs.ENODEV, 0, 0 }, mResults);
+        assertEquals(1, FakeSysfs.getOpCount(FakeSysfs.OP_OPEN));
+    }
+
+    @Test
+    public void otherErrorKeepsHandle() {
+        AsusdecDevice.ioctl(REQUESTS, ARGS, mResults);
+        FakeSysfs.resetOpCounts();
+
+        FakeSysfs.failIoctls(1, FakeSysfs.EIO);
+        assertEquals(REQUESTS.length - 1, AsusdecDevice.ioctl(REQUESTS, ARGS, mResults));
+        assertArrayEquals(new int[] { -FakeSysfs.EIO, 0, 0 }, mResults);
+        assertEquals(0, FakeSysfs.getOpCount(FakeSysfs.OP_OPEN));
+        assertEquals(REQUESTS.length, FakeSysfs.getOpCount(FakeSysfs.OP_IOCTL));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shortResultsAreRejected() {
+        AsusdecDevice.ioctl(REQUESTS, ARGS, new int[REQUESTS.length - 1]);
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.asusdec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ * Smoke tests of the always-on stats: the power-of-two microsecond bucket
+ * boundaries, per key counts, exact totals under concurrent recording, and
+ * the dump and export of what was recorded.
+ */
+public class AsusdecStatsTest {
+
+    private static final int LAST_BUCKET = AsusdecStats.BUCKET_COUNT - 1;
+
+    private static final int THREADS = 4;
+    private static final int SAMPLES_PER_THREAD = 10000;
+
+    @Test
+    public void bucketBoundaries() {
+        assertEquals(0, AsusdecStats.getBucket(-1));
+        assertEquals(0, AsusdecStats.getBucket(0));
+        assertEquals(0, AsusdecStats.getBucket(999));
+        // [2^(i-1), 2^i) us
+        assertEquals(1, AsusdecStats.getBucket(1000));
+        assertEquals(1, AsusdecStats.getBucket(1999));
+        assertEquals(2, AsusdecStats.getBucket(2000));
+        assertEquals(2, AsusdecStats.getBucket(3999));
+        assertEquals(3, AsusdecStats.getBucket(4000));
+        assertEquals(11, AsusdecStats.getBucket(1024 * 1000L));
+        assertEquals(10, AsusdecStats.getBucket(1024 * 1000L - 1));
+        // The last bucket takes everything above
+        assertEquals(LAST_BUCKET, AsusdecStats.getBucket((1L << (LAST_BUCKET - 1)) * 1000));
+        assertEquals(LAST_BUCKET, AsusdecStats.getBucket((1L << LAST_BUCKET) * 1000));
+        assertEquals(LAST_BUCKET, AsusdecStats.getBucket(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void recordsPerKey() {
+        AsusdecStats.Histograms histograms = new AsusdecStats.Histograms("test", 4);
+        histograms.record(1, 500);
+        histograms.record(1, 5000);
+        histograms.record(3, 5000);
+        histograms.record(500);
+        // Out of range keys are ignored
+        histograms.record(-1, 500);
+        histograms.record(4, 500);
+
+        assertEquals(1, histograms.getCount(0));
+        assertEquals(2, histograms.getCount(1));
+        assertEquals(0, histograms.getCount(2));
+        assertEquals(1, histograms.getCount(3));
+    }
+
+    @Test
+    public void concurrentRecordingIsExact() throws InterruptedException {
+        final AsusdecStats.Histograms histograms = new AsusdecStats.Histograms("test", 2);
+        final AsusdecStats.Counter counter = new AsusdecStats.Counter("test");
+        Thread[] threads = new Thread[THREADS];
+        for (int i = 0; i < THREADS; i++) {
+            final int key = i & 1;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < SAMPLES_PER_THREAD; j++) {
+                        histograms.record(key, j * 100L);
+                        counter.increment();
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(THREADS * SAMPLES_PER_THREAD, counter.get());
+        assertEquals(THREADS / 2 * SAMPLES_PER_THREAD, histograms.getCount(0));
+        assertEquals(THREADS / 2 * SAMPLES_PER_THREAD, histograms.getCount(1));
+    }
+
+    // Only this test records into the global stats, nothing else runs the
+    // touchpad natives in this process
+    @Test
+    public void dumpAndExportShowBuckets() throws IOException {
+        AsusdecStats.NATIVE_TOGGLE_TOUCHPAD.record(500);
+        AsusdecStats.NATIVE_TOGGLE_TOUCHPAD.record(1500);
+        AsusdecStats.NATIVE_TOGGLE_TOUCHPAD.record(1700);
+        AsusdecStats.NATIVE_TOGGLE_TOUCHPAD.record(3000 * 1000L);
+        AsusdecStats.HAS_NEW_DATA_HIT.increment();
+
+        StringWriter dump = new StringWriter();
+        PrintWriter pw = new PrintWriter(dump);
+        AsusdecStats.dump(pw);
+        pw.flush();
+        assertTrue(dump.toString(), dump.toString().contains(
+                "nativeToggleTouchpad: count=4 buckets(us)= <1:1 <2:2 <4096:1\n"));
+        assertTrue(dump.toString().contains("hasNewData.hit=1\n"));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        AsusdecStats.export(bytes);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(0x41534443, in.readInt());
+        assertEquals(1, in.readShort());
+        assertEquals(AsusdecStats.BUCKET_COUNT, in.readShort());
+
+        int counters = in.readShort();
+        for (int i = 0; i < counters; i++) {
+            String name = in.readUTF();
+            long value = in.readLong();
+            if (name.equals("hasNewData.hit")) {
+                assertEquals(1, value);
+            }
+        }
+
+        int histograms = in.readShort();
+        boolean found = false;
+        for (int i = 0; i < histograms; i++) {
+            String name = in.readUTF();
+            int size = in.readShort();
+            long[] buckets = new long[size * AsusdecStats.BUCKET_COUNT];
+            for (int j = 0; j < buckets.length; j++) {
+                buckets[j] = in.readLong();
+            }
+            if (name.equals("nativeToggleTouchpad")) {
+                assertEquals(1, size);
+                assertEquals(1, buckets[0]);
+                assertEquals(2, buckets[1]);
+                assertEquals(1, buckets[12]);
+                found = true;
+            }
+        }
+        assertTrue(found);
+        assertEquals(-1, in.read());
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.asusdec;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.Locale;
+
+/**
+ * Small microbenchmark runner for the host tests, JMH not being part of
+ * the platform tree. A task is warmed up, then run in timed batches; the
+ * best batch gives the time per operation, which filters out the GC and
+ * scheduling noise of the others. The bytes the running thread allocated
+ * over all the timed batches give the allocation rate.
+ */
+final class Bench {
+
+    // com.sun.management.ThreadMXBean isn't part of the Java 6 API the host
+    // build compiles against, its allocation counter is reached by
+    // reflection. A reading may allocate a few bytes itself (boxing, until
+    // the JIT removes it), which only matters to counts of a few objects.
+    private static final ThreadMXBean sThreadBean = ManagementFactory.getThreadMXBean();
+    private static final Method sGetAllocatedBytes = getAllocatedBytesMethod();
+
+    private static final int WARMUP_BATCHES = 5;
+    private static final int TIMED_BATCHES = 10;
+
+    /**
+     * One benchmarked operation.
+     */
+    abstract static class Task {
+        /**
+         * Runs the operation count times, timed.
+         */
+        abstract void run(int count) throws Exception;
+
+        /**
+         * Called between batches, not timed. Lets the operation drain what
+         * it queued.
+         */
+        void settle() throws Exception {
+        }
+    }
+
+    static final class Result {
+        final String name;
+        final double nsPerOp;
+        final double bytesPerOp;
+
+        Result(String name, double nsPerOp, double bytesPerOp) {
+            this.name = name;
+            this.nsPerOp = nsPerOp;
+            this.bytesPerOp = bytesPerOp;
+        }
+
+        @Override
+        public String toString() {
+            String bytes = bytesPerOp >= 0
+                    ? String.format(Locale.US, "%10.1f B/op", bytesPerOp) : "         n/a";
+            return String.format(Locale.US, "%-40s %12.1f ns/op %s", name, nsPerOp, bytes);
+        }
+    }
+
+    private Bench() {
+    }
+
+    /**
+     * @param batchSize the operations per batch
+     */
+    static Result run(String name, int batchSize, Task task) throws Exception {
+        for (int i = 0; i < WARMUP_BATCHES; i++) {
+            task.run(batchSize);
+            task.settle();
+        }
+
+        long best = Long.MAX_VALUE;
+        long allocated = 0;
+        for (int i = 0; i < TIMED_BATCHES; i++) {
+            long bytes = getAllocatedBytes();
+            long start = System.nanoTime();
+            task.run(batchSize);
+            long time = System.nanoTime() - start;
+            allocated += getAllocatedBytes() - bytes;
+            best = Math.min(best, time);
+            task.settle();
+        }
+
+        double bytesPerOp = sGetAllocatedBytes != null
+                ? (double) allocated / ((long) TIMED_BATCHES * batchSize) : -1;
+        return new Result(name, (double) best / batchSize, bytesPerOp);
+    }
+
+    /**
+     * Returns the bytes allocated so far by the calling thread, or -1 when
+     * the JVM can't tell.
+     */
+    static long getAllocatedBytes() {
+        if (sGetAllocatedBytes == null) {
+            return -1;
+        }
+        try {
+            return (Long) sGetAllocatedBytes.invoke(sThreadBean,
+                    Thread.currentThread().getId());
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    private static Method getAllocatedBytesMethod() {
+        try {
+            Method method = sThreadBean.getClass().getMethod("getThreadAllocatedBytes",
+                    long.class);
+            method.setAccessible(true);
+            Method supported = sThreadBean.getClass().getMethod(
+                    "isThreadAllocatedMemorySupported");
+            supported.setAccessible(true);
+            return Boolean.TRUE.equals(supported.invoke(sThreadBean)) ? method : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.asusdec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.os.IPowerManager;
+import android.os.Looper;
+import android.os.ServiceManager;
+import android.os.SystemClock;
+import android.provider.Settings;
+import android.view.KeyEvent;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Counts the binder calls and settings writes of brightness key gestures,
+ * under a fake clock: one temporary override per frame at most, and one
+ * settings write once the keys settled.
+ */
+public class BrightnessGestureTest {
+
+    private static final int SCANCODE_BRIGHTNESS_DOWN = 224;
+    private static final int SCANCODE_BRIGHTNESS_UP = 225;
+
+    private static final long FRAME_MS = 16;
+    private static final long KEY_REPEAT_MS = 50;
+    private static final long IDLE_TIMEOUT_MS = 5000;
+
+    private static CountingPowerManager sPowerManager;
+    private static ContentResolver sResolver;
+    private static KeyHandler sKeyHandler;
+
+    private int mUpdates;
+    private int mQueries;
+
+    @BeforeClass
+    public static void setUpHandler() {
+        SystemClock.setFakeTime(1000);
+        FakeSysfs.get();
+        sPowerManager = new CountingPowerManager();
+        ServiceManager.addService("power", sPowerManager);
+
+        Context context = new Context();
+        sResolver = context.getContentResolver();
+        sKeyHandler = new KeyHandler(context);
+        idle();
+    }
+
+    @Before
+    public void setUp() {
+        Settings.System.putInt(sResolver, Settings.System.SCREEN_BRIGHTNESS, 100);
+        Settings.System.putInt(sResolver, Settings.System.SCREEN_BRIGHTNESS_MODE,
+                Settings.System.SCREEN_BRIGHTNESS_MODE_MANUAL);
+        idle();
+        sPowerManager.reset();
+        mUpdates = sResolver.getUpdateCount();
+        mQueries = sResolver.getQueryCount();
+    }
+
+    @Test
+    public void singlePress() {
+        press(SCANCODE_BRIGHTNESS_UP, 0);
+        advance(FRAME_MS);
+        assertEquals(1, sPowerManager.getCallCount());
+        assertEquals(110, sPowerManager.getLastValue());
+        assertEquals(0, getUpdates());
+
+        settle();
+        assertEquals(1, sPowerManager.getCallCount());
+        assertEquals(1, getUpdates());
+        // The level is kept in memory, the provider isn't read back
+        assertEquals(0, getQueries());
+        assertEquals(110, getBrightness());
+    }
+
+    @Test
+    public void tapsWithinAFrameAreCoalesced() {
+        for (int i = 0; i < 10; i++) {
+            press(SCANCODE_BRIGHTNESS_UP, 0);
+        }
+        settle();
+        assertEquals(1, sPowerManager.getCallCount());
+        assertEquals(200, sPowerManager.getLastValue());
+        assertEquals(1, getUpdates());
+        assertEquals(200, getBrightness());
+    }
+
+    @Test
+    public void heldKeyAcceleratesAndPersistsOnce() {
+        // 100, +10 x4, +20 x4, +30 from then on, clamped to 255
+        int events = 15;
+        for (int repeat = 0; repeat < events; repeat++) {
+            press(SCANCODE_BRIGHTNESS_UP, repeat);
+            advance(KEY_REPEAT_MS);
+        }
+        List<Integer> values = sPowerManager.getValues();
+        assertEquals(events, values.size());
+        assertEquals(Integer.valueOf(110), values.get(0));
+        assertEquals(Integer.valueOf(140), values.get(3));
+        assertEquals(Integer.valueOf(160), values.get(4));
+        assertEquals(Integer.valueOf(250), values.get(8));
+        assertEquals(Integer.valueOf(255), values.get(events - 1));
+        assertEquals(0, getUpdates());
+
+        settle();
+        assertEquals(events, sPowerManager.getCallCount());
+        assertEquals(1, getUpdates());
+        assertEquals(255, getBrightness());
+    }
+
+    @Test
+    public void eachGestureStartsFromTheSetting() {
+        press(SCANCODE_BRIGHTNESS_DOWN, 0);
+        settle();
+        assertEquals(90, getBrightness());
+
+        // Someone else changed it in between
+        Settings.System.putInt(sResolver, Settings.System.SCREEN_BRIGHTNESS, 50);
+        idle();
+        mUpdates = sResolver.getUpdateCount();
+        press(SCANCODE_BRIGHTNESS_DOWN, 0);
+        settle();
+        assertEquals(40, getBrightness());
+        assertEquals(2, sPowerManager.getCallCount());
+        assertEquals(1, getUpdates());
+    }
+
+    @Test
+    public void gestureSwitchesToManualOnce() {
+        Settings.System.putInt(sResolver, Settings.System.SCREEN_BRIGHTNESS_MODE,
+                Settings.System.SCREEN_BRIGHTNESS_MODE_AUTOMATIC);
+        idle();
+        mUpdates = sResolver.getUpdateCount();
+
+        for (int repeat = 0; repeat < 5; repeat++) {
+            press(SCANCODE_BRIGHTNESS_UP, repeat);
+            advance(KEY_REPEAT_MS);
+        }
+        // The mode is written right away, for the overrides to apply
+        assertEquals(1, getUpdates());
+        assertEquals(Settings.System.SCREEN_BRIGHTNESS_MODE_MANUAL,
+                Settings.System.getInt(sResolver, Settings.System.SCREEN_BRIGHTNESS_MODE, -1));
+
+        settle();
+        assertEquals(2, getUpdates());
+        assertEquals(5, sPowerManager.getCallCount());
+    }
+
+    private static void press(int scanCode, int repeatCount) {
+        long now = SystemClock.uptimeMillis();
+        sKeyHandler.handleKeyEvent(new KeyEvent(now, now, KeyEvent.ACTION_DOWN,
+                KeyEvent.KEYCODE_UNKNOWN, repeatCount, 0, 0, scanCode));
+        idle();
+    }
+
+    private static void advance(long ms) {
+        SystemClock.advanceFakeTime(ms);
+        idle();
+    }
+
+    private static void settle() {
+        advance(BrightnessController.SETTLE_DELAY_MS);
+    }
+
+    private static void idle() {
+        assertTrue(Looper.waitForIdle(IDLE_TIMEOUT_MS));
+    }
+
+    private int getUpdates() {
+        return sResolver.getUpdateCount() - mUpdates;
+    }
+
+    private int getQueries() {
+        return sResolver.getQueryCount() - mQueries;
+    }
+
+    private static int getBrightness() {
+        return Settings.System.getInt(sResolver, Settings.System.SCREEN_BRIGHTNESS, -1);
+    }
+
+    /**
+     * Stands in for the power manager service, recording the overrides it
+     * is asked to apply.
+     */
+    private static final class CountingPowerManager extends IPowerManager.Stub {
+        private final List<Integer> mValues = new ArrayList<Integer>();
+
+        @Override
+        public synchronized void setTemporaryScreenBrightnessSettingOverride(int brightness) {
+            mValues.add(brightness);
+        }
+
+        synchronized void reset() {
+            mValues.clear();
+        }
+
+        synchronized int getCallCount() {
+            return mValues.size();
+        }
+
+        synchronized int getLastValue() {
+            return mValues.get(mValues.size() - 1);
+        }
+
+        synchronized List<Integer> getValues() {
+            return new ArrayList<Integer>(mValues);
+        }
+    }
+}
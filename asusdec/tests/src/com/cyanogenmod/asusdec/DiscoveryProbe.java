@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.asusdec;
+
+import android.content.Context;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Brings up the dock battery handler the way the battery service does at
+ * boot, in a JVM of its own: the natives discover the power supplies once
+ * per process. The fake root is kept between runs, so a run finds the
+ * discovery cache the previous one saved, unless the kernel release it
+ * reports changed.
+ */
+final class DiscoveryProbe {
+
+    static final String CACHE_FILE = "data/system/asusdec_power_supply.cache";
+
+    private static final String OUTPUT_PREFIX = "discovery:";
+
+    /**
+     * What one run measured.
+     */
+    static final class Result {
+        // From loading DockBatteryHandler to its natives being registered
+        final long registerNs;
+        // From loading DockBatteryHandler to its first update() returning
+        final long firstUseNs;
+        // Directories the natives listed while registering
+        final long opendirs;
+        final int level;
+
+        Result(long registerNs, long firstUseNs, long opendirs, int level) {
+            this.registerNs = registerNs;
+            this.firstUseNs = firstUseNs;
+            this.opendirs = opendirs;
+            this.level = level;
+        }
+    }
+
+    private DiscoveryProbe() {
+    }
+
+    /**
+     * Runs the probe on root, as a kernel of the given release.
+     */
+    static Result run(File root, String kernelRelease) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<String>();
+        command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+        command.add("-Djava.library.path=" + System.getProperty("java.library.path"));
+        command.add("-Dasusdec.sysfs.root=" + root.getPath());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(DiscoveryProbe.class.getName());
+        command.add(kernelRelease);
+
+        Process process = new ProcessBuilder(command).start();
+        // The logs, drained apart so that they don't interleave with the result
+        final InputStream errors = process.getErrorStream();
+        final StringBuilder log = new StringBuilder();
+        Thread drain = new Thread() {
+            @Override
+            public void run() {
+                log.append(readLines(errors));
+            }
+        };
+        drain.start();
+        String output = readLines(process.getInputStream());
+        int status = process.waitFor();
+        drain.join();
+        if (status != 0 || !output.startsWith(OUTPUT_PREFIX)) {
+            throw new IOException("Probe exited with " + status + ":\n" + output + log);
+        }
+
+        String[] fields = output.substring(OUTPUT_PREFIX.length()).trim().split(" ");
+        return new Result(Long.parseLong(fields[0]), Long.parseLong(fields[1]),
+                Long.parseLong(fields[2]), Integer.parseInt(fields[3]));
+    }
+
+    private static String readLines(InputStream in) {
+        StringBuilder lines = new StringBuilder();
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    lines.append(line).append('\n');
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            lines.append(e).append('\n');
+        }
+        return lines.toString();
+    }
+
+    public static void main(String[] args) throws Exception {
+        FakeSysfs.get();
+        FakeSysfs.setKernelRelease(args[0]);
+        Context context = new Context();
+        FakeSysfs.resetOpCounts();
+
+        long start = System.nanoTime();
+        Class.forName(DockBatteryHandler.class.getName());
+        long registered = System.nanoTime();
+        long opendirs = FakeSysfs.getOpCount(FakeSysfs.OP_OPENDIR);
+        DockBatteryHandler handler = new DockBatteryHandler(context);
+        handler.update();
+        long used = System.nanoTime();
+
+        int[] values = new int[FakeSysfs.ATTR_COUNT];
+        handler.nativeDockBatteryRead((1 << FakeSysfs.ATTR_COUNT) - 1, values);
+        System.out.println(OUTPUT_PREFIX + " " + (registered - start) + " " + (used - start)
+                + " " + opendirs + " " + values[FakeSysfs.ATTR_DOCK_BATTERY_CAPACITY]);
+        // The handler's threads would keep the JVM up
+        System.exit(0);
+    }
+}
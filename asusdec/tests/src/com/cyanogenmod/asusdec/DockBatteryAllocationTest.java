@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.asusdec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import android.content.Context;
+import android.os.BatteryManager;
+import android.os.Bundle;
+import android.os.Looper;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Counts what the battery service ticks allocate: nothing while the dock
+ * power state is unchanged, the notify bundle only when it is asked for.
+ */
+public class DockBatteryAllocationTest {
+
+    private static final int WARMUP_TICKS = 10000;
+    private static final int TICKS = 10000;
+
+    private static FakeSysfs sSysfs;
+    private static DockBatteryHandler sHandler;
+
+    @BeforeClass
+    public static void setUpHandler() {
+        sSysfs = FakeSysfs.get();
+        sHandler = new DockBatteryHandler(new Context());
+        assertTrue(Looper.waitForIdle(5000));
+    }
+
+    @After
+    public void tearDown() {
+        sSysfs.reset();
+        tick();
+    }
+
+    @Test
+    public void unchangedTicksAllocateNothing() {
+        assumeTrue(Bench.getAllocatedBytes() >= 0);
+        tick();
+        for (int i = 0; i < WARMUP_TICKS; i++) {
+            assertFalse(tick());
+        }
+
+        long bytes = Bench.getAllocatedBytes();
+        int newData = 0;
+        for (int i = 0; i < TICKS; i++) {
+            if (tick()) {
+                newData++;
+            }
+        }
+        long allocated = Bench.getAllocatedBytes() - bytes;
+        assertEquals(0, newData);
+        // A tick allocating anything would cost 16 bytes or more, less than a
+        // byte per tick leaves room for the readings only
+        assertTrue(allocated + " bytes allocated by " + TICKS + " unchanged ticks",
+                allocated < TICKS);
+    }
+
+    @Test
+    public void changeIsReportedOnce() {
+        tick();
+        sSysfs.setValue(FakeSysfs.ATTR_DOCK_BATTERY_CAPACITY, 33);
+        sSysfs.setValue(FakeSysfs.ATTR_AC_ONLINE, 1);
+        assertTrue(tick());
+        assertFalse(tick());
+
+        int state = sHandler.getState();
+        assertEquals(33, DockPowerState.getLevel(state));
+        assertEquals(BatteryManager.BATTERY_PLUGGED_AC, DockPowerState.getPlugged(state));
+        assertTrue(DockPowerState.isAcOnline(state));
+        assertTrue(DockPowerState.isPresent(state));
+    }
+
+    @Test
+    public void notifyDataIsSharedUntilChanged() {
+        tick();
+        Bundle first = sHandler.getNotifyData();
+        assertSame(first, sHandler.getNotifyData());
+
+        // A new state gets a new bundle, the one handed out stays as it was
+        sSysfs.setValue(FakeSysfs.ATTR_DOCK_BATTERY_CAPACITY, 81);
+        tick();
+        Bundle second = sHandler.getNotifyData();
+        assertNotSame(first, second);
+        assertEquals(80, first.getInt(BatteryManager.EXTRA_DOCK_LEVEL));
+        assertEquals(81, second.getInt(BatteryManager.EXTRA_DOCK_LEVEL));
+    }
+
+    @Test
+    public void unchangedNotifyDataAllocatesNothing() {
+        assumeTrue(Bench.getAllocatedBytes() >= 0);
+        tick();
+        for (int i = 0; i < WARMUP_TICKS; i++) {
+            sHandler.getNotifyData();
+        }
+
+        long bytes = Bench.getAllocatedBytes();
+        for (int i = 0; i < TICKS; i++) {
+            sHandler.getNotifyData();
+        }
+        long allocated = Bench.getAllocatedBytes() - bytes;
+        assertTrue(allocated + " bytes allocated by " + TICKS + " unchanged getNotifyData()",
+                allocated < TICKS);
+    }
+
+    @Test
+    public void stateWordRoundTrips() {
+        int state = DockPowerState.pack(100, BatteryManager.BATTERY_STATUS_FULL,
+                BatteryManager.BATTERY_PLUGGED_USB, true, true, false, true);
+        assertEquals(100, DockPowerState.getLevel(state));
+        assertEquals(BatteryManager.BATTERY_STATUS_FULL, DockPowerState.getStatus(state));
+        assertEquals(BatteryManager.BATTERY_PLUGGED_USB, DockPowerState.getPlugged(state));
+        assertTrue(DockPowerState.isPresent(state));
+        assertTrue(DockPowerState.isPadUsbOnline(state));
+        assertFalse(DockPowerState.isAcOnline(state));
+        assertTrue(DockPowerState.isDockAcOnline(state));
+
+        // Out of range levels are clamped, not spilled into the status
+        assertEquals(255, DockPowerState.getLevel(DockPowerState.pack(1000, 0, 0,
+                false, false, false, false)));
+        assertEquals(0, DockPowerState.getStatus(DockPowerState.pack(1000, 0, 0,
+                false, false, false, false)));
+    }
+
+    // What BatteryService does on every update
+    private static boolean tick() {
+        sHandler.update();
+        sHandler.process();
+        return sHandler.hasNewData();
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.asusdec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Starts the dock battery natives in successive processes on one fake root,
+ * as across reboots: the power supplies are scanned once per kernel, later
+ * starts load them from the discovery cache, and a cache saved by another
+ * kernel is rescanned and replaced.
+ */
+public class DockBatteryDiscoveryTest {
+
+    private static final String KERNEL = "2.6.39.4-tf101";
+    private static final String NEW_KERNEL = "3.1.10-tf101";
+
+    // The capacity FakeSysfs sets up
+    private static final int LEVEL = 80;
+
+    private File mRoot;
+
+    @Before
+    public void setUp() throws IOException {
+        mRoot = File.createTempFile("asusdec-discovery", "", FakeSysfs.getScratchDir());
+        if (!mRoot.delete() || !mRoot.mkdir()) {
+            throw new IOException("Could not create " + mRoot);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        FakeSysfs.delete(mRoot);
+    }
+
+    @Test
+    public void firstStartScansAndSavesCache() throws Exception {
+        DiscoveryProbe.Result result = DiscoveryProbe.run(mRoot, KERNEL);
+        assertTrue(result.opendirs > 0);
+        assertEquals(LEVEL, result.level);
+        assertEquals(KERNEL, getCachedRelease());
+    }
+
+    @Test
+    public void nextStartLoadsCache() throws Exception {
+        DiscoveryProbe.run(mRoot, KERNEL);
+        // Dated back, so that a rewrite shows
+        File cache = getCacheFile();
+        assertTrue(cache.setLastModified(0));
+
+        DiscoveryProbe.Result result = DiscoveryProbe.run(mRoot, KERNEL);
+        assertEquals(0, result.opendirs);
+        assertEquals(LEVEL, result.level);
+        assertEquals(0, cache.lastModified());
+    }
+
+    @Test
+    public void otherKernelRescans() throws Exception {
+        DiscoveryProbe.run(mRoot, KERNEL);
+
+        DiscoveryProbe.Result result = DiscoveryProbe.run(mRoot, NEW_KERNEL);
+        assertTrue(result.opendirs > 0);
+        assertEquals(LEVEL, result.level);
+        assertEquals(NEW_KERNEL, getCachedRelease());
+
+        // Keyed by the new kernel from then on
+        result = DiscoveryProbe.run(mRoot, NEW_KERNEL);
+        assertEquals(0, result.opendirs);
+        assertEquals(LEVEL, result.level);
+    }
+
+    private File getCacheFile() {
+        File cache = new File(mRoot, DiscoveryProbe.CACHE_FILE);
+        assertTrue(cache.isFile());
+        return cache;
+    }
+
+    // The release of the build line, the second of the cache
+    private String getCachedRelease() throws IOException {
+        BufferedReader reader = new BufferedReader(new FileReader(getCacheFile()));
+        try {
+            reader.readLine();
+            String build = reader.readLine();
+            return build.substring(0, build.indexOf(' '));
+        } finally {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.asusdec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import android.os.BatteryManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Checks the history ring on a tmpfs backed file and the drain estimator
+ * on synthetic sample streams.
+ */
+public class DockBatteryHistoryTest {
+
+    private static final int CAPACITY = 8;
+    // Must match DockBatteryHistory
+    private static final int HEADER_SIZE = 24;
+    private static final int RECORD_SIZE = 16;
+    private static final int FORCE_INTERVAL = 32;
+
+    private static final long MINUTE_MS = 60000;
+
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("dock_battery_history", ".bin", FakeSysfs.getScratchDir());
+        assertTrue(mFile.delete());
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    @Test
+    public void appendsAndReadsBack() throws IOException {
+        DockBatteryHistory history = new DockBatteryHistory(mFile, CAPACITY);
+        assertEquals(0, history.size());
+        for (int i = 0; i < 5; i++) {
+            history.append(1000 + i, draining(90 - i));
+        }
+        assertEquals(5, history.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(1000 + i, history.getTimestamp(i));
+            assertEquals(90 - i, DockPowerState.getLevel(history.getState(i)));
+            assertTrue(history.isValid(i));
+        }
+    }
+
+    @Test
+    public void keepsTheNewestWhenFull() throws IOException {
+        DockBatteryHistory history = new DockBatteryHistory(mFile, CAPACITY);
+        for (int i = 0; i < 20; i++) {
+            history.append(i, draining(100 - i));
+        }
+        assertEquals(CAPACITY, history.size());
+        assertEquals(20 - CAPACITY, history.getTimestamp(0));
+        assertEquals(19, history.getTimestamp(CAPACITY - 1));
+    }
+
+    @Test
+    public void reloadsAndContinues() throws IOException {
+        DockBatteryHistory history = new DockBatteryHistory(mFile, CAPACITY);
+        for (int i = 0; i < 10; i++) {
+            history.append(i, draining(100 - i));
+        }
+        history.force();
+
+        history = new DockBatteryHistory(mFile, CAPACITY);
+        assertEquals(CAPACITY, history.size());
+        assertEquals(2, history.getTimestamp(0));
+        history.append(10, draining(90));
+        assertEquals(3, history.getTimestamp(0));
+        assertEquals(10, history.getTimestamp(CAPACITY - 1));
+        for (int i = 0; i < CAPACITY; i++) {
+            assertTrue(history.isValid(i));
+        }
+    }
+
+    @Test
+    public void ignoresTornRecord() throws IOException {
+        DockBatteryHistory history = new DockBatteryHistory(mFile, CAPACITY);
+        for (int i = 0; i < 3; i++) {
+            history.append(i, draining(100 - i));
+        }
+        history.force();
+
+        // A crash between the record and its sequence number
+        RandomAccessFile raf = new RandomAccessFile(mFile, "rw");
+        try {
+            raf.seek(HEADER_SIZE + 2 * RECORD_SIZE + 12);
+            raf.writeInt(0);
+        } finally {
+            raf.close();
+        }
+
+        history = new DockBatteryHistory(mFile, CAPACITY);
+        assertEquals(3, history.size());
+        assertTrue(history.isValid(0));
+        assertTrue(history.isValid(1));
+        assertFalse(history.isValid(2));
+    }
+
+    @Test
+    public void startsOverOnOtherLayouts() throws IOException {
+        DockBatteryHistory history = new DockBatteryHistory(mFile, CAPACITY);
+        history.append(1, draining(50));
+        history.force();
+
+        history = new DockBatteryHistory(mFile, CAPACITY * 2);
+        assertEquals(0, history.size());
+        assertEquals(HEADER_SIZE + CAPACITY * 2 * RECORD_SIZE, mFile.length());
+    }
+
+    @Test
+    public void asksForForceEveryInterval() throws IOException {
+        DockBatteryHistory history = new DockBatteryHistory(mFile, CAPACITY);
+        int forces = 0;
+        for (int i = 1; i <= FORCE_INTERVAL * 3; i++) {
+            if (history.append(i, draining(50))) {
+                assertEquals(0, i % FORCE_INTERVAL);
+                forces++;
+            }
+        }
+        assertEquals(3, forces);
+    }
+
+    @Test
+    public void estimatesSteadyDrain() {
+        DockDrainEstimator estimator = new DockDrainEstimator();
+        // One level a minute, sampled every 10 seconds
+        long time = 0;
+        for (int level = 80; level >= 70; level--) {
+            for (int i = 0; i < 6; i++) {
+                estimator.onSample(time, draining(level));
+                time += MINUTE_MS / 6;
+            }
+        }
+        assertEquals(70 * MINUTE_MS, estimator.getTimeToEmptyMillis(), 1);
+        assertEquals(-1, estimator.getTimeToFullMillis());
+    }
+
+    @Test
+    public void estimatesCharge() {
+        DockDrainEstimator estimator = new DockDrainEstimator();
+        long time = 0;
+        for (int level = 40; level <= 60; level++) {
+            estimator.onSample(time, charging(level));
+            time += MINUTE_MS / 2;
+        }
+        assertEquals(40 * MINUTE_MS / 2, estimator.getTimeToFullMillis(), 1);
+        assertEquals(-1, estimator.getTimeToEmptyMillis());
+    }
+
+    @Test
+    public void averagesChangingRates() {
+        DockDrainEstimator estimator = new DockDrainEstimator();
+        long time = 0;
+        int level = 90;
+        for (int i = 0; i < 10; i++) {
+            estimator.onSample(time, draining(level--));
+            time += MINUTE_MS;
+        }
+        // Draining twice as fast: the estimate moves towards the new rate
+        long before = estimator.getTimeToEmptyMillis();
+        for (int i = 0; i < 3; i++) {
+            estimator.onSample(time, draining(level--));
+            time += MINUTE_MS / 2;
+        }
+        long after = estimator.getTimeToEmptyMillis();
+        assertTrue(after < before);
+        assertTrue(after > (level + 1) * MINUTE_MS / 2);
+    }
+
+    @Test
+    public void restartsOnPlugChangeAndUndock() {
+        DockDrainEstimator estimator = new DockDrainEstimator();
+        long time = 0;
+        for (int level = 80; level > 75; level--) {
+            estimator.onSample(time, draining(level));
+            time += MINUTE_MS;
+        }
+        assertTrue(estimator.getTimeToEmptyMillis() > 0);
+
+        // The first change after a restart only anchors the measurement
+        estimator.onSample(time, charging(76));
+        assertEquals(-1, estimator.getTimeToFullMillis());
+        estimator.onSample(time += MINUTE_MS, charging(77));
+        assertEquals(-1, estimator.getTimeToFullMillis());
+        estimator.onSample(time += MINUTE_MS, charging(78));
+        assertEquals(22 * MINUTE_MS, estimator.getTimeToFullMillis(), 1);
+
+        estimator.onSample(time += MINUTE_MS, DockPowerState.pack(0,
+                BatteryManager.BATTERY_STATUS_UNKNOWN, 0, false, false, false, false));
+        assertEquals(-1, estimator.getTimeToFullMillis());
+        assertEquals(-1, estimator.getTimeToEmptyMillis());
+    }
+
+    @Test
+    public void samplesCostNoAllocation() {
+        assumeTrue(Bench.getAllocatedBytes() >= 0);
+        DockDrainEstimator estimator = new DockDrainEstimator();
+        int samples = 1000000;
+        long bytes = Bench.getAllocatedBytes();
+        for (int i = 0; i < samples; i++) {
+            estimator.onSample(i * 1000L, draining(100 - (i / 1000) % 100));
+        }
+        long allocated = Bench.getAllocatedBytes() - bytes;
+        assertTrue(allocated + " bytes allocated by " + samples + " samples",
+                allocated < samples);
+    }
+
+    private static int draining(int level) {
+        return DockPowerState.pack(level, BatteryManager.BATTERY_STATUS_NOT_CHARGING, 0,
+                true, false, false, false);
+    }
+
+    private static int charging(int level) {
+        return DockPowerState.pack(level, BatteryManager.BATTERY_STATUS_CHARGING,
+                BatteryManager.BATTERY_PLUGGED_AC, true, false, false, true);
+    }
+}
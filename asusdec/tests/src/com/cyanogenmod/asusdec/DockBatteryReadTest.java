@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.asusdec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.os.BatteryManager;
+import android.os.Bundle;
+import android.os.Looper;
+import android.os.SystemProperties;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+
+/**
+ * Checks the attribute files are opened once and re-read with pread() on
+ * every tick, and only reopened when the kernel reports the node gone.
+ */
+public class DockBatteryReadTest {
+
+    // With the dock switch, ec_dock isn't read
+    private static final int PREADS_PER_TICK = 5;
+    private static final int TICKS = 100;
+
+    private static FakeSysfs sSysfs;
+    private static DockBatteryHandler sHandler;
+
+    @BeforeClass
+    public static void setUpHandler() {
+        sSysfs = FakeSysfs.get();
+        sHandler = new DockBatteryHandler(new Context());
+        assertTrue(Looper.waitForIdle(5000));
+        assertTrue(DockState.get().hasSwitch());
+        // The first tick opens the files
+        sHandler.update();
+    }
+
+    @After
+    public void tearDown() {
+        FakeSysfs.failPreads(0, 0);
+        sSysfs.reset();
+        // Reopens what a test left closed
+        tick();
+    }
+
+    @Test
+    public void ticksOnlyPread() {
+        FakeSysfs.resetOpCounts();
+        for (int i = 0; i < TICKS; i++) {
+            sHandler.update();
+        }
+        assertEquals(0, FakeSysfs.getOpCount(FakeSysfs.OP_OPEN));
+        assertEquals(0, FakeSysfs.getOpCount(FakeSysfs.OP_OPENDIR));
+        assertEquals(TICKS * PREADS_PER_TICK, FakeSysfs.getOpCount(FakeSysfs.OP_PREAD));
+    }
+
+    @Test
+    public void keptFilesSeeNewValues() {
+        sSysfs.setValue(FakeSysfs.ATTR_DOCK_BATTERY_CAPACITY, 42);
+        sSysfs.setValue(FakeSysfs.ATTR_DOCK_AC_ONLINE, 1);
+        FakeSysfs.resetOpCounts();
+        Bundle data = tick();
+        assertEquals(0, FakeSysfs.getOpCount(FakeSysfs.OP_OPEN));
+        assertEquals(42, data.getInt(BatteryManager.EXTRA_DOCK_LEVEL));
+        assertEquals(BatteryManager.BATTERY_PLUGGED_AC,
+                data.getInt(BatteryManager.EXTRA_DOCK_PLUGGED));
+    }
+
+    @Test
+    public void reopensOnNoDevice() {
+        checkReopened(FakeSysfs.ENODEV);
+    }
+
+    @Test
+    public void reopensOnStaleNode() {
+        checkReopened(FakeSysfs.ESTALE);
+    }
+
+    private void checkReopened(int error) {
+        sSysfs.setValue(FakeSysfs.ATTR_DOCK_BATTERY_STATUS,
+                BatteryManager.BATTERY_STATUS_CHARGING);
+        FakeSysfs.resetOpCounts();
+        FakeSysfs.failPreads(1, error);
+        Bundle data = tick();
+        // The failed attribute is reopened and read again, in the same tick
+        assertEquals(1, FakeSysfs.getOpCount(FakeSysfs.OP_OPEN));
+        assertEquals(PREADS_PER_TICK + 1, FakeSysfs.getOpCount(FakeSysfs.OP_PREAD));
+        assertEquals(BatteryManager.BATTERY_STATUS_CHARGING,
+                data.getInt(BatteryManager.EXTRA_DOCK_STATUS));
+
+        FakeSysfs.resetOpCounts();
+        tick();
+        assertEquals(0, FakeSysfs.getOpCount(FakeSysfs.OP_OPEN));
+    }
+
+    @Test
+    public void keepsFileOnOtherErrors() {
+        FakeSysfs.resetOpCounts();
+        FakeSysfs.failPreads(1, FakeSysfs.EIO);
+        Bundle data = tick();
+        assertEquals(0, FakeSysfs.getOpCount(FakeSysfs.OP_OPEN));
+        assertEquals(BatteryManager.BATTERY_STATUS_UNKNOWN,
+                data.getInt(BatteryManager.EXTRA_DOCK_STATUS));
+
+        data = tick();
+        assertEquals(0, FakeSysfs.getOpCount(FakeSysfs.OP_OPEN));
+        assertEquals(BatteryManager.BATTERY_STATUS_NOT_CHARGING,
+                data.getInt(BatteryManager.EXTRA_DOCK_STATUS));
+    }
+
+    @Test
+    public void missingFileIsLoggedOnce() {
+        File status = sSysfs.getFile(FakeSysfs.SUPPLY_DIR + "/"
+                + sSysfs.getDockBatteryName() + "/status");
+        long logs = FakeSysfs.getErrorLogCount();
+        assertTrue(status.delete());
+        FakeSysfs.failPreads(1, FakeSysfs.ENODEV);
+        FakeSysfs.resetOpCounts();
+        for (int i = 0; i < TICKS; i++) {
+            assertEquals(BatteryManager.BATTERY_STATUS_UNKNOWN,
+                    tick().getInt(BatteryManager.EXTRA_DOCK_STATUS));
+        }
+        // Retried on every tick, logged on the first one only
+        assertEquals(TICKS, FakeSysfs.getOpCount(FakeSysfs.OP_OPEN));
+        assertEquals(logs + 1, FakeSysfs.getErrorLogCount());
+
+        // Back, then gone again
+        sSysfs.reset();
+        assertEquals(BatteryManager.BATTERY_STATUS_NOT_CHARGING,
+                tick().getInt(BatteryManager.EXTRA_DOCK_STATUS));
+        assertTrue(status.delete());
+        FakeSysfs.failPreads(1, FakeSysfs.ENODEV);
+        tick();
+        tick();
+        assertEquals(logs + 2, FakeSysfs.getErrorLogCount());
+    }
+
+    @Test
+    public void legacyReadDecodesTheSame() {
+        int mask = (1 << FakeSysfs.ATTR_COUNT) - 1;
+        int[] legacy = new int[FakeSysfs.ATTR_COUNT];
+        int[] kept = new int[FakeSysfs.ATTR_COUNT];
+        sSysfs.setValue(FakeSysfs.ATTR_DOCK_BATTERY_STATUS,
+                BatteryManager.BATTERY_STATUS_CHARGING);
+        sSysfs.setValue(FakeSysfs.ATTR_DOCK_BATTERY_CAPACITY, 57);
+        sSysfs.setValue(FakeSysfs.ATTR_AC_ONLINE, 1);
+        sSysfs.setUpLegacyRead();
+
+        FakeSysfs.resetOpCounts();
+        assertTrue(FakeSysfs.readLegacy(legacy));
+        assertEquals(FakeSysfs.ATTR_COUNT, FakeSysfs.getOpCount(FakeSysfs.OP_OPEN));
+        assertTrue(sHandler.nativeDockBatteryRead(mask, kept));
+        assertEquals(FakeSysfs.ATTR_COUNT, FakeSysfs.getOpCount(FakeSysfs.OP_PREAD));
+        assertArrayEquals(kept, legacy);
+    }
+
+    @Test
+    public void legacyUpdateSetsTheSameState() {
+        SystemProperties.set("persist.sys.asusdec.legacy_battery", "true");
+        DockBatteryHandler legacy = new DockBatteryHandler(new Context());
+        SystemProperties.set("persist.sys.asusdec.legacy_battery", "false");
+        sSysfs.setValue(FakeSysfs.ATTR_DOCK_BATTERY_STATUS,
+                BatteryManager.BATTERY_STATUS_CHARGING);
+        sSysfs.setValue(FakeSysfs.ATTR_DOCK_BATTERY_CAPACITY, 57);
+        sSysfs.setValue(FakeSysfs.ATTR_AC_ONLINE, 1);
+
+        FakeSysfs.resetOpCounts();
+        legacy.update();
+        legacy.process();
+        // Every attribute is read, ec_dock included
+        assertEquals(FakeSysfs.ATTR_COUNT, FakeSysfs.getOpCount(FakeSysfs.OP_PREAD));
+        Bundle expected = tick();
+        Bundle data = legacy.getNotifyData();
+        assertEquals(expected.keySet(), data.keySet());
+        for (String key : expected.keySet()) {
+            assertEquals(key, expected.get(key), data.get(key));
+        }
+        assertEquals(57, data.getInt(BatteryManager.EXTRA_DOCK_LEVEL));
+    }
+
+    private static Bundle tick() {
+        sHandler.update();
+        sHandler.process();
+        sHandler.hasNewData();
+        return sHandler.getNotifyData();
+    }
+}
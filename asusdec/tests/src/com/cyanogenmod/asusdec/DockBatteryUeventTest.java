@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.asusdec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.os.BatteryManager;
+import android.os.Looper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Feeds power_supply uevents to the dock battery monitor through a socket
+ * pair, and checks each burst only re-reads the attributes of the supplies
+ * it names. Also checks the monitor can be started again after its source
+ * went away, and that a failed kernel socket is replaced.
+ */
+public class DockBatteryUeventTest {
+
+    // With the dock switch, the dock battery presence isn't read
+    private static final int DOCK_BATTERY_PREADS = 2;
+    private static final int DOCK_AC_PREADS = 1;
+    private static final int AC_PREADS = 1;
+    private static final int ALL_PREADS = 5;
+
+    private static final long TIMEOUT_MS = 5000;
+
+    private static FakeSysfs sSysfs;
+    private static DockBatteryHandler sHandler;
+    private static RecordingListener sListener;
+
+    private FakeUevents mUevents;
+
+    @BeforeClass
+    public static void setUpHandler() {
+        sSysfs = FakeSysfs.get();
+        sHandler = new DockBatteryHandler(new Context());
+        assertTrue(Looper.waitForIdle(TIMEOUT_MS));
+        assertTrue(DockState.get().hasSwitch());
+        sListener = new RecordingListener();
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        mUevents = new FakeUevents();
+        assertTrue(sHandler.startMonitoring(sListener, mUevents.getSource()));
+        sListener.clear();
+        FakeSysfs.resetOpCounts();
+    }
+
+    @After
+    public void tearDown() {
+        sListener.release();
+        sHandler.stopMonitoring();
+        mUevents.close();
+        FakeUevents.setKernelSource(null);
+        sSysfs.reset();
+        sHandler.update();
+    }
+
+    @Test
+    public void changeRereadsItsSupply() throws Exception {
+        sSysfs.setValue(FakeSysfs.ATTR_DOCK_BATTERY_CAPACITY, 42);
+        mUevents.sendPowerSupply(FakeSysfs.DOCK_BATTERY);
+        sListener.await(1);
+
+        assertEquals(0, FakeSysfs.getOpCount(FakeSysfs.OP_OPEN));
+        assertEquals(DOCK_BATTERY_PREADS, FakeSysfs.getOpCount(FakeSysfs.OP_PREAD));
+        assertEquals(42, sHandler.getNotifyData().getInt(BatteryManager.EXTRA_DOCK_LEVEL));
+    }
+
+    @Test
+    public void otherSuppliesAreIgnored() throws Exception {
+        mUevents.sendPowerSupply("battery");
+        // Only ordered after the ignored one, by the socket
+        mUevents.sendPowerSupply(FakeSysfs.DOCK_AC);
+        sListener.await(1);
+        assertTrue(Looper.waitForIdle(TIMEOUT_MS));
+
+        assertEquals(1, sListener.getCount());
+        assertEquals(0, FakeSysfs.getOpCount(FakeSysfs.OP_OPENDIR));
+        assertEquals(DOCK_AC_PREADS, FakeSysfs.getOpCount(FakeSysfs.OP_PREAD));
+    }
+
+    @Test
+    public void burstIsReadOnce() throws Exception {
+        // Hold the monitor in the first change, so the burst queues up
+        sListener.hold();
+        mUevents.sendPowerSupply(FakeSysfs.DOCK_BATTERY);
+        sListener.awaitHeld();
+        mUevents.sendPowerSupply(FakeSysfs.DOCK_BATTERY);
+        mUevents.sendPowerSupply(FakeSysfs.DOCK_AC);
+        mUevents.sendPowerSupply(FakeSysfs.AC);
+        mUevents.sendPowerSupply(FakeSysfs.DOCK_BATTERY);
+        sListener.release();
+        sListener.await(2);
+        assertTrue(Looper.waitForIdle(TIMEOUT_MS));
+
+        assertEquals(2, sListener.getCount());
+        assertEquals(2 * DOCK_BATTERY_PREADS + DOCK_AC_PREADS + AC_PREADS,
+                FakeSysfs.getOpCount(FakeSysfs.OP_PREAD));
+    }
+
+    @Test
+    public void restartsAfterSourceClosed() throws Exception {
+        long errors = FakeSysfs.getErrorLogCount();
+        mUevents.close();
+
+        // Refused while the monitor still runs, then taken once it stopped
+        FakeUevents uevents = new FakeUevents();
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!sHandler.startMonitoring(sListener, uevents.getSource())) {
+            assertTrue("Monitor not restarted", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        mUevents = uevents;
+        // The closed source and the dropped client
+        assertEquals(errors + 2, FakeSysfs.getErrorLogCount());
+
+        mUevents.sendPowerSupply(FakeSysfs.DOCK_BATTERY);
+        sListener.await(1);
+        assertEquals(DOCK_BATTERY_PREADS, FakeSysfs.getOpCount(FakeSysfs.OP_PREAD));
+    }
+
+    @Test
+    public void reopensFailedKernelSocket() throws Exception {
+        sHandler.stopMonitoring();
+        FakeUevents first = new FakeUevents();
+        FakeUevents second = new FakeUevents();
+        try {
+            FakeUevents.setKernelSource(first);
+            assertTrue(sHandler.startMonitoring(sListener));
+            first.sendPowerSupply(FakeSysfs.DOCK_BATTERY);
+            sListener.await(1);
+
+            // The failure loses whatever was sent, everything is read again
+            FakeUevents.setKernelSource(second);
+            FakeSysfs.resetOpCounts();
+            first.close();
+            sListener.await(2);
+            assertEquals(ALL_PREADS, FakeSysfs.getOpCount(FakeSysfs.OP_PREAD));
+
+            FakeSysfs.resetOpCounts();
+            second.sendPowerSupply(FakeSysfs.DOCK_AC);
+            sListener.await(3);
+            assertEquals(DOCK_AC_PREADS, FakeSysfs.getOpCount(FakeSysfs.OP_PREAD));
+            // The client stayed registered throughout
+            assertFalse(sHandler.startMonitoring(sListener));
+        } finally {
+            sHandler.stopMonitoring();
+            first.close();
+            second.close();
+        }
+    }
+
+    /**
+     * Counts the changes, and can hold the monitor thread in the next one.
+     */
+    private static final class RecordingListener
+            implements DockBatteryHandler.OnDockPowerChangedListener {
+        private int mCount;
+        private boolean mHoldNext;
+        private CountDownLatch mHeld;
+        private CountDownLatch mRelease;
+
+        @Override
+        public void onDockPowerChanged(DockBatteryHandler handler) {
+            CountDownLatch held = null;
+            CountDownLatch release = null;
+            synchronized (this) {
+                mCount++;
+                notifyAll();
+                if (mHoldNext) {
+                    mHoldNext = false;
+                    held = mHeld;
+                    release = mRelease;
+                }
+            }
+            if (held != null) {
+                held.countDown();
+                try {
+                    release.await(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        synchronized void clear() {
+            mCount = 0;
+        }
+
+        synchronized int getCount() {
+            return mCount;
+        }
+
+        synchronized void await(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+            while (mCount < count) {
+                long remaining = deadline - System.currentTimeMillis();
+                assertTrue("Timed out waiting for change " + count, remaining > 0);
+                wait(remaining);
+            }
+        }
+
+        void hold() {
+            synchronized (this) {
+                mHoldNext = true;
+                mHeld = new CountDownLatch(1);
+                mRelease = new CountDownLatch(1);
+            }
+        }
+
+        void awaitHeld() throws InterruptedException {
+            CountDownLatch held;
+            synchronized (this) {
+                held = mHeld;
+            }
+            assertTrue(held.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        }
+
+        void release() {
+            CountDownLatch release;
+            synchronized (this) {
+                release = mRelease;
+                mHoldNext = false;
+                mRelease = null;
+            }
+            if (release != null) {
+                release.countDown();
+            }
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.asusdec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Feeds scripted input_event structs to the dock key reader through a pipe,
+ * and checks which are delivered and which are dropped. Dropped events are
+ * followed by a delivered one, so they are known to have been read once it
+ * arrives.
+ */
+public class DockKeyReaderTest {
+
+    private static final int SCANCODE_A = 30;
+    private static final int SCANCODE_SCREENSHOT = 212;
+    private static final int SCANCODE_TOGGLE_BT = 237;
+    private static final int SCANCODE_TOGGLE_WIFI = 238;
+    // Out of the range of the filter
+    private static final int KEY_OK = 0x160;
+
+    private static final int[] FILTER = { SCANCODE_SCREENSHOT, SCANCODE_TOGGLE_WIFI };
+
+    // More than the events read in one go by the reader
+    private static final int BURST = 200;
+
+    private static final long TIMEOUT_MS = 5000;
+
+    private RecordingCallback mCallback;
+    private FakeInputEvents mEvents;
+    private DockKeyReader mReader;
+
+    @BeforeClass
+    public static void setUpNatives() {
+        FakeSysfs.get();
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        mCallback = new RecordingCallback();
+        mEvents = new FakeInputEvents();
+        mReader = new DockKeyReader(mCallback);
+        assertTrue(mReader.start(FILTER, mEvents.getSource()));
+        assertTrue(mReader.isRunning());
+    }
+
+    @After
+    public void tearDown() {
+        mReader.stop();
+        mEvents.close();
+    }
+
+    @Test
+    public void deliversOnlyFilteredKeys() throws Exception {
+        mEvents.key(SCANCODE_A, DockKeyReader.KEY_DOWN)
+                .key(SCANCODE_A, DockKeyReader.KEY_UP)
+                .key(SCANCODE_TOGGLE_WIFI, DockKeyReader.KEY_DOWN)
+                // A filtered code, but not a key
+                .event(FakeInputEvents.EV_MSC, SCANCODE_SCREENSHOT, 1)
+                .key(KEY_OK, DockKeyReader.KEY_DOWN)
+                .key(SCANCODE_TOGGLE_BT, DockKeyReader.KEY_DOWN)
+                .key(SCANCODE_TOGGLE_WIFI, DockKeyReader.KEY_UP)
+                .key(SCANCODE_SCREENSHOT, DockKeyReader.KEY_DOWN)
+                .flush();
+        mCallback.await(3);
+        assertEquals(3, mCallback.getCount());
+        mCallback.assertKey(0, SCANCODE_TOGGLE_WIFI, DockKeyReader.KEY_DOWN, 0);
+        mCallback.assertKey(1, SCANCODE_TOGGLE_WIFI, DockKeyReader.KEY_UP, 0);
+        mCallback.assertKey(2, SCANCODE_SCREENSHOT, DockKeyReader.KEY_DOWN, 0);
+    }
+
+    @Test
+    public void repeatsAreCounted() throws Exception {
+        mEvents.key(SCANCODE_TOGGLE_WIFI, DockKeyReader.KEY_DOWN)
+                .key(SCANCODE_TOGGLE_WIFI, DockKeyReader.KEY_REPEAT)
+                .key(SCANCODE_TOGGLE_WIFI, DockKeyReader.KEY_REPEAT)
+                .key(SCANCODE_TOGGLE_WIFI, DockKeyReader.KEY_UP)
+                .key(SCANCODE_TOGGLE_WIFI, DockKeyReader.KEY_DOWN)
+                .key(SCANCODE_TOGGLE_WIFI, DockKeyReader.KEY_REPEAT)
+                .flush();
+        mCallback.await(6);
+        mCallback.assertKey(0, SCANCODE_TOGGLE_WIFI, DockKeyReader.KEY_DOWN, 0);
+        mCallback.assertKey(1, SCANCODE_TOGGLE_WIFI, DockKeyReader.KEY_REPEAT, 1);
+        mCallback.assertKey(2, SCANCODE_TOGGLE_WIFI, DockKeyReader.KEY_REPEAT, 2);
+        mCallback.assertKey(3, SCANCODE_TOGGLE_WIFI, DockKeyReader.KEY_UP, 0);
+        mCallback.assertKey(4, SCANCODE_TOGGLE_WIFI, DockKeyReader.KEY_DOWN, 0);
+        mCallback.assertKey(5, SCANCODE_TOGGLE_WIFI, DockKeyReader.KEY_REPEAT, 1);
+    }
+
+    @Test
+    public void splitEventIsReassembled() throws Exception {
+        mEvents.event(FakeInputEvents.EV_KEY, SCANCODE_SCREENSHOT, DockKeyReader.KEY_DOWN)
+                .event(FakeInputEvents.EV_KEY, SCANCODE_SCREENSHOT, DockKeyReader.KEY_UP)
+                // Split in the value of the second key
+                .flushSplit(2 * FakeInputEvents.EVENT_SIZE - 2, 50);
+        mCallback.await(2);
+        assertEquals(2, mCallback.getCount());
+        mCallback.assertKey(0, SCANCODE_SCREENSHOT, DockKeyReader.KEY_DOWN, 0);
+        mCallback.assertKey(1, SCANCODE_SCREENSHOT, DockKeyReader.KEY_UP, 0);
+    }
+
+    @Test
+    public void burstIsDeliveredInOrder() throws Exception {
+        for (int i = 0; i < BURST; i++) {
+            // Typed text in between, dropped
+            mEvents.key(SCANCODE_A, DockKeyReader.KEY_DOWN);
+            mEvents.key(SCANCODE_TOGGLE_WIFI,
+                    i % 2 == 0 ? DockKeyReader.KEY_DOWN : DockKeyReader.KEY_UP);
+        }
+        mEvents.flush();
+        mCallback.await(BURST);
+        assertEquals(BURST, mCallback.getCount());
+        for (int i = 0; i < BURST; i++) {
+            mCallback.assertKey(i, SCANCODE_TOGGLE_WIFI,
+                    i % 2 == 0 ? DockKeyReader.KEY_DOWN : DockKeyReader.KEY_UP, 0);
+        }
+    }
+
+    @Test
+    public void scanCodesChangeWhileRunning() throws Exception {
+        mReader.setScanCodes(new int[] { SCANCODE_TOGGLE_BT });
+        mEvents.key(SCANCODE_TOGGLE_WIFI, DockKeyReader.KEY_DOWN)
+                .key(SCANCODE_SCREENSHOT, DockKeyReader.KEY_DOWN)
+                .key(SCANCODE_TOGGLE_BT, DockKeyReader.KEY_DOWN)
+                .flush();
+        mCallback.await(1);
+        assertEquals(1, mCallback.getCount());
+        mCallback.assertKey(0, SCANCODE_TOGGLE_BT, DockKeyReader.KEY_DOWN, 0);
+    }
+
+    @Test
+    public void stopsWhenSourceGoesAway() throws Exception {
+        mEvents.closeWriter();
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (mReader.isRunning()) {
+            assertTrue("Reader still running", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+
+        // Started again on a new source, eg. after the next dock
+        mEvents.close();
+        mEvents = new FakeInputEvents();
+        assertTrue(mReader.start(FILTER, mEvents.getSource()));
+        mEvents.key(SCANCODE_SCREENSHOT, DockKeyReader.KEY_DOWN).flush();
+        mCallback.await(1);
+        mCallback.assertKey(0, SCANCODE_SCREENSHOT, DockKeyReader.KEY_DOWN, 0);
+    }
+
+    @Test
+    public void startsOnlyOnce() throws Exception {
+        FakeInputEvents other = new FakeInputEvents();
+        try {
+            assertFalse(mReader.start(FILTER, other.getSource()));
+        } finally {
+            other.close();
+        }
+    }
+
+    /**
+     * Records the delivered keys.
+     */
+    private static final class RecordingCallback implements DockKeyReader.Callback {
+        private final ArrayList<int[]> mKeys = new ArrayList<int[]>();
+
+        @Override
+        public synchronized void onDockKey(int scanCode, int value, int repeatCount) {
+            mKeys.add(new int[] { scanCode, value, repeatCount });
+            notifyAll();
+        }
+
+        synchronized int getCount() {
+            return mKeys.size();
+        }
+
+        synchronized void assertKey(int index, int scanCode, int value, int repeatCount) {
+            int[] key = mKeys.get(index);
+            assertEquals("scan code of key " + index, scanCode, key[0]);
+            assertEquals("value of key " + index, value, key[1]);
+            assertEquals("repeat count of key " + index, repeatCount, key[2]);
+        }
+
+        synchronized void await(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+            while (mKeys.size() < count) {
+                long remaining = deadline - System.currentTimeMillis();
+                assertTrue("Timed out waiting for key " + count, remaining > 0);
+                wait(remaining);
+            }
+        }
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.asusdec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.os.Looper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Feeds dock switch uevent storms to the shared dock state, with the key
+ * and dock battery handlers subscribed, and counts the native operations
+ * each transition costs. Repeated and bouncing reports must cost nothing.
+ */
+public class DockStormTest {
+
+    private static final String DOCK_SWITCH = "dock";
+
+    // _IOR(0xf4, 5, int) and ASUSDEC_TP_ON of asusdec_device.h
+    private static final int ASUSDEC_TP_CONTROL = 0x8004f405;
+    private static final int ASUSDEC_TP_ON = 1;
+
+    // A dock rescans the supplies (an opendir and a type file open for each
+    // of the 4), reopens the 3 dock attributes read without ec_dock, reads
+    // the 5 attributes and reopens the control node for the touchpad ioctl
+    private static final int DOCK_OPENS = 4 + 3 + 1;
+    private static final int DOCK_OPENDIRS = 1;
+    private static final int DOCK_PREADS = 5;
+    private static final int DOCK_IOCTLS = 1;
+    // An undock only reads the pad supplies, the dock ones are stale
+    private static final int UNDOCK_PREADS = 2;
+
+    private static final int CYCLES = 20;
+    private static final int DUPLICATES = 3;
+    private static final int BOUNCES = 10;
+    private static final long TIMEOUT_MS = 5000;
+
+    private static FakeSysfs sSysfs;
+    private static FakeUevents sUevents;
+    private static RecordingListener sRecorder;
+
+    private int mGeneration;
+
+    @BeforeClass
+    public static void setUpHandlers() throws IOException {
+        sSysfs = FakeSysfs.get();
+        sUevents = new FakeUevents();
+        // Before the handlers, which would start it on the netlink socket
+        DockState.get().startMonitoring(sUevents.getSource());
+        assertTrue(DockState.get().isMonitoring());
+
+        Context context = new Context();
+        new DockBatteryHandler(context);
+        new KeyHandler(context);
+        assertTrue(Looper.waitForIdle(TIMEOUT_MS));
+
+        // Called after the handlers' listeners, so they are done with a
+        // transition once it is recorded
+        sRecorder = new RecordingListener();
+        DockState.get().addListener(sRecorder);
+    }
+
+    @Before
+    public void setUp() {
+        assertTrue(DockState.get().isDocked());
+        mGeneration = DockState.get().getGeneration();
+        sRecorder.clear();
+        FakeSysfs.resetOpCounts();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        sRecorder.release();
+        if (!DockState.get().isDocked()) {
+            int count = sRecorder.getCount();
+            sendDocked(true, 0);
+            sRecorder.await(count + 1);
+        }
+        assertTrue(Looper.waitForIdle(TIMEOUT_MS));
+    }
+
+    @Test
+    public void repeatedReportsCostNothing() throws Exception {
+        sendDocked(true, DUPLICATES);
+        // Only ordered after the duplicates, by the socket
+        sendDocked(false, DUPLICATES);
+        sRecorder.await(1);
+        assertTrue(Looper.waitForIdle(TIMEOUT_MS));
+
+        assertEquals(1, sRecorder.getCount());
+        assertEquals(mGeneration + 1, DockState.get().getGeneration());
+        assertOps(0, 1);
+    }
+
+    @Test
+    public void storm() throws Exception {
+        for (int i = 0; i < CYCLES; i++) {
+            sendDocked(false, DUPLICATES);
+            sRecorder.await(2 * i + 1);
+            sendDocked(true, DUPLICATES);
+            sRecorder.await(2 * i + 2);
+            assertTrue(Looper.waitForIdle(TIMEOUT_MS));
+        }
+
+        assertEquals(2 * CYCLES, sRecorder.getCount());
+        assertEquals(mGeneration + 2 * CYCLES, DockState.get().getGeneration());
+        for (int i = 0; i < 2 * CYCLES; i++) {
+            assertEquals(i % 2 != 0, sRecorder.isDocked(i));
+            assertEquals(mGeneration + i + 1, sRecorder.getGeneration(i));
+        }
+        assertOps(CYCLES, CYCLES);
+        int[] ioctl = FakeSysfs.getLastIoctl();
+        assertEquals(ASUSDEC_TP_CONTROL, ioctl[0]);
+        assertEquals(ASUSDEC_TP_ON, ioctl[1]);
+    }
+
+    @Test
+    public void bouncesAreCoalesced() throws Exception {
+        // Hold the monitor in the undock, so the bounces queue up behind it
+        sRecorder.hold();
+        sendDocked(false, 0);
+        sRecorder.awaitHeld();
+        for (int i = 0; i < BOUNCES; i++) {
+            sendDocked(true, 0);
+            sendDocked(false, 0);
+        }
+        sendDocked(true, 0);
+        sRecorder.release();
+        sRecorder.await(2);
+        assertTrue(Looper.waitForIdle(TIMEOUT_MS));
+
+        assertEquals(2, sRecorder.getCount());
+        assertFalse(sRecorder.isDocked(0));
+        assertTrue(sRecorder.isDocked(1));
+        assertEquals(mGeneration + 2, DockState.get().getGeneration());
+        assertOps(1, 1);
+    }
+
+    @Test
+    public void readsSwitchOnlyWithoutState() throws Exception {
+        sSysfs.setDocked(false);
+        String devpath = "/devices/virtual/switch/" + DOCK_SWITCH;
+        sUevents.send("change@" + devpath, "ACTION=change", "DEVPATH=" + devpath,
+                "SUBSYSTEM=switch", "SWITCH_NAME=" + DOCK_SWITCH);
+        sRecorder.await(1);
+        assertTrue(Looper.waitForIdle(TIMEOUT_MS));
+
+        assertFalse(sRecorder.isDocked(0));
+        assertEquals(0, FakeSysfs.getOpCount(FakeSysfs.OP_OPEN));
+        assertEquals(UNDOCK_PREADS + 1, FakeSysfs.getOpCount(FakeSysfs.OP_PREAD));
+    }
+
+    private static void sendDocked(boolean docked, int duplicates) throws IOException {
+        sSysfs.setDocked(docked);
+        for (int i = 0; i <= duplicates; i++) {
+            sUevents.sendSwitch(DOCK_SWITCH, docked ? 1 : 0);
+        }
+    }
+
+    private static void assertOps(int docks, int undocks) {
+        assertEquals(docks * DOCK_OPENS, FakeSysfs.getOpCount(FakeSysfs.OP_OPEN));
+        assertEquals(docks * DOCK_OPENDIRS, FakeSysfs.getOpCount(FakeSysfs.OP_OPENDIR));
+        assertEquals(docks * DOCK_PREADS + undocks * UNDOCK_PREADS,
+                FakeSysfs.getOpCount(FakeSysfs.OP_PREAD));
+        assertEquals(docks * DOCK_IOCTLS, FakeSysfs.getOpCount(FakeSysfs.OP_IOCTL));
+    }
+
+    /**
+     * Records the transitions, and can hold the monitor thread in the next
+     * one.
+     */
+    private static final class RecordingListener implements DockState.Listener {
+        private final ArrayList<Boolean> mDocked = new ArrayList<Boolean>();
+        private final ArrayList<Integer> mGenerations = new ArrayList<Integer>();
+        private boolean mHoldNext;
+        private CountDownLatch mHeld;
+        private CountDownLatch mRelease;
+
+        @Override
+        public void onDockStateChanged(boolean docked, int generation) {
+            CountDownLatch held = null;
+            CountDownLatch release = null;
+            synchronized (this) {
+                mDocked.add(docked);
+                mGenerations.add(generation);
+                notifyAll();
+                if (mHoldNext) {
+                    mHoldNext = false;
+                    held = mHeld;
+                    release = mRelease;
+                }
+            }
+            if (held != null) {
+                held.countDown();
+                try {
+                    release.await(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        synchronized void clear() {
+            mDocked.clear();
+            mGenerations.clear();
+        }
+
+        synchronized int getCount() {
+            return mDocked.size();
+        }
+
+        synchronized boolean isDocked(int index) {
+            return mDocked.get(index);
+        }
+
+        synchronized int getGeneration(int index) {
+            return mGenerations.get(index);
+        }
+
+        synchronized void await(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+            while (mDocked.size() < count) {
+                long remaining = deadline - System.currentTimeMillis();
+                assertTrue("Timed out waiting for transition " + count, remaining > 0);
+                wait(remaining);
+            }
+        }
+
+        void hold() {
+            synchronized (this) {
+                mHoldNext = true;
+                mHeld = new CountDownLatch(1);
+                mRelease = new CountDownLatch(1);
+            }
+        }
+
+        void awaitHeld() throws InterruptedException {
+            CountDownLatch held;
+            synchronized (this) {
+                held = mHeld;
+            }
+            assertTrue(held.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        }
+
+        void release() {
+            CountDownLatch release;
+            synchronized (this) {
+                release = mRelease;
+                mHoldNext = false;
+                mRelease = null;
+            }
+            if (release != null) {
+                release.countDown();
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.asusdec;
+
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Feeds input_event structs to the native dock key reader, through a pipe
+ * standing in for the evdev node. Events are queued, then written together
+ * as the device would hand them over in one read.
+ */
+final class FakeInputEvents {
+
+    static final int EV_SYN = 0x00;
+    static final int EV_KEY = 0x01;
+    static final int EV_MSC = 0x04;
+    static final int SYN_REPORT = 0;
+    static final int MSC_SCAN = 4;
+
+    // struct timeval, then type, code and value; as the library was built
+    static final int EVENT_SIZE = FakeSysfs.nativeInputEventSize();
+    private static final int TIME_SIZE = EVENT_SIZE - 8;
+
+    private static final int MAX_QUEUED = 2048;
+
+    private final FileDescriptor[] mPipe;
+    private final ByteBuffer mQueued;
+
+    FakeInputEvents() throws IOException {
+        mPipe = FakeSysfs.nativePipe();
+        mQueued = ByteBuffer.allocate(MAX_QUEUED * EVENT_SIZE);
+        mQueued.order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Returns the end to hand to the reader.
+     */
+    FileDescriptor getSource() {
+        return mPipe[0];
+    }
+
+    FakeInputEvents event(int type, int code, int value) {
+        for (int i = 0; i < TIME_SIZE; i++) {
+            mQueued.put((byte) 0);
+        }
+        mQueued.putShort((short) type);
+        mQueued.putShort((short) code);
+        mQueued.putInt(value);
+        return this;
+    }
+
+    /**
+     * Queues a key event as the dock reports it: the scan code, the key,
+     * then the end of the report.
+     */
+    FakeInputEvents key(int scanCode, int value) {
+        event(EV_MSC, MSC_SCAN, scanCode);
+        event(EV_KEY, scanCode, value);
+        return event(EV_SYN, SYN_REPORT, 0);
+    }
+
+    /**
+     * Writes the queued events in one write.
+     */
+    void flush() throws IOException {
+        write(0, mQueued.position());
+        mQueued.clear();
+    }
+
+    /**
+     * Writes the queued events in two writes, the first one ending at the
+     * given byte offset, ie. in the middle of an event.
+     */
+    void flushSplit(int offset, long pauseMs) throws IOException, InterruptedException {
+        write(0, offset);
+        Thread.sleep(pauseMs);
+        write(offset, mQueued.position() - offset);
+        mQueued.clear();
+    }
+
+    private void write(int offset, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        System.arraycopy(mQueued.array(), offset, bytes, 0, length);
+        FakeSysfs.nativeWrite(mPipe[1], bytes, length);
+    }
+
+    /**
+     * Closes the writing end, the reader sees the device go away.
+     */
+    void closeWriter() {
+        FakeSysfs.nativeClose(mPipe[1]);
+    }
+
+    void close() {
+        FakeSysfs.nativeClose(mPipe[1]);
+        FakeSysfs.nativeClose(mPipe[0]);
+    }
+}
@@ -0,0 +1,392 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.asusdec;
+
+import android.os.BatteryManager;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileWriter;
+import java.io.IOException;
+
+/**
+ * Fake sysfs and device root for the asusdec JNI on the host.
+ *
+ * The host library resolves the absolute paths of the JNI below this root
+ * and counts the calls that reach it, see tests/jni/host_root.cpp. The
+ * natives discover the power supplies once per process, so there is a
+ * single root per test process. It is set up before any natives are
+ * registered, as a docked TF101:
+ * <pre>
+ * sys/class/power_supply/{ac,usb,dock_battery,dock_ac}
+ * sys/class/switch/dock/state
+ * dev/asusdec (a regular file, accepts every ioctl)
+ * dev/input/
+ * data/system/
+ * </pre>
+ * The root is created on tmpfs when /dev/shm is there, like sysfs it then
+ * costs no disk I/O; the asusdec.sysfs.dir property overrides the place.
+ * With the asusdec.sysfs.root property the root is that directory instead,
+ * kept after the process exits, so that the files the natives leave in
+ * data/system are there for the next process, as across a reboot.
+ */
+final class FakeSysfs {
+
+    // Must match the OP_* enum of host_root.cpp
+    static final int OP_OPEN = 0;
+    static final int OP_OPENDIR = 1;
+    static final int OP_PREAD = 2;
+    static final int OP_IOCTL = 3;
+
+    // Linux errno values, for failPreads() and failIoctls()
+    static final int ENOENT = 2;
+    static final int EIO = 5;
+    static final int ENODEV = 19;
+    static final int ESTALE = 116;
+
+    // The attribute order of DockBatteryHandler.nativeDockBatteryRead()
+    static final int ATTR_DOCK_BATTERY_STATUS = 0;
+    static final int ATTR_DOCK_BATTERY_CAPACITY = 1;
+    static final int ATTR_DOCK_BATTERY_PRESENT = 2;
+    static final int ATTR_PAD_USB_ONLINE = 3;
+    static final int ATTR_AC_ONLINE = 4;
+    static final int ATTR_DOCK_AC_ONLINE = 5;
+    static final int ATTR_COUNT = 6;
+
+    static final String SUPPLY_DIR = "sys/class/power_supply";
+    static final String SWITCH_STATE = "sys/class/switch/dock/state";
+    static final String DEVICE_NODE = "dev/asusdec";
+
+    static final String AC = "ac";
+    static final String USB = "usb";
+    static final String DOCK_BATTERY = "dock_battery";
+    static final String DOCK_AC = "dock_ac";
+
+    private static final String SHM_DIR = "/dev/shm";
+
+    private static FakeSysfs sInstance;
+
+    private final File mRoot;
+    private String mDockBattery = DOCK_BATTERY;
+    private String mDockAc = DOCK_AC;
+
+    static synchronized FakeSysfs get() {
+        if (sInstance == null) {
+            try {
+                sInstance = new FakeSysfs();
+            } catch (IOException e) {
+                throw new RuntimeException("Could not create the fake sysfs", e);
+            }
+        }
+        return sInstance;
+    }
+
+    private FakeSysfs() throws IOException {
+        String kept = System.getProperty("asusdec.sysfs.root");
+        if (kept != null) {
+            mRoot = new File(kept).getCanonicalFile();
+        } else {
+            File root = File.createTempFile("asusdec-sysfs", "", getScratchDir());
+            if (!root.delete() || !root.mkdir()) {
+                throw new IOException("Could not create " + root);
+            }
+            mRoot = root.getCanonicalFile();
+            Runtime.getRuntime().addShutdownHook(new Thread() {
+                @Override
+                public void run() {
+                    delete(mRoot);
+                }
+            });
+        }
+
+        mkdirs("dev/input");
+        mkdirs("data/system");
+        write(DEVICE_NODE, "");
+        addSupply(AC, "Mains");
+        addSupply(USB, "USB");
+        addSupply(DOCK_BATTERY, "DockBattery");
+        addSupply(DOCK_AC, "DockAC");
+        reset();
+
+        AsusdecNative.loadAsusdecLib();
+        nativeSetRoot(mRoot.getPath());
+    }
+
+    /**
+     * Returns the directory for scratch files standing in for device files,
+     * on tmpfs when possible; null for java.io.tmpdir.
+     */
+    static File getScratchDir() {
+        String dir = System.getProperty("asusdec.sysfs.dir");
+        if (dir != null) {
+            return new File(dir);
+        }
+        File shm = new File(SHM_DIR);
+        return shm.isDirectory() && shm.canWrite() ? shm : null;
+    }
+
+    File getRoot() {
+        return mRoot;
+    }
+
+    File getFile(String path) {
+        return new File(mRoot, path);
+    }
+
+    /**
+     * Puts every node back to a docked, unplugged TF101.
+     */
+    void reset() {
+        write(SWITCH_STATE, "1");
+        setValue(ATTR_DOCK_BATTERY_STATUS, BatteryManager.BATTERY_STATUS_NOT_CHARGING);
+        setValue(ATTR_DOCK_BATTERY_CAPACITY, 80);
+        setValue(ATTR_DOCK_BATTERY_PRESENT, 1);
+        setValue(ATTR_PAD_USB_ONLINE, 0);
+        setValue(ATTR_AC_ONLINE, 0);
+        setValue(ATTR_DOCK_AC_ONLINE, 0);
+    }
+
+    /**
+     * Writes an attribute the way the driver presents it.
+     *
+     * @param value the decoded value, as read by nativeDockBatteryRead()
+     */
+    void setValue(int attr, int value) {
+        switch (attr) {
+            case ATTR_DOCK_BATTERY_STATUS:
+                write(supplyPath(mDockBattery, "status"), getStatusText(value));
+                break;
+            case ATTR_DOCK_BATTERY_CAPACITY:
+                write(supplyPath(mDockBattery, "capacity"), Integer.toString(value));
+                break;
+            case ATTR_DOCK_BATTERY_PRESENT:
+                write(supplyPath(mDockBattery, "device/ec_dock"),
+                        "dock detect = " + (value != 0 ? 1 : 0));
+                break;
+            case ATTR_PAD_USB_ONLINE:
+                write(supplyPath(USB, "online"), value != 0 ? "1" : "0");
+                break;
+            case ATTR_AC_ONLINE:
+                write(supplyPath(AC, "online"), value != 0 ? "1" : "0");
+                break;
+            case ATTR_DOCK_AC_ONLINE:
+                write(supplyPath(mDockAc, "online"), value != 0 ? "1" : "0");
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown attribute " + attr);
+        }
+    }
+
+    /**
+     * Writes the attributes selected by mask, values being indexed by
+     * attribute.
+     */
+    void setValues(int mask, int[] values) {
+        for (int i = 0; i < ATTR_COUNT; i++) {
+            if ((mask & (1 << i)) != 0) {
+                setValue(i, values[i]);
+            }
+        }
+    }
+
+    private static String getStatusText(int status) {
+        switch (status) {
+            case BatteryManager.BATTERY_STATUS_CHARGING:
+                return "Charging";
+            case BatteryManager.BATTERY_STATUS_NOT_CHARGING:
+                return "Not charging";
+            default:
+                return "Unknown";
+        }
+    }
+
+    /**
+     * Flips the dock switch and the EC dock detection together.
+     */
+    void setDocked(boolean docked) {
+        write(SWITCH_STATE, docked ? "1" : "0");
+        setValue(ATTR_DOCK_BATTERY_PRESENT, docked ? 1 : 0);
+    }
+
+    /**
+     * Removes the dock switch node, as on kernels without the switch.
+     */
+    void removeSwitch() {
+        getFile(SWITCH_STATE).delete();
+    }
+
+    /**
+     * Unregisters the dock supplies, as when the dock driver goes away.
+     */
+    void removeDockSupplies() {
+        delete(getFile(SUPPLY_DIR + "/" + mDockBattery));
+        delete(getFile(SUPPLY_DIR + "/" + mDockAc));
+    }
+
+    /**
+     * Registers the dock supplies again, under the given names, with the
+     * values of {@link #reset()}.
+     */
+    void addDockSupplies(String battery, String ac) {
+        mDockBattery = battery;
+        mDockAc = ac;
+        addSupply(battery, "DockBattery");
+        addSupply(ac, "DockAC");
+        setValue(ATTR_DOCK_BATTERY_STATUS, BatteryManager.BATTERY_STATUS_NOT_CHARGING);
+        setValue(ATTR_DOCK_BATTERY_CAPACITY, 80);
+        setValue(ATTR_DOCK_BATTERY_PRESENT, 1);
+        setValue(ATTR_DOCK_AC_ONLINE, 0);
+    }
+
+    String getDockBatteryName() {
+        return mDockBattery;
+    }
+
+    private void addSupply(String name, String type) {
+        mkdirs(SUPPLY_DIR + "/" + name + "/device");
+        write(supplyPath(name, "type"), type);
+    }
+
+    private static String supplyPath(String supply, String attr) {
+        return SUPPLY_DIR + "/" + supply + "/" + attr;
+    }
+
+    private void mkdirs(String path) {
+        File dir = getFile(path);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new RuntimeException("Could not create " + dir);
+        }
+    }
+
+    // Rewrites the file in place, so that open descriptors see the change
+    private void write(String path, String value) {
+        File file = getFile(path);
+        file.getParentFile().mkdirs();
+        try {
+            FileWriter writer = new FileWriter(file);
+            try {
+                writer.write(value + "\n");
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write " + file, e);
+        }
+    }
+
+    static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * Makes uname() report release to the natives, which key their power
+     * supply discovery cache by the kernel. Must be called before the
+     * DockBatteryHandler natives are registered.
+     */
+    static void setKernelRelease(String release) {
+        nativeSetKernelRelease(release);
+    }
+
+    /**
+     * Returns the number of calls of one kind (OP_*) the natives made.
+     */
+    static long getOpCount(int op) {
+        return nativeGetOpCount(op);
+    }
+
+    static void resetOpCounts() {
+        nativeResetOpCounts();
+    }
+
+    /**
+     * Returns the request and argument of the last ioctl on a fake node.
+     */
+    static int[] getLastIoctl() {
+        int[] requestAndArg = new int[2];
+        nativeGetLastIoctl(requestAndArg);
+        return requestAndArg;
+    }
+
+    /**
+     * Makes the next count pread() calls of the natives fail with error.
+     */
+    static void failPreads(int count, int error) {
+        nativeFailPreads(count, error);
+    }
+
+    /**
+     * Makes the next count ioctl() calls of the natives fail with error.
+     */
+    static void failIoctls(int count, int error) {
+        nativeFailIoctls(count, error);
+    }
+
+    /**
+     * Sets up {@link #readLegacy(int[])} to read the attributes, in the order
+     * of nativeDockBatteryRead().
+     */
+    void setUpLegacyRead() {
+        nativeSetLegacyPaths(new String[] {
+            "/" + supplyPath(mDockBattery, "status"),
+            "/" + supplyPath(mDockBattery, "capacity"),
+            "/" + supplyPath(mDockBattery, "device/ec_dock"),
+            "/" + supplyPath(USB, "online"),
+            "/" + supplyPath(AC, "online"),
+            "/" + supplyPath(mDockAc, "online"),
+        });
+    }
+
+    /**
+     * Reads and decodes every attribute into values the way a battery tick
+     * did before the JNI kept them open, an open/read/close each.
+     */
+    static boolean readLegacy(int[] values) {
+        return nativeReadLegacy(values);
+    }
+
+    /**
+     * Returns the number of warnings and errors the natives logged.
+     */
+    static long getErrorLogCount() {
+        return nativeGetErrorLogCount();
+    }
+
+    static native void nativeSetRoot(String root);
+    static native void nativeSetKernelRelease(String release);
+    static native long nativeGetOpCount(int op);
+    static native void nativeResetOpCounts();
+    static native void nativeGetLastIoctl(int[] requestAndArg);
+    static native FileDescriptor[] nativeSocketPair() throws IOException;
+    static native void nativeSend(FileDescriptor fd, byte[] message, int length)
+            throws IOException;
+    static native FileDescriptor[] nativePipe() throws IOException;
+    static native void nativeWrite(FileDescriptor fd, byte[] bytes, int length)
+            throws IOException;
+    static native int nativeInputEventSize();
+    static native void nativeClose(FileDescriptor fd);
+    static native void nativeFailPreads(int count, int error);
+    static native void nativeFailIoctls(int count, int error);
+    static native void nativeSetLegacyPaths(String[] paths);
+    static native boolean nativeReadLegacy(int[] values);
+    static native long nativeGetErrorLogCount();
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.asusdec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileDescriptor;
+import java.io.IOException;
+
+/**
+ * Feeds kernel-like uevent messages to the native uevent monitor, through
+ * a socket pair standing in for the netlink socket.
+ */
+final class FakeUevents {
+
+    private final FileDescriptor[] mPair;
+    private int mSeqnum;
+
+    FakeUevents() throws IOException {
+        mPair = FakeSysfs.nativeSocketPair();
+    }
+
+    /**
+     * Returns the end to hand to the monitor.
+     */
+    FileDescriptor getSource() {
+        return mPair[0];
+    }
+
+    void sendSwitch(String name, int state) throws IOException {
+        String devpath = "/devices/virtual/switch/" + name;
+        send("change@" + devpath, "ACTION=change", "DEVPATH=" + devpath,
+                "SUBSYSTEM=switch", "SWITCH_NAME=" + name, "SWITCH_STATE=" + state);
+    }
+
+    void sendPowerSupply(String name) throws IOException {
+        String devpath = "/devices/platform/tegra-i2c.1/i2c-1/1-0019/power_supply/" + name;
+        send("change@" + devpath, "ACTION=change", "DEVPATH=" + devpath,
+                "SUBSYSTEM=power_supply", "POWER_SUPPLY_NAME=" + name);
+    }
+
+    /**
+     * Sends one message made of the given NUL terminated fields, plus a
+     * sequence number.
+     */
+    void send(String... fields) throws IOException {
+        ByteArrayOutputStream message = new ByteArrayOutputStream();
+        for (String field : fields) {
+            writeField(message, field);
+        }
+        writeField(message, "SEQNUM=" + (++mSeqnum));
+        FakeSysfs.nativeSend(mPair[1], message.toByteArray(), message.size());
+    }
+
+    private static void writeField(ByteArrayOutputStream message, String field) {
+        byte[] bytes = field.getBytes();
+        message.write(bytes, 0, bytes.length);
+        message.write(0);
+    }
+
+    /**
+     * Makes the given uevents, or nothing if null, stand in for the kernel
+     * netlink socket the next time a monitor opens it.
+     */
+    static void setKernelSource(FakeUevents uevents) {
+        nativeSetKernelSource(uevents != null ? uevents.getSource() : null);
+    }
+
+    /**
+     * Closes the sending end, the monitor sees the source go away.
+     */
+    void close() {
+        FakeSysfs.nativeClose(mPair[1]);
+        FakeSysfs.nativeClose(mPair[0]);
+    }
+
+    private static native void nativeSetKernelSource(FileDescriptor fd);
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.asusdec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.os.Looper;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Smoke tests of the key action executor: actions run in order on its own
+ * thread, a full queue drops requests and counts them, and a failing
+ * action does not stop the ones behind it.
+ */
+public class KeyActionExecutorTest {
+
+    private static final int CAPACITY = 4;
+    private static final long TIMEOUT_MS = 5000;
+
+    private KeyActionExecutor mExecutor;
+    private List<String> mRuns;
+
+    @Before
+    public void setUp() {
+        mExecutor = new KeyActionExecutor(CAPACITY);
+        mRuns = Collections.synchronizedList(new ArrayList<String>());
+    }
+
+    @Test
+    public void dispatchRunsInOrderOnExecutorThread() {
+        RecordingAction first = new RecordingAction("FIRST", true, false);
+        RecordingAction second = new RecordingAction("SECOND", false, true);
+
+        assertTrue(first.dispatch(0, mExecutor));
+        assertFalse(second.dispatch(3, mExecutor));
+        first.dispatch(0, mExecutor);
+        idle();
+
+        assertEquals(3, mRuns.size());
+        assertEquals("FIRST 0", mRuns.get(0));
+        assertEquals("SECOND 3", mRuns.get(1));
+        assertEquals("FIRST 0", mRuns.get(2));
+        assertSame(mExecutor.getLooper().getThread(), first.mThread);
+        assertNotSame(Thread.currentThread(), first.mThread);
+        assertEquals(0, mExecutor.getQueueDepth());
+    }
+
+    @Test
+    public void fullQueueDropsAndCounts() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        KeyActionTable.Action stalled = new KeyActionTable.Action("STALLED", true) {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    release.await(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        RecordingAction queued = new RecordingAction("QUEUED", true, false);
+
+        assertTrue(mExecutor.execute(stalled, 0));
+        assertTrue(started.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        // The stalled action still counts against the capacity
+        for (int i = 1; i < CAPACITY; i++) {
+            assertTrue(mExecutor.execute(queued, 0));
+        }
+        assertFalse(mExecutor.execute(queued, 0));
+        assertFalse(mExecutor.execute(queued, 0));
+        assertEquals(CAPACITY, mExecutor.getQueueDepth());
+        assertEquals(2, mExecutor.getRejectedCount());
+
+        release.countDown();
+        idle();
+        assertEquals(CAPACITY - 1, mRuns.size());
+        assertEquals(0, mExecutor.getQueueDepth());
+        assertEquals(CAPACITY, mExecutor.getMaxQueueDepth());
+
+        // Room again once drained
+        assertTrue(mExecutor.execute(queued, 0));
+        idle();
+        assertEquals(CAPACITY, mRuns.size());
+    }
+
+    @Test
+    public void failingActionDoesNotStopQueue() {
+        KeyActionTable.Action failing = new KeyActionTable.Action("FAILING", true) {
+            @Override
+            public void run() {
+                throw new IllegalStateException("Service not there");
+            }
+        };
+        RecordingAction next = new RecordingAction("NEXT", true, false);
+
+        assertTrue(mExecutor.execute(failing, 0));
+        assertTrue(mExecutor.execute(next, 0));
+        idle();
+
+        assertEquals(1, mRuns.size());
+        assertEquals(0, mExecutor.getQueueDepth());
+        // Both runs are recorded, the failed one included
+        assertTrue(dump(failing).contains("runs=1"));
+        assertTrue(dump(next).contains("runs=1"));
+    }
+
+    private static String dump(KeyActionTable.Action action) {
+        StringWriter out = new StringWriter();
+        PrintWriter pw = new PrintWriter(out);
+        action.dump(pw);
+        pw.flush();
+        return out.toString();
+    }
+
+    private static void idle() {
+        assertTrue(Looper.waitForIdle(TIMEOUT_MS));
+    }
+
+    private final class RecordingAction extends KeyActionTable.Action {
+        volatile Thread mThread;
+
+        RecordingAction(String name, boolean consumesEvent, boolean acceptsRepeats) {
+            super(name, consumesEvent, acceptsRepeats);
+        }
+
+        @Override
+        void run(int repeatCount) {
+            mThread = Thread.currentThread();
+            mRuns.add(getName() + " " + repeatCount);
+        }
+
+        @Override
+        public void run() {
+            run(0);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.asusdec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks the scan code table: defaults, config file overrides, reloads on
+ * change, and an allocation free lookup.
+ */
+public class KeyActionTableTest {
+
+    private static final int SCANCODE_TOGGLE_WIFI = 238;
+    private static final int SCANCODE_SETTINGS = 62;
+    private static final int SCANCODE_F5 = 63;
+
+    private File mDir;
+    private File mConfigFile;
+    private KeyActionTable.Action mWifi;
+    private KeyActionTable.Action mSettings;
+    private KeyActionTable mTable;
+
+    @Before
+    public void setUp() throws IOException {
+        mDir = File.createTempFile("asusdec-keylayout", "");
+        assertTrue(mDir.delete() && mDir.mkdir());
+        mConfigFile = new File(mDir, "asusdec_actions.conf");
+
+        mWifi = new NamedAction("TOGGLE_WIFI");
+        mSettings = new NamedAction("SETTINGS");
+        KeyActionTable.Action[] defaults = new KeyActionTable.Action[256];
+        defaults[SCANCODE_TOGGLE_WIFI] = mWifi;
+        defaults[SCANCODE_SETTINGS] = mSettings;
+        Map<String, KeyActionTable.Action> byName = new HashMap<String, KeyActionTable.Action>();
+        byName.put(mWifi.getName(), mWifi);
+        byName.put(mSettings.getName(), mSettings);
+        mTable = new KeyActionTable(mConfigFile, defaults, byName);
+    }
+
+    @After
+    public void tearDown() {
+        mConfigFile.delete();
+        mDir.delete();
+    }
+
+    @Test
+    public void usesDefaultsWithoutConfig() {
+        mTable.load();
+        assertSame(mWifi, mTable.get(SCANCODE_TOGGLE_WIFI));
+        assertSame(mSettings, mTable.get(SCANCODE_SETTINGS));
+        assertNull(mTable.get(SCANCODE_F5));
+        assertNull(mTable.get(-1));
+        assertNull(mTable.get(256));
+    }
+
+    @Test
+    public void configOverridesDefaults() throws IOException {
+        writeConfig("# F5 opens the settings, F4 does nothing\n"
+                + "key 63 SETTINGS\n"
+                + "key 62 NONE\n"
+                + "key 300 SETTINGS\n"
+                + "key 64 UNKNOWN\n"
+                + "bogus line\n");
+        mTable.load();
+        assertSame(mSettings, mTable.get(SCANCODE_F5));
+        assertNull(mTable.get(SCANCODE_SETTINGS));
+        assertSame(mWifi, mTable.get(SCANCODE_TOGGLE_WIFI));
+        assertNull(mTable.get(64));
+        assertEquals(2, mTable.getBoundScanCodes().length);
+    }
+
+    @Test
+    public void reloadsOnChange() throws Exception {
+        final Semaphore loaded = new Semaphore(0);
+        mTable.setListener(new KeyActionTable.Listener() {
+            @Override
+            public void onTableLoaded() {
+                loaded.release();
+            }
+        });
+        mTable.load();
+        mTable.startWatching();
+
+        writeConfig("key 63 TOGGLE_WIFI\n");
+        assertTrue(waitForBinding(loaded, SCANCODE_F5, mWifi));
+
+        // Removing the file goes back to the defaults
+        assertTrue(mConfigFile.delete());
+        assertTrue(waitForBinding(loaded, SCANCODE_F5, null));
+        assertSame(mSettings, mTable.get(SCANCODE_SETTINGS));
+    }
+
+    // The watcher may see a write in several steps, wait for the last load
+    private boolean waitForBinding(Semaphore loaded, int scanCode,
+            KeyActionTable.Action action) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (mTable.get(scanCode) != action) {
+            long left = deadline - System.currentTimeMillis();
+            if (left <= 0 || !loaded.tryAcquire(left, TimeUnit.MILLISECONDS)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Test
+    public void lookupAllocatesNothing() {
+        assumeTrue(Bench.getAllocatedBytes() >= 0);
+        mTable.load();
+        int found = 0;
+        for (int i = 0; i < 100000; i++) {
+            if (mTable.get(i & 0xff) != null) {
+                found++;
+            }
+        }
+
+        long bytes = Bench.getAllocatedBytes();
+        for (int i = 0; i < 100000; i++) {
+            if (mTable.get(i & 0xff) != null) {
+                found++;
+            }
+        }
+        long allocated = Bench.getAllocatedBytes() - bytes;
+        assertTrue(found > 0);
+        assertTrue(allocated + " bytes allocated by 100000 lookups", allocated < 100000);
+    }
+
+    private void writeConfig(String config) throws IOException {
+        FileWriter writer = new FileWriter(mConfigFile);
+        try {
+            writer.write(config);
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static final class NamedAction extends KeyActionTable.Action {
+        NamedAction(String name) {
+            super(name, true);
+        }
+
+        @Override
+        public void run() {
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.asusdec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.provider.Settings;
+import android.view.KeyEvent;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Counts the settings provider queries and writes of scripted key press
+ * bursts, under a fake clock: the touchpad state is written once the
+ * presses settled or at shutdown, the cached settings are read from memory
+ * and changes made by others are picked up.
+ */
+public class KeySettingsTest {
+
+    private static final int SCANCODE_TOGGLE_TOUCHPAD = 60;
+    private static final int SCANCODE_BRIGHTNESS_AUTO = 61;
+
+    private static final String TOUCHPAD_STATUS = "touchpad_status";
+
+    private static final long PRESS_INTERVAL_MS = 100;
+    private static final long IDLE_TIMEOUT_MS = 5000;
+
+    private static Context sContext;
+    private static ContentResolver sResolver;
+    private static KeyHandler sKeyHandler;
+
+    private int mUpdates;
+    private int mQueries;
+
+    @BeforeClass
+    public static void setUpHandler() {
+        SystemClock.setFakeTime(1000);
+        FakeSysfs.get();
+        sContext = new Context();
+        sResolver = sContext.getContentResolver();
+        Settings.Secure.putInt(sResolver, TOUCHPAD_STATUS, 1);
+        Settings.System.putInt(sResolver, Settings.System.SCREEN_BRIGHTNESS_MODE,
+                Settings.System.SCREEN_BRIGHTNESS_MODE_MANUAL);
+        sKeyHandler = new KeyHandler(sContext);
+        idle();
+    }
+
+    @Before
+    public void setUp() {
+        assertEquals(1, getTouchpadStatus());
+        mUpdates = sResolver.getUpdateCount();
+        mQueries = sResolver.getQueryCount();
+    }
+
+    @After
+    public void tearDown() {
+        advance(KeySettings.FLUSH_DELAY_MS);
+        // Leave the touchpad enabled for the next test
+        if (getTouchpadStatus() == 0) {
+            press(SCANCODE_TOGGLE_TOUCHPAD);
+            advance(KeySettings.FLUSH_DELAY_MS);
+        }
+    }
+
+    @Test
+    public void burstIsWrittenOnce() {
+        for (int i = 0; i < 9; i++) {
+            press(SCANCODE_TOGGLE_TOUCHPAD);
+            advance(PRESS_INTERVAL_MS);
+        }
+        assertEquals(0, getUpdates());
+
+        advance(KeySettings.FLUSH_DELAY_MS);
+        assertEquals(1, getUpdates());
+        assertEquals(0, getTouchpadStatus());
+        // Only the reads of the test, the notification of the write isn't
+        // read back
+        assertEquals(1, getQueries());
+    }
+
+    @Test
+    public void burstBackToTheStoredValueWritesNothing() {
+        for (int i = 0; i < 10; i++) {
+            press(SCANCODE_TOGGLE_TOUCHPAD);
+            advance(PRESS_INTERVAL_MS);
+        }
+        advance(KeySettings.FLUSH_DELAY_MS);
+        assertEquals(0, getUpdates());
+        assertEquals(0, getQueries());
+    }
+
+    @Test
+    public void eachPressDelaysTheWrite() {
+        press(SCANCODE_TOGGLE_TOUCHPAD);
+        advance(KeySettings.FLUSH_DELAY_MS - PRESS_INTERVAL_MS);
+        press(SCANCODE_TOGGLE_TOUCHPAD);
+        press(SCANCODE_TOGGLE_TOUCHPAD);
+        advance(KeySettings.FLUSH_DELAY_MS - PRESS_INTERVAL_MS);
+        assertEquals(0, getUpdates());
+
+        advance(PRESS_INTERVAL_MS);
+        assertEquals(1, getUpdates());
+        assertEquals(0, getTouchpadStatus());
+    }
+
+    @Test
+    public void shutdownFlushes() {
+        for (int i = 0; i < 3; i++) {
+            press(SCANCODE_TOGGLE_TOUCHPAD);
+        }
+        sContext.sendBroadcast(new Intent(Intent.ACTION_SHUTDOWN));
+        idle();
+        assertEquals(1, getUpdates());
+        assertEquals(0, getTouchpadStatus());
+
+        // Nothing left for the timer
+        advance(KeySettings.FLUSH_DELAY_MS);
+        assertEquals(1, getUpdates());
+    }
+
+    @Test
+    public void pendingWriteWinsOverOtherChange() {
+        press(SCANCODE_TOGGLE_TOUCHPAD);
+        press(SCANCODE_TOGGLE_TOUCHPAD);
+        // Someone else disables it while our enable is pending
+        Settings.Secure.putInt(sResolver, TOUCHPAD_STATUS, 0);
+        idle();
+        assertEquals(1, getUpdates());
+        // The change is read once, by the observer
+        assertEquals(1, getQueries());
+
+        advance(KeySettings.FLUSH_DELAY_MS);
+        assertEquals(2, getUpdates());
+        assertEquals(1, getTouchpadStatus());
+    }
+
+    @Test
+    public void otherChangeIsReadOnce() {
+        Settings.System.putInt(sResolver, Settings.System.SCREEN_BRIGHTNESS_MODE,
+                Settings.System.SCREEN_BRIGHTNESS_MODE_AUTOMATIC);
+        idle();
+        assertEquals(1, getQueries());
+        mUpdates = sResolver.getUpdateCount();
+
+        // Toggles from the changed mode, read from memory and written right
+        // away for the power manager
+        int mode = Settings.System.SCREEN_BRIGHTNESS_MODE_AUTOMATIC;
+        for (int i = 0; i < 4; i++) {
+            press(SCANCODE_BRIGHTNESS_AUTO);
+            mode = mode == Settings.System.SCREEN_BRIGHTNESS_MODE_MANUAL
+                    ? Settings.System.SCREEN_BRIGHTNESS_MODE_AUTOMATIC
+                    : Settings.System.SCREEN_BRIGHTNESS_MODE_MANUAL;
+            assertEquals(i + 1, getUpdates());
+            assertEquals(mode, Settings.System.getInt(sResolver,
+                    Settings.System.SCREEN_BRIGHTNESS_MODE, -1));
+        }
+        // The test's own reads only
+        assertEquals(1 + 4, getQueries());
+
+        press(SCANCODE_BRIGHTNESS_AUTO);
+        assertEquals(Settings.System.SCREEN_BRIGHTNESS_MODE_MANUAL, Settings.System.getInt(
+                sResolver, Settings.System.SCREEN_BRIGHTNESS_MODE, -1));
+    }
+
+    private static void press(int scanCode) {
+        long now = SystemClock.uptimeMillis();
+        sKeyHandler.handleKeyEvent(new KeyEvent(now, now, KeyEvent.ACTION_DOWN,
+                KeyEvent.KEYCODE_UNKNOWN, 0, 0, 0, scanCode));
+        idle();
+    }
+
+    private static void advance(long ms) {
+        SystemClock.advanceFakeTime(ms);
+        idle();
+    }
+
+    private static void idle() {
+        assertTrue(Looper.waitForIdle(IDLE_TIMEOUT_MS));
+    }
+
+    private int getUpdates() {
+        return sResolver.getUpdateCount() - mUpdates;
+    }
+
+    private int getQueries() {
+        return sResolver.getQueryCount() - mQueries;
+    }
+
+    private static int getTouchpadStatus() {
+        return Settings.Secure.getInt(sResolver, TOUCHPAD_STATUS, -1);
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.asusdec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Messenger;
+import android.os.RemoteException;
+import android.os.SystemClock;
+import android.view.KeyEvent;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Measures the press to capture latency of the screenshot key against a
+ * local stand-in of the SystemUI screenshot service, for single presses
+ * and bursts, and checks the binding is kept warm for the idle window and
+ * bursts are queued rather than dropped.
+ *
+ * The clock is fake, the service takes CAPTURE_MS of it per capture; the
+ * latencies are real time, from the key event to the service receiving
+ * the request.
+ */
+public class ScreenshotLatencyTest {
+
+    private static final ComponentName SCREENSHOT_SERVICE = new ComponentName(
+            "com.android.systemui", "com.android.systemui.screenshot.TakeScreenshotService");
+
+    private static final int SCANCODE_SCREENSHOT = 212;
+    private static final long CAPTURE_MS = 300;
+    private static final long IDLE_WINDOW_MS = 30000;
+    private static final long IDLE_TIMEOUT_MS = 5000;
+    // Sanity bound of a press to capture latency, far above the real one
+    private static final long MAX_LATENCY_NS = 1000000000L;
+
+    private static Context sContext;
+    private static KeyHandler sKeyHandler;
+    private static FakeScreenshotService sService;
+
+    private int mBinds;
+    private int mUnbinds;
+
+    @BeforeClass
+    public static void setUpHandler() {
+        SystemClock.setFakeTime(1000);
+        FakeSysfs.get();
+        sContext = new Context();
+        sService = new FakeScreenshotService();
+        sContext.addService(SCREENSHOT_SERVICE, sService.getBinder());
+        sKeyHandler = new KeyHandler(sContext);
+        idle();
+    }
+
+    @Before
+    public void setUp() {
+        mBinds = sContext.getBindCount();
+        mUnbinds = sContext.getUnbindCount();
+    }
+
+    @After
+    public void tearDown() {
+        // Lets the binding go, for the next test to start cold
+        advance(IDLE_WINDOW_MS);
+        sService.reset();
+    }
+
+    @Test
+    public void singlePresses() {
+        long cold = pressAndCapture();
+        assertEquals(1, sContext.getBindCount() - mBinds);
+
+        // Within the idle window, the binding is reused
+        advance(IDLE_WINDOW_MS / 2);
+        long warm = pressAndCapture();
+        assertEquals(1, sContext.getBindCount() - mBinds);
+        assertEquals(0, sContext.getUnbindCount() - mUnbinds);
+
+        report("single press, cold", cold);
+        report("single press, warm", warm);
+
+        // Past it, it is released
+        advance(IDLE_WINDOW_MS);
+        assertEquals(1, sContext.getUnbindCount() - mUnbinds);
+    }
+
+    @Test
+    public void burstIsQueuedAndCoalesced() {
+        pressAndCapture();
+        sService.reset();
+
+        // A capture in flight, three queued, the fifth coalesced
+        long start = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            press();
+        }
+        idle();
+        for (int i = 0; i < 5; i++) {
+            advance(CAPTURE_MS);
+        }
+        List<Long> captures = sService.getCaptureTimes();
+        assertEquals(4, captures.size());
+        assertEquals(1, sService.getMaxInFlight());
+        assertEquals(1, sContext.getBindCount() - mBinds);
+
+        report("burst, first capture", captures.get(0) - start);
+        // The queued ones follow each reply right away
+        List<Long> uptimes = sService.getCaptureUptimes();
+        for (int i = 1; i < uptimes.size(); i++) {
+            assertEquals(CAPTURE_MS, uptimes.get(i) - uptimes.get(i - 1));
+        }
+    }
+
+    @Test
+    public void burstWhileColdBindsOnce() {
+        long start = System.nanoTime();
+        for (int i = 0; i < 3; i++) {
+            press();
+        }
+        idle();
+        for (int i = 0; i < 3; i++) {
+            advance(CAPTURE_MS);
+        }
+        List<Long> captures = sService.getCaptureTimes();
+        assertEquals(3, captures.size());
+        assertEquals(1, sService.getMaxInFlight());
+        assertEquals(1, sContext.getBindCount() - mBinds);
+        report("cold burst, first capture", captures.get(0) - start);
+    }
+
+    // Returns the real time from the key event to the capture request
+    private static long pressAndCapture() {
+        int captures = sService.getCaptureTimes().size();
+        long start = System.nanoTime();
+        press();
+        List<Long> times = sService.getCaptureTimes();
+        assertEquals(captures + 1, times.size());
+        long latency = times.get(times.size() - 1) - start;
+        assertTrue(latency < MAX_LATENCY_NS);
+        advance(CAPTURE_MS);
+        return latency;
+    }
+
+    private static void press() {
+        long now = SystemClock.uptimeMillis();
+        sKeyHandler.handleKeyEvent(new KeyEvent(now, now, KeyEvent.ACTION_DOWN,
+                KeyEvent.KEYCODE_UNKNOWN, 0, 0, 0, SCANCODE_SCREENSHOT));
+        idle();
+    }
+
+    private static void advance(long ms) {
+        SystemClock.advanceFakeTime(ms);
+        idle();
+    }
+
+    private static void idle() {
+        assertTrue(Looper.waitForIdle(IDLE_TIMEOUT_MS));
+    }
+
+    private static void report(String name, long latencyNs) {
+        System.out.println(String.format(Locale.US, "press to capture, %s: %.1f us",
+                name, latencyNs / 1000.0));
+    }
+
+    /**
+     * Stands in for TakeScreenshotService: records when each request
+     * arrives and replies CAPTURE_MS later.
+     */
+    private static final class FakeScreenshotService {
+        private final Handler mHandler;
+        private final Messenger mMessenger;
+
+        // Guarded by this
+        private final List<Long> mCaptureTimes = new ArrayList<Long>();
+        private final List<Long> mCaptureUptimes = new ArrayList<Long>();
+        private int mInFlight;
+        private int mMaxInFlight;
+
+        FakeScreenshotService() {
+            HandlerThread thread = new HandlerThread("FakeScreenshotService");
+            thread.start();
+            mHandler = new Handler(thread.getLooper()) {
+                @Override
+                public void handleMessage(Message msg) {
+                    if (msg.what == 1) {
+                        onCapture(msg.replyTo);
+                    }
+                }
+            };
+            mMessenger = new Messenger(mHandler);
+        }
+
+        IBinder getBinder() {
+            return mMessenger.getBinder();
+        }
+
+        private void onCapture(final Messenger replyTo) {
+            synchronized (this) {
+                mCaptureTimes.add(System.nanoTime());
+                mCaptureUptimes.add(SystemClock.uptimeMillis());
+                mInFlight++;
+                mMaxInFlight = Math.max(mMaxInFlight, mInFlight);
+            }
+            mHandler.postDelayed(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (FakeScreenshotService.this) {
+                        mInFlight--;
+                    }
+                    try {
+                        replyTo.send(Message.obtain(null, 1));
+                    } catch (RemoteException e) {
+                        // The caller is gone
+                    }
+                }
+            }, CAPTURE_MS);
+        }
+
+        synchronized List<Long> getCaptureTimes() {
+            return new ArrayList<Long>(mCaptureTimes);
+        }
+
+        synchronized List<Long> getCaptureUptimes() {
+            return new ArrayList<Long>(mCaptureUptimes);
+        }
+
+        synchronized int getMaxInFlight() {
+            return mMaxInFlight;
+        }
+
+        synchronized void reset() {
+            mCaptureTimes.clear();
+            mCaptureUptimes.clear();
+            mMaxInFlight = mInFlight;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.asusdec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.net.wifi.WifiManager;
+import android.os.BatteryManager;
+import android.os.Looper;
+import android.view.KeyEvent;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Records a session of key presses and dock power changes, then replays
+ * its export into the handlers and checks they go through the same states.
+ */
+public class TraceReplayTest {
+
+    private static final int SCANCODE_TOGGLE_WIFI = 238;
+    private static final int SCANCODE_UNBOUND = 30;
+
+    private static final long IDLE_TIMEOUT_MS = 5000;
+
+    private static FakeSysfs sSysfs;
+    private static Context sContext;
+    private static KeyHandler sKeyHandler;
+    private static DockBatteryHandler sBatteryHandler;
+
+    @BeforeClass
+    public static void setUpHandlers() {
+        sSysfs = FakeSysfs.get();
+        sContext = new Context();
+        sKeyHandler = new KeyHandler(sContext);
+        sBatteryHandler = new DockBatteryHandler(sContext);
+        assertTrue(Looper.waitForIdle(IDLE_TIMEOUT_MS));
+    }
+
+    @Test
+    public void replayReproducesTheSession() throws IOException {
+        WifiManager wifi = (WifiManager) sContext.getSystemService(Context.WIFI_SERVICE);
+        wifi.setWifiEnabled(false);
+        List<String> recorded = readRecords(exportTrace());
+
+        // The session: wifi toggled on, a typed key, the dock charging
+        // from its own charger, then unplugged
+        sKeyHandler.handleKeyEvent(key(KeyEvent.ACTION_DOWN, SCANCODE_TOGGLE_WIFI));
+        sKeyHandler.handleKeyEvent(key(KeyEvent.ACTION_UP, SCANCODE_TOGGLE_WIFI));
+        sKeyHandler.handleKeyEvent(key(KeyEvent.ACTION_DOWN, SCANCODE_UNBOUND));
+        tick();
+        sSysfs.setValue(FakeSysfs.ATTR_DOCK_AC_ONLINE, 1);
+        sSysfs.setValue(FakeSysfs.ATTR_DOCK_BATTERY_STATUS,
+                BatteryManager.BATTERY_STATUS_CHARGING);
+        tick();
+        sSysfs.setValue(FakeSysfs.ATTR_DOCK_BATTERY_CAPACITY, 81);
+        tick();
+        sSysfs.reset();
+        tick();
+        assertTrue(Looper.waitForIdle(IDLE_TIMEOUT_MS));
+        assertEquals(WifiManager.WIFI_STATE_ENABLED, wifi.getWifiState());
+
+        byte[] trace = exportTrace();
+        List<String> session = readRecords(trace);
+        session = session.subList(recorded.size(), session.size());
+        // Only the bound key is recorded
+        assertEquals(6, session.size());
+
+        // Replayed from the reset state, the handlers record the same
+        // trace and toggle wifi again
+        sSysfs.reset();
+        final TraceReplayer replayer = new TraceReplayer(sKeyHandler, sBatteryHandler, sSysfs);
+        final int[] skipped = new int[] { recorded.size() };
+        AsusdecTrace.replay(new ByteArrayInputStream(trace), new AsusdecTrace.Replayer() {
+            @Override
+            public void onKey(long timeNanos, int scanCode, int action, int repeatCount) {
+                if (skipped[0]-- <= 0) {
+                    replayer.onKey(timeNanos, scanCode, action, repeatCount);
+                }
+            }
+
+            @Override
+            public void onPower(long timeNanos, int attrMask, int[] values) {
+                if (skipped[0]-- <= 0) {
+                    replayer.onPower(timeNanos, attrMask, values);
+                }
+            }
+        });
+        assertTrue(Looper.waitForIdle(IDLE_TIMEOUT_MS));
+        assertEquals(2, replayer.getKeyCount());
+        assertEquals(1, replayer.getConsumedCount());
+        assertEquals(4, replayer.getPowerCount());
+        assertEquals(WifiManager.WIFI_STATE_DISABLED, wifi.getWifiState());
+
+        List<String> replayed = readRecords(exportTrace());
+        replayed = replayed.subList(replayed.size() - session.size(), replayed.size());
+        assertEquals(session, replayed);
+    }
+
+    private static KeyEvent key(int action, int scanCode) {
+        return new KeyEvent(0, 0, action, KeyEvent.KEYCODE_UNKNOWN, 0, 0, 0, scanCode);
+    }
+
+    private static void tick() {
+        sBatteryHandler.update();
+        sBatteryHandler.process();
+        if (sBatteryHandler.hasNewData()) {
+            sBatteryHandler.getNotifyData();
+        }
+    }
+
+    private static byte[] exportTrace() throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        AsusdecTrace.export(os);
+        return os.toByteArray();
+    }
+
+    // The records without their time
+    private static List<String> readRecords(byte[] trace) throws IOException {
+        final List<String> records = new ArrayList<String>();
+        AsusdecTrace.replay(new ByteArrayInputStream(trace), new AsusdecTrace.Replayer() {
+            @Override
+            public void onKey(long timeNanos, int scanCode, int action, int repeatCount) {
+                records.add("key " + scanCode + " " + action + " " + repeatCount);
+            }
+
+            @Override
+            public void onPower(long timeNanos, int attrMask, int[] values) {
+                records.add("power " + attrMask + " " + Arrays.toString(values));
+            }
+        });
+        return records;
+    }
+}
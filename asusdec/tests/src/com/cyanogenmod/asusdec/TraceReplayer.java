@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.asusdec;
+
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.KeyEvent;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Drives the key and dock battery handlers from an {@link AsusdecTrace}
+ * export, the way the input pipeline and the battery service did when the
+ * trace was recorded: key records become key events, power records are
+ * written to the fake sysfs and picked up by an update() tick.
+ *
+ * Either handler may be null, its records are then skipped.
+ */
+final class TraceReplayer implements AsusdecTrace.Replayer {
+
+    private static final long IDLE_TIMEOUT_MS = 5000;
+
+    private final KeyHandler mKeyHandler;
+    private final DockBatteryHandler mBatteryHandler;
+    private final FakeSysfs mSysfs;
+
+    private boolean mPaced;
+    private long mLastTimeNanos = -1;
+    private int mKeyCount;
+    private int mPowerCount;
+    private int mConsumedCount;
+    private int mNewDataCount;
+
+    TraceReplayer(KeyHandler keyHandler, DockBatteryHandler batteryHandler,
+            FakeSysfs sysfs) {
+        mKeyHandler = keyHandler;
+        mBatteryHandler = batteryHandler;
+        mSysfs = sysfs;
+    }
+
+    /**
+     * Advances the fake clock by the recorded delays between records, and
+     * lets the handler threads go idle after each of them.
+     */
+    void setPaced(boolean paced) {
+        mPaced = paced;
+    }
+
+    void replay(InputStream is) throws IOException {
+        AsusdecTrace.replay(is, this);
+    }
+
+    @Override
+    public void onKey(long timeNanos, int scanCode, int action, int repeatCount) {
+        pace(timeNanos);
+        if (mKeyHandler == null) {
+            return;
+        }
+        long now = SystemClock.uptimeMillis();
+        KeyEvent event = new KeyEvent(now, now, action, KeyEvent.KEYCODE_UNKNOWN,
+                repeatCount, 0, 0, scanCode);
+        if (mKeyHandler.handleKeyEvent(event)) {
+            mConsumedCount++;
+        }
+        mKeyCount++;
+    }
+
+    @Override
+    public void onPower(long timeNanos, int attrMask, int[] values) {
+        pace(timeNanos);
+        if (mBatteryHandler == null) {
+            return;
+        }
+        mSysfs.setValues(attrMask, values);
+        int present = FakeSysfs.ATTR_DOCK_BATTERY_PRESENT;
+        if ((attrMask & (1 << present)) != 0 && DockState.get().hasSwitch()) {
+            // The switch is the presence source, as the uevent monitor would
+            boolean docked = values[present] != 0;
+            mSysfs.setDocked(docked);
+            DockState.get().setDocked(docked);
+        }
+        mBatteryHandler.update();
+        mBatteryHandler.process();
+        if (mBatteryHandler.hasNewData()) {
+            mBatteryHandler.getNotifyData();
+            mNewDataCount++;
+        }
+        mPowerCount++;
+    }
+
+    private void pace(long timeNanos) {
+        if (mPaced) {
+            if (mLastTimeNanos >= 0 && timeNanos > mLastTimeNanos) {
+                SystemClock.advanceFakeTime((timeNanos - mLastTimeNanos) / 1000000);
+            }
+            Looper.waitForIdle(IDLE_TIMEOUT_MS);
+        }
+        mLastTimeNanos = timeNanos;
+    }
+
+    int getKeyCount() {
+        return mKeyCount;
+    }
+
+    int getConsumedCount() {
+        return mConsumedCount;
+    }
+
+    int getPowerCount() {
+        return mPowerCount;
+    }
+
+    int getNewDataCount() {
+        return mNewDataCount;
+    }
+}
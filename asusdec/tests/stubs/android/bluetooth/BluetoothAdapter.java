@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.bluetooth;
+
+/**
+ * Host stand-in of the framework class. The radio switches state at once,
+ * tests may put it in a transitional state.
+ */
+public final class BluetoothAdapter {
+    public static final int STATE_OFF = 10;
+    public static final int STATE_TURNING_ON = 11;
+    public static final int STATE_ON = 12;
+    public static final int STATE_TURNING_OFF = 13;
+
+    private static BluetoothAdapter sAdapter;
+
+    private int mState = STATE_OFF;
+
+    private BluetoothAdapter() {
+    }
+
+    public static synchronized BluetoothAdapter getDefaultAdapter() {
+        if (sAdapter == null) {
+            sAdapter = new BluetoothAdapter();
+        }
+        return sAdapter;
+    }
+
+    public synchronized int getState() {
+        return mState;
+    }
+
+    public synchronized boolean enable() {
+        mState = STATE_ON;
+        return true;
+    }
+
+    public synchronized boolean disable() {
+        mState = STATE_OFF;
+        return true;
+    }
+
+    /**
+     * Host only: puts the radio in the given state.
+     */
+    public synchronized void setState(int state) {
+        mState = state;
+    }
+}
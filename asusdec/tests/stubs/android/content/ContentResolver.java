@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.content;
+
+import android.database.ContentObserver;
+import android.net.Uri;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Host stand-in of the framework class, with an in-memory settings provider
+ * behind it (see {@link android.provider.Settings}).
+ *
+ * Like the real provider, a write of the value already stored succeeds
+ * without notifying the observers. Every query and write is counted, they
+ * are binder calls on the device.
+ */
+public class ContentResolver {
+
+    private static final class Registration {
+        final Uri mUri;
+        final boolean mNotifyForDescendents;
+        final ContentObserver mObserver;
+
+        Registration(Uri uri, boolean notifyForDescendents, ContentObserver observer) {
+            mUri = uri;
+            mNotifyForDescendents = notifyForDescendents;
+            mObserver = observer;
+        }
+
+        boolean matches(Uri uri) {
+            return mUri.equals(uri) || (mNotifyForDescendents
+                    && uri.toString().startsWith(mUri.toString() + "/"));
+        }
+    }
+
+    // Guarded by this
+    private final HashMap<Uri, String> mValues = new HashMap<Uri, String>();
+    private final ArrayList<Registration> mObservers = new ArrayList<Registration>();
+    private int mQueryCount;
+    private int mUpdateCount;
+    private boolean mFailUpdates;
+
+    public final void registerContentObserver(Uri uri, boolean notifyForDescendents,
+            ContentObserver observer) {
+        synchronized (this) {
+            mObservers.add(new Registration(uri, notifyForDescendents, observer));
+        }
+    }
+
+    public final void unregisterContentObserver(ContentObserver observer) {
+        synchronized (this) {
+            for (int i = mObservers.size() - 1; i >= 0; i--) {
+                if (mObservers.get(i).mObserver == observer) {
+                    mObservers.remove(i);
+                }
+            }
+        }
+    }
+
+    public void notifyChange(Uri uri, ContentObserver observer) {
+        ArrayList<ContentObserver> observers = new ArrayList<ContentObserver>();
+        synchronized (this) {
+            for (Registration registration : mObservers) {
+                if (registration.matches(uri) && (registration.mObserver != observer
+                        || observer.deliverSelfNotifications())) {
+                    observers.add(registration.mObserver);
+                }
+            }
+        }
+        for (ContentObserver o : observers) {
+            o.dispatchChange(o == observer, uri);
+        }
+    }
+
+    /**
+     * Host only: reads a value of the settings provider, null if unset.
+     */
+    public String querySetting(Uri uri) {
+        synchronized (this) {
+            mQueryCount++;
+            return mValues.get(uri);
+        }
+    }
+
+    /**
+     * Host only: writes a value to the settings provider.
+     *
+     * @return false if updates were made to fail
+     */
+    public boolean updateSetting(Uri uri, String value) {
+        synchronized (this) {
+            mUpdateCount++;
+            if (mFailUpdates) {
+                return false;
+            }
+            String old = mValues.put(uri, value);
+            if (value.equals(old)) {
+                return true;
+            }
+        }
+        notifyChange(uri, null);
+        return true;
+    }
+
+    /**
+     * Host only: the number of provider queries so far.
+     */
+    public synchronized int getQueryCount() {
+        return mQueryCount;
+    }
+
+    /**
+     * Host only: the number of provider writes so far.
+     */
+    public synchronized int getUpdateCount() {
+        return mUpdateCount;
+    }
+
+    /**
+     * Host only: makes the following writes fail, or succeed again.
+     */
+    public synchronized void setFailUpdates(boolean fail) {
+        mFailUpdates = fail;
+    }
+}
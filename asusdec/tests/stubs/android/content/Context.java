@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.content;
+
+import android.content.res.Resources;
+import android.media.AudioManager;
+import android.net.wifi.WifiManager;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.IBinder;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Host stand-in of the framework class, a single context for a test.
+ *
+ * Broadcasts and service connections are delivered on a main thread of its
+ * own, as on the device. Services are the ones added with
+ * {@link #addService(ComponentName, IBinder)}; activities are only recorded.
+ */
+public class Context {
+    public static final String WIFI_SERVICE = "wifi";
+    public static final String AUDIO_SERVICE = "audio";
+    public static final String POWER_SERVICE = "power";
+
+    public static final int BIND_AUTO_CREATE = 0x0001;
+
+    private final ContentResolver mContentResolver = new ContentResolver();
+    private final Resources mResources = new Resources();
+    private final Handler mMainHandler;
+
+    // Guarded by this
+    private final HashMap<String, Object> mSystemServices = new HashMap<String, Object>();
+    private final HashMap<BroadcastReceiver, IntentFilter> mReceivers =
+            new HashMap<BroadcastReceiver, IntentFilter>();
+    private final HashMap<ComponentName, IBinder> mServices =
+            new HashMap<ComponentName, IBinder>();
+    private final HashMap<ServiceConnection, ComponentName> mConnections =
+            new HashMap<ServiceConnection, ComponentName>();
+    private final ArrayList<Intent> mStartedActivities = new ArrayList<Intent>();
+    private int mBindCount;
+    private int mUnbindCount;
+
+    public Context() {
+        HandlerThread thread = new HandlerThread("main");
+        thread.start();
+        mMainHandler = new Handler(thread.getLooper());
+
+        mSystemServices.put(WIFI_SERVICE, new WifiManager());
+        mSystemServices.put(AUDIO_SERVICE, new AudioManager());
+        mResources.setBoolean(
+                com.android.internal.R.bool.config_automatic_brightness_available, true);
+    }
+
+    public ContentResolver getContentResolver() {
+        return mContentResolver;
+    }
+
+    public Resources getResources() {
+        return mResources;
+    }
+
+    public Looper getMainLooper() {
+        return mMainHandler.getLooper();
+    }
+
+    public synchronized Object getSystemService(String name) {
+        return mSystemServices.get(name);
+    }
+
+    public Intent registerReceiver(BroadcastReceiver receiver, IntentFilter filter) {
+        synchronized (this) {
+            mReceivers.put(receiver, filter);
+        }
+        return null;
+    }
+
+    public void unregisterReceiver(BroadcastReceiver receiver) {
+        synchronized (this) {
+            if (mReceivers.remove(receiver) == null) {
+                throw new IllegalArgumentException("Receiver not registered: " + receiver);
+            }
+        }
+    }
+
+    public void sendBroadcast(final Intent intent) {
+        ArrayList<BroadcastReceiver> receivers = new ArrayList<BroadcastReceiver>();
+        synchronized (this) {
+            for (Map.Entry<BroadcastReceiver, IntentFilter> entry : mReceivers.entrySet()) {
+                if (entry.getValue().matchAction(intent.getAction())) {
+                    receivers.add(entry.getKey());
+                }
+            }
+        }
+        for (final BroadcastReceiver receiver : receivers) {
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    receiver.onReceive(Context.this, intent);
+                }
+            });
+        }
+    }
+
+    public void startActivity(Intent intent) {
+        synchronized (this) {
+            mStartedActivities.add(new Intent(intent));
+        }
+    }
+
+    public boolean bindService(Intent service, final ServiceConnection conn, int flags) {
+        final ComponentName name = service.getComponent();
+        final IBinder binder;
+        synchronized (this) {
+            mBindCount++;
+            binder = mServices.get(name);
+            if (binder == null) {
+                return false;
+            }
+            mConnections.put(conn, name);
+        }
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (Context.this) {
+                    if (mConnections.get(conn) == null) {
+                        return;
+                    }
+                }
+                conn.onServiceConnected(name, binder);
+            }
+        });
+        return true;
+    }
+
+    public void unbindService(ServiceConnection conn) {
+        synchronized (this) {
+            if (mConnections.remove(conn) == null) {
+                throw new IllegalArgumentException("Service not registered: " + conn);
+            }
+            mUnbindCount++;
+        }
+    }
+
+    /**
+     * Host only: registers a bindable service.
+     */
+    public synchronized void addService(ComponentName name, IBinder binder) {
+        mServices.put(name, binder);
+    }
+
+    /**
+     * Host only: makes a service die, its bound connections are told so.
+     */
+    public void killService(final ComponentName name) {
+        ArrayList<ServiceConnection> connections = new ArrayList<ServiceConnection>();
+        synchronized (this) {
+            mServices.remove(name);
+            Iterator<Map.Entry<ServiceConnection, ComponentName>> it =
+                    mConnections.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<ServiceConnection, ComponentName> entry = it.next();
+                if (entry.getValue().equals(name)) {
+                    connections.add(entry.getKey());
+                }
+            }
+        }
+        for (final ServiceConnection conn : connections) {
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    conn.onServiceDisconnected(name);
+                }
+            });
+        }
+    }
+
+    /**
+     * Host only: the number of bindService() calls so far.
+     */
+    public synchronized int getBindCount() {
+        return mBindCount;
+    }
+
+    /**
+     * Host only: the number of unbindService() calls so far.
+     */
+    public synchronized int getUnbindCount() {
+        return mUnbindCount;
+    }
+
+    /**
+     * Host only: the number of live service connections.
+     */
+    public synchronized int getConnectionCount() {
+        return mConnections.size();
+    }
+
+    /**
+     * Host only: the number of registered broadcast receivers.
+     */
+    public synchronized int getReceiverCount() {
+        return mReceivers.size();
+    }
+
+    /**
+     * Host only: the activities started so far.
+     */
+    public synchronized ArrayList<Intent> getStartedActivities() {
+        return new ArrayList<Intent>(mStartedActivities);
+    }
+}
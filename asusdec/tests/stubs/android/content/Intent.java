@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.content;
+
+import android.net.Uri;
+import android.os.Bundle;
+
+/**
+ * Host stand-in of the framework class, with the parts used here.
+ */
+public class Intent {
+    public static final String ACTION_MAIN = "android.intent.action.MAIN";
+    public static final String ACTION_BOOT_COMPLETED = "android.intent.action.BOOT_COMPLETED";
+    public static final String ACTION_SHUTDOWN = "android.intent.action.ACTION_SHUTDOWN";
+    public static final String ACTION_DOCK_EVENT = "android.intent.action.DOCK_EVENT";
+
+    public static final String EXTRA_DOCK_STATE = "android.intent.extra.DOCK_STATE";
+    public static final int EXTRA_DOCK_STATE_UNDOCKED = 0;
+    public static final int EXTRA_DOCK_STATE_DESK = 1;
+    public static final int EXTRA_DOCK_STATE_CAR = 2;
+
+    public static final int FLAG_ACTIVITY_NEW_TASK = 0x10000000;
+    public static final int FLAG_ACTIVITY_RESET_TASK_IF_NEEDED = 0x00200000;
+
+    private String mAction;
+    private Uri mData;
+    private ComponentName mComponent;
+    private int mFlags;
+    private Bundle mExtras;
+
+    public Intent() {
+    }
+
+    public Intent(String action) {
+        mAction = action;
+    }
+
+    public Intent(String action, Uri uri) {
+        mAction = action;
+        mData = uri;
+    }
+
+    public Intent(Intent o) {
+        mAction = o.mAction;
+        mData = o.mData;
+        mComponent = o.mComponent;
+        mFlags = o.mFlags;
+        if (o.mExtras != null) {
+            mExtras = new Bundle(o.mExtras);
+        }
+    }
+
+    public String getAction() {
+        return mAction;
+    }
+
+    public Intent setAction(String action) {
+        mAction = action;
+        return this;
+    }
+
+    public Uri getData() {
+        return mData;
+    }
+
+    public ComponentName getComponent() {
+        return mComponent;
+    }
+
+    public Intent setComponent(ComponentName component) {
+        mComponent = component;
+        return this;
+    }
+
+    public int getFlags() {
+        return mFlags;
+    }
+
+    public Intent addFlags(int flags) {
+        mFlags |= flags;
+        return this;
+    }
+
+    public Intent setFlags(int flags) {
+        mFlags = flags;
+        return this;
+    }
+
+    public Intent putExtra(String name, int value) {
+        getOrCreateExtras().putInt(name, value);
+        return this;
+    }
+
+    public Intent putExtra(String name, boolean value) {
+        getOrCreateExtras().putBoolean(name, value);
+        return this;
+    }
+
+    public Intent putExtras(Bundle extras) {
+        getOrCreateExtras().putAll(extras);
+        return this;
+    }
+
+    public int getIntExtra(String name, int defaultValue) {
+        return mExtras == null ? defaultValue : mExtras.getInt(name, defaultValue);
+    }
+
+    public boolean getBooleanExtra(String name, boolean defaultValue) {
+        return mExtras == null ? defaultValue : mExtras.getBoolean(name, defaultValue);
+    }
+
+    public Bundle getExtras() {
+        return mExtras != null ? new Bundle(mExtras) : null;
+    }
+
+    private Bundle getOrCreateExtras() {
+        if (mExtras == null) {
+            mExtras = new Bundle();
+        }
+        return mExtras;
+    }
+
+    @Override
+    public String toString() {
+        return "Intent { act=" + mAction + " cmp=" + mComponent + " flg=0x"
+                + Integer.toHexString(mFlags) + " }";
+    }
+}
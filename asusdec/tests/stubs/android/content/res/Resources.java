@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.content.res;
+
+import java.util.HashMap;
+
+/**
+ * Host stand-in of the framework class, holding the values tests set.
+ */
+public class Resources {
+
+    public static class NotFoundException extends RuntimeException {
+        public NotFoundException(String name) {
+            super(name);
+        }
+    }
+
+    private final HashMap<Integer, Boolean> mBooleans = new HashMap<Integer, Boolean>();
+
+    public synchronized boolean getBoolean(int id) throws NotFoundException {
+        Boolean value = mBooleans.get(id);
+        if (value == null) {
+            throw new NotFoundException("Resource ID #0x" + Integer.toHexString(id));
+        }
+        return value;
+    }
+
+    /**
+     * Host only: sets a boolean resource.
+     */
+    public synchronized void setBoolean(int id, boolean value) {
+        mBooleans.put(id, value);
+    }
+}
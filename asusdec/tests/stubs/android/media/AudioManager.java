@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.media;
+
+/**
+ * Host stand-in of the framework class.
+ */
+public class AudioManager {
+    public static final int RINGER_MODE_SILENT = 0;
+    public static final int RINGER_MODE_VIBRATE = 1;
+    public static final int RINGER_MODE_NORMAL = 2;
+
+    public static final int MODE_NORMAL = 0;
+    public static final int MODE_RINGTONE = 1;
+    public static final int MODE_IN_CALL = 2;
+    public static final int MODE_IN_COMMUNICATION = 3;
+
+    private int mMode = MODE_NORMAL;
+    private int mRingerMode = RINGER_MODE_NORMAL;
+
+    public synchronized int getMode() {
+        return mMode;
+    }
+
+    public synchronized void setMode(int mode) {
+        mMode = mode;
+    }
+
+    public synchronized int getRingerMode() {
+        return mRingerMode;
+    }
+
+    public synchronized void setRingerMode(int ringerMode) {
+        mRingerMode = ringerMode;
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.net;
+
+/**
+ * Host stand-in of the framework class, compared by its string form.
+ */
+public final class Uri {
+    private final String mUriString;
+
+    private Uri(String uriString) {
+        mUriString = uriString;
+    }
+
+    public static Uri parse(String uriString) {
+        if (uriString == null) {
+            throw new NullPointerException("uriString");
+        }
+        return new Uri(uriString);
+    }
+
+    public static Uri withAppendedPath(Uri baseUri, String pathSegment) {
+        String base = baseUri.mUriString;
+        return new Uri(base.endsWith("/") ? base + pathSegment : base + "/" + pathSegment);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Uri && mUriString.equals(((Uri) o).mUriString);
+    }
+
+    @Override
+    public int hashCode() {
+        return mUriString.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return mUriString;
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.net.wifi;
+
+/**
+ * Host stand-in of the framework class. The radio switches state at once,
+ * tests may put it in a transitional state.
+ */
+public class WifiManager {
+    public static final int WIFI_STATE_DISABLING = 0;
+    public static final int WIFI_STATE_DISABLED = 1;
+    public static final int WIFI_STATE_ENABLING = 2;
+    public static final int WIFI_STATE_ENABLED = 3;
+    public static final int WIFI_STATE_UNKNOWN = 4;
+
+    public static final int WIFI_AP_STATE_DISABLING = 10;
+    public static final int WIFI_AP_STATE_DISABLED = 11;
+    public static final int WIFI_AP_STATE_ENABLING = 12;
+    public static final int WIFI_AP_STATE_ENABLED = 13;
+    public static final int WIFI_AP_STATE_FAILED = 14;
+
+    private int mWifiState = WIFI_STATE_DISABLED;
+    private int mWifiApState = WIFI_AP_STATE_DISABLED;
+
+    public synchronized int getWifiState() {
+        return mWifiState;
+    }
+
+    public synchronized int getWifiApState() {
+        return mWifiApState;
+    }
+
+    public synchronized boolean setWifiEnabled(boolean enabled) {
+        mWifiState = enabled ? WIFI_STATE_ENABLED : WIFI_STATE_DISABLED;
+        return true;
+    }
+
+    public synchronized boolean setWifiApEnabled(WifiConfiguration wifiConfig, boolean enabled) {
+        mWifiApState = enabled ? WIFI_AP_STATE_ENABLED : WIFI_AP_STATE_DISABLED;
+        return true;
+    }
+
+    /**
+     * Host only: puts the radio in the given state.
+     */
+    public synchronized void setWifiState(int state) {
+        mWifiState = state;
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.os;
+
+/**
+ * Host stand-in of the framework class, with the dock extras of the
+ * CyanogenMod framework.
+ */
+public class BatteryManager {
+    public static final String EXTRA_STATUS = "status";
+    public static final String EXTRA_LEVEL = "level";
+    public static final String EXTRA_PLUGGED = "plugged";
+    public static final String EXTRA_PRESENT = "present";
+
+    public static final String EXTRA_DOCK_STATUS = "dock_status";
+    public static final String EXTRA_DOCK_LEVEL = "dock_level";
+    public static final String EXTRA_DOCK_PRESENT = "dock_present";
+    public static final String EXTRA_DOCK_PLUGGED = "dock_plugged";
+
+    public static final int BATTERY_STATUS_UNKNOWN = 1;
+    public static final int BATTERY_STATUS_CHARGING = 2;
+    public static final int BATTERY_STATUS_DISCHARGING = 3;
+    public static final int BATTERY_STATUS_NOT_CHARGING = 4;
+    public static final int BATTERY_STATUS_FULL = 5;
+
+    public static final int BATTERY_PLUGGED_AC = 1;
+    public static final int BATTERY_PLUGGED_USB = 2;
+    public static final int BATTERY_PLUGGED_WIRELESS = 4;
+}
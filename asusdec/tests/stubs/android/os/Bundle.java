@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.os;
+
+import java.util.HashMap;
+import java.util.Set;
+
+/**
+ * Host stand-in of the framework class, a plain map.
+ */
+public final class Bundle {
+    private final HashMap<String, Object> mMap;
+
+    public Bundle() {
+        mMap = new HashMap<String, Object>();
+    }
+
+    public Bundle(Bundle b) {
+        mMap = new HashMap<String, Object>(b.mMap);
+    }
+
+    public int size() {
+        return mMap.size();
+    }
+
+    public boolean isEmpty() {
+        return mMap.isEmpty();
+    }
+
+    public void clear() {
+        mMap.clear();
+    }
+
+    public boolean containsKey(String key) {
+        return mMap.containsKey(key);
+    }
+
+    public Object get(String key) {
+        return mMap.get(key);
+    }
+
+    public void remove(String key) {
+        mMap.remove(key);
+    }
+
+    public void putAll(Bundle map) {
+        mMap.putAll(map.mMap);
+    }
+
+    public Set<String> keySet() {
+        return mMap.keySet();
+    }
+
+    public void putBoolean(String key, boolean value) {
+        mMap.put(key, value);
+    }
+
+    public void putInt(String key, int value) {
+        mMap.put(key, value);
+    }
+
+    public void putLong(String key, long value) {
+        mMap.put(key, value);
+    }
+
+    public void putString(String key, String value) {
+        mMap.put(key, value);
+    }
+
+    public boolean getBoolean(String key) {
+        return getBoolean(key, false);
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        Object o = mMap.get(key);
+        return o instanceof Boolean ? (Boolean) o : defaultValue;
+    }
+
+    public int getInt(String key) {
+        return getInt(key, 0);
+    }
+
+    public int getInt(String key, int defaultValue) {
+        Object o = mMap.get(key);
+        return o instanceof Integer ? (Integer) o : defaultValue;
+    }
+
+    public long getLong(String key) {
+        return getLong(key, 0L);
+    }
+
+    public long getLong(String key, long defaultValue) {
+        Object o = mMap.get(key);
+        return o instanceof Long ? (Long) o : defaultValue;
+    }
+
+    public String getString(String key) {
+        Object o = mMap.get(key);
+        return o instanceof String ? (String) o : null;
+    }
+
+    @Override
+    public String toString() {
+        return "Bundle[" + mMap + "]";
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.os;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Host stand-in of the framework class, polling the directory.
+ *
+ * The host only tells creations, modifications and deletions apart. They
+ * are delivered as CREATE and MOVED_TO, MODIFY and CLOSE_WRITE, and DELETE
+ * and MOVED_FROM respectively, restricted to the observed mask. A rewrite
+ * that keeps the size within the timestamp granularity goes unnoticed.
+ */
+public abstract class FileObserver {
+    public static final int ACCESS = 0x00000001;
+    public static final int MODIFY = 0x00000002;
+    public static final int ATTRIB = 0x00000004;
+    public static final int CLOSE_WRITE = 0x00000008;
+    public static final int CLOSE_NOWRITE = 0x00000010;
+    public static final int OPEN = 0x00000020;
+    public static final int MOVED_FROM = 0x00000040;
+    public static final int MOVED_TO = 0x00000080;
+    public static final int CREATE = 0x00000100;
+    public static final int DELETE = 0x00000200;
+    public static final int DELETE_SELF = 0x00000400;
+    public static final int MOVE_SELF = 0x00000800;
+    public static final int ALL_EVENTS = 0x00000fff;
+
+    private static final long POLL_INTERVAL_MS = 20;
+
+    private final String mPath;
+    private final int mMask;
+    private volatile Thread mThread;
+
+    public FileObserver(String path) {
+        this(path, ALL_EVENTS);
+    }
+
+    public FileObserver(String path, int mask) {
+        mPath = path;
+        mMask = mask;
+    }
+
+    public abstract void onEvent(int event, String path);
+
+    public synchronized void startWatching() {
+        if (mThread != null) {
+            return;
+        }
+        final Map<String, Long> initial = snapshot();
+        mThread = new Thread("FileObserver " + mPath) {
+            @Override
+            public void run() {
+                poll(this, initial);
+            }
+        };
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+
+    public synchronized void stopWatching() {
+        mThread = null;
+    }
+
+    // Name to a stamp that changes with every write of the file
+    private Map<String, Long> snapshot() {
+        Map<String, Long> entries = new HashMap<String, Long>();
+        File[] files = new File(mPath).listFiles();
+        if (files != null) {
+            for (File file : files) {
+                entries.put(file.getName(), file.lastModified() * 31 + file.length());
+            }
+        }
+        return entries;
+    }
+
+    private void poll(Thread thread, Map<String, Long> previous) {
+        while (mThread == thread) {
+            try {
+                Thread.sleep(POLL_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            Map<String, Long> current = snapshot();
+            for (Map.Entry<String, Long> entry : current.entrySet()) {
+                Long old = previous.get(entry.getKey());
+                if (old == null) {
+                    deliver(CREATE | MOVED_TO, entry.getKey());
+                } else if (!old.equals(entry.getValue())) {
+                    deliver(MODIFY | CLOSE_WRITE, entry.getKey());
+                }
+            }
+            for (String name : previous.keySet()) {
+                if (!current.containsKey(name)) {
+                    deliver(DELETE | MOVED_FROM, name);
+                }
+            }
+            previous = current;
+        }
+    }
+
+    private void deliver(int events, String name) {
+        events &= mMask;
+        for (int bit = 1; bit <= events; bit <<= 1) {
+            if ((events & bit) != 0 && mThread != null) {
+                onEvent(bit, name);
+            }
+        }
+    }
+}
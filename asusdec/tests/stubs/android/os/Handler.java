@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.os;
+
+/**
+ * Host stand-in of the framework class.
+ */
+public class Handler {
+
+    public interface Callback {
+        boolean handleMessage(Message msg);
+    }
+
+    final Looper mLooper;
+    final MessageQueue mQueue;
+    final Callback mCallback;
+
+    public Handler() {
+        this(Looper.myLooper(), null);
+    }
+
+    public Handler(Callback callback) {
+        this(Looper.myLooper(), callback);
+    }
+
+    public Handler(Looper looper) {
+        this(looper, null);
+    }
+
+    public Handler(Looper looper, Callback callback) {
+        if (looper == null) {
+            throw new RuntimeException(
+                    "Can't create handler inside thread that has not called Looper.prepare()");
+        }
+        mLooper = looper;
+        mQueue = looper.mQueue;
+        mCallback = callback;
+    }
+
+    public void handleMessage(Message msg) {
+    }
+
+    public void dispatchMessage(Message msg) {
+        if (msg.callback != null) {
+            msg.callback.run();
+        } else {
+            if (mCallback != null && mCallback.handleMessage(msg)) {
+                return;
+            }
+            handleMessage(msg);
+        }
+    }
+
+    public final Message obtainMessage() {
+        return Message.obtain(this);
+    }
+
+    public final Message obtainMessage(int what) {
+        return Message.obtain(this, what);
+    }
+
+    public final Message obtainMessage(int what, Object obj) {
+        return Message.obtain(this, what, obj);
+    }
+
+    public final Message obtainMessage(int what, int arg1, int arg2) {
+        return Message.obtain(this, what, arg1, arg2, null);
+    }
+
+    public final Message obtainMessage(int what, int arg1, int arg2, Object obj) {
+        return Message.obtain(this, what, arg1, arg2, obj);
+    }
+
+    public final boolean post(Runnable r) {
+        return sendMessageDelayed(Message.obtain(this, r), 0);
+    }
+
+    public final boolean postDelayed(Runnable r, long delayMillis) {
+        return sendMessageDelayed(Message.obtain(this, r), delayMillis);
+    }
+
+    public final boolean postAtTime(Runnable r, long uptimeMillis) {
+        return sendMessageAtTime(Message.obtain(this, r), uptimeMillis);
+    }
+
+    public final void removeCallbacks(Runnable r) {
+        mQueue.removeMessages(this, r, null);
+    }
+
+    public final boolean sendMessage(Message msg) {
+        return sendMessageDelayed(msg, 0);
+    }
+
+    public final boolean sendEmptyMessage(int what) {
+        return sendEmptyMessageDelayed(what, 0);
+    }
+
+    public final boolean sendEmptyMessageDelayed(int what, long delayMillis) {
+        return sendMessageDelayed(Message.obtain(this, what), delayMillis);
+    }
+
+    public final boolean sendEmptyMessageAtTime(int what, long uptimeMillis) {
+        return sendMessageAtTime(Message.obtain(this, what), uptimeMillis);
+    }
+
+    public final boolean sendMessageDelayed(Message msg, long delayMillis) {
+        if (delayMillis < 0) {
+            delayMillis = 0;
+        }
+        return sendMessageAtTime(msg, SystemClock.uptimeMillis() + delayMillis);
+    }
+
+    public boolean sendMessageAtTime(Message msg, long uptimeMillis) {
+        msg.target = this;
+        return mQueue.enqueueMessage(msg, uptimeMillis);
+    }
+
+    public final void removeMessages(int what) {
+        mQueue.removeMessages(this, what, null);
+    }
+
+    public final void removeMessages(int what, Object object) {
+        mQueue.removeMessages(this, what, object);
+    }
+
+    public final boolean hasMessages(int what) {
+        return mQueue.hasMessages(this, what, null);
+    }
+
+    public final boolean hasMessages(int what, Object object) {
+        return mQueue.hasMessages(this, what, object);
+    }
+
+    public final Looper getLooper() {
+        return mLooper;
+    }
+
+    @Override
+    public String toString() {
+        return "Handler (" + getClass().getName() + ") {"
+                + Integer.toHexString(System.identityHashCode(this)) + "}";
+    }
+}
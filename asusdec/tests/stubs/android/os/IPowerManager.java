@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.os;
+
+/**
+ * Host stand-in of the framework interface, with the calls used here.
+ */
+public interface IPowerManager {
+    void setTemporaryScreenBrightnessSettingOverride(int brightness) throws RemoteException;
+
+    public static abstract class Stub implements IBinder, IPowerManager {
+        public static IPowerManager asInterface(IBinder obj) {
+            if (obj == null) {
+                return null;
+            }
+            return (IPowerManager) obj;
+        }
+    }
+}
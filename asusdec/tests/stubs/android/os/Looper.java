@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.os;
+
+/**
+ * Host stand-in of the framework class.
+ */
+public final class Looper {
+
+    private static final ThreadLocal<Looper> sThreadLocal = new ThreadLocal<Looper>();
+    private static Looper sMainLooper;
+
+    final MessageQueue mQueue;
+    final Thread mThread;
+
+    private Looper() {
+        mQueue = new MessageQueue();
+        mThread = Thread.currentThread();
+    }
+
+    public static void prepare() {
+        if (sThreadLocal.get() != null) {
+            throw new RuntimeException("Only one Looper may be created per thread");
+        }
+        sThreadLocal.set(new Looper());
+    }
+
+    public static void prepareMainLooper() {
+        prepare();
+        synchronized (Looper.class) {
+            if (sMainLooper != null) {
+                throw new IllegalStateException("The main Looper has already been prepared.");
+            }
+            sMainLooper = myLooper();
+        }
+    }
+
+    public static synchronized Looper getMainLooper() {
+        return sMainLooper;
+    }
+
+    public static Looper myLooper() {
+        return sThreadLocal.get();
+    }
+
+    public static void loop() {
+        Looper me = myLooper();
+        if (me == null) {
+            throw new RuntimeException("No Looper; Looper.prepare() wasn't called on this thread.");
+        }
+        for (;;) {
+            Message msg = me.mQueue.next();
+            if (msg == null) {
+                return;
+            }
+            msg.target.dispatchMessage(msg);
+            msg.recycle();
+        }
+    }
+
+    public void quit() {
+        mQueue.quit();
+    }
+
+    public Thread getThread() {
+        return mThread;
+    }
+
+    public MessageQueue getQueue() {
+        return mQueue;
+    }
+
+    /**
+     * Host only: whether the looper waits with no message due.
+     */
+    public boolean isIdle() {
+        return mQueue.isIdle();
+    }
+
+    /**
+     * Host only: waits until every live looper is idle at the current time,
+     * ie. after {@link SystemClock#advanceFakeTime(long)}.
+     *
+     * @return false if they were still busy after timeoutMs of real time
+     */
+    public static boolean waitForIdle(long timeoutMs) {
+        long deadline = System.nanoTime() / 1000000 + timeoutMs;
+        // A message run by one looper may post to another, so all of them
+        // must be seen idle in the same pass
+        for (;;) {
+            boolean idle = true;
+            for (MessageQueue queue : MessageQueue.getQueues()) {
+                if (!queue.isIdle()) {
+                    idle = false;
+                    break;
+                }
+            }
+            if (idle) {
+                return true;
+            }
+            if (System.nanoTime() / 1000000 >= deadline) {
+                return false;
+            }
+            Thread.yield();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Looper (" + mThread.getName() + ")";
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.os;
+
+import java.util.ArrayList;
+
+/**
+ * Host stand-in of the framework class: a list of messages sorted by due
+ * time, on {@link SystemClock#uptimeMillis()}.
+ *
+ * With the fake clock, a looper waits for the clock to be advanced instead
+ * of for the real time to pass.
+ */
+public final class MessageQueue {
+
+    // The live queues, woken up when the clock changes
+    private static final ArrayList<MessageQueue> sQueues = new ArrayList<MessageQueue>();
+
+    // Guarded by this
+    private Message mMessages;
+    private boolean mQuitting;
+    // Whether the looper waits for a message to become due
+    private boolean mWaiting;
+    // Whether the looper runs a message
+    private boolean mDispatching;
+
+    MessageQueue() {
+        synchronized (sQueues) {
+            sQueues.add(this);
+        }
+    }
+
+    static void onClockChanged() {
+        MessageQueue[] queues;
+        synchronized (sQueues) {
+            queues = sQueues.toArray(new MessageQueue[sQueues.size()]);
+        }
+        for (MessageQueue queue : queues) {
+            synchronized (queue) {
+                queue.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Host only: returns the live queues.
+     */
+    static MessageQueue[] getQueues() {
+        synchronized (sQueues) {
+            return sQueues.toArray(new MessageQueue[sQueues.size()]);
+        }
+    }
+
+    synchronized boolean enqueueMessage(Message msg, long when) {
+        if (mQuitting) {
+            msg.recycle();
+            return false;
+        }
+        msg.when = when;
+        Message prev = null;
+        Message p = mMessages;
+        while (p != null && p.when <= when) {
+            prev = p;
+            p = p.next;
+        }
+        msg.next = p;
+        if (prev == null) {
+            mMessages = msg;
+        } else {
+            prev.next = msg;
+        }
+        notifyAll();
+        return true;
+    }
+
+    // Blocks until a message is due, returns null once quitting
+    synchronized Message next() {
+        mDispatching = false;
+        notifyAll();
+        for (;;) {
+            if (mQuitting) {
+                return null;
+            }
+            long now = SystemClock.uptimeMillis();
+            Message msg = mMessages;
+            if (msg != null && msg.when <= now) {
+                mMessages = msg.next;
+                msg.next = null;
+                mWaiting = false;
+                mDispatching = true;
+                return msg;
+            }
+            mWaiting = true;
+            try {
+                if (msg == null || SystemClock.isFake()) {
+                    wait();
+                } else {
+                    wait(msg.when - now);
+                }
+            } catch (InterruptedException e) {
+                // Checked again above
+            }
+        }
+    }
+
+    synchronized void quit() {
+        mQuitting = true;
+        Message p = mMessages;
+        mMessages = null;
+        while (p != null) {
+            Message n = p.next;
+            p.recycle();
+            p = n;
+        }
+        notifyAll();
+        synchronized (sQueues) {
+            sQueues.remove(this);
+        }
+    }
+
+    synchronized boolean hasMessages(Handler h, int what, Object object) {
+        for (Message p = mMessages; p != null; p = p.next) {
+            if (p.target == h && p.callback == null && p.what == what
+                    && (object == null || p.obj == object)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    synchronized boolean hasMessages(Handler h, Runnable r, Object object) {
+        for (Message p = mMessages; p != null; p = p.next) {
+            if (p.target == h && p.callback == r && (object == null || p.obj == object)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    synchronized void removeMessages(Handler h, int what, Object object) {
+        Message prev = null;
+        Message p = mMessages;
+        while (p != null) {
+            Message n = p.next;
+            if (p.target == h && p.callback == null && p.what == what
+                    && (object == null || p.obj == object)) {
+                unlink(prev, p);
+                p.recycle();
+            } else {
+                prev = p;
+            }
+            p = n;
+        }
+    }
+
+    synchronized void removeMessages(Handler h, Runnable r, Object object) {
+        Message prev = null;
+        Message p = mMessages;
+        while (p != null) {
+            Message n = p.next;
+            if (p.target == h && p.callback == r && (object == null || p.obj == object)) {
+                unlink(prev, p);
+                p.recycle();
+            } else {
+                prev = p;
+            }
+            p = n;
+        }
+    }
+
+    private void unlink(Message prev, Message p) {
+        if (prev == null) {
+            mMessages = p.next;
+        } else {
+            prev.next = p.next;
+        }
+        p.next = null;
+    }
+
+    /**
+     * Host only: whether the looper is waiting with no message due.
+     */
+    synchronized boolean isIdle() {
+        if (mQuitting) {
+            return true;
+        }
+        return mWaiting && !mDispatching && (mMessages == null
+                || mMessages.when > SystemClock.uptimeMillis());
+    }
+
+    /**
+     * Host only: returns the due time of the first message, or -1.
+     */
+    synchronized long getNextWhen() {
+        return mMessages != null ? mMessages.when : -1;
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.os;
+
+/**
+ * Host stand-in of the framework class. The binder of a messenger hands the
+ * messages straight to its handler; once the handler's looper quit, sends
+ * fail as they would to a dead process.
+ */
+public final class Messenger {
+
+    private static final class MessengerBinder implements IBinder {
+        final Handler mHandler;
+
+        MessengerBinder(Handler handler) {
+            mHandler = handler;
+        }
+    }
+
+    private final MessengerBinder mTarget;
+
+    public Messenger(Handler target) {
+        mTarget = new MessengerBinder(target);
+    }
+
+    public Messenger(IBinder target) {
+        if (!(target instanceof MessengerBinder)) {
+            throw new IllegalArgumentException("Not a messenger binder: " + target);
+        }
+        mTarget = (MessengerBinder) target;
+    }
+
+    public void send(Message message) throws RemoteException {
+        if (!mTarget.mHandler.sendMessage(message)) {
+            throw new DeadObjectException();
+        }
+    }
+
+    public IBinder getBinder() {
+        return mTarget;
+    }
+
+    @Override
+    public boolean equals(Object otherObj) {
+        return otherObj instanceof Messenger && ((Messenger) otherObj).mTarget == mTarget;
+    }
+
+    @Override
+    public int hashCode() {
+        return mTarget.hashCode();
+    }
+}
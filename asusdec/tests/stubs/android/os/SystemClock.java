@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.os;
+
+/**
+ * Host stand-in of the framework class.
+ *
+ * Runs on the JVM clock, unless a test switched to the fake clock with
+ * {@link #setFakeTime(long)}. The fake clock only moves with
+ * {@link #advanceFakeTime(long)}, which also runs the messages that became
+ * due on every looper.
+ */
+public final class SystemClock {
+
+    private static final Object sLock = new Object();
+    private static boolean sFake;
+    private static long sFakeTime;
+
+    private SystemClock() {
+    }
+
+    public static long uptimeMillis() {
+        synchronized (sLock) {
+            if (sFake) {
+                return sFakeTime;
+            }
+        }
+        return System.nanoTime() / 1000000;
+    }
+
+    public static long elapsedRealtime() {
+        return uptimeMillis();
+    }
+
+    public static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Host only: switches to the fake clock, starting at the given time.
+     */
+    public static void setFakeTime(long timeMs) {
+        synchronized (sLock) {
+            sFake = true;
+            sFakeTime = timeMs;
+        }
+        MessageQueue.onClockChanged();
+    }
+
+    /**
+     * Host only: moves the fake clock forward.
+     */
+    public static void advanceFakeTime(long ms) {
+        synchronized (sLock) {
+            if (!sFake) {
+                throw new IllegalStateException("The fake clock is not in use");
+            }
+            sFakeTime += ms;
+        }
+        MessageQueue.onClockChanged();
+    }
+
+    /**
+     * Host only: goes back to the JVM clock.
+     */
+    public static void useRealTime() {
+        synchronized (sLock) {
+            sFake = false;
+        }
+        MessageQueue.onClockChanged();
+    }
+
+    static boolean isFake() {
+        synchronized (sLock) {
+            return sFake;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.os;
+
+import java.util.HashMap;
+
+/**
+ * Host stand-in of the framework class, backed by a map that tests can set.
+ */
+public class SystemProperties {
+    private static final HashMap<String, String> sProperties = new HashMap<String, String>();
+
+    public static String get(String key) {
+        return get(key, "");
+    }
+
+    public static String get(String key, String def) {
+        synchronized (sProperties) {
+            String value = sProperties.get(key);
+            return value != null ? value : def;
+        }
+    }
+
+    public static int getInt(String key, int def) {
+        try {
+            return Integer.parseInt(get(key));
+        } catch (NumberFormatException e) {
+            return def;
+        }
+    }
+
+    public static long getLong(String key, long def) {
+        try {
+            return Long.parseLong(get(key));
+        } catch (NumberFormatException e) {
+            return def;
+        }
+    }
+
+    public static boolean getBoolean(String key, boolean def) {
+        String value = get(key);
+        if (value.equals("1") || value.equals("y") || value.equals("yes")
+                || value.equals("on") || value.equals("true")) {
+            return true;
+        }
+        if (value.equals("0") || value.equals("n") || value.equals("no")
+                || value.equals("off") || value.equals("false")) {
+            return false;
+        }
+        return def;
+    }
+
+    public static void set(String key, String val) {
+        synchronized (sProperties) {
+            sProperties.put(key, val);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.provider;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+
+/**
+ * Host stand-in of the framework class, on top of the in-memory provider of
+ * {@link ContentResolver}. There is no client side cache, every get is a
+ * provider query.
+ */
+public final class Settings {
+    public static final String AUTHORITY = "settings";
+
+    public static final String ACTION_SETTINGS = "android.settings.SETTINGS";
+
+    public static class SettingNotFoundException extends Exception {
+        public SettingNotFoundException(String msg) {
+            super(msg);
+        }
+    }
+
+    public static class NameValueTable {
+        public static Uri getUriFor(Uri uri, String name) {
+            return Uri.withAppendedPath(uri, name);
+        }
+
+        static String getString(ContentResolver resolver, Uri uri, String name) {
+            return resolver.querySetting(getUriFor(uri, name));
+        }
+
+        static boolean putString(ContentResolver resolver, Uri uri, String name,
+                String value) {
+            return resolver.updateSetting(getUriFor(uri, name), value);
+        }
+
+        static int getInt(ContentResolver cr, Uri uri, String name, int def) {
+            String v = getString(cr, uri, name);
+            try {
+                return v != null ? Integer.parseInt(v) : def;
+            } catch (NumberFormatException e) {
+                return def;
+            }
+        }
+
+        static int getInt(ContentResolver cr, Uri uri, String name)
+                throws SettingNotFoundException {
+            String v = getString(cr, uri, name);
+            try {
+                return Integer.parseInt(v);
+            } catch (NumberFormatException e) {
+                throw new SettingNotFoundException(name);
+            }
+        }
+    }
+
+    public static final class System extends NameValueTable {
+        public static final Uri CONTENT_URI = Uri.parse("content://" + AUTHORITY + "/system");
+
+        public static final String SCREEN_BRIGHTNESS = "screen_brightness";
+        public static final String SCREEN_BRIGHTNESS_MODE = "screen_brightness_mode";
+        public static final int SCREEN_BRIGHTNESS_MODE_MANUAL = 0;
+        public static final int SCREEN_BRIGHTNESS_MODE_AUTOMATIC = 1;
+
+        public static Uri getUriFor(String name) {
+            return getUriFor(CONTENT_URI, name);
+        }
+
+        public static String getString(ContentResolver resolver, String name) {
+            return getString(resolver, CONTENT_URI, name);
+        }
+
+        public static boolean putString(ContentResolver resolver, String name, String value) {
+            return putString(resolver, CONTENT_URI, name, value);
+        }
+
+        public static int getInt(ContentResolver cr, String name, int def) {
+            return getInt(cr, CONTENT_URI, name, def);
+        }
+
+        public static int getInt(ContentResolver cr, String name)
+                throws SettingNotFoundException {
+            return getInt(cr, CONTENT_URI, name);
+        }
+
+        public static boolean putInt(ContentResolver cr, String name, int value) {
+            return putString(cr, name, Integer.toString(value));
+        }
+    }
+
+    public static final class Secure extends NameValueTable {
+        public static final Uri CONTENT_URI = Uri.parse("content://" + AUTHORITY + "/secure");
+
+        public static Uri getUriFor(String name) {
+            return getUriFor(CONTENT_URI, name);
+        }
+
+        public static String getString(ContentResolver resolver, String name) {
+            return getString(resolver, CONTENT_URI, name);
+        }
+
+        public static boolean putString(ContentResolver resolver, String name, String value) {
+            return putString(resolver, CONTENT_URI, name, value);
+        }
+
+        public static int getInt(ContentResolver cr, String name, int def) {
+            return getInt(cr, CONTENT_URI, name, def);
+        }
+
+        public static int getInt(ContentResolver cr, String name)
+                throws SettingNotFoundException {
+            return getInt(cr, CONTENT_URI, name);
+        }
+
+        public static boolean putInt(ContentResolver cr, String name, int value) {
+            return putString(cr, name, Integer.toString(value));
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.view;
+
+/**
+ * Host stand-in of the framework class, with the parts the key handlers use.
+ */
+public class KeyEvent {
+    public static final int ACTION_DOWN = 0;
+    public static final int ACTION_UP = 1;
+    public static final int ACTION_MULTIPLE = 2;
+
+    public static final int KEYCODE_UNKNOWN = 0;
+
+    public static final int FLAG_CANCELED = 0x20;
+
+    private final long mDownTime;
+    private final long mEventTime;
+    private final int mAction;
+    private final int mKeyCode;
+    private final int mRepeatCount;
+    private final int mMetaState;
+    private final int mDeviceId;
+    private final int mScanCode;
+    private final int mFlags;
+
+    public KeyEvent(int action, int code) {
+        this(0, 0, action, code, 0, 0, 0, 0, 0);
+    }
+
+    public KeyEvent(long downTime, long eventTime, int action, int code, int repeat,
+            int metaState, int deviceId, int scancode) {
+        this(downTime, eventTime, action, code, repeat, metaState, deviceId, scancode, 0);
+    }
+
+    public KeyEvent(long downTime, long eventTime, int action, int code, int repeat,
+            int metaState, int deviceId, int scancode, int flags) {
+        mDownTime = downTime;
+        mEventTime = eventTime;
+        mAction = action;
+        mKeyCode = code;
+        mRepeatCount = repeat;
+        mMetaState = metaState;
+        mDeviceId = deviceId;
+        mScanCode = scancode;
+        mFlags = flags;
+    }
+
+    public final long getDownTime() {
+        return mDownTime;
+    }
+
+    public final long getEventTime() {
+        return mEventTime;
+    }
+
+    public final int getAction() {
+        return mAction;
+    }
+
+    public final int getKeyCode() {
+        return mKeyCode;
+    }
+
+    public final int getRepeatCount() {
+        return mRepeatCount;
+    }
+
+    public final int getMetaState() {
+        return mMetaState;
+    }
+
+    public final int getDeviceId() {
+        return mDeviceId;
+    }
+
+    public final int getScanCode() {
+        return mScanCode;
+    }
+
+    public final int getFlags() {
+        return mFlags;
+    }
+
+    public final boolean isCanceled() {
+        return (mFlags & FLAG_CANCELED) != 0;
+    }
+
+    @Override
+    public String toString() {
+        return "KeyEvent { action=" + mAction + ", keyCode=" + mKeyCode + ", scanCode="
+                + mScanCode + ", repeatCount=" + mRepeatCount + " }";
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.internal.os;
+
+import android.os.Bundle;
+
+/**
+ * Host copy of the CyanogenMod framework interface, as driven by the
+ * BatteryService on every battery tick: update(), process(), hasNewData()
+ * and, if there is, getNotifyData().
+ */
+public interface DeviceDockBatteryHandler {
+
+    public void update();
+
+    public void process();
+
+    public Bundle getNotifyData();
+
+    public boolean hasNewData();
+
+    public boolean isPlugged();
+}
@@ -25,6 +25,7 @@
 #include <sys/ioctl.h>
 #include <fcntl.h>
 
+#include <cutils/atomic.h>
 #include <cutils/log.h>
 #include <cutils/properties.h>
 #include <cutils/str_parms.h>
@@ -50,6 +51,9 @@
 #define OUT_LONG_PERIOD_COUNT 8
 #define OUT_SAMPLING_RATE 44100
 
+#define OUT_LOW_LATENCY_PERIOD_SIZE 256
+#define OUT_LOW_LATENCY_PERIOD_COUNT 4
+
 #define IN_PERIOD_SIZE 1024
 #define IN_PERIOD_COUNT 4
 #define IN_SAMPLING_RATE 44100
@@ -75,6 +79,7 @@
 #define START_RECORDING 1
 #define END_RECORDING 0
 #define PLAYBACK 2
+#define CODEC_MODE_UNKNOWN -1
 
 bool isRecording = false;
 
@@ -82,8 +87,14 @@ enum {
     OUT_BUFFER_TYPE_UNKNOWN,
     OUT_BUFFER_TYPE_SHORT,
     OUT_BUFFER_TYPE_LONG,
+    OUT_BUFFER_TYPE_LOW_LATENCY,
 };
 
+/* bits of audio_device.route_state */
+#define ROUTE_SCREEN_OFF 0x1
+#define ROUTE_INPUT_ACTIVE 0x2
+#define ROUTE_OUT_SCO 0x4
+
 struct pcm_config pcm_config_out = {
     .channels = 2,
     .rate = OUT_SAMPLING_RATE,
@@ -93,6 +104,16 @@ struct pcm_config pcm_config_out = {
     .start_threshold = OUT_PERIOD_SIZE * OUT_SHORT_PERIOD_COUNT,
 };
 
+/* interactive playback: small periods and no write throttling */
+struct pcm_config pcm_config_out_low_latency = {
+    .channels = 2,
+    .rate = OUT_SAMPLING_RATE,
+    .period_size = OUT_LOW_LATENCY_PERIOD_SIZE,
+    .period_count = OUT_LOW_LATENCY_PERIOD_COUNT,
+    .format = PCM_FORMAT_S16_LE,
+    .start_threshold = OUT_LOW_LATENCY_PERIOD_SIZE,
+};
+
 struct pcm_config pcm_config_in = {
     .channels = 2,
     .rate = IN_SAMPLING_RATE,
@@ -111,6 +132,18 @@ struct pcm_config pcm_config_sco = {
     .format = PCM_FORMAT_S16_LE,
 };
 
+/* the dsp and codec control devices, and the modes they were left in */
+struct codec_state {
+    pthread_mutex_t lock; /* leaf lock, taken with or without the others */
+    char *dsp_path;
+    char *audio_path;
+    int dsp_fd;
+    int audio_fd;
+    int dsp_mode;
+    int capture_mode;
+    unsigned int ioctl_count;
+};
+
 struct audio_device {
     struct audio_hw_device hw_device;
 
@@ -121,6 +154,14 @@ struct audio_device {
     struct audio_route *ar;
     int orientation;
     bool screen_off;
+    struct codec_state codec;
+
+    /*
+     * Snapshot of the state out_write() adapts its buffering to, so that it
+     * does not need the device mutex on every write. Written with the
+     * device mutex locked by publish_route_state().
+     */
+    volatile int32_t route_state;
 
     struct stream_out *active_out;
     struct stream_in *active_in;
@@ -141,6 +182,11 @@ struct stream_out {
     int write_threshold;
     int cur_write_threshold;
     int buffer_type;
+    bool low_latency;
+    unsigned int underruns;
+
+    /* threads holding the device mutex and waiting for this one */
+    volatile int32_t lock_requests;
 
     struct audio_device *dev;
 };
@@ -190,42 +236,185 @@ static void release_buffer(struct resampler_buffer_provider *buffer_provider,
 
 /* Helper functions */
 
-static void switch_recording_mode(int mode)
-{
-    int fm34_dev, wm8903_dev;
-    fm34_dev = open(DSP_DEV_PATH,0);
-    wm8903_dev = open(AUDIO_DEV_PATH,0);
-
-    if (fm34_dev < 0) ALOGE("open %s failed", DSP_DEV_PATH);
-    if (wm8903_dev < 0) ALOGE("open %s failed", AUDIO_DEV_PATH);
-
-    if (wm8903_dev > 0 && fm34_dev > 0){
-       	ioctl(fm34_dev, DSP_CONTROL, mode);
-	switch (mode) {
-		case START_RECORDING:
-       		        ALOGD("start recording");
-       		        isRecording = true;
-	                ioctl(wm8903_dev, AUDIO_CAPTURE_MODE, INPUT_SOURCE_NORMAL);
-		break;
-
-		case END_RECORDING:
-	       		ALOGD("end recording");
-               		ioctl(wm8903_dev, AUDIO_CAPTURE_MODE, OUTPUT_SOURCE_NORMAL);
-               		isRecording = false;
-		break;
-
-		case PLAYBACK:
-	       		ALOGD("playback");
-		break;
-	}
+/* must be called with the hw device mutex locked, after changing any of
+ * the state summarized in route_state */
+static void publish_route_state(struct audio_device *adev)
+{
+    int32_t state = 0;
+
+    if (adev->screen_off)
+        state |= ROUTE_SCREEN_OFF;
+    if (adev->active_in)
+        state |= ROUTE_INPUT_ACTIVE;
+    if (adev->devices & AUDIO_DEVICE_OUT_ALL_SCO)
+        state |= ROUTE_OUT_SCO;
+
+    android_atomic_release_store(state, &adev->route_state);
+}
+
+/*
+ * Locks an output stream from a thread other than the one writing to it,
+ * with the hw device mutex locked. out_write() sees the pending request and
+ * queues on the hw device mutex instead of retaking the stream mutex ahead
+ * of the caller.
+ */
+static void lock_output_stream(struct stream_out *out)
+{
+    android_atomic_inc(&out->lock_requests);
+    pthread_mutex_lock(&out->lock);
+    android_atomic_dec(&out->lock_requests);
+}
+
+static int codec_open_device(const char *path, int fd)
+{
+    if (fd >= 0)
+        return fd;
+
+    fd = open(path, O_RDONLY);
+    if (fd < 0)
+        ALOGE("open %s failed: %s", path, strerror(errno));
+
+    return fd;
+}
+
+/* must be called with the codec mutex locked */
+static bool codec_open_locked(struct codec_state *codec)
+{
+    codec->dsp_fd = codec_open_device(codec->dsp_path, codec->dsp_fd);
+    codec->audio_fd = codec_open_device(codec->audio_path, codec->audio_fd);
+
+    return codec->dsp_fd >= 0 && codec->audio_fd >= 0;
+}
+
+/* must be called with the codec mutex locked */
+static void codec_close_locked(struct codec_state *codec)
+{
+    if (codec->dsp_fd >= 0)
+        close(codec->dsp_fd);
+    if (codec->audio_fd >= 0)
+        close(codec->audio_fd);
+
+    codec->dsp_fd = -1;
+    codec->audio_fd = -1;
+    codec->dsp_mode = CODEC_MODE_UNKNOWN;
+    codec->capture_mode = CODEC_MODE_UNKNOWN;
+}
+
+/*
+ * Issues an ioctl on one of the codec devices, reopening both once if the
+ * held fd went stale, which also forgets the modes they were left in.
+ * Must be called with the codec mutex locked.
+ */
+static int codec_ioctl_locked(struct codec_state *codec, bool dsp,
+                              int request, int arg)
+{
+    int ret;
+    int retry;
+
+    for (retry = 0; retry < 2; retry++) {
+        if (!codec_open_locked(codec))
+            return -ENODEV;
+
+        ret = ioctl(dsp ? codec->dsp_fd : codec->audio_fd, request, arg);
+        codec->ioctl_count++;
+        if (ret >= 0)
+            return ret;
+
+        ret = -errno;
+        if (ret != -EBADF && ret != -ENODEV && ret != -ENXIO)
+            break;
+
+        codec_close_locked(codec);
     }
 
-    if(fm34_dev > 0)
-        close(fm34_dev);
+    ALOGE("codec ioctl %#x failed: %s", request, strerror(-ret));
+    return ret;
+}
 
-    if(wm8903_dev > 0)
-        close(wm8903_dev);
+static void codec_init(struct codec_state *codec)
+{
+    char dsp_path[PROPERTY_VALUE_MAX];
+    char audio_path[PROPERTY_VALUE_MAX];
+
+    /* the device nodes can be pointed elsewhere to run the HAL against
+       fake devices */
+    property_get("audio.tf101.dsp_dev", dsp_path, DSP_DEV_PATH);
+    property_get("audio.tf101.codec_dev", audio_path, AUDIO_DEV_PATH);
+
+    pthread_mutex_init(&codec->lock, NULL);
+    codec->dsp_path = strdup(dsp_path);
+    codec->audio_path = strdup(audio_path);
+    codec->dsp_fd = -1;
+    codec->audio_fd = -1;
+    codec->dsp_mode = CODEC_MODE_UNKNOWN;
+    codec->capture_mode = CODEC_MODE_UNKNOWN;
+    codec->ioctl_count = 0;
+
+    pthread_mutex_lock(&codec->lock);
+    codec_open_locked(codec);
+    pthread_mutex_unlock(&codec->lock);
+}
 
+static void codec_free(struct codec_state *codec)
+{
+    pthread_mutex_lock(&codec->lock);
+    codec_close_locked(codec);
+    pthread_mutex_unlock(&codec->lock);
+
+    free(codec->dsp_path);
+    free(codec->audio_path);
+    pthread_mutex_destroy(&codec->lock);
+}
+
+/*
+ * Moves the dsp and the codec to the given mode. The devices stay open for
+ * the lifetime of the HAL and an ioctl is only issued when the mode the
+ * device was last left in differs from the one requested. A dsp already
+ * back in playback has no recording to end, so END_RECORDING followed by
+ * PLAYBACK costs nothing once the codec is in the right mode.
+ */
+static void switch_recording_mode(struct audio_device *adev, int mode)
+{
+    struct codec_state *codec = &adev->codec;
+    int capture_mode;
+
+    pthread_mutex_lock(&codec->lock);
+
+    if (!codec_open_locked(codec)) {
+        pthread_mutex_unlock(&codec->lock);
+        return;
+    }
+
+    switch (mode) {
+    case START_RECORDING:
+        ALOGD("start recording");
+        capture_mode = INPUT_SOURCE_NORMAL;
+        isRecording = true;
+        break;
+    case END_RECORDING:
+        ALOGD("end recording");
+        capture_mode = OUTPUT_SOURCE_NORMAL;
+        isRecording = false;
+        break;
+    default:
+        ALOGD("playback");
+        capture_mode = codec->capture_mode;
+        break;
+    }
+
+    if (codec->dsp_mode != mode &&
+            !(mode == END_RECORDING && codec->dsp_mode == PLAYBACK)) {
+        if (codec_ioctl_locked(codec, true, DSP_CONTROL, mode) >= 0)
+            codec->dsp_mode = mode;
+    }
+
+    if (codec->capture_mode != capture_mode) {
+        if (codec_ioctl_locked(codec, false, AUDIO_CAPTURE_MODE,
+                               capture_mode) >= 0)
+            codec->capture_mode = capture_mode;
+    }
+
+    pthread_mutex_unlock(&codec->lock);
 }
 
 
@@ -250,8 +439,8 @@ static void select_devices(bool in, bool out, struct audio_device *adev)
 
     if (speaker_on || headphone_on || hdmi_on) { 
 	if(isRecording)
-		switch_recording_mode(END_RECORDING);
-	switch_recording_mode(PLAYBACK);
+		switch_recording_mode(adev, END_RECORDING);
+	switch_recording_mode(adev, PLAYBACK);
     }
     if (speaker_on)
         audio_route_apply_path(adev->ar, "speaker");
@@ -268,7 +457,7 @@ static void select_devices(bool in, bool out, struct audio_device *adev)
 
 	//save_mixer_state(adev->ar);
     if (main_mic_on && !isRecording) 
-	switch_recording_mode(START_RECORDING);
+	switch_recording_mode(adev, START_RECORDING);
 
     if(headset_mic_on)
             audio_route_apply_path(adev->ar, "headset-mic");
@@ -326,6 +515,7 @@ static void do_in_standby(struct stream_in *in)
         pcm_close(in->pcm);
         in->pcm = NULL;
         adev->active_in = NULL;
+        publish_route_state(adev);
         if (in->resampler) {
             release_resampler(in->resampler);
             in->resampler = NULL;
@@ -361,12 +551,13 @@ static int start_output_stream(struct stream_out *out)
         out->pcm_config = &pcm_config_sco;
     } else {
         device = PCM_DEVICE;
-        out->pcm_config = &pcm_config_out;
+        out->pcm_config = out->low_latency ?
+                &pcm_config_out_low_latency : &pcm_config_out;
         out->buffer_type = OUT_BUFFER_TYPE_UNKNOWN;
     }
 
 	if(isRecording)
-		switch_recording_mode(END_RECORDING);
+		switch_recording_mode(adev, END_RECORDING);
 
     /*
      * All open PCMs can only use a single group of rates at once:
@@ -445,7 +636,7 @@ static int start_input_stream(struct stream_in *in)
      * the most common rate, but group 2 is required for SCO.
      */
     if (adev->active_out) {
-        pthread_mutex_lock(&adev->active_out->lock);
+        lock_output_stream(adev->active_out);
         if (((in->pcm_config->rate % 8000 == 0) &&
                  (adev->active_out->pcm_config->rate % 8000) != 0) ||
                  ((in->pcm_config->rate % 11025 == 0) &&
@@ -482,6 +673,7 @@ static int start_input_stream(struct stream_in *in)
     in->buffer = malloc(in->buffer_size);
 
     adev->active_in = in;
+    publish_route_state(adev);
 
     return 0;
 }
@@ -598,8 +790,11 @@ static int out_set_sample_rate(struct audio_stream *stream, uint32_t rate)
 
 static size_t out_get_buffer_size(const struct audio_stream *stream)
 {
-    return pcm_config_out.period_size *
-               audio_stream_frame_size((struct audio_stream *)stream);
+    struct stream_out *out = (struct stream_out *)stream;
+    size_t period_size = out->low_latency ?
+            OUT_LOW_LATENCY_PERIOD_SIZE : pcm_config_out.period_size;
+
+    return period_size * audio_stream_frame_size((struct audio_stream *)stream);
 }
 
 static uint32_t out_get_channels(const struct audio_stream *stream)
@@ -622,7 +817,7 @@ static int out_standby(struct audio_stream *stream)
     struct stream_out *out = (struct stream_out *)stream;
 
     pthread_mutex_lock(&out->dev->lock);
-    pthread_mutex_lock(&out->lock);
+    lock_output_stream(out);
     do_out_standby(out);
     pthread_mutex_unlock(&out->lock);
     pthread_mutex_unlock(&out->dev->lock);
@@ -632,6 +827,13 @@ static int out_standby(struct audio_stream *stream)
 
 static int out_dump(const struct audio_stream *stream, int fd)
 {
+    struct stream_out *out = (struct stream_out *)stream;
+
+    dprintf(fd, "out: standby=%d low_latency=%d buffer_type=%d "
+            "write_threshold=%d cur_write_threshold=%d underruns=%u\n",
+            out->standby, out->low_latency, out->buffer_type,
+            out->write_threshold, out->cur_write_threshold, out->underruns);
+
     return 0;
 }
 
@@ -659,13 +861,14 @@ ALOGD("out_set_parameters:%s", kvpairs);
              */
             if ( (val & AUDIO_DEVICE_OUT_ALL_SCO) ^ (adev->devices & AUDIO_DEVICE_OUT_ALL_SCO)
 		|| (val & AUDIO_DEVICE_OUT_AUX_DIGITAL) ^ (adev->devices & AUDIO_DEVICE_OUT_AUX_DIGITAL)) {
-                pthread_mutex_lock(&out->lock);
+                lock_output_stream(out);
                 do_out_standby(out);
                 pthread_mutex_unlock(&out->lock);
             }
 
             adev->devices &= ~AUDIO_DEVICE_OUT_ALL;
             adev->devices |= val;
+            publish_route_state(adev);
             select_devices_out(adev);
         }
     }
@@ -684,17 +887,19 @@ static uint32_t out_get_latency(const struct audio_stream_out *stream)
 {
     struct stream_out *out = (struct stream_out *)stream;
     struct audio_device *adev = out->dev;
+    int32_t route_state = android_atomic_acquire_load(&adev->route_state);
     size_t period_count;
 
-    pthread_mutex_lock(&adev->lock);
+    if (out->low_latency && !(route_state & ROUTE_OUT_SCO))
+        return (OUT_LOW_LATENCY_PERIOD_SIZE * OUT_LOW_LATENCY_PERIOD_COUNT * 1000) /
+                pcm_config_out_low_latency.rate;
 
-    if (adev->screen_off && !adev->active_in && !(adev->devices & AUDIO_DEVICE_OUT_ALL_SCO))
+    if ((route_state & ROUTE_SCREEN_OFF) &&
+            !(route_state & (ROUTE_INPUT_ACTIVE | ROUTE_OUT_SCO)))
         period_count = OUT_LONG_PERIOD_COUNT;
     else
         period_count = OUT_SHORT_PERIOD_COUNT;
 
-    pthread_mutex_unlock(&adev->lock);
-
     return (pcm_config_out.period_size * period_count * 1000) / pcm_config_out.rate;
 }
 
@@ -716,28 +921,45 @@ static ssize_t out_write(struct audio_stream_out *stream, const void* buffer,
     size_t out_frames;
     int buffer_type;
     int kernel_frames;
+    int32_t route_state;
+    bool locked = false;
     bool sco_on;
 
     /*
-     * acquiring hw device mutex systematically is useful if a low
-     * priority thread is waiting on the output stream mutex - e.g.
-     * executing out_set_parameters() while holding the hw device
-     * mutex
+     * the hw device mutex is only needed to leave standby, or when a
+     * thread holding it is waiting on the output stream mutex - e.g.
+     * executing out_set_parameters() - in which case queuing on it lets
+     * that thread through before the next write
      */
-    pthread_mutex_lock(&adev->lock);
-    pthread_mutex_lock(&out->lock);
-    if (out->standby) {
-        ret = start_output_stream(out);
-        if (ret != 0) {
-            pthread_mutex_unlock(&adev->lock);
-            goto exit;
+    if (android_atomic_acquire_load(&out->lock_requests) == 0) {
+        pthread_mutex_lock(&out->lock);
+        locked = !out->standby;
+        if (!locked)
+            pthread_mutex_unlock(&out->lock);
+    }
+    if (!locked) {
+        pthread_mutex_lock(&adev->lock);
+        pthread_mutex_lock(&out->lock);
+        if (out->standby) {
+            ret = start_output_stream(out);
+            if (ret != 0) {
+                pthread_mutex_unlock(&adev->lock);
+                goto exit;
+            }
+            out->standby = false;
         }
-        out->standby = false;
+        pthread_mutex_unlock(&adev->lock);
     }
-    buffer_type = (adev->screen_off && !adev->active_in) ?
-            OUT_BUFFER_TYPE_LONG : OUT_BUFFER_TYPE_SHORT;
-    sco_on = (adev->devices & AUDIO_DEVICE_OUT_ALL_SCO);
-    pthread_mutex_unlock(&adev->lock);
+
+    route_state = android_atomic_acquire_load(&adev->route_state);
+    sco_on = route_state & ROUTE_OUT_SCO;
+    if (out->pcm_config == &pcm_config_out_low_latency)
+        buffer_type = OUT_BUFFER_TYPE_LOW_LATENCY;
+    else if ((route_state & ROUTE_SCREEN_OFF) &&
+            !(route_state & ROUTE_INPUT_ACTIVE))
+        buffer_type = OUT_BUFFER_TYPE_LONG;
+    else
+        buffer_type = OUT_BUFFER_TYPE_SHORT;
 
     /* detect changes in screen ON/OFF state and adapt buffer size
      * if needed. Do not change buffer size when routed to SCO device. */
@@ -746,6 +968,8 @@ static ssize_t out_write(struct audio_stream_out *stream, const void* buffer,
 
         if (buffer_type == OUT_BUFFER_TYPE_LONG)
             period_count = OUT_LONG_PERIOD_COUNT;
+        else if (buffer_type == OUT_BUFFER_TYPE_LOW_LATENCY)
+            period_count = OUT_LOW_LATENCY_PERIOD_COUNT;
         else
             period_count = OUT_SHORT_PERIOD_COUNT;
 
@@ -780,7 +1004,9 @@ static ssize_t out_write(struct audio_stream_out *stream, const void* buffer,
         out_frames = in_frames;
     }
 
-    if (!sco_on) {
+    /* the low latency buffer is small enough for pcm_write() to pace the
+     * writes by itself */
+    if (!sco_on && buffer_type != OUT_BUFFER_TYPE_LOW_LATENCY) {
         int total_sleep_time_us = 0;
         size_t period_size = out->pcm_config->period_size;
 
@@ -840,6 +1066,7 @@ static ssize_t out_write(struct audio_stream_out *stream, const void* buffer,
 
     ret = pcm_write(out->pcm, in_buffer, out_frames * frame_size);
     if (ret == -EPIPE) {
+        out->underruns++;
         /* In case of underrun, don't sleep since we want to catch up asap */
         pthread_mutex_unlock(&out->lock);
         return ret;
@@ -1087,6 +1314,7 @@ static int adev_open_output_stream(struct audio_hw_device *dev,
 {
     struct audio_device *adev = (struct audio_device *)dev;
     struct stream_out *out;
+    char value[PROPERTY_VALUE_MAX];
     int ret;
 
     out = (struct stream_out *)calloc(1, sizeof(struct stream_out));
@@ -1113,6 +1341,14 @@ static int adev_open_output_stream(struct audio_hw_device *dev,
 
     out->dev = adev;
 
+    /* interactive playback, or forced for latency measurements, see
+     * audio_policy.conf */
+    property_get("audio.tf101.low_latency", value, "0");
+    out->low_latency = (flags & AUDIO_OUTPUT_FLAG_FAST) ||
+            strcmp(value, "1") == 0 || strcmp(value, "true") == 0;
+    ALOGV("adev_open_output_stream: flags=%#x low_latency=%d", flags,
+          out->low_latency);
+
     config->format = out_get_format(&out->stream.common);
     config->channel_mask = out_get_channels(&out->stream.common);
     config->sample_rate = out_get_sample_rate(&out->stream.common);
@@ -1175,10 +1411,13 @@ ALOGD("adev_set_parameters:%s", kvpairs);
 
     ret = str_parms_get_str(parms, "screen_state", value, sizeof(value));
     if (ret >= 0) {
+        pthread_mutex_lock(&adev->lock);
         if (strcmp(value, AUDIO_PARAMETER_VALUE_ON) == 0)
             adev->screen_off = false;
         else
             adev->screen_off = true;
+        publish_route_state(adev);
+        pthread_mutex_unlock(&adev->lock);
     }
 
     str_parms_destroy(parms);
@@ -1296,9 +1535,11 @@ static int adev_open_input_stream(struct audio_hw_device *dev,
 static void adev_close_input_stream(struct audio_hw_device *dev,
                                    struct audio_stream_in *stream)
 {
+    struct audio_device *adev = (struct audio_device *)dev;
+
     ALOGV("adev_close_input_stream+");
-    switch_recording_mode(END_RECORDING);
-    switch_recording_mode(PLAYBACK);
+    switch_recording_mode(adev, END_RECORDING);
+    switch_recording_mode(adev, PLAYBACK);
 
     struct stream_in *in = (struct stream_in *)stream;
 
@@ -1309,6 +1550,16 @@ static void adev_close_input_stream(struct audio_hw_device *dev,
 
 static int adev_dump(const audio_hw_device_t *device, int fd)
 {
+    struct audio_device *adev = (struct audio_device *)device;
+    struct codec_state *codec = &adev->codec;
+
+    pthread_mutex_lock(&codec->lock);
+    dprintf(fd, "codec: dsp %s fd=%d mode=%d, codec %s fd=%d mode=%d, ioctls=%u\n",
+            codec->dsp_path, codec->dsp_fd, codec->dsp_mode,
+            codec->audio_path, codec->audio_fd, codec->capture_mode,
+            codec->ioctl_count);
+    pthread_mutex_unlock(&codec->lock);
+
     return 0;
 }
 
@@ -1317,6 +1568,7 @@ static int adev_close(hw_device_t *device)
     struct audio_device *adev = (struct audio_device *)device;
 
     audio_route_free(adev->ar);
+    codec_free(&adev->codec);
 
     free(device);
     return 0;
@@ -1356,6 +1608,7 @@ static int adev_open(const hw_module_t* module, const char* name,
     adev->hw_device.dump = adev_dump;
 
     adev->ar = audio_route_init();
+    codec_init(&adev->codec);
     adev->orientation = ORIENTATION_UNDEFINED;
 
     *device = &adev->hw_device.common;
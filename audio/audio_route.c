@@ -20,16 +20,24 @@
 
 #include <errno.h>
 #include <expat.h>
+#include <fcntl.h>
 #include <stdbool.h>
+#include <stdint.h>
 #include <stdio.h>
+#include <sys/mman.h>
+#include <sys/stat.h>
+#include <unistd.h>
 
 #include <cutils/log.h>
 
 #include <tinyalsa/asoundlib.h>
 
-#define BUF_SIZE 1024
 #define MIXER_XML_PATH "/system/etc/mixer_paths.xml"
+#define MIXER_CACHE_PATH "/data/misc/audio/mixer_paths.cache"
+#define MIXER_CACHE_MAGIC 0x4350504d /* "MPPC" */
+#define MIXER_CACHE_VERSION 1
 #define INITIAL_MIXER_PATH_SIZE 8
+#define INITIAL_PATH_HASH_SIZE 16
 
 #define MIXER_CARD 0
 
@@ -38,10 +46,12 @@ struct mixer_state {
     int old_value;
     int new_value;
     int reset_value;
+    bool dirty;     /* in dirty_ctls, new_value may differ from old_value */
+    bool active;    /* in active_ctls, old_value may differ from reset_value */
 };
 
 struct mixer_setting {
-    struct mixer_ctl *ctl;
+    unsigned int ctl_index;
     int value;
 };
 
@@ -57,9 +67,54 @@ struct audio_route {
     unsigned int num_mixer_ctls;
     struct mixer_state *mixer_state;
 
+    /* controls touched since the last update, and controls away from their
+       reset value, so that a route change only visits the controls of the
+       paths involved instead of every mixer control */
+    unsigned int *dirty_ctls;
+    unsigned int num_dirty_ctls;
+    unsigned int *active_ctls;
+    unsigned int num_active_ctls;
+
     unsigned int mixer_path_size;
     unsigned int num_mixer_paths;
     struct mixer_path *mixer_path;
+
+    /* open addressing index of mixer_path by name, -1 for empty slots */
+    unsigned int path_hash_size;
+    int *path_hash;
+
+    /* mapped cache the path names and settings point into, if loaded */
+    void *cache;
+    size_t cache_size;
+};
+
+/*
+ * Precompiled form of the mixer paths, written after a successful parse of
+ * the xml and mapped directly on the next start.  The hash covers the xml
+ * contents and the control list of the mixer, so a changed xml or kernel
+ * invalidates it.  Layout:
+ *   header
+ *   mixer_setting[num_initial_settings]
+ *   mixer_cache_path[num_paths]
+ *   mixer_setting[num_settings]
+ *   char[strings_size]
+ */
+struct mixer_cache_header {
+    uint32_t magic;
+    uint32_t version;
+    uint64_t hash;
+    uint32_t num_mixer_ctls;
+    uint32_t num_initial_settings;
+    uint32_t num_paths;
+    uint32_t num_settings;
+    uint32_t strings_size;
+    uint32_t reserved;
+};
+
+struct mixer_cache_path {
+    uint32_t name_offset;
+    uint32_t setting_offset;
+    uint32_t length;
 };
 
 struct config_parse_state {
@@ -74,25 +129,87 @@ static void path_free(struct audio_route *ar)
 {
     unsigned int i;
 
-    for (i = 0; i < ar->num_mixer_paths; i++) {
-        if (ar->mixer_path[i].name)
-            free(ar->mixer_path[i].name);
-        if (ar->mixer_path[i].setting)
-            free(ar->mixer_path[i].setting);
+    if (ar->cache) {
+        munmap(ar->cache, ar->cache_size);
+        ar->cache = NULL;
+    } else {
+        for (i = 0; i < ar->num_mixer_paths; i++) {
+            if (ar->mixer_path[i].name)
+                free(ar->mixer_path[i].name);
+            if (ar->mixer_path[i].setting)
+                free(ar->mixer_path[i].setting);
+        }
     }
     free(ar->mixer_path);
+    free(ar->path_hash);
+    ar->mixer_path = NULL;
+    ar->path_hash = NULL;
+    ar->num_mixer_paths = 0;
+    ar->mixer_path_size = 0;
+    ar->path_hash_size = 0;
 }
 
-static struct mixer_path *path_get_by_name(struct audio_route *ar,
-                                           const char *name)
+/* FNV-1a */
+static unsigned int path_hash_name(const char *name)
 {
+    unsigned int hash = 2166136261u;
+
+    while (*name) {
+        hash ^= (unsigned char)*name++;
+        hash *= 16777619u;
+    }
+
+    return hash;
+}
+
+/* returns the hash slot holding name, or the empty slot it would go in */
+static unsigned int path_hash_find_slot(struct audio_route *ar,
+                                        const char *name)
+{
+    unsigned int mask = ar->path_hash_size - 1;
+    unsigned int slot = path_hash_name(name) & mask;
+
+    while (ar->path_hash[slot] >= 0 &&
+           strcmp(ar->mixer_path[ar->path_hash[slot]].name, name) != 0)
+        slot = (slot + 1) & mask;
+
+    return slot;
+}
+
+static int path_hash_resize(struct audio_route *ar, unsigned int size)
+{
+    int *old_hash = ar->path_hash;
     unsigned int i;
 
+    ar->path_hash = malloc(size * sizeof(int));
+    if (ar->path_hash == NULL) {
+        ar->path_hash = old_hash;
+        return -1;
+    }
+    ar->path_hash_size = size;
+    for (i = 0; i < size; i++)
+        ar->path_hash[i] = -1;
+
     for (i = 0; i < ar->num_mixer_paths; i++)
-        if (strcmp(ar->mixer_path[i].name, name) == 0)
-            return &ar->mixer_path[i];
+        ar->path_hash[path_hash_find_slot(ar, ar->mixer_path[i].name)] = i;
 
-    return NULL;
+    free(old_hash);
+    return 0;
+}
+
+static struct mixer_path *path_get_by_name(struct audio_route *ar,
+                                           const char *name)
+{
+    int index;
+
+    if (ar->path_hash_size == 0)
+        return NULL;
+
+    index = ar->path_hash[path_hash_find_slot(ar, name)];
+    if (index < 0)
+        return NULL;
+
+    return &ar->mixer_path[index];
 }
 
 static struct mixer_path *path_create(struct audio_route *ar, const char *name)
@@ -104,6 +221,15 @@ static struct mixer_path *path_create(struct audio_route *ar, const char *name)
         return NULL;
     }
 
+    /* keep the name index at most half full */
+    if (ar->path_hash_size <= (ar->num_mixer_paths + 1) * 2) {
+        if (path_hash_resize(ar, ar->path_hash_size == 0 ?
+                             INITIAL_PATH_HASH_SIZE : ar->path_hash_size * 2) < 0) {
+            ALOGE("Unable to allocate the path index");
+            return NULL;
+        }
+    }
+
     /* check if we need to allocate more space for mixer paths */
     if (ar->mixer_path_size <= ar->num_mixer_paths) {
         if (ar->mixer_path_size == 0)
@@ -126,6 +252,7 @@ static struct mixer_path *path_create(struct audio_route *ar, const char *name)
     ar->mixer_path[ar->num_mixer_paths].size = 0;
     ar->mixer_path[ar->num_mixer_paths].length = 0;
     ar->mixer_path[ar->num_mixer_paths].setting = NULL;
+    ar->path_hash[path_hash_find_slot(ar, name)] = ar->num_mixer_paths;
 
     /* return the mixer path just added, then increment number of them */
     return &ar->mixer_path[ar->num_mixer_paths++];
@@ -137,20 +264,20 @@ static bool path_setting_exists(struct mixer_path *path,
     unsigned int i;
 
     for (i = 0; i < path->length; i++)
-        if (path->setting[i].ctl == setting->ctl)
+        if (path->setting[i].ctl_index == setting->ctl_index)
             return true;
 
     return false;
 }
 
-static int path_add_setting(struct mixer_path *path,
+static int path_add_setting(struct audio_route *ar, struct mixer_path *path,
                             struct mixer_setting *setting)
 {
     struct mixer_setting *new_path_setting;
 
     if (path_setting_exists(path, setting)) {
         ALOGE("Duplicate path setting '%s'",
-              mixer_ctl_get_name(setting->ctl));
+              mixer_ctl_get_name(ar->mixer_state[setting->ctl_index].ctl));
         return -1;
     }
 
@@ -172,52 +299,69 @@ static int path_add_setting(struct mixer_path *path,
     }
 
     /* initialise the new path setting */
-    path->setting[path->length].ctl = setting->ctl;
+    path->setting[path->length].ctl_index = setting->ctl_index;
     path->setting[path->length].value = setting->value;
     path->length++;
 
     return 0;
 }
 
-static int path_add_path(struct mixer_path *path, struct mixer_path *sub_path)
+static int path_add_path(struct audio_route *ar, struct mixer_path *path,
+                         struct mixer_path *sub_path)
 {
     unsigned int i;
 
     for (i = 0; i < sub_path->length; i++)
-        if (path_add_setting(path, &sub_path->setting[i]) < 0)
+        if (path_add_setting(ar, path, &sub_path->setting[i]) < 0)
             return -1;
 
     return 0;
 }
 
-static void path_print(struct mixer_path *path)
+static void path_print(struct audio_route *ar, struct mixer_path *path)
 {
     unsigned int i;
 
     ALOGV("Path: %s, length: %d", path->name, path->length);
     for (i = 0; i < path->length; i++)
-        ALOGV("  %d: %s -> %d", i, mixer_ctl_get_name(path->setting[i].ctl),
+        ALOGV("  %d: %s -> %d", i,
+              mixer_ctl_get_name(ar->mixer_state[path->setting[i].ctl_index].ctl),
               path->setting[i].value);
 }
 
-static int path_apply(struct audio_route *ar, struct mixer_path *path)
+/* mixer state functions */
+
+static void mixer_state_set(struct audio_route *ar, unsigned int index,
+                            int value)
 {
-    unsigned int i;
-    unsigned int j;
+    struct mixer_state *ms = &ar->mixer_state[index];
 
-    for (i = 0; i < path->length; i++) {
-        struct mixer_ctl *ctl = path->setting[i].ctl;
+    ms->new_value = value;
+    if (!ms->dirty) {
+        ms->dirty = true;
+        ar->dirty_ctls[ar->num_dirty_ctls++] = index;
+    }
+}
 
-        /* locate the mixer ctl in the list */
-        for (j = 0; j < ar->num_mixer_ctls; j++) {
-            if (ar->mixer_state[j].ctl == ctl)
-                break;
-        }
+static int mixer_state_find(struct audio_route *ar, struct mixer_ctl *ctl)
+{
+    unsigned int i;
 
-        /* apply the new value */
-        ar->mixer_state[j].new_value = path->setting[i].value;
+    for (i = 0; i < ar->num_mixer_ctls; i++) {
+        if (ar->mixer_state[i].ctl == ctl)
+            return i;
     }
 
+    return -1;
+}
+
+static int path_apply(struct audio_route *ar, struct mixer_path *path)
+{
+    unsigned int i;
+
+    for (i = 0; i < path->length; i++)
+        mixer_state_set(ar, path->setting[i].ctl_index, path->setting[i].value);
+
     return 0;
 }
 
@@ -244,6 +388,7 @@ static void start_tag(void *data, const XML_Char *tag_name,
     struct audio_route *ar = state->ar;
     unsigned int i;
     struct mixer_ctl *ctl;
+    int ctl_index;
     int value;
     struct mixer_setting mixer_setting;
 
@@ -266,7 +411,10 @@ static void start_tag(void *data, const XML_Char *tag_name,
             } else {
                 /* nested path */
                 struct mixer_path *sub_path = path_get_by_name(ar, attr_name);
-                path_add_path(state->path, sub_path);
+                if (sub_path == NULL || state->path == NULL)
+                    ALOGE("Unable to add path '%s'", attr_name);
+                else
+                    path_add_path(ar, state->path, sub_path);
             }
         }
     }
@@ -274,6 +422,12 @@ static void start_tag(void *data, const XML_Char *tag_name,
     else if (strcmp(tag_name, "ctl") == 0) {
         /* Obtain the mixer ctl and value */
         ctl = mixer_get_ctl_by_name(ar->mixer, attr_name);
+        ctl_index = ctl ? mixer_state_find(ar, ctl) : -1;
+        if (ctl_index < 0) {
+            ALOGE("Unknown mixer ctl '%s'", attr_name ? attr_name : "");
+            state->level++;
+            return;
+        }
         switch (mixer_ctl_get_type(ctl)) {
         case MIXER_CTL_TYPE_BOOL:
         case MIXER_CTL_TYPE_INT:
@@ -289,20 +443,12 @@ static void start_tag(void *data, const XML_Char *tag_name,
 
         if (state->level == 1) {
             /* top level ctl (initial setting) */
-
-            /* locate the mixer ctl in the list */
-            for (i = 0; i < ar->num_mixer_ctls; i++) {
-                if (ar->mixer_state[i].ctl == ctl)
-                    break;
-            }
-
-            /* apply the new value */
-            ar->mixer_state[i].new_value = value;
-        } else {
+            mixer_state_set(ar, ctl_index, value);
+        } else if (state->path) {
             /* nested ctl (within a path) */
-            mixer_setting.ctl = ctl;
+            mixer_setting.ctl_index = ctl_index;
             mixer_setting.value = value;
-            path_add_setting(state->path, &mixer_setting);
+            path_add_setting(ar, state->path, &mixer_setting);
         }
     }
 
@@ -321,9 +467,17 @@ static int alloc_mixer_state(struct audio_route *ar)
     unsigned int i;
 
     ar->num_mixer_ctls = mixer_get_num_ctls(ar->mixer);
-    ar->mixer_state = malloc(ar->num_mixer_ctls * sizeof(struct mixer_state));
-    if (!ar->mixer_state)
+    ar->mixer_state = calloc(ar->num_mixer_ctls, sizeof(struct mixer_state));
+    ar->dirty_ctls = malloc(ar->num_mixer_ctls * sizeof(unsigned int));
+    ar->active_ctls = malloc(ar->num_mixer_ctls * sizeof(unsigned int));
+    if (!ar->mixer_state || !ar->dirty_ctls || !ar->active_ctls) {
+        free(ar->mixer_state);
+        free(ar->dirty_ctls);
+        free(ar->active_ctls);
         return -1;
+    }
+    ar->num_dirty_ctls = 0;
+    ar->num_active_ctls = 0;
 
     for (i = 0; i < ar->num_mixer_ctls; i++) {
         ar->mixer_state[i].ctl = mixer_get_ctl(ar->mixer, i);
@@ -338,7 +492,11 @@ static int alloc_mixer_state(struct audio_route *ar)
 static void free_mixer_state(struct audio_route *ar)
 {
     free(ar->mixer_state);
+    free(ar->dirty_ctls);
+    free(ar->active_ctls);
     ar->mixer_state = NULL;
+    ar->dirty_ctls = NULL;
+    ar->active_ctls = NULL;
 }
 
 void update_mixer_state(struct audio_route *ar)
@@ -346,16 +504,26 @@ void update_mixer_state(struct audio_route *ar)
     unsigned int i;
     unsigned int j;
 
-    for (i = 0; i < ar->num_mixer_ctls; i++) {
+    /* only the controls set since the last update can have changed */
+    for (i = 0; i < ar->num_dirty_ctls; i++) {
+        struct mixer_state *ms = &ar->mixer_state[ar->dirty_ctls[i]];
+
+        ms->dirty = false;
+
         /* if the value has changed, update the mixer */
-        if (ar->mixer_state[i].old_value != ar->mixer_state[i].new_value) {
+        if (ms->old_value != ms->new_value) {
             /* set all ctl values the same */
-            for (j = 0; j < mixer_ctl_get_num_values(ar->mixer_state[i].ctl); j++)
-                mixer_ctl_set_value(ar->mixer_state[i].ctl, j,
-                                    ar->mixer_state[i].new_value);
-            ar->mixer_state[i].old_value = ar->mixer_state[i].new_value;
+            for (j = 0; j < mixer_ctl_get_num_values(ms->ctl); j++)
+                mixer_ctl_set_value(ms->ctl, j, ms->new_value);
+            ms->old_value = ms->new_value;
+        }
+
+        if (ms->old_value != ms->reset_value && !ms->active) {
+            ms->active = true;
+            ar->active_ctls[ar->num_active_ctls++] = ar->dirty_ctls[i];
         }
     }
+    ar->num_dirty_ctls = 0;
 }
 
 /* saves the current state of the mixer, for resetting all controls */
@@ -363,9 +531,11 @@ static void save_mixer_state(struct audio_route *ar)
 {
     unsigned int i;
 
+    ar->num_active_ctls = 0;
     for (i = 0; i < ar->num_mixer_ctls; i++) {
         /* only get value 0, assume multiple ctl values are the same */
         ar->mixer_state[i].reset_value = mixer_ctl_get_value(ar->mixer_state[i].ctl, 0);
+        ar->mixer_state[i].active = false;
     }
 }
 
@@ -374,9 +544,23 @@ void reset_mixer_state(struct audio_route *ar)
 {
     unsigned int i;
 
-    /* load all of the saved values */
-    for (i = 0; i < ar->num_mixer_ctls; i++)
-        ar->mixer_state[i].new_value = ar->mixer_state[i].reset_value;
+    /* only the controls away from their saved value need to be reset, the
+       next update re-activates the ones still set by a path */
+    for (i = 0; i < ar->num_active_ctls; i++) {
+        unsigned int index = ar->active_ctls[i];
+
+        ar->mixer_state[index].active = false;
+        mixer_state_set(ar, index, ar->mixer_state[index].reset_value);
+    }
+    ar->num_active_ctls = 0;
+
+    /* controls set by a path but not committed yet are not active, they
+       go back to their saved value too */
+    for (i = 0; i < ar->num_dirty_ctls; i++) {
+        struct mixer_state *ms = &ar->mixer_state[ar->dirty_ctls[i]];
+
+        ms->new_value = ms->reset_value;
+    }
 }
 
 void audio_route_apply_path(struct audio_route *ar, const char *name)
@@ -399,16 +583,302 @@ void audio_route_apply_path(struct audio_route *ar, const char *name)
     path_apply(ar, path);
 }
 
-struct audio_route *audio_route_init(void)
+/* xml and cache functions */
+
+static void *read_file(const char *path, size_t *size)
+{
+    struct stat st;
+    size_t done = 0;
+    ssize_t ret;
+    void *buf;
+    int fd;
+
+    fd = open(path, O_RDONLY);
+    if (fd < 0)
+        return NULL;
+
+    if (fstat(fd, &st) < 0 || st.st_size <= 0) {
+        close(fd);
+        return NULL;
+    }
+
+    buf = malloc(st.st_size);
+    if (!buf) {
+        close(fd);
+        return NULL;
+    }
+
+    while (done < (size_t)st.st_size) {
+        ret = read(fd, (char *)buf + done, st.st_size - done);
+        if (ret < 0 && errno == EINTR)
+            continue;
+        if (ret <= 0)
+            break;
+        done += ret;
+    }
+    close(fd);
+
+    if (done != (size_t)st.st_size) {
+        free(buf);
+        return NULL;
+    }
+
+    *size = done;
+    return buf;
+}
+
+static int config_parse(struct audio_route *ar, const void *xml,
+                        size_t xml_size)
 {
     struct config_parse_state state;
     XML_Parser parser;
+    int ret = 0;
+
+    parser = XML_ParserCreate(NULL);
+    if (!parser) {
+        ALOGE("Failed to create XML parser");
+        return -1;
+    }
+
+    memset(&state, 0, sizeof(state));
+    state.ar = ar;
+    XML_SetUserData(parser, &state);
+    XML_SetElementHandler(parser, start_tag, end_tag);
+
+    if (XML_Parse(parser, xml, xml_size, 1) == XML_STATUS_ERROR) {
+        ALOGE("Error in mixer xml (%s)", MIXER_XML_PATH);
+        ret = -1;
+    }
+
+    XML_ParserFree(parser);
+    return ret;
+}
+
+/* 64 bit FNV-1a */
+static uint64_t cache_hash_update(uint64_t hash, const void *data, size_t size)
+{
+    const unsigned char *p = data;
+
+    while (size--) {
+        hash ^= *p++;
+        hash *= 1099511628211ull;
+    }
+
+    return hash;
+}
+
+/* hashes the xml and every input the parse resolves against the mixer */
+static uint64_t cache_hash(struct audio_route *ar, const void *xml,
+                           size_t xml_size)
+{
+    uint64_t hash = 14695981039346656037ull;
+    unsigned int i;
+    unsigned int j;
+
+    hash = cache_hash_update(hash, xml, xml_size);
+    hash = cache_hash_update(hash, &ar->num_mixer_ctls,
+                             sizeof(ar->num_mixer_ctls));
+    for (i = 0; i < ar->num_mixer_ctls; i++) {
+        struct mixer_ctl *ctl = ar->mixer_state[i].ctl;
+        const char *name = mixer_ctl_get_name(ctl);
+        int type = mixer_ctl_get_type(ctl);
+
+        hash = cache_hash_update(hash, name, strlen(name) + 1);
+        hash = cache_hash_update(hash, &type, sizeof(type));
+        if (type != MIXER_CTL_TYPE_ENUM)
+            continue;
+        for (j = 0; j < mixer_ctl_get_num_enums(ctl); j++) {
+            const char *string = mixer_ctl_get_enum_string(ctl, j);
+            hash = cache_hash_update(hash, string, strlen(string) + 1);
+        }
+    }
+
+    return hash;
+}
+
+static bool cache_settings_valid(struct audio_route *ar,
+                                 const struct mixer_setting *setting,
+                                 unsigned int count)
+{
+    unsigned int i;
+
+    for (i = 0; i < count; i++)
+        if (setting[i].ctl_index >= ar->num_mixer_ctls)
+            return false;
+
+    return true;
+}
+
+/* maps the cache, the paths point straight into the mapping */
+static int cache_load(struct audio_route *ar, uint64_t hash)
+{
+    const struct mixer_cache_header *header;
+    const struct mixer_setting *initial;
+    const struct mixer_cache_path *paths;
+    struct mixer_setting *settings;
+    const char *strings;
+    struct stat st;
+    uint64_t expected;
+    unsigned int hash_size;
+    unsigned int i;
+    void *map;
+    int fd;
+
+    fd = open(MIXER_CACHE_PATH, O_RDONLY);
+    if (fd < 0)
+        return -1;
+
+    if (fstat(fd, &st) < 0 || (size_t)st.st_size < sizeof(*header)) {
+        close(fd);
+        return -1;
+    }
+
+    map = mmap(NULL, st.st_size, PROT_READ, MAP_PRIVATE, fd, 0);
+    close(fd);
+    if (map == MAP_FAILED)
+        return -1;
+
+    header = map;
+    if (header->magic != MIXER_CACHE_MAGIC ||
+        header->version != MIXER_CACHE_VERSION ||
+        header->hash != hash ||
+        header->num_mixer_ctls != ar->num_mixer_ctls)
+        goto err_invalid;
+
+    expected = sizeof(*header) +
+            (uint64_t)header->num_initial_settings * sizeof(struct mixer_setting) +
+            (uint64_t)header->num_paths * sizeof(struct mixer_cache_path) +
+            (uint64_t)header->num_settings * sizeof(struct mixer_setting) +
+            header->strings_size;
+    if (expected != (uint64_t)st.st_size || header->strings_size == 0)
+        goto err_invalid;
+
+    initial = (const struct mixer_setting *)(header + 1);
+    paths = (const struct mixer_cache_path *)(initial + header->num_initial_settings);
+    settings = (struct mixer_setting *)(paths + header->num_paths);
+    strings = (const char *)(settings + header->num_settings);
+
+    if (strings[header->strings_size - 1] != '\0' ||
+        !cache_settings_valid(ar, initial, header->num_initial_settings) ||
+        !cache_settings_valid(ar, settings, header->num_settings))
+        goto err_invalid;
+
+    for (i = 0; i < header->num_paths; i++) {
+        if (paths[i].name_offset >= header->strings_size ||
+            paths[i].setting_offset > header->num_settings ||
+            paths[i].length > header->num_settings - paths[i].setting_offset)
+            goto err_invalid;
+    }
+
+    ar->mixer_path = calloc(header->num_paths + 1, sizeof(struct mixer_path));
+    if (!ar->mixer_path)
+        goto err_invalid;
+
+    for (i = 0; i < header->num_paths; i++) {
+        ar->mixer_path[i].name = (char *)strings + paths[i].name_offset;
+        ar->mixer_path[i].setting = settings + paths[i].setting_offset;
+        ar->mixer_path[i].size = paths[i].length;
+        ar->mixer_path[i].length = paths[i].length;
+    }
+    ar->mixer_path_size = header->num_paths + 1;
+    ar->num_mixer_paths = header->num_paths;
+
+    /* keep the name index at most half full, as path_create does */
+    hash_size = INITIAL_PATH_HASH_SIZE;
+    while (hash_size <= (ar->num_mixer_paths + 1) * 2)
+        hash_size *= 2;
+    if (path_hash_resize(ar, hash_size) < 0) {
+        free(ar->mixer_path);
+        ar->mixer_path = NULL;
+        ar->mixer_path_size = 0;
+        ar->num_mixer_paths = 0;
+        goto err_invalid;
+    }
+
+    for (i = 0; i < header->num_initial_settings; i++)
+        mixer_state_set(ar, initial[i].ctl_index, initial[i].value);
+
+    ar->cache = map;
+    ar->cache_size = st.st_size;
+    return 0;
+
+err_invalid:
+    munmap(map, st.st_size);
+    return -1;
+}
+
+/* writes the parsed paths, must be called before the initial update */
+static void cache_write(struct audio_route *ar, uint64_t hash)
+{
+    struct mixer_cache_header header;
+    struct mixer_cache_path cache_path;
+    struct mixer_setting setting;
+    unsigned int i;
+    bool failed;
     FILE *file;
-    int bytes_read;
-    void *buf;
-    int i;
-    struct mixer_path *path;
+
+    memset(&header, 0, sizeof(header));
+    header.magic = MIXER_CACHE_MAGIC;
+    header.version = MIXER_CACHE_VERSION;
+    header.hash = hash;
+    header.num_mixer_ctls = ar->num_mixer_ctls;
+    header.num_initial_settings = ar->num_dirty_ctls;
+    header.num_paths = ar->num_mixer_paths;
+    for (i = 0; i < ar->num_mixer_paths; i++) {
+        header.num_settings += ar->mixer_path[i].length;
+        header.strings_size += strlen(ar->mixer_path[i].name) + 1;
+    }
+    if (header.strings_size == 0)
+        return;
+
+    file = fopen(MIXER_CACHE_PATH ".tmp", "wb");
+    if (!file) {
+        ALOGV("Unable to write %s: %s", MIXER_CACHE_PATH, strerror(errno));
+        return;
+    }
+
+    fwrite(&header, sizeof(header), 1, file);
+
+    /* the top level ctls are the only ones set while parsing */
+    for (i = 0; i < ar->num_dirty_ctls; i++) {
+        setting.ctl_index = ar->dirty_ctls[i];
+        setting.value = ar->mixer_state[setting.ctl_index].new_value;
+        fwrite(&setting, sizeof(setting), 1, file);
+    }
+
+    cache_path.name_offset = 0;
+    cache_path.setting_offset = 0;
+    for (i = 0; i < ar->num_mixer_paths; i++) {
+        cache_path.length = ar->mixer_path[i].length;
+        fwrite(&cache_path, sizeof(cache_path), 1, file);
+        cache_path.name_offset += strlen(ar->mixer_path[i].name) + 1;
+        cache_path.setting_offset += cache_path.length;
+    }
+
+    for (i = 0; i < ar->num_mixer_paths; i++)
+        fwrite(ar->mixer_path[i].setting, sizeof(struct mixer_setting),
+               ar->mixer_path[i].length, file);
+
+    for (i = 0; i < ar->num_mixer_paths; i++)
+        fwrite(ar->mixer_path[i].name, strlen(ar->mixer_path[i].name) + 1,
+               1, file);
+
+    failed = ferror(file);
+    if (fclose(file) != 0)
+        failed = true;
+
+    if (failed || rename(MIXER_CACHE_PATH ".tmp", MIXER_CACHE_PATH) < 0) {
+        ALOGE("Unable to write %s", MIXER_CACHE_PATH);
+        unlink(MIXER_CACHE_PATH ".tmp");
+    }
+}
+
+struct audio_route *audio_route_init(void)
+{
     struct audio_route *ar;
+    size_t xml_size;
+    uint64_t hash;
+    void *xml;
 
     ar = calloc(1, sizeof(struct audio_route));
     if (!ar)
@@ -423,61 +893,45 @@ struct audio_route *audio_route_init(void)
     ar->mixer_path = NULL;
     ar->mixer_path_size = 0;
     ar->num_mixer_paths = 0;
+    ar->path_hash = NULL;
+    ar->path_hash_size = 0;
+    ar->cache = NULL;
+    ar->cache_size = 0;
 
     /* allocate space for and read current mixer settings */
     if (alloc_mixer_state(ar) < 0)
         goto err_mixer_state;
 
-    file = fopen(MIXER_XML_PATH, "r");
-    if (!file) {
+    xml = read_file(MIXER_XML_PATH, &xml_size);
+    if (!xml) {
         ALOGE("Failed to open %s", MIXER_XML_PATH);
-        goto err_fopen;
+        goto err_read_xml;
     }
 
-    parser = XML_ParserCreate(NULL);
-    if (!parser) {
-        ALOGE("Failed to create XML parser");
-        goto err_parser_create;
-    }
-
-    memset(&state, 0, sizeof(state));
-    state.ar = ar;
-    XML_SetUserData(parser, &state);
-    XML_SetElementHandler(parser, start_tag, end_tag);
-
-    for (;;) {
-        buf = XML_GetBuffer(parser, BUF_SIZE);
-        if (buf == NULL)
+    /* the xml is still hashed so that an update to it, or to the kernel
+       mixer controls, is never hidden by a stale cache */
+    hash = cache_hash(ar, xml, xml_size);
+    if (cache_load(ar, hash) == 0) {
+        ALOGV("Loaded %u mixer paths from %s", ar->num_mixer_paths,
+              MIXER_CACHE_PATH);
+    } else {
+        if (config_parse(ar, xml, xml_size) < 0)
             goto err_parse;
-
-        bytes_read = fread(buf, 1, BUF_SIZE, file);
-        if (bytes_read < 0)
-            goto err_parse;
-
-        if (XML_ParseBuffer(parser, bytes_read,
-                            bytes_read == 0) == XML_STATUS_ERROR) {
-            ALOGE("Error in mixer xml (%s)", MIXER_XML_PATH);
-            goto err_parse;
-        }
-
-        if (bytes_read == 0)
-            break;
+        cache_write(ar, hash);
     }
+    free(xml);
 
     /* apply the initial mixer values, and save them so we can reset the
        mixer to the original values */
     update_mixer_state(ar);
     save_mixer_state(ar);
 
-    XML_ParserFree(parser);
-    fclose(file);
     return ar;
 
 err_parse:
-    XML_ParserFree(parser);
-err_parser_create:
-    fclose(file);
-err_fopen:
+    path_free(ar);
+    free(xml);
+err_read_xml:
     free_mixer_state(ar);
 err_mixer_state:
     mixer_close(ar->mixer);
@@ -490,6 +944,7 @@ err_calloc:
 
 void audio_route_free(struct audio_route *ar)
 {
+    path_free(ar);
     free_mixer_state(ar);
     mixer_close(ar->mixer);
     free(ar);
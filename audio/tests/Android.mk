@@ -0,0 +1,94 @@
+# Host side tests and benchmarks of the audio HAL, run them with
+# run-host-tests.sh. The HAL sources are built against stand-ins of the
+# platform headers (include/), a fake tinyalsa (fake_tinyalsa.c) and a fake
+# root for the paths and device nodes they use (host_root.c).
+
+ifeq ($(HOST_OS),linux)
+
+LOCAL_PATH := $(call my-dir)
+
+audio_host_src_files := \
+    fake_tinyalsa.c \
+    host_cutils.c \
+    host_root.c \
+    host_test.c
+
+# The stand-in headers go first
+audio_host_c_includes := \
+    $(LOCAL_PATH)/include \
+    external/expat/lib
+
+# Resolves the absolute paths of the HAL below the fake root
+audio_host_wrapped := open open64 fopen fopen64 rename unlink ioctl
+audio_host_ldflags := $(foreach f, $(audio_host_wrapped), -Wl,--wrap=$(f))
+
+include $(CLEAR_VARS)
+LOCAL_SRC_FILES := \
+    codec_mode_test.c \
+    ../audio_route.c \
+    $(audio_host_src_files)
+LOCAL_C_INCLUDES += $(audio_host_c_includes)
+LOCAL_CFLAGS += -U_FORTIFY_SOURCE
+LOCAL_LDFLAGS += $(audio_host_ldflags)
+LOCAL_STATIC_LIBRARIES := libexpat
+LOCAL_LDLIBS += -lpthread -lrt
+LOCAL_MODULE_TAGS := optional
+LOCAL_MODULE := audio_codec_mode_test
+include $(BUILD_HOST_EXECUTABLE)
+
+include $(CLEAR_VARS)
+LOCAL_SRC_FILES := \
+    mixer_cache_test.c \
+    $(audio_host_src_files)
+LOCAL_C_INCLUDES += $(audio_host_c_includes)
+LOCAL_CFLAGS += -U_FORTIFY_SOURCE
+LOCAL_LDFLAGS += $(audio_host_ldflags)
+LOCAL_STATIC_LIBRARIES := libexpat
+LOCAL_LDLIBS += -lpthread -lrt
+LOCAL_MODULE_TAGS := optional
+LOCAL_MODULE := audio_mixer_cache_test
+include $(BUILD_HOST_EXECUTABLE)
+
+include $(CLEAR_VARS)
+LOCAL_SRC_FILES := \
+    route_bench.c \
+    audio_route_legacy.c \
+    ../audio_route.c \
+    $(audio_host_src_files)
+LOCAL_C_INCLUDES += $(audio_host_c_includes)
+LOCAL_CFLAGS += -U_FORTIFY_SOURCE
+LOCAL_LDFLAGS += $(audio_host_ldflags)
+LOCAL_STATIC_LIBRARIES := libexpat
+LOCAL_LDLIBS += -lpthread -lrt
+LOCAL_MODULE_TAGS := optional
+LOCAL_MODULE := audio_route_bench
+include $(BUILD_HOST_EXECUTABLE)
+
+include $(CLEAR_VARS)
+LOCAL_SRC_FILES := \
+    mixer_cache_bench.c \
+    $(audio_host_src_files)
+LOCAL_C_INCLUDES += $(audio_host_c_includes)
+LOCAL_CFLAGS += -U_FORTIFY_SOURCE
+LOCAL_LDFLAGS += $(audio_host_ldflags)
+LOCAL_STATIC_LIBRARIES := libexpat
+LOCAL_LDLIBS += -lpthread -lrt
+LOCAL_MODULE_TAGS := optional
+LOCAL_MODULE := audio_mixer_cache_bench
+include $(BUILD_HOST_EXECUTABLE)
+
+include $(CLEAR_VARS)
+LOCAL_SRC_FILES := \
+    out_write_bench.c \
+    ../audio_route.c \
+    $(audio_host_src_files)
+LOCAL_C_INCLUDES += $(audio_host_c_includes)
+LOCAL_CFLAGS += -U_FORTIFY_SOURCE
+LOCAL_LDFLAGS += $(audio_host_ldflags)
+LOCAL_STATIC_LIBRARIES := libexpat
+LOCAL_LDLIBS += -lpthread -lrt
+LOCAL_MODULE_TAGS := optional
+LOCAL_MODULE := audio_out_write_bench
+include $(BUILD_HOST_EXECUTABLE)
+
+endif # HOST_OS == linux
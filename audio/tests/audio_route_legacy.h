@@ -0,0 +1,31 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* The route code before the path index, see audio_route_legacy.c */
+
+#ifndef AUDIO_ROUTE_LEGACY_H
+#define AUDIO_ROUTE_LEGACY_H
+
+struct legacy_audio_route;
+
+struct legacy_audio_route *legacy_audio_route_init(void);
+void legacy_audio_route_free(struct legacy_audio_route *ar);
+void legacy_audio_route_apply_path(struct legacy_audio_route *ar,
+                                   const char *name);
+void legacy_reset_mixer_state(struct legacy_audio_route *ar);
+void legacy_update_mixer_state(struct legacy_audio_route *ar);
+
+#endif /* AUDIO_ROUTE_LEGACY_H */
@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/*
+ * Drives switch_recording_mode() and select_devices() against fake dsp and
+ * codec nodes, and counts the ioctls each transition issues: only a real
+ * change of the mode a device was left in may cost one.
+ *
+ * Usage: codec_mode_test <mixer_paths.xml>
+ */
+
+#include "../audio_hw.c"
+
+#include "fake_tinyalsa.h"
+#include "host_root.h"
+#include "host_test.h"
+
+#define ROUTING(devices) "routing=" #devices
+
+static struct audio_device *adev;
+
+#define EXPECT_IOCTLS(dsp, codec) do { \
+    EXPECT_EQ(dsp, host_ioctl_count(DSP_DEV_PATH)); \
+    EXPECT_EQ(codec, host_ioctl_count(AUDIO_DEV_PATH)); \
+    host_reset_counts(); \
+} while (0)
+
+#define EXPECT_MODES(dsp, capture) do { \
+    EXPECT_EQ(dsp, adev->codec.dsp_mode); \
+    EXPECT_EQ(capture, adev->codec.capture_mode); \
+} while (0)
+
+static void open_hal(void)
+{
+    hw_device_t *device;
+
+    EXPECT_EQ(0, HAL_MODULE_INFO_SYM.common.methods->open(
+            &HAL_MODULE_INFO_SYM.common, AUDIO_HARDWARE_INTERFACE, &device));
+    adev = (struct audio_device *)device;
+}
+
+static void set_up(void)
+{
+    fake_mixer_reset();
+    isRecording = false;
+    open_hal();
+    host_reset_counts();
+}
+
+static void tear_down(void)
+{
+    adev->hw_device.common.close(&adev->hw_device.common);
+    adev = NULL;
+}
+
+static struct audio_stream_out *open_output(void)
+{
+    struct audio_config config = {
+        .sample_rate = OUT_SAMPLING_RATE,
+        .channel_mask = AUDIO_CHANNEL_OUT_STEREO,
+        .format = AUDIO_FORMAT_PCM_16_BIT,
+    };
+    struct audio_stream_out *out = NULL;
+
+    EXPECT_EQ(0, adev->hw_device.open_output_stream(&adev->hw_device, 0,
+            AUDIO_DEVICE_OUT_SPEAKER, AUDIO_OUTPUT_FLAG_PRIMARY, &config, &out));
+    return out;
+}
+
+static struct audio_stream_in *open_input(void)
+{
+    struct audio_config config = {
+        .sample_rate = IN_SAMPLING_RATE,
+        .channel_mask = AUDIO_CHANNEL_IN_MONO,
+        .format = AUDIO_FORMAT_PCM_16_BIT,
+    };
+    struct audio_stream_in *in = NULL;
+
+    EXPECT_EQ(0, adev->hw_device.open_input_stream(&adev->hw_device, 0,
+            AUDIO_DEVICE_IN_BUILTIN_MIC, &config, &in));
+    return in;
+}
+
+static void test_mode_transitions(void)
+{
+    switch_recording_mode(adev, PLAYBACK);
+    EXPECT_IOCTLS(1, 0);
+    EXPECT_MODES(PLAYBACK, CODEC_MODE_UNKNOWN);
+
+    switch_recording_mode(adev, START_RECORDING);
+    EXPECT_IOCTLS(1, 1);
+    EXPECT_MODES(START_RECORDING, INPUT_SOURCE_NORMAL);
+
+    switch_recording_mode(adev, START_RECORDING);
+    EXPECT_IOCTLS(0, 0);
+
+    switch_recording_mode(adev, END_RECORDING);
+    EXPECT_IOCTLS(1, 1);
+    EXPECT_MODES(END_RECORDING, OUTPUT_SOURCE_NORMAL);
+
+    switch_recording_mode(adev, PLAYBACK);
+    EXPECT_IOCTLS(1, 0);
+    EXPECT_MODES(PLAYBACK, OUTPUT_SOURCE_NORMAL);
+
+    /* already in the right mode */
+    switch_recording_mode(adev, END_RECORDING);
+    switch_recording_mode(adev, PLAYBACK);
+    EXPECT_IOCTLS(0, 0);
+    EXPECT_MODES(PLAYBACK, OUTPUT_SOURCE_NORMAL);
+    EXPECT_EQ(6, adev->codec.ioctl_count);
+}
+
+static void test_ioctl_arguments(void)
+{
+    unsigned long request;
+    long arg;
+
+    switch_recording_mode(adev, START_RECORDING);
+    EXPECT_EQ(0, host_last_ioctl(DSP_DEV_PATH, &request, &arg));
+    EXPECT_EQ(DSP_CONTROL, request);
+    EXPECT_EQ(START_RECORDING, arg);
+    EXPECT_EQ(0, host_last_ioctl(AUDIO_DEV_PATH, &request, &arg));
+    EXPECT_EQ(AUDIO_CAPTURE_MODE, request);
+    EXPECT_EQ(INPUT_SOURCE_NORMAL, arg);
+
+    switch_recording_mode(adev, END_RECORDING);
+    EXPECT_EQ(0, host_last_ioctl(DSP_DEV_PATH, &request, &arg));
+    EXPECT_EQ(END_RECORDING, arg);
+    EXPECT_EQ(0, host_last_ioctl(AUDIO_DEV_PATH, &request, &arg));
+    EXPECT_EQ(OUTPUT_SOURCE_NORMAL, arg);
+}
+
+static void test_routing_sequence(void)
+{
+    struct audio_stream_out *out = open_output();
+    struct audio_stream_in *in;
+
+    out->common.set_parameters(&out->common, ROUTING(2));
+    EXPECT_IOCTLS(1, 0);
+    /* the same route again is not even applied */
+    out->common.set_parameters(&out->common, ROUTING(2));
+    EXPECT_IOCTLS(0, 0);
+    /* speaker to headphone */
+    out->common.set_parameters(&out->common, ROUTING(8));
+    EXPECT_IOCTLS(0, 0);
+    /* headphone to hdmi, through standby */
+    out->common.set_parameters(&out->common, ROUTING(1024));
+    EXPECT_IOCTLS(0, 0);
+    out->common.set_parameters(&out->common, ROUTING(2));
+    EXPECT_IOCTLS(0, 0);
+
+    /* the built in mic starts recording */
+    in = open_input();
+    in->common.set_parameters(&in->common, ROUTING(2147483652));
+    EXPECT_IOCTLS(1, 1);
+    EXPECT_MODES(START_RECORDING, INPUT_SOURCE_NORMAL);
+    EXPECT_TRUE(isRecording);
+
+    /* rotating while recording only changes the mic path */
+    adev->hw_device.set_parameters(&adev->hw_device, "orientation=landscape");
+    adev->hw_device.set_parameters(&adev->hw_device, "orientation=portrait");
+    EXPECT_IOCTLS(0, 0);
+
+    /* an output routing change ends the recording, then plays back */
+    out->common.set_parameters(&out->common, ROUTING(8));
+    EXPECT_IOCTLS(2, 1);
+    EXPECT_MODES(PLAYBACK, OUTPUT_SOURCE_NORMAL);
+    EXPECT_TRUE(!isRecording);
+
+    /* END_RECORDING then PLAYBACK, with the codec already there */
+    adev->hw_device.close_input_stream(&adev->hw_device, in);
+    EXPECT_IOCTLS(0, 0);
+    EXPECT_MODES(PLAYBACK, OUTPUT_SOURCE_NORMAL);
+
+    adev->hw_device.close_output_stream(&adev->hw_device, out);
+    EXPECT_IOCTLS(0, 0);
+}
+
+static void test_devices_opened_once(void)
+{
+    int i;
+
+    tear_down();
+    host_reset_counts();
+    open_hal();
+    EXPECT_EQ(1, host_open_count(DSP_DEV_PATH));
+    EXPECT_EQ(1, host_open_count(AUDIO_DEV_PATH));
+
+    for (i = 0; i < 10; i++) {
+        switch_recording_mode(adev, START_RECORDING);
+        switch_recording_mode(adev, END_RECORDING);
+        switch_recording_mode(adev, PLAYBACK);
+    }
+    EXPECT_EQ(1, host_open_count(DSP_DEV_PATH));
+    EXPECT_EQ(1, host_open_count(AUDIO_DEV_PATH));
+    /* 3 dsp and 2 codec ioctls per cycle */
+    EXPECT_EQ(10 * 5, adev->codec.ioctl_count);
+}
+
+static void test_stale_device_reopened(void)
+{
+    switch_recording_mode(adev, PLAYBACK);
+    switch_recording_mode(adev, END_RECORDING);
+    EXPECT_IOCTLS(1, 1);
+
+    /* both are reopened and reprogrammed, the dsp ioctl is retried once */
+    host_fail_ioctls(DSP_DEV_PATH, 1, EBADF);
+    switch_recording_mode(adev, START_RECORDING);
+    EXPECT_EQ(1, host_open_count(DSP_DEV_PATH));
+    EXPECT_EQ(1, host_open_count(AUDIO_DEV_PATH));
+    EXPECT_IOCTLS(2, 1);
+    EXPECT_MODES(START_RECORDING, INPUT_SOURCE_NORMAL);
+
+    switch_recording_mode(adev, START_RECORDING);
+    EXPECT_IOCTLS(0, 0);
+    EXPECT_EQ(0, host_open_count(NULL));
+}
+
+static void test_failed_ioctl_retried_next_time(void)
+{
+    unsigned int errors = host_log_error_count();
+
+    /* not a stale fd: nothing is reopened, the dsp mode stays unknown */
+    host_fail_ioctls(DSP_DEV_PATH, 1, EIO);
+    switch_recording_mode(adev, START_RECORDING);
+    EXPECT_IOCTLS(1, 1);
+    EXPECT_MODES(CODEC_MODE_UNKNOWN, INPUT_SOURCE_NORMAL);
+    EXPECT_EQ(errors + 1, host_log_error_count());
+
+    switch_recording_mode(adev, START_RECORDING);
+    EXPECT_IOCTLS(1, 0);
+    EXPECT_MODES(START_RECORDING, INPUT_SOURCE_NORMAL);
+    EXPECT_EQ(0, host_open_count(NULL));
+}
+
+static void test_device_paths_from_properties(void)
+{
+    tear_down();
+    EXPECT_EQ(0, host_root_write("/dev/fake_dsp", "", 0));
+    property_set("audio.tf101.dsp_dev", "/dev/fake_dsp");
+    open_hal();
+    property_set("audio.tf101.dsp_dev", DSP_DEV_PATH);
+    host_reset_counts();
+
+    switch_recording_mode(adev, PLAYBACK);
+    EXPECT_EQ(1, host_ioctl_count("/dev/fake_dsp"));
+    EXPECT_IOCTLS(0, 0);
+}
+
+static const struct host_test tests[] = {
+    { "mode_transitions", test_mode_transitions },
+    { "ioctl_arguments", test_ioctl_arguments },
+    { "routing_sequence", test_routing_sequence },
+    { "devices_opened_once", test_devices_opened_once },
+    { "stale_device_reopened", test_stale_device_reopened },
+    { "failed_ioctl_retried_next_time", test_failed_ioctl_retried_next_time },
+    { "device_paths_from_properties", test_device_paths_from_properties },
+    { NULL, NULL },
+};
+
+int main(int argc, char **argv)
+{
+    int ret;
+
+    if (argc != 2) {
+        fprintf(stderr, "usage: %s <mixer_paths.xml>\n", argv[0]);
+        return 2;
+    }
+
+    if (host_root_init(argv[1]) < 0) {
+        fprintf(stderr, "unable to set up the fake root\n");
+        return 2;
+    }
+
+    ret = host_test_run(tests, set_up, tear_down);
+    host_root_remove();
+    return ret;
+}
@@ -0,0 +1,495 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#define LOG_TAG "fake_tinyalsa"
+
+#include <errno.h>
+#include <stdbool.h>
+#include <stdint.h>
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+
+#include <cutils/log.h>
+
+#include "fake_tinyalsa.h"
+
+struct ctl_def {
+    const char *name;
+    enum mixer_ctl_type type;
+    unsigned int num_values;
+    int value;
+    int max;
+    const char * const *enums;
+};
+
+struct mixer_ctl {
+    char *name;
+    enum mixer_ctl_type type;
+    unsigned int num_values;
+    int values[2];
+    int max;
+    const char * const *enums;
+    unsigned int num_enums;
+};
+
+struct mixer {
+    unsigned int num_ctls;
+    struct mixer_ctl *ctl;
+};
+
+struct pcm {
+    struct pcm_config config;
+    unsigned int flags;
+    bool running;
+    bool xrun;              /* underran, reported by the next write */
+    int64_t start_ns;       /* when the hw pointer started moving */
+    uint64_t appl_frames;   /* frames written since the last start */
+};
+
+#define ENUMS(...) (const char * const []) { __VA_ARGS__, NULL }
+
+static const char * const adc_input[] = { "ADC", "DMIC", NULL };
+static const char * const companding[] = { "u-law", "A-law", NULL };
+static const char * const left_right[] = { "Left", "Right", NULL };
+
+#define BOOL(n, v) { n, MIXER_CTL_TYPE_BOOL, 1, v, 1, NULL }
+#define BOOL2(n, v) { n, MIXER_CTL_TYPE_BOOL, 2, v, 1, NULL }
+#define INT(n, v, m) { n, MIXER_CTL_TYPE_INT, 1, v, m, NULL }
+#define INT2(n, v, m) { n, MIXER_CTL_TYPE_INT, 2, v, m, NULL }
+#define ENUM(n, v, e) { n, MIXER_CTL_TYPE_ENUM, 1, v, 0, e }
+#define OUTPUT_MIXER(n) \
+    BOOL(n " DACL Switch", 0), BOOL(n " DACR Switch", 0), \
+    BOOL(n " Left Bypass Switch", 0), BOOL(n " Right Bypass Switch", 0)
+
+/* the controls of the card, in the order the kernel lists them */
+static const struct ctl_def stock_ctls[] = {
+    INT2("Digital Capture Volume", 96, 120),
+    BOOL("ADC Companding Switch", 0),
+    ENUM("ADC Companding Mode", 0, companding),
+    BOOL("HPF Switch", 0),
+    ENUM("HPF Mode", 0, ENUMS("Hi-fi", "Voice 1", "Voice 2", "Voice 3")),
+    BOOL("DRC Switch", 0),
+    ENUM("DRC Compressor Slope R0", 0,
+         ENUMS("1", "1/2", "1/4", "1/8", "1/16", "0")),
+    ENUM("DRC Compressor Slope R1", 0,
+         ENUMS("0", "1/2", "1/4", "1/8", "1/16", "1/32")),
+    INT("DRC Compressor Threshold Volume", 0, 60),
+    INT("DRC Volume", 0, 30),
+    INT("DRC Startup Volume", 0, 18),
+    BOOL("Left Input PGA Switch", 1),
+    INT("Left Input PGA Volume", 5, 31),
+    BOOL("Left Input PGA Common Mode Switch", 1),
+    BOOL("Right Input PGA Switch", 1),
+    INT("Right Input PGA Volume", 5, 31),
+    BOOL("Right Input PGA Common Mode Switch", 1),
+    INT2("Sidetone Volume", 0, 15),
+    INT2("Digital Playback Volume", 96, 120),
+    ENUM("DAC Soft Mute Rate", 0, ENUMS("Fast (fs/2)", "Slow (fs/32)")),
+    ENUM("DAC Mute Mode", 0, ENUMS("Hard", "Soft")),
+    BOOL("DAC Mono Switch", 0),
+    BOOL("DAC Companding Switch", 0),
+    ENUM("DAC Companding Mode", 0, companding),
+    ENUM("DAC Deemphasis", 0, ENUMS("None", "32kHz", "44.1kHz", "48kHz")),
+    ENUM("DAC Boost", 0, ENUMS("0dB", "6dB", "12dB", "18dB")),
+    BOOL2("Headphone Switch", 1),
+    BOOL2("Headphone ZC Switch", 0),
+    INT2("Headphone Volume", 45, 63),
+    BOOL2("Line Out Switch", 1),
+    BOOL2("Line Out ZC Switch", 0),
+    INT2("Line Out Volume", 45, 63),
+    BOOL2("Speaker Switch", 0),
+    BOOL2("Speaker ZC Switch", 0),
+    INT2("Speaker Volume", 45, 63),
+    ENUM("Left Input Mux", 0, ENUMS("IN1L", "IN2L", "IN3L")),
+    ENUM("Left Input Inverting Mux", 0, ENUMS("IN1L", "IN2L", "IN3L")),
+    ENUM("Left Input Mode Mux", 0,
+         ENUMS("Single-Ended", "Differential Line", "Differential Mic")),
+    ENUM("Right Input Mux", 0, ENUMS("IN1R", "IN2R", "IN3R")),
+    ENUM("Right Input Inverting Mux", 0, ENUMS("IN1R", "IN2R", "IN3R")),
+    ENUM("Right Input Mode Mux", 0,
+         ENUMS("Single-Ended", "Differential Line", "Differential Mic")),
+    ENUM("Left ADC Input", 0, adc_input),
+    ENUM("Right ADC Input", 0, adc_input),
+    ENUM("Left Capture Mux", 0, left_right),
+    ENUM("Right Capture Mux", 1, left_right),
+    ENUM("Left Playback Mux", 0, left_right),
+    ENUM("Right Playback Mux", 1, left_right),
+    OUTPUT_MIXER("Left Output Mixer"),
+    OUTPUT_MIXER("Right Output Mixer"),
+    OUTPUT_MIXER("Left Speaker Mixer"),
+    OUTPUT_MIXER("Right Speaker Mixer"),
+    /* tegra_wm8903 pin switches */
+    BOOL("Int Spk Switch", 1),
+    BOOL("Headphone Jack Switch", 1),
+    BOOL("Mic Jack Switch", 1),
+    BOOL("Int Mic Switch", 1),
+};
+
+#define NUM_STOCK_CTLS (sizeof(stock_ctls) / sizeof(stock_ctls[0]))
+
+static unsigned int extra_ctls;
+static volatile unsigned int pcm_underruns;
+static struct mixer *last_mixer;
+
+static volatile unsigned int ctl_writes;
+static volatile unsigned int ctl_reads;
+
+void fake_mixer_reset(void)
+{
+    extra_ctls = 0;
+    fake_mixer_reset_counts();
+}
+
+void fake_mixer_set_extra_ctls(unsigned int count)
+{
+    extra_ctls = count;
+}
+
+int fake_mixer_get_value(const char *name)
+{
+    struct mixer_ctl *ctl;
+
+    if (!last_mixer)
+        return -1;
+
+    ctl = mixer_get_ctl_by_name(last_mixer, name);
+    return ctl ? ctl->values[0] : -1;
+}
+
+unsigned int fake_mixer_get_values(int *values, unsigned int size)
+{
+    unsigned int count = 0;
+    unsigned int i;
+    unsigned int j;
+
+    if (!last_mixer)
+        return 0;
+
+    for (i = 0; i < last_mixer->num_ctls; i++)
+        for (j = 0; j < last_mixer->ctl[i].num_values && count < size; j++)
+            values[count++] = last_mixer->ctl[i].values[j];
+
+    return count;
+}
+
+unsigned int fake_mixer_ctl_writes(void)
+{
+    return ctl_writes;
+}
+
+unsigned int fake_mixer_ctl_reads(void)
+{
+    return ctl_reads;
+}
+
+void fake_mixer_reset_counts(void)
+{
+    ctl_writes = 0;
+    ctl_reads = 0;
+}
+
+/* mixer */
+
+static void init_ctl(struct mixer_ctl *ctl, const struct ctl_def *def)
+{
+    unsigned int i;
+
+    ctl->name = strdup(def->name);
+    ctl->type = def->type;
+    ctl->num_values = def->num_values;
+    for (i = 0; i < def->num_values; i++)
+        ctl->values[i] = def->value;
+    ctl->max = def->max;
+    ctl->enums = def->enums;
+    ctl->num_enums = 0;
+    if (def->enums)
+        while (def->enums[ctl->num_enums])
+            ctl->num_enums++;
+}
+
+struct mixer *mixer_open(unsigned int card)
+{
+    struct mixer *mixer;
+    unsigned int i;
+
+    if (card != 0)
+        return NULL;
+
+    mixer = calloc(1, sizeof(*mixer));
+    if (!mixer)
+        return NULL;
+
+    mixer->num_ctls = NUM_STOCK_CTLS + extra_ctls;
+    mixer->ctl = calloc(mixer->num_ctls, sizeof(struct mixer_ctl));
+    if (!mixer->ctl) {
+        free(mixer);
+        return NULL;
+    }
+
+    for (i = 0; i < NUM_STOCK_CTLS; i++)
+        init_ctl(&mixer->ctl[i], &stock_ctls[i]);
+
+    for (i = NUM_STOCK_CTLS; i < mixer->num_ctls; i++) {
+        char name[64];
+        struct ctl_def def = INT2(name, 0, 255);
+
+        snprintf(name, sizeof(name), "Extra %u Volume",
+                 (unsigned int)(i - NUM_STOCK_CTLS));
+        init_ctl(&mixer->ctl[i], &def);
+    }
+
+    last_mixer = mixer;
+    return mixer;
+}
+
+void mixer_close(struct mixer *mixer)
+{
+    unsigned int i;
+
+    if (!mixer)
+        return;
+
+    if (mixer == last_mixer)
+        last_mixer = NULL;
+
+    for (i = 0; i < mixer->num_ctls; i++)
+        free(mixer->ctl[i].name);
+    free(mixer->ctl);
+    free(mixer);
+}
+
+unsigned int mixer_get_num_ctls(struct mixer *mixer)
+{
+    return mixer->num_ctls;
+}
+
+struct mixer_ctl *mixer_get_ctl(struct mixer *mixer, unsigned int id)
+{
+    return id < mixer->num_ctls ? &mixer->ctl[id] : NULL;
+}
+
+struct mixer_ctl *mixer_get_ctl_by_name(struct mixer *mixer, const char *name)
+{
+    unsigned int i;
+
+    if (!name)
+        return NULL;
+
+    for (i = 0; i < mixer->num_ctls; i++)
+        if (strcmp(mixer->ctl[i].name, name) == 0)
+            return &mixer->ctl[i];
+
+    return NULL;
+}
+
+const char *mixer_ctl_get_name(struct mixer_ctl *ctl)
+{
+    return ctl->name;
+}
+
+enum mixer_ctl_type mixer_ctl_get_type(struct mixer_ctl *ctl)
+{
+    return ctl->type;
+}
+
+unsigned int mixer_ctl_get_num_values(struct mixer_ctl *ctl)
+{
+    return ctl->num_values;
+}
+
+unsigned int mixer_ctl_get_num_enums(struct mixer_ctl *ctl)
+{
+    return ctl->num_enums;
+}
+
+const char *mixer_ctl_get_enum_string(struct mixer_ctl *ctl,
+                                      unsigned int enum_id)
+{
+    return enum_id < ctl->num_enums ? ctl->enums[enum_id] : NULL;
+}
+
+int mixer_ctl_get_value(struct mixer_ctl *ctl, unsigned int id)
+{
+    __sync_fetch_and_add(&ctl_reads, 1);
+    if (id >= ctl->num_values)
+        return -EINVAL;
+
+    return ctl->values[id];
+}
+
+int mixer_ctl_set_value(struct mixer_ctl *ctl, unsigned int id, int value)
+{
+    int max = ctl->type == MIXER_CTL_TYPE_ENUM ?
+            (int)ctl->num_enums - 1 : ctl->max;
+
+    __sync_fetch_and_add(&ctl_writes, 1);
+    if (id >= ctl->num_values || value < 0 || value > max)
+        return -EINVAL;
+
+    ctl->values[id] = value;
+    return 0;
+}
+
+/* pcm */
+
+static int64_t now_ns(void)
+{
+    struct timespec ts;
+
+    clock_gettime(CLOCK_MONOTONIC, &ts);
+    return (int64_t)ts.tv_sec * 1000000000 + ts.tv_nsec;
+}
+
+static unsigned int frames_to_ns(struct pcm *pcm, unsigned int frames)
+{
+    return (uint64_t)frames * 1000000000 / pcm->config.rate;
+}
+
+/* frames written and not played yet, stops the pcm once it ran dry */
+static unsigned int pcm_queued_frames(struct pcm *pcm)
+{
+    uint64_t hw_frames;
+
+    if (!pcm->running)
+        return pcm->appl_frames;
+
+    hw_frames = (uint64_t)(now_ns() - pcm->start_ns) * pcm->config.rate /
+            1000000000;
+    if (hw_frames >= pcm->appl_frames) {
+        pcm->running = false;
+        pcm->xrun = true;
+        pcm->appl_frames = 0;
+        __sync_fetch_and_add(&pcm_underruns, 1);
+        return 0;
+    }
+
+    return pcm->appl_frames - hw_frames;
+}
+
+struct pcm *pcm_open(unsigned int card, unsigned int device,
+                     unsigned int flags, struct pcm_config *config)
+{
+    struct pcm *pcm = calloc(1, sizeof(*pcm));
+
+    if (!pcm)
+        return NULL;
+
+    pcm->config = *config;
+    pcm->flags = flags;
+    /* the default of tinyalsa */
+    if (pcm->config.start_threshold == 0)
+        pcm->config.start_threshold = pcm_get_buffer_size(pcm) / 2;
+    return pcm;
+}
+
+int pcm_close(struct pcm *pcm)
+{
+    free(pcm);
+    return 0;
+}
+
+int pcm_is_ready(struct pcm *pcm)
+{
+    return pcm != NULL;
+}
+
+const char *pcm_get_error(struct pcm *pcm)
+{
+    return "";
+}
+
+unsigned int pcm_get_buffer_size(struct pcm *pcm)
+{
+    return pcm->config.period_size * pcm->config.period_count;
+}
+
+unsigned int pcm_frames_to_bytes(struct pcm *pcm, unsigned int frames)
+{
+    return frames * pcm->config.channels * 2;
+}
+
+int pcm_get_htimestamp(struct pcm *pcm, unsigned int *avail,
+                       struct timespec *tstamp)
+{
+    unsigned int queued = pcm_queued_frames(pcm);
+
+    if (!pcm->running)
+        return -1;
+
+    *avail = pcm_get_buffer_size(pcm) - queued;
+    clock_gettime(CLOCK_MONOTONIC, tstamp);
+    return 0;
+}
+
+int pcm_write(struct pcm *pcm, const void *data, unsigned int count)
+{
+    unsigned int buffer_size = pcm_get_buffer_size(pcm);
+    unsigned int frames = count / pcm_frames_to_bytes(pcm, 1);
+
+    if (pcm->flags & PCM_IN)
+        return -EINVAL;
+
+    pcm_queued_frames(pcm);
+    if (pcm->xrun) {
+        pcm->xrun = false;
+        /* dropped, the next write starts the pcm again */
+        if (pcm->flags & PCM_NORESTART)
+            return -EPIPE;
+    }
+
+    while (frames > 0) {
+        unsigned int space = buffer_size - pcm_queued_frames(pcm);
+        unsigned int chunk = frames < space ? frames : space;
+
+        if (chunk == 0) {
+            struct timespec ts;
+            unsigned int wait = frames < pcm->config.period_size ?
+                    frames : pcm->config.period_size;
+
+            /* blocks until the hw pointer frees the room, as the driver */
+            ts.tv_sec = 0;
+            ts.tv_nsec = frames_to_ns(pcm, wait);
+            nanosleep(&ts, NULL);
+            continue;
+        }
+
+        pcm->appl_frames += chunk;
+        frames -= chunk;
+        if (!pcm->running && pcm->appl_frames >= pcm->config.start_threshold) {
+            pcm->running = true;
+            pcm->start_ns = now_ns();
+        }
+    }
+
+    return 0;
+}
+
+int pcm_read(struct pcm *pcm, void *data, unsigned int count)
+{
+    memset(data, 0, count);
+    return 0;
+}
+
+unsigned int fake_pcm_underruns(void)
+{
+    return pcm_underruns;
+}
+
+void fake_pcm_reset_counts(void)
+{
+    pcm_underruns = 0;
+}
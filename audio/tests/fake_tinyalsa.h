@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/*
+ * Fake tinyalsa for the host tests of the HAL.
+ *
+ * The mixer exposes the controls of the wm8903 codec and the tegra machine
+ * driver, each write and read of a control value is counted as the ioctl
+ * it would be on the device. The playback PCMs play what is written to them
+ * in real time at their rate: a write blocks while the buffer is full, and
+ * the pcm underruns once it ran dry. The capture PCMs read silence at once.
+ */
+
+#ifndef AUDIO_FAKE_TINYALSA_H
+#define AUDIO_FAKE_TINYALSA_H
+
+#include <tinyalsa/asoundlib.h>
+
+/* back to the stock card and zeroed counters, for the next mixer_open() */
+void fake_mixer_reset(void);
+
+/* pads the next opened card with controls no mixer path refers to */
+void fake_mixer_set_extra_ctls(unsigned int count);
+
+/* value 0 of a control of the last opened mixer, -1 if there is none */
+int fake_mixer_get_value(const char *name);
+
+/* copies out every value of the last opened mixer, returns their count */
+unsigned int fake_mixer_get_values(int *values, unsigned int size);
+
+/* mixer_ctl_set_value() and mixer_ctl_get_value() calls, on any mixer */
+unsigned int fake_mixer_ctl_writes(void);
+unsigned int fake_mixer_ctl_reads(void);
+void fake_mixer_reset_counts(void);
+
+/* playback pcms that ran dry, on any pcm */
+unsigned int fake_pcm_underruns(void);
+void fake_pcm_reset_counts(void);
+
+#endif /* AUDIO_FAKE_TINYALSA_H */
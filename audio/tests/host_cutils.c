@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/*
+ * Host implementations of the libcutils, liblog and audio-utils calls the
+ * HAL makes, see the stand-in headers in include/.
+ */
+
+#include <errno.h>
+#include <stdarg.h>
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+
+#include <cutils/log.h>
+#include <cutils/properties.h>
+#include <cutils/str_parms.h>
+#include <audio_utils/resampler.h>
+
+/* log */
+
+static volatile unsigned int error_count;
+
+void host_log(int prio, const char *tag, const char *fmt, ...)
+{
+    static const char prio_chars[] = "??VDIWEF";
+    va_list args;
+
+    if (prio >= HOST_LOG_ERROR)
+        __sync_fetch_and_add(&error_count, 1);
+    else if (!getenv("AUDIO_HOST_VERBOSE"))
+        return;
+
+    fprintf(stderr, "%c/%s: ", prio_chars[prio], tag ? tag : "");
+    va_start(args, fmt);
+    vfprintf(stderr, fmt, args);
+    va_end(args);
+    fputc('\n', stderr);
+}
+
+unsigned int host_log_error_count(void)
+{
+    return error_count;
+}
+
+/* properties */
+
+#define MAX_PROPERTIES 32
+
+static struct {
+    char key[PROPERTY_KEY_MAX];
+    char value[PROPERTY_VALUE_MAX];
+} properties[MAX_PROPERTIES];
+static int num_properties;
+
+int property_get(const char *key, char *value, const char *default_value)
+{
+    int i;
+
+    for (i = 0; i < num_properties; i++) {
+        if (strcmp(properties[i].key, key) == 0) {
+            strcpy(value, properties[i].value);
+            return strlen(value);
+        }
+    }
+
+    if (!default_value)
+        default_value = "";
+    strncpy(value, default_value, PROPERTY_VALUE_MAX - 1);
+    value[PROPERTY_VALUE_MAX - 1] = '\0';
+    return strlen(value);
+}
+
+int property_set(const char *key, const char *value)
+{
+    int i;
+
+    if (strlen(key) >= PROPERTY_KEY_MAX || strlen(value) >= PROPERTY_VALUE_MAX)
+        return -1;
+
+    for (i = 0; i < num_properties; i++)
+        if (strcmp(properties[i].key, key) == 0)
+            break;
+
+    if (i == num_properties) {
+        if (num_properties == MAX_PROPERTIES)
+            return -1;
+        num_properties++;
+    }
+    strcpy(properties[i].key, key);
+    strcpy(properties[i].value, value);
+    return 0;
+}
+
+/* str_parms */
+
+struct str_parms {
+    char *str;
+};
+
+struct str_parms *str_parms_create_str(const char *_string)
+{
+    struct str_parms *str_parms = calloc(1, sizeof(*str_parms));
+
+    if (str_parms)
+        str_parms->str = strdup(_string ? _string : "");
+    return str_parms;
+}
+
+void str_parms_destroy(struct str_parms *str_parms)
+{
+    free(str_parms->str);
+    free(str_parms);
+}
+
+int str_parms_get_str(struct str_parms *str_parms, const char *key,
+                      char *out_val, int len)
+{
+    size_t key_len = strlen(key);
+    const char *p = str_parms->str;
+
+    while (*p) {
+        const char *end = strchr(p, ';');
+        size_t pair_len = end ? (size_t)(end - p) : strlen(p);
+
+        if (pair_len > key_len && strncmp(p, key, key_len) == 0 &&
+                p[key_len] == '=') {
+            int value_len = pair_len - key_len - 1;
+
+            if (value_len >= len)
+                value_len = len - 1;
+            memcpy(out_val, p + key_len + 1, value_len);
+            out_val[value_len] = '\0';
+            return value_len;
+        }
+        p += pair_len;
+        if (*p == ';')
+            p++;
+    }
+
+    return -ENOENT;
+}
+
+/* resampler */
+
+int create_resampler(uint32_t inSampleRate, uint32_t outSampleRate,
+        uint32_t channelCount, uint32_t quality,
+        struct resampler_buffer_provider *provider,
+        struct resampler_itfe **resampler)
+{
+    *resampler = NULL;
+    return -ENOSYS;
+}
+
+void release_resampler(struct resampler_itfe *resampler)
+{
+}
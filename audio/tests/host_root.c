@@ -0,0 +1,344 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#define LOG_TAG "audio_host_root"
+
+#include <errno.h>
+#include <fcntl.h>
+#include <limits.h>
+#include <stdarg.h>
+#include <stdbool.h>
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+#include <unistd.h>
+#include <sys/stat.h>
+
+#include <cutils/log.h>
+
+#include "host_root.h"
+
+#define MAX_PATHS 16
+#define MAX_FDS 1024
+
+static const char * const root_dirs[] = {
+    "/dev", "/system", "/system/etc", "/data", "/data/misc",
+    "/data/misc/audio", NULL,
+};
+
+static const char * const device_nodes[] = {
+    "/dev/dsp_fm34", "/dev/wm8903", NULL,
+};
+
+static char root[PATH_MAX];
+static size_t root_length;
+
+/* what was done on each opened path, and the path behind each fd */
+static struct path_record {
+    char path[PATH_MAX];
+    unsigned int opens;
+    unsigned int ioctls;
+    unsigned long last_request;
+    long last_arg;
+    unsigned int failures;
+    int error;
+} records[MAX_PATHS];
+static int num_records;
+static int fd_records[MAX_FDS];
+
+int __real_open(const char *path, int flags, ...);
+int __real_open64(const char *path, int flags, ...);
+FILE *__real_fopen(const char *path, const char *mode);
+FILE *__real_fopen64(const char *path, const char *mode);
+int __real_rename(const char *old_path, const char *new_path);
+int __real_unlink(const char *path);
+int __real_ioctl(int fd, unsigned long request, ...);
+
+/* returns path below the fake root, unless it is relative or already there */
+static const char *rebase(const char *path, char *buf, size_t size)
+{
+    if (root_length == 0 || path == NULL || path[0] != '/' ||
+            (strncmp(path, root, root_length) == 0 &&
+            (path[root_length] == '/' || path[root_length] == '\0')))
+        return path;
+
+    snprintf(buf, size, "%s%s", root, path);
+    return buf;
+}
+
+static struct path_record *find_record(const char *path, bool create)
+{
+    int i;
+
+    for (i = 0; i < num_records; i++)
+        if (strcmp(records[i].path, path) == 0)
+            return &records[i];
+
+    if (!create || num_records == MAX_PATHS)
+        return NULL;
+
+    strncpy(records[num_records].path, path, PATH_MAX - 1);
+    return &records[num_records++];
+}
+
+static int record_open(const char *path, int fd)
+{
+    struct path_record *record = find_record(path, true);
+
+    if (record)
+        record->opens++;
+    if (fd >= 0 && fd < MAX_FDS)
+        fd_records[fd] = record ? record - records + 1 : 0;
+    return fd;
+}
+
+int host_root_init(const char *xml_path)
+{
+    char buf[PATH_MAX];
+    char *xml;
+    FILE *file;
+    long size;
+    int i;
+
+    snprintf(root, sizeof(root), "%s/audio-host-XXXXXX",
+             getenv("TMPDIR") ? getenv("TMPDIR") : "/tmp");
+    if (!mkdtemp(root))
+        return -1;
+    root_length = strlen(root);
+
+    for (i = 0; root_dirs[i]; i++)
+        if (mkdir(host_root_path(root_dirs[i], buf, sizeof(buf)), 0755) < 0)
+            return -1;
+
+    for (i = 0; device_nodes[i]; i++)
+        if (host_root_write(device_nodes[i], "", 0) < 0)
+            return -1;
+
+    file = __real_fopen(xml_path, "r");
+    if (!file)
+        return -1;
+    fseek(file, 0, SEEK_END);
+    size = ftell(file);
+    rewind(file);
+    xml = malloc(size);
+    if (!xml || fread(xml, 1, size, file) != (size_t)size) {
+        free(xml);
+        fclose(file);
+        return -1;
+    }
+    fclose(file);
+
+    i = host_root_write("/system/etc/mixer_paths.xml", xml, size);
+    free(xml);
+    return i;
+}
+
+void host_root_remove(void)
+{
+    char cmd[PATH_MAX + 16];
+
+    if (root_length == 0)
+        return;
+
+    snprintf(cmd, sizeof(cmd), "rm -rf '%s'", root);
+    if (system(cmd) != 0)
+        fprintf(stderr, "unable to remove %s\n", root);
+    root_length = 0;
+}
+
+const char *host_root_path(const char *path, char *buf, size_t size)
+{
+    snprintf(buf, size, "%s%s", root, path);
+    return buf;
+}
+
+int host_root_write(const char *path, const void *data, size_t size)
+{
+    char buf[PATH_MAX];
+    FILE *file = __real_fopen(host_root_path(path, buf, sizeof(buf)), "w");
+    int ret = 0;
+
+    if (!file)
+        return -1;
+    if (size && fwrite(data, size, 1, file) != 1)
+        ret = -1;
+    if (fclose(file) != 0)
+        ret = -1;
+    return ret;
+}
+
+int host_root_exists(const char *path)
+{
+    char buf[PATH_MAX];
+
+    return access(host_root_path(path, buf, sizeof(buf)), F_OK) == 0;
+}
+
+unsigned int host_open_count(const char *path)
+{
+    struct path_record *record;
+    unsigned int count = 0;
+    int i;
+
+    if (path) {
+        record = find_record(path, false);
+        return record ? record->opens : 0;
+    }
+
+    for (i = 0; i < num_records; i++)
+        count += records[i].opens;
+    return count;
+}
+
+unsigned int host_ioctl_count(const char *path)
+{
+    struct path_record *record;
+    unsigned int count = 0;
+    int i;
+
+    if (path) {
+        record = find_record(path, false);
+        return record ? record->ioctls : 0;
+    }
+
+    for (i = 0; i < num_records; i++)
+        count += records[i].ioctls;
+    return count;
+}
+
+void host_reset_counts(void)
+{
+    int i;
+
+    for (i = 0; i < num_records; i++) {
+        records[i].opens = 0;
+        records[i].ioctls = 0;
+    }
+}
+
+int host_last_ioctl(const char *path, unsigned long *request, long *arg)
+{
+    struct path_record *record = find_record(path, false);
+
+    if (!record || record->ioctls == 0)
+        return -1;
+
+    *request = record->last_request;
+    *arg = record->last_arg;
+    return 0;
+}
+
+void host_fail_ioctls(const char *path, unsigned int count, int error)
+{
+    struct path_record *record = find_record(path, true);
+
+    if (record) {
+        record->failures = count;
+        record->error = error;
+    }
+}
+
+/* wrapped calls */
+
+static mode_t get_open_mode(int flags, va_list args)
+{
+    return (flags & O_CREAT) ? (mode_t)va_arg(args, int) : 0;
+}
+
+int __wrap_open(const char *path, int flags, ...)
+{
+    char buf[PATH_MAX];
+    va_list args;
+    mode_t mode;
+
+    va_start(args, flags);
+    mode = get_open_mode(flags, args);
+    va_end(args);
+
+    return record_open(path, __real_open(rebase(path, buf, sizeof(buf)),
+                                         flags, mode));
+}
+
+int __wrap_open64(const char *path, int flags, ...)
+{
+    char buf[PATH_MAX];
+    va_list args;
+    mode_t mode;
+
+    va_start(args, flags);
+    mode = get_open_mode(flags, args);
+    va_end(args);
+
+    return record_open(path, __real_open64(rebase(path, buf, sizeof(buf)),
+                                           flags, mode));
+}
+
+FILE *__wrap_fopen(const char *path, const char *mode)
+{
+    char buf[PATH_MAX];
+
+    return __real_fopen(rebase(path, buf, sizeof(buf)), mode);
+}
+
+FILE *__wrap_fopen64(const char *path, const char *mode)
+{
+    char buf[PATH_MAX];
+
+    return __real_fopen64(rebase(path, buf, sizeof(buf)), mode);
+}
+
+int __wrap_rename(const char *old_path, const char *new_path)
+{
+    char old_buf[PATH_MAX];
+    char new_buf[PATH_MAX];
+
+    return __real_rename(rebase(old_path, old_buf, sizeof(old_buf)),
+                         rebase(new_path, new_buf, sizeof(new_buf)));
+}
+
+int __wrap_unlink(const char *path)
+{
+    char buf[PATH_MAX];
+
+    return __real_unlink(rebase(path, buf, sizeof(buf)));
+}
+
+int __wrap_ioctl(int fd, unsigned long request, ...)
+{
+    struct path_record *record = NULL;
+    va_list args;
+    long arg;
+
+    va_start(args, request);
+    arg = va_arg(args, long);
+    va_end(args);
+
+    if (fd >= 0 && fd < MAX_FDS && fd_records[fd] > 0)
+        record = &records[fd_records[fd] - 1];
+    if (!record)
+        return __real_ioctl(fd, request, arg);
+
+    record->ioctls++;
+    record->last_request = request;
+    record->last_arg = arg;
+    if (record->failures > 0) {
+        record->failures--;
+        errno = record->error;
+        return -1;
+    }
+
+    return 0;
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/*
+ * Fake root for the HAL on the host.
+ *
+ * The test programs are linked with --wrap for the libc calls of
+ * host_root.c (see Android.mk), so the absolute paths the HAL uses
+ * (/system/etc, /data/misc/audio, /dev) resolve below a temporary
+ * directory. Opens and ioctls are recorded by the path they were opened
+ * with: the fake device nodes are plain files, the ioctls on them succeed
+ * without reaching the kernel unless a failure was injected.
+ */
+
+#ifndef AUDIO_HOST_ROOT_H
+#define AUDIO_HOST_ROOT_H
+
+#include <stddef.h>
+
+/* creates the fake root, with the shipped mixer_paths.xml and device nodes */
+int host_root_init(const char *xml_path);
+void host_root_remove(void);
+
+/* path below the fake root */
+const char *host_root_path(const char *path, char *buf, size_t size);
+
+int host_root_write(const char *path, const void *data, size_t size);
+int host_root_exists(const char *path);
+
+/* opens and ioctls per path, NULL for all */
+unsigned int host_open_count(const char *path);
+unsigned int host_ioctl_count(const char *path);
+void host_reset_counts(void);
+
+/* the last ioctl issued on path */
+int host_last_ioctl(const char *path, unsigned long *request, long *arg);
+
+/* fails the next count ioctls on path with error */
+void host_fail_ioctls(const char *path, unsigned int count, int error);
+
+#endif /* AUDIO_HOST_ROOT_H */
@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#include "host_test.h"
+
+int host_test_failed;
+
+int host_test_run(const struct host_test *tests, void (*set_up)(void),
+                  void (*tear_down)(void))
+{
+    int failed = 0;
+    int count = 0;
+
+    for (; tests->name; tests++, count++) {
+        host_test_failed = 0;
+        if (set_up)
+            set_up();
+        tests->run();
+        if (tear_down)
+            tear_down();
+        printf("%s %s\n", host_test_failed ? "FAIL" : "ok  ", tests->name);
+        failed += host_test_failed;
+    }
+
+    printf("%d of %d tests failed\n", failed, count);
+    return failed ? 1 : 0;
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/*
+ * Minimal test runner for the host tests of the HAL: each test is a
+ * function, a failed check reports its line and fails the test without
+ * stopping it.
+ */
+
+#ifndef AUDIO_HOST_TEST_H
+#define AUDIO_HOST_TEST_H
+
+#include <stdio.h>
+#include <stdint.h>
+#include <time.h>
+
+struct host_test {
+    const char *name;
+    void (*run)(void);
+};
+
+extern int host_test_failed;
+
+#define EXPECT_EQ(expected, actual) do { \
+    long long _e = (expected); \
+    long long _a = (actual); \
+    if (_e != _a) { \
+        fprintf(stderr, "%s:%d: %s: expected %lld, got %lld\n", \
+                __FILE__, __LINE__, #actual, _e, _a); \
+        host_test_failed = 1; \
+    } \
+} while (0)
+
+#define EXPECT_TRUE(cond) do { \
+    if (!(cond)) { \
+        fprintf(stderr, "%s:%d: %s is false\n", __FILE__, __LINE__, #cond); \
+        host_test_failed = 1; \
+    } \
+} while (0)
+
+/* runs the tests with set_up() before each, returns the exit status */
+int host_test_run(const struct host_test *tests, void (*set_up)(void),
+                  void (*tear_down)(void));
+
+static inline int64_t host_now_ns(void)
+{
+    struct timespec ts;
+
+    clock_gettime(CLOCK_MONOTONIC, &ts);
+    return (int64_t)ts.tv_sec * 1000000000 + ts.tv_nsec;
+}
+
+#endif /* AUDIO_HOST_TEST_H */
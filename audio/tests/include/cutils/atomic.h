@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* Host stand-in of the libcutils atomics used by the HAL. */
+
+#ifndef AUDIO_HOST_ATOMIC_H
+#define AUDIO_HOST_ATOMIC_H
+
+#include <stdint.h>
+
+static inline int32_t android_atomic_inc(volatile int32_t *addr)
+{
+    return __sync_fetch_and_add(addr, 1);
+}
+
+static inline int32_t android_atomic_dec(volatile int32_t *addr)
+{
+    return __sync_fetch_and_sub(addr, 1);
+}
+
+static inline int32_t android_atomic_acquire_load(volatile const int32_t *addr)
+{
+    return __atomic_load_n(addr, __ATOMIC_ACQUIRE);
+}
+
+static inline void android_atomic_release_store(int32_t value,
+                                                volatile int32_t *addr)
+{
+    __atomic_store_n(addr, value, __ATOMIC_RELEASE);
+}
+
+#endif /* AUDIO_HOST_ATOMIC_H */
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/*
+ * Host stand-in of the liblog macros. Errors always go to stderr and are
+ * counted, the rest only with AUDIO_HOST_VERBOSE set in the environment.
+ */
+
+#ifndef AUDIO_HOST_LOG_H
+#define AUDIO_HOST_LOG_H
+
+/* the HAL gets these through the platform headers */
+#include <stdarg.h>
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+#include <unistd.h>
+
+#ifndef LOG_TAG
+#define LOG_TAG NULL
+#endif
+
+#define HOST_LOG_VERBOSE 2
+#define HOST_LOG_DEBUG 3
+#define HOST_LOG_WARN 5
+#define HOST_LOG_ERROR 6
+
+void host_log(int prio, const char *tag, const char *fmt, ...)
+        __attribute__((format(printf, 3, 4)));
+unsigned int host_log_error_count(void);
+
+#define ALOGV(...) host_log(HOST_LOG_VERBOSE, LOG_TAG, __VA_ARGS__)
+#define ALOGD(...) host_log(HOST_LOG_DEBUG, LOG_TAG, __VA_ARGS__)
+#define ALOGW(...) host_log(HOST_LOG_WARN, LOG_TAG, __VA_ARGS__)
+#define ALOGE(...) host_log(HOST_LOG_ERROR, LOG_TAG, __VA_ARGS__)
+
+#endif /* AUDIO_HOST_LOG_H */
@@ -0,0 +1,29 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* Host stand-in of the key=value;... parameter parser. */
+
+#ifndef AUDIO_HOST_STR_PARMS_H
+#define AUDIO_HOST_STR_PARMS_H
+
+struct str_parms;
+
+struct str_parms *str_parms_create_str(const char *_string);
+void str_parms_destroy(struct str_parms *str_parms);
+int str_parms_get_str(struct str_parms *str_parms, const char *key,
+                      char *out_val, int len);
+
+#endif /* AUDIO_HOST_STR_PARMS_H */
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/*
+ * Host stand-in of the platform audio types, with only what the HAL uses.
+ * The values are those of the platform headers the HAL is built against.
+ */
+
+#ifndef AUDIO_HOST_SYSTEM_AUDIO_H
+#define AUDIO_HOST_SYSTEM_AUDIO_H
+
+#include <stdbool.h>
+#include <stddef.h>
+#include <stdint.h>
+#include <sys/types.h>
+
+typedef int audio_io_handle_t;
+
+typedef enum {
+    AUDIO_MODE_NORMAL = 0,
+    AUDIO_MODE_RINGTONE = 1,
+    AUDIO_MODE_IN_CALL = 2,
+    AUDIO_MODE_IN_COMMUNICATION = 3,
+} audio_mode_t;
+
+typedef enum {
+    AUDIO_FORMAT_PCM_16_BIT = 0x1,
+    AUDIO_FORMAT_PCM_8_BIT = 0x2,
+    AUDIO_FORMAT_PCM_32_BIT = 0x3,
+    AUDIO_FORMAT_PCM_8_24_BIT = 0x4,
+} audio_format_t;
+
+typedef uint32_t audio_channel_mask_t;
+
+enum {
+    AUDIO_CHANNEL_OUT_FRONT_LEFT = 0x1,
+    AUDIO_CHANNEL_OUT_FRONT_RIGHT = 0x2,
+    AUDIO_CHANNEL_OUT_STEREO = (AUDIO_CHANNEL_OUT_FRONT_LEFT |
+                                AUDIO_CHANNEL_OUT_FRONT_RIGHT),
+
+    AUDIO_CHANNEL_IN_LEFT = 0x4,
+    AUDIO_CHANNEL_IN_RIGHT = 0x8,
+    AUDIO_CHANNEL_IN_FRONT = 0x10,
+    AUDIO_CHANNEL_IN_MONO = AUDIO_CHANNEL_IN_FRONT,
+    AUDIO_CHANNEL_IN_STEREO = (AUDIO_CHANNEL_IN_LEFT | AUDIO_CHANNEL_IN_RIGHT),
+};
+
+typedef uint32_t audio_devices_t;
+
+enum {
+    AUDIO_DEVICE_NONE = 0x0,
+    AUDIO_DEVICE_BIT_IN = 0x80000000,
+    AUDIO_DEVICE_BIT_DEFAULT = 0x40000000,
+
+    AUDIO_DEVICE_OUT_EARPIECE = 0x1,
+    AUDIO_DEVICE_OUT_SPEAKER = 0x2,
+    AUDIO_DEVICE_OUT_WIRED_HEADSET = 0x4,
+    AUDIO_DEVICE_OUT_WIRED_HEADPHONE = 0x8,
+    AUDIO_DEVICE_OUT_BLUETOOTH_SCO = 0x10,
+    AUDIO_DEVICE_OUT_BLUETOOTH_SCO_HEADSET = 0x20,
+    AUDIO_DEVICE_OUT_BLUETOOTH_SCO_CARKIT = 0x40,
+    AUDIO_DEVICE_OUT_BLUETOOTH_A2DP = 0x80,
+    AUDIO_DEVICE_OUT_BLUETOOTH_A2DP_HEADPHONES = 0x100,
+    AUDIO_DEVICE_OUT_BLUETOOTH_A2DP_SPEAKER = 0x200,
+    AUDIO_DEVICE_OUT_AUX_DIGITAL = 0x400,
+    AUDIO_DEVICE_OUT_ANLG_DOCK_HEADSET = 0x800,
+    AUDIO_DEVICE_OUT_DGTL_DOCK_HEADSET = 0x1000,
+    AUDIO_DEVICE_OUT_USB_ACCESSORY = 0x2000,
+    AUDIO_DEVICE_OUT_USB_DEVICE = 0x4000,
+    AUDIO_DEVICE_OUT_REMOTE_SUBMIX = 0x8000,
+    AUDIO_DEVICE_OUT_DEFAULT = AUDIO_DEVICE_BIT_DEFAULT,
+    AUDIO_DEVICE_OUT_ALL = (AUDIO_DEVICE_OUT_EARPIECE |
+                            AUDIO_DEVICE_OUT_SPEAKER |
+                            AUDIO_DEVICE_OUT_WIRED_HEADSET |
+                            AUDIO_DEVICE_OUT_WIRED_HEADPHONE |
+                            AUDIO_DEVICE_OUT_BLUETOOTH_SCO |
+                            AUDIO_DEVICE_OUT_BLUETOOTH_SCO_HEADSET |
+                            AUDIO_DEVICE_OUT_BLUETOOTH_SCO_CARKIT |
+                            AUDIO_DEVICE_OUT_BLUETOOTH_A2DP |
+                            AUDIO_DEVICE_OUT_BLUETOOTH_A2DP_HEADPHONES |
+                            AUDIO_DEVICE_OUT_BLUETOOTH_A2DP_SPEAKER |
+                            AUDIO_DEVICE_OUT_AUX_DIGITAL |
+                            AUDIO_DEVICE_OUT_ANLG_DOCK_HEADSET |
+                            AUDIO_DEVICE_OUT_DGTL_DOCK_HEADSET |
+                            AUDIO_DEVICE_OUT_USB_ACCESSORY |
+                            AUDIO_DEVICE_OUT_USB_DEVICE |
+                            AUDIO_DEVICE_OUT_REMOTE_SUBMIX |
+                            AUDIO_DEVICE_OUT_DEFAULT),
+    AUDIO_DEVICE_OUT_ALL_SCO = (AUDIO_DEVICE_OUT_BLUETOOTH_SCO |
+                                AUDIO_DEVICE_OUT_BLUETOOTH_SCO_HEADSET |
+                                AUDIO_DEVICE_OUT_BLUETOOTH_SCO_CARKIT),
+
+    AUDIO_DEVICE_IN_COMMUNICATION = AUDIO_DEVICE_BIT_IN | 0x1,
+    AUDIO_DEVICE_IN_AMBIENT = AUDIO_DEVICE_BIT_IN | 0x2,
+    AUDIO_DEVICE_IN_BUILTIN_MIC = AUDIO_DEVICE_BIT_IN | 0x4,
+    AUDIO_DEVICE_IN_BLUETOOTH_SCO_HEADSET = AUDIO_DEVICE_BIT_IN | 0x8,
+    AUDIO_DEVICE_IN_WIRED_HEADSET = AUDIO_DEVICE_BIT_IN | 0x10,
+    AUDIO_DEVICE_IN_AUX_DIGITAL = AUDIO_DEVICE_BIT_IN | 0x20,
+    AUDIO_DEVICE_IN_VOICE_CALL = AUDIO_DEVICE_BIT_IN | 0x40,
+    AUDIO_DEVICE_IN_BACK_MIC = AUDIO_DEVICE_BIT_IN | 0x80,
+    AUDIO_DEVICE_IN_REMOTE_SUBMIX = AUDIO_DEVICE_BIT_IN | 0x100,
+    AUDIO_DEVICE_IN_DEFAULT = AUDIO_DEVICE_BIT_IN | AUDIO_DEVICE_BIT_DEFAULT,
+    AUDIO_DEVICE_IN_ALL = (AUDIO_DEVICE_IN_COMMUNICATION |
+                           AUDIO_DEVICE_IN_AMBIENT |
+                           AUDIO_DEVICE_IN_BUILTIN_MIC |
+                           AUDIO_DEVICE_IN_BLUETOOTH_SCO_HEADSET |
+                           AUDIO_DEVICE_IN_WIRED_HEADSET |
+                           AUDIO_DEVICE_IN_AUX_DIGITAL |
+                           AUDIO_DEVICE_IN_VOICE_CALL |
+                           AUDIO_DEVICE_IN_BACK_MIC |
+                           AUDIO_DEVICE_IN_REMOTE_SUBMIX |
+                           AUDIO_DEVICE_IN_DEFAULT),
+    AUDIO_DEVICE_IN_ALL_SCO = AUDIO_DEVICE_IN_BLUETOOTH_SCO_HEADSET,
+};
+
+typedef enum {
+    AUDIO_OUTPUT_FLAG_NONE = 0x0,
+    AUDIO_OUTPUT_FLAG_DIRECT = 0x1,
+    AUDIO_OUTPUT_FLAG_PRIMARY = 0x2,
+    AUDIO_OUTPUT_FLAG_FAST = 0x4,
+    AUDIO_OUTPUT_FLAG_DEEP_BUFFER = 0x8,
+} audio_output_flags_t;
+
+static inline int popcount(uint32_t x)
+{
+    return __builtin_popcount(x);
+}
+
+static inline size_t audio_bytes_per_sample(audio_format_t format)
+{
+    switch (format) {
+    case AUDIO_FORMAT_PCM_32_BIT:
+    case AUDIO_FORMAT_PCM_8_24_BIT:
+        return sizeof(int32_t);
+    case AUDIO_FORMAT_PCM_16_BIT:
+        return sizeof(int16_t);
+    case AUDIO_FORMAT_PCM_8_BIT:
+        return sizeof(uint8_t);
+    default:
+        return 0;
+    }
+}
+
+#endif /* AUDIO_HOST_SYSTEM_AUDIO_H */
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/*
+ * Benchmarks the startup of the routes on the shipped mixer_paths.xml: the
+ * xml parsed with no cache (the cache directory missing), parsed and the
+ * cache written (first boot, or after an update), and the cache mapped.
+ * Each start is timed from audio_route_init() until it returns, with the
+ * initial mixer update included.
+ *
+ * Usage: mixer_cache_bench <mixer_paths.xml>
+ */
+
+#include <limits.h>
+
+#include "../audio_route.c"
+
+#include "fake_tinyalsa.h"
+#include "host_root.h"
+#include "host_test.h"
+
+#define ITERATIONS 2000
+
+/* a card with a dsp exposing many more controls than the paths use */
+#define LARGE_CARD_EXTRA_CTLS 256
+
+enum start_mode {
+    START_XML,
+    START_XML_WRITE,
+    START_CACHE,
+};
+
+static const char * const mode_names[] = {
+    [START_XML] = "xml",
+    [START_XML_WRITE] = "xml + cache write",
+    [START_CACHE] = "mapped cache",
+};
+
+static char cache_dir[PATH_MAX];
+
+static int bench_start(enum start_mode mode, double *ns_per_start)
+{
+    struct audio_route *ar;
+    int64_t ns = 0;
+    int i;
+
+    if (mode == START_XML)
+        rmdir(cache_dir);
+    else
+        mkdir(cache_dir, 0755);
+
+    for (i = 0; i < ITERATIONS; i++) {
+        int64_t start;
+
+        if (mode != START_CACHE)
+            unlink(MIXER_CACHE_PATH);
+
+        start = host_now_ns();
+        ar = audio_route_init();
+        ns += host_now_ns() - start;
+
+        if (!ar)
+            return -1;
+        /* make sure the start took the path measured */
+        if ((ar->cache != NULL) != (mode == START_CACHE) && i > 0) {
+            fprintf(stderr, "%s: cache %s\n", mode_names[mode],
+                    ar->cache ? "mapped" : "not mapped");
+            audio_route_free(ar);
+            return -1;
+        }
+        audio_route_free(ar);
+    }
+
+    *ns_per_start = (double)ns / ITERATIONS;
+    return 0;
+}
+
+static int bench_card(unsigned int extra_ctls)
+{
+    struct mixer *mixer;
+    double xml_ns = 0;
+    double ns;
+    unsigned int mode;
+
+    fake_mixer_reset();
+    fake_mixer_set_extra_ctls(extra_ctls);
+    mixer = mixer_open(0);
+    printf("route startup, %u controls, %d iterations\n",
+           mixer_get_num_ctls(mixer), ITERATIONS);
+    mixer_close(mixer);
+
+    for (mode = START_XML; mode <= START_CACHE; mode++) {
+        if (bench_start(mode, &ns) < 0)
+            return -1;
+        if (mode == START_XML)
+            xml_ns = ns;
+        printf("  %-20s %10.1f us %6.2fx\n", mode_names[mode], ns / 1000,
+               xml_ns / ns);
+    }
+
+    return 0;
+}
+
+int main(int argc, char **argv)
+{
+    int ret;
+
+    if (argc != 2) {
+        fprintf(stderr, "usage: %s <mixer_paths.xml>\n", argv[0]);
+        return 2;
+    }
+
+    if (host_root_init(argv[1]) < 0) {
+        fprintf(stderr, "unable to set up the fake root\n");
+        return 2;
+    }
+
+    host_root_path("/data/misc/audio", cache_dir, sizeof(cache_dir));
+    ret = bench_card(0);
+    if (ret == 0)
+        ret = bench_card(LARGE_CARD_EXTRA_CTLS);
+
+    host_root_remove();
+    return ret < 0 ? 1 : 0;
+}
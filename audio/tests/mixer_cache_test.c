@@ -0,0 +1,383 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/*
+ * Starts the routes with and without the compiled mixer_paths.cache, and
+ * with caches that are stale (another xml or mixer) or damaged (truncated,
+ * bad header, out of range indexes): only a cache matching the xml and the
+ * mixer may be mapped, anything else falls back to the xml and is replaced.
+ * Either way every path must set the mixer as the parsed xml does.
+ *
+ * Usage: mixer_cache_test <mixer_paths.xml>
+ */
+
+#include <limits.h>
+
+#include "../audio_route.c"
+
+#include "fake_tinyalsa.h"
+#include "host_root.h"
+#include "host_test.h"
+
+#define MAX_VALUES 1024
+#define MAX_PATHS 32
+
+static struct audio_route *ar;
+
+/* mixer values after the init, then after each path, from the xml */
+static int reference[MAX_PATHS + 1][MAX_VALUES];
+static unsigned int reference_values;
+static unsigned int reference_paths;
+
+static int values[MAX_VALUES];
+
+static void start(void)
+{
+    if (ar)
+        audio_route_free(ar);
+    ar = audio_route_init();
+    EXPECT_TRUE(ar != NULL);
+}
+
+static void set_up(void)
+{
+    unlink(MIXER_CACHE_PATH);
+    fake_mixer_reset();
+}
+
+static void tear_down(void)
+{
+    if (ar)
+        audio_route_free(ar);
+    ar = NULL;
+}
+
+static void *read_cache(size_t *size)
+{
+    void *cache = read_file(MIXER_CACHE_PATH, size);
+
+    EXPECT_TRUE(cache != NULL);
+    return cache;
+}
+
+static void write_cache(const void *cache, size_t size)
+{
+    EXPECT_EQ(0, host_root_write(MIXER_CACHE_PATH, cache, size));
+}
+
+/* the settings of the first path, after the initial ones and the paths */
+static struct mixer_setting *first_path_setting(void *cache)
+{
+    struct mixer_cache_header *header = cache;
+    char *p = (char *)(header + 1);
+
+    p += header->num_initial_settings * sizeof(struct mixer_setting);
+    p += header->num_paths * sizeof(struct mixer_cache_path);
+    return (struct mixer_setting *)p;
+}
+
+static void expect_routes(void)
+{
+    unsigned int i;
+
+    if (!ar)
+        return;
+
+    EXPECT_EQ(reference_paths, ar->num_mixer_paths);
+    EXPECT_EQ(reference_values, fake_mixer_get_values(values, MAX_VALUES));
+    EXPECT_EQ(0, memcmp(reference[0], values, reference_values * sizeof(int)));
+
+    for (i = 0; i < ar->num_mixer_paths && i < reference_paths; i++) {
+        reset_mixer_state(ar);
+        audio_route_apply_path(ar, ar->mixer_path[i].name);
+        update_mixer_state(ar);
+        fake_mixer_get_values(values, MAX_VALUES);
+        if (memcmp(reference[i + 1], values, reference_values * sizeof(int))) {
+            fprintf(stderr, "path %s differs from the xml\n",
+                    ar->mixer_path[i].name);
+            host_test_failed = 1;
+        }
+    }
+}
+
+/* the cache is rejected, the xml parsed and the cache written again */
+static void expect_fallback(void)
+{
+    start();
+    EXPECT_TRUE(ar && ar->cache == NULL);
+    expect_routes();
+
+    start();
+    EXPECT_TRUE(ar && ar->cache != NULL);
+    expect_routes();
+}
+
+static void test_first_start_writes_cache(void)
+{
+    start();
+    EXPECT_TRUE(ar->cache == NULL);
+    EXPECT_TRUE(host_root_exists(MIXER_CACHE_PATH));
+    EXPECT_TRUE(!host_root_exists(MIXER_CACHE_PATH ".tmp"));
+    expect_routes();
+}
+
+static void test_next_start_maps_cache(void)
+{
+    size_t size;
+    void *cache;
+
+    start();
+    cache = read_cache(&size);
+
+    start();
+    EXPECT_TRUE(ar->cache != NULL);
+    EXPECT_EQ(size, ar->cache_size);
+    expect_routes();
+
+    /* a mapped cache is not written again */
+    start();
+    free(cache);
+    cache = read_cache(&size);
+    EXPECT_EQ(size, ar->cache_size);
+    EXPECT_EQ(0, memcmp(cache, ar->cache, size));
+    free(cache);
+}
+
+static void test_changed_xml(void)
+{
+    static const char comment[] = "\n<!-- changed -->\n";
+    size_t cache_size;
+    size_t size;
+    char *cache;
+    char *xml;
+    char *changed;
+
+    start();
+    cache = read_cache(&cache_size);
+
+    /* the same paths, but the old hash */
+    xml = read_file(MIXER_XML_PATH, &size);
+    EXPECT_TRUE(xml != NULL);
+    changed = malloc(size + sizeof(comment) - 1);
+    memcpy(changed, xml, size);
+    memcpy(changed + size, comment, sizeof(comment) - 1);
+    EXPECT_EQ(0, host_root_write(MIXER_XML_PATH, changed,
+                                 size + sizeof(comment) - 1));
+
+    expect_fallback();
+    EXPECT_TRUE(((struct mixer_cache_header *)ar->cache)->hash !=
+                ((struct mixer_cache_header *)cache)->hash);
+
+    EXPECT_EQ(0, host_root_write(MIXER_XML_PATH, xml, size));
+    free(changed);
+    free(xml);
+    free(cache);
+}
+
+static void test_changed_mixer(void)
+{
+    start();
+
+    /* a kernel with more controls, the indexes of the cache are stale */
+    fake_mixer_set_extra_ctls(8);
+    start();
+    EXPECT_TRUE(ar->cache == NULL);
+    EXPECT_EQ(reference_paths, ar->num_mixer_paths);
+
+    fake_mixer_set_extra_ctls(0);
+    expect_fallback();
+}
+
+static void test_truncated_cache(void)
+{
+    size_t size;
+    void *cache;
+
+    start();
+    cache = read_cache(&size);
+
+    write_cache(cache, size - 1);
+    expect_fallback();
+
+    write_cache(cache, size / 2);
+    expect_fallback();
+
+    write_cache(cache, sizeof(struct mixer_cache_header) - 1);
+    expect_fallback();
+
+    write_cache(cache, 0);
+    expect_fallback();
+
+    free(cache);
+}
+
+static void test_corrupt_header(void)
+{
+    struct mixer_cache_header *header;
+    struct mixer_cache_header saved;
+    size_t size;
+    void *cache;
+
+    start();
+    cache = read_cache(&size);
+    header = cache;
+    saved = *header;
+
+    header->magic = ~header->magic;
+    write_cache(cache, size);
+    expect_fallback();
+    *header = saved;
+
+    header->version++;
+    write_cache(cache, size);
+    expect_fallback();
+    *header = saved;
+
+    header->hash ^= 1;
+    write_cache(cache, size);
+    expect_fallback();
+    *header = saved;
+
+    /* counts that no longer add up to the size */
+    header->num_settings++;
+    write_cache(cache, size);
+    expect_fallback();
+    *header = saved;
+
+    header->num_paths = 0xffffffff;
+    write_cache(cache, size);
+    expect_fallback();
+
+    free(cache);
+}
+
+static void test_corrupt_contents(void)
+{
+    struct mixer_cache_header *header;
+    struct mixer_cache_path *path;
+    struct mixer_setting *setting;
+    unsigned int saved;
+    size_t size;
+    char *cache;
+
+    start();
+    cache = read_cache(&size);
+    header = (struct mixer_cache_header *)cache;
+    setting = first_path_setting(cache);
+    path = (struct mixer_cache_path *)((char *)setting -
+            header->num_paths * sizeof(struct mixer_cache_path));
+
+    saved = setting->ctl_index;
+    setting->ctl_index = header->num_mixer_ctls;
+    write_cache(cache, size);
+    expect_fallback();
+    setting->ctl_index = saved;
+
+    saved = path->name_offset;
+    path->name_offset = header->strings_size;
+    write_cache(cache, size);
+    expect_fallback();
+    path->name_offset = saved;
+
+    saved = path->length;
+    path->length = header->num_settings + 1;
+    write_cache(cache, size);
+    expect_fallback();
+    path->length = saved;
+
+    /* the last name runs off the end */
+    cache[size - 1] = 'x';
+    write_cache(cache, size);
+    expect_fallback();
+
+    free(cache);
+}
+
+static void test_unwritable_cache(void)
+{
+    char path[PATH_MAX];
+
+    /* still starts from the xml, every time */
+    rmdir(host_root_path("/data/misc/audio", path, sizeof(path)));
+    start();
+    EXPECT_TRUE(ar->cache == NULL);
+    expect_routes();
+    start();
+    EXPECT_TRUE(ar->cache == NULL);
+    EXPECT_TRUE(!host_root_exists(MIXER_CACHE_PATH));
+    mkdir(path, 0755);
+}
+
+static const struct host_test tests[] = {
+    { "first_start_writes_cache", test_first_start_writes_cache },
+    { "next_start_maps_cache", test_next_start_maps_cache },
+    { "changed_xml", test_changed_xml },
+    { "changed_mixer", test_changed_mixer },
+    { "truncated_cache", test_truncated_cache },
+    { "corrupt_header", test_corrupt_header },
+    { "corrupt_contents", test_corrupt_contents },
+    { "unwritable_cache", test_unwritable_cache },
+    { NULL, NULL },
+};
+
+/* records what the xml sets, with no cache involved */
+static int parse_reference(void)
+{
+    unsigned int i;
+
+    unlink(MIXER_CACHE_PATH);
+    start();
+    if (!ar || ar->cache || ar->num_mixer_paths > MAX_PATHS)
+        return -1;
+
+    reference_paths = ar->num_mixer_paths;
+    reference_values = fake_mixer_get_values(reference[0], MAX_VALUES);
+    for (i = 0; i < reference_paths; i++) {
+        reset_mixer_state(ar);
+        audio_route_apply_path(ar, ar->mixer_path[i].name);
+        update_mixer_state(ar);
+        fake_mixer_get_values(reference[i + 1], MAX_VALUES);
+    }
+
+    audio_route_free(ar);
+    ar = NULL;
+    return 0;
+}
+
+int main(int argc, char **argv)
+{
+    int ret;
+
+    if (argc != 2) {
+        fprintf(stderr, "usage: %s <mixer_paths.xml>\n", argv[0]);
+        return 2;
+    }
+
+    if (host_root_init(argv[1]) < 0) {
+        fprintf(stderr, "unable to set up the fake root\n");
+        return 2;
+    }
+
+    if (parse_reference() < 0) {
+        fprintf(stderr, "unable to parse %s\n", argv[1]);
+        host_root_remove();
+        return 2;
+    }
+
+    ret = host_test_run(tests, set_up, tear_down);
+    host_root_remove();
+    return ret;
+}
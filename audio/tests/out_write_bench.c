@@ -0,0 +1,329 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/*
+ * Benchmarks out_write() against the real time sink of the fake tinyalsa,
+ * with the stream in the normal and the low latency (AUDIO_OUTPUT_FLAG_FAST)
+ * mode. A writer thread plays as the mixer of AudioFlinger does, with or
+ * without scheduling stalls, while a control thread keeps changing the
+ * screen state and the routing, including to hdmi and back which puts the
+ * stream in standby. Reports how long the writer holds the stream mutex
+ * per write, how often it takes the device mutex, how long the control
+ * calls wait, and the underruns.
+ *
+ * Usage: out_write_bench <mixer_paths.xml>
+ */
+
+#include <pthread.h>
+
+static int bench_mutex_lock(pthread_mutex_t *mutex);
+static int bench_mutex_unlock(pthread_mutex_t *mutex);
+
+/* only the locking of the hal is timed */
+#define pthread_mutex_lock bench_mutex_lock
+#define pthread_mutex_unlock bench_mutex_unlock
+#include "../audio_hw.c"
+#undef pthread_mutex_lock
+#undef pthread_mutex_unlock
+
+#include "fake_tinyalsa.h"
+#include "host_root.h"
+#include "host_test.h"
+
+#define RUN_MS 2000
+#define CONTROL_INTERVAL_MS 10
+/* every that many control calls, a round trip through hdmi */
+#define CONTROL_HDMI_EVERY 50
+/* a mixer thread preempted for longer than the low latency buffer, at
+   intervals out of step with the hdmi round trips */
+#define STALL_MS 30
+#define STALL_INTERVAL_MS 300
+
+enum {
+    ROLE_OTHER,
+    ROLE_WRITER,
+    ROLE_CONTROL,
+    NUM_ROLES,
+};
+
+enum {
+    LOCK_OUT,
+    LOCK_ADEV,
+    NUM_LOCKS,
+};
+
+static const char * const lock_names[] = {
+    [LOCK_OUT] = "stream",
+    [LOCK_ADEV] = "device",
+};
+
+struct lock_stats {
+    unsigned int count;
+    int64_t locked_ns;
+    int64_t wait_ns;
+    int64_t max_wait_ns;
+    int64_t hold_ns;
+    int64_t max_hold_ns;
+};
+
+static pthread_mutex_t *tracked[NUM_LOCKS];
+/* each role only updates its own stats */
+static struct lock_stats lock_stats[NUM_LOCKS][NUM_ROLES];
+static __thread int thread_role;
+
+static struct audio_device *adev;
+static struct stream_out *out;
+static volatile int running;
+
+static struct lock_stats *find_stats(pthread_mutex_t *mutex)
+{
+    int i;
+
+    for (i = 0; i < NUM_LOCKS; i++)
+        if (tracked[i] == mutex)
+            return &lock_stats[i][thread_role];
+
+    return NULL;
+}
+
+static int bench_mutex_lock(pthread_mutex_t *mutex)
+{
+    struct lock_stats *stats = find_stats(mutex);
+    int64_t start;
+    int64_t wait;
+    int ret;
+
+    if (!stats)
+        return pthread_mutex_lock(mutex);
+
+    start = host_now_ns();
+    ret = pthread_mutex_lock(mutex);
+    stats->locked_ns = host_now_ns();
+    wait = stats->locked_ns - start;
+    stats->count++;
+    stats->wait_ns += wait;
+    if (wait > stats->max_wait_ns)
+        stats->max_wait_ns = wait;
+    return ret;
+}
+
+static int bench_mutex_unlock(pthread_mutex_t *mutex)
+{
+    struct lock_stats *stats = find_stats(mutex);
+    int64_t hold;
+
+    if (stats) {
+        hold = host_now_ns() - stats->locked_ns;
+        stats->hold_ns += hold;
+        if (hold > stats->max_hold_ns)
+            stats->max_hold_ns = hold;
+    }
+    return pthread_mutex_unlock(mutex);
+}
+
+static void sleep_ms(unsigned int ms)
+{
+    struct timespec ts;
+
+    ts.tv_sec = ms / 1000;
+    ts.tv_nsec = (ms % 1000) * 1000000;
+    nanosleep(&ts, NULL);
+}
+
+struct writer_args {
+    bool stalls;
+    unsigned int writes;
+};
+
+static void *writer_thread(void *arg)
+{
+    struct writer_args *args = arg;
+    size_t bytes = out->stream.common.get_buffer_size(&out->stream.common);
+    void *buffer = calloc(1, bytes);
+    int64_t next_stall = host_now_ns() + STALL_INTERVAL_MS * 1000000LL;
+
+    thread_role = ROLE_WRITER;
+    while (running) {
+        out->stream.write(&out->stream, buffer, bytes);
+        args->writes++;
+        if (args->stalls && host_now_ns() >= next_stall) {
+            sleep_ms(STALL_MS);
+            next_stall += STALL_INTERVAL_MS * 1000000LL;
+        }
+    }
+
+    free(buffer);
+    return NULL;
+}
+
+struct control_args {
+    unsigned int calls;
+    int64_t call_ns;
+    int64_t max_call_ns;
+};
+
+static void *control_thread(void *arg)
+{
+    static const char * const adev_params[] = {
+        "screen_state=off",
+        "screen_state=on",
+    };
+    static const char * const out_params[] = {
+        "routing=8",
+        "routing=2",
+    };
+    struct control_args *args = arg;
+    unsigned int i;
+
+    thread_role = ROLE_CONTROL;
+    for (i = 0; running; i++) {
+        int64_t start;
+        int64_t ns;
+
+        sleep_ms(CONTROL_INTERVAL_MS);
+        start = host_now_ns();
+        if (i % CONTROL_HDMI_EVERY == 0)
+            out->stream.common.set_parameters(&out->stream.common,
+                                              "routing=1024");
+        else if (i % CONTROL_HDMI_EVERY == 1)
+            out->stream.common.set_parameters(&out->stream.common,
+                                              "routing=2");
+        else if (i % 2)
+            adev->hw_device.set_parameters(&adev->hw_device,
+                                           adev_params[(i / 2) % 2]);
+        else
+            out->stream.common.set_parameters(&out->stream.common,
+                                              out_params[(i / 2) % 2]);
+        ns = host_now_ns() - start;
+        args->calls++;
+        args->call_ns += ns;
+        if (ns > args->max_call_ns)
+            args->max_call_ns = ns;
+    }
+
+    return NULL;
+}
+
+static int open_output(audio_output_flags_t flags)
+{
+    struct audio_config config = {
+        .sample_rate = OUT_SAMPLING_RATE,
+        .channel_mask = AUDIO_CHANNEL_OUT_STEREO,
+        .format = AUDIO_FORMAT_PCM_16_BIT,
+    };
+    struct audio_stream_out *stream;
+    hw_device_t *device;
+
+    if (HAL_MODULE_INFO_SYM.common.methods->open(&HAL_MODULE_INFO_SYM.common,
+            AUDIO_HARDWARE_INTERFACE, &device) != 0)
+        return -1;
+    adev = (struct audio_device *)device;
+
+    if (adev->hw_device.open_output_stream(&adev->hw_device, 0,
+            AUDIO_DEVICE_OUT_SPEAKER, flags, &config, &stream) != 0) {
+        adev->hw_device.common.close(&adev->hw_device.common);
+        return -1;
+    }
+    out = (struct stream_out *)stream;
+    return 0;
+}
+
+static double us(int64_t ns)
+{
+    return ns / 1000.0;
+}
+
+static int bench_run(const char *name, audio_output_flags_t flags, bool stalls)
+{
+    struct writer_args writer_args = { stalls, 0 };
+    struct control_args control_args = { 0, 0, 0 };
+    pthread_t writer;
+    pthread_t control;
+    struct lock_stats *w;
+    int i;
+
+    if (open_output(flags) < 0) {
+        fprintf(stderr, "unable to open the output\n");
+        return -1;
+    }
+
+    memset(lock_stats, 0, sizeof(lock_stats));
+    tracked[LOCK_OUT] = &out->lock;
+    tracked[LOCK_ADEV] = &adev->lock;
+    fake_pcm_reset_counts();
+
+    running = 1;
+    pthread_create(&writer, NULL, writer_thread, &writer_args);
+    pthread_create(&control, NULL, control_thread, &control_args);
+    sleep_ms(RUN_MS);
+    running = 0;
+    pthread_join(control, NULL);
+    pthread_join(writer, NULL);
+
+    printf("%s%s: %u writes, %u underruns (%u seen by out_write), "
+           "latency %u ms\n", name, stalls ? ", with stalls" : "",
+           writer_args.writes, fake_pcm_underruns(), out->underruns,
+           out->stream.get_latency(&out->stream));
+    for (i = 0; i < NUM_LOCKS; i++) {
+        w = &lock_stats[i][ROLE_WRITER];
+        printf("  writer  %-6s mutex: %5u locks, held %8.1f us avg %8.1f us max\n",
+               lock_names[i], w->count, w->count ? us(w->hold_ns / w->count) : 0,
+               us(w->max_hold_ns));
+    }
+    for (i = 0; i < NUM_LOCKS; i++) {
+        w = &lock_stats[i][ROLE_CONTROL];
+        printf("  control %-6s mutex: %5u locks, waited %8.1f us avg %8.1f us max\n",
+               lock_names[i], w->count, w->count ? us(w->wait_ns / w->count) : 0,
+               us(w->max_wait_ns));
+    }
+    printf("  control calls: %u, %.1f us avg %.1f us max\n", control_args.calls,
+           control_args.calls ? us(control_args.call_ns / control_args.calls) : 0,
+           us(control_args.max_call_ns));
+
+    memset(tracked, 0, sizeof(tracked));
+    adev->hw_device.close_output_stream(&adev->hw_device, &out->stream);
+    adev->hw_device.common.close(&adev->hw_device.common);
+    out = NULL;
+    adev = NULL;
+    return 0;
+}
+
+int main(int argc, char **argv)
+{
+    int ret = 0;
+
+    if (argc != 2) {
+        fprintf(stderr, "usage: %s <mixer_paths.xml>\n", argv[0]);
+        return 2;
+    }
+
+    if (host_root_init(argv[1]) < 0) {
+        fprintf(stderr, "unable to set up the fake root\n");
+        return 2;
+    }
+
+    fake_mixer_reset();
+    if (bench_run("normal", AUDIO_OUTPUT_FLAG_PRIMARY, false) < 0 ||
+            bench_run("normal", AUDIO_OUTPUT_FLAG_PRIMARY, true) < 0 ||
+            bench_run("low latency", AUDIO_OUTPUT_FLAG_PRIMARY |
+                      AUDIO_OUTPUT_FLAG_FAST, false) < 0 ||
+            bench_run("low latency", AUDIO_OUTPUT_FLAG_PRIMARY |
+                      AUDIO_OUTPUT_FLAG_FAST, true) < 0)
+        ret = 1;
+
+    host_root_remove();
+    return ret;
+}
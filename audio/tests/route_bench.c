@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/*
+ * Benchmarks route transitions as select_devices() makes them - reset,
+ * apply the new paths, update - on the fake mixer, with the indexed paths
+ * and dirty control lists of audio_route.c against the code before them.
+ * Reports the control writes of each transition, the values it actually
+ * changes on the card, and the wall time it takes.
+ *
+ * Usage: route_bench <mixer_paths.xml>
+ */
+
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+
+#include "../audio_route.h"
+#include "audio_route_legacy.h"
+#include "fake_tinyalsa.h"
+#include "host_root.h"
+#include "host_test.h"
+
+#define ITERATIONS 100000
+#define MAX_PATHS 3
+#define MAX_VALUES 4096
+
+/* a card with a dsp exposing many more controls than the paths use */
+#define LARGE_CARD_EXTRA_CTLS 256
+
+struct route_ops {
+    const char *name;
+    void *(*init)(void);
+    void (*free)(void *ar);
+    void (*apply_path)(void *ar, const char *name);
+    void (*reset)(void *ar);
+    void (*update)(void *ar);
+};
+
+struct transition {
+    const char *name;
+    const char *from[MAX_PATHS];
+    const char *to[MAX_PATHS];
+};
+
+static const struct transition transitions[] = {
+    { "speaker -> headphone", { "speaker" }, { "headphone" } },
+    { "headphone -> speaker", { "headphone" }, { "speaker" } },
+    { "speaker -> hdmi", { "speaker" }, { "hdmi" } },
+    { "speaker -> speaker", { "speaker" }, { "speaker" } },
+    { "main-mic-left -> main-mic-top", { "main-mic-left" }, { "main-mic-top" } },
+    { "main-mic-top -> headset-mic", { "main-mic-top" }, { "headset-mic" } },
+    { NULL },
+};
+
+static void *indexed_init(void) { return audio_route_init(); }
+static void indexed_free(void *ar) { audio_route_free(ar); }
+static void indexed_apply_path(void *ar, const char *name) { audio_route_apply_path(ar, name); }
+static void indexed_reset(void *ar) { reset_mixer_state(ar); }
+static void indexed_update(void *ar) { update_mixer_state(ar); }
+
+static void *legacy_init(void) { return legacy_audio_route_init(); }
+static void legacy_free(void *ar) { legacy_audio_route_free(ar); }
+static void legacy_apply_path(void *ar, const char *name) { legacy_audio_route_apply_path(ar, name); }
+static void legacy_reset(void *ar) { legacy_reset_mixer_state(ar); }
+static void legacy_update(void *ar) { legacy_update_mixer_state(ar); }
+
+static const struct route_ops route_ops[] = {
+    { "legacy", legacy_init, legacy_free, legacy_apply_path, legacy_reset,
+      legacy_update },
+    { "indexed", indexed_init, indexed_free, indexed_apply_path, indexed_reset,
+      indexed_update },
+};
+
+#define NUM_ROUTE_OPS (sizeof(route_ops) / sizeof(route_ops[0]))
+
+static int before[MAX_VALUES];
+static int after[MAX_VALUES];
+
+static void apply_route(const struct route_ops *ops, void *ar,
+                        const char * const *paths)
+{
+    int i;
+
+    ops->reset(ar);
+    for (i = 0; i < MAX_PATHS && paths[i]; i++)
+        ops->apply_path(ar, paths[i]);
+    ops->update(ar);
+}
+
+/* the values the transition has to change on the card */
+static unsigned int count_changed(const struct route_ops *ops, void *ar,
+                                  const struct transition *t)
+{
+    unsigned int count;
+    unsigned int changed = 0;
+    unsigned int i;
+
+    apply_route(ops, ar, t->from);
+    count = fake_mixer_get_values(before, MAX_VALUES);
+    apply_route(ops, ar, t->to);
+    fake_mixer_get_values(after, MAX_VALUES);
+
+    for (i = 0; i < count; i++)
+        if (before[i] != after[i])
+            changed++;
+
+    return changed;
+}
+
+static int bench_transitions(const struct route_ops *ops)
+{
+    const struct transition *t;
+    int mismatches = 0;
+    void *ar;
+
+    ar = ops->init();
+    if (!ar) {
+        fprintf(stderr, "%s: unable to init the routes\n", ops->name);
+        return 1;
+    }
+
+    for (t = transitions; t->name; t++) {
+        unsigned int changed = count_changed(ops, ar, t);
+        unsigned long long writes = 0;
+        int64_t ns = 0;
+        int i;
+
+        for (i = 0; i < ITERATIONS; i++) {
+            int64_t start;
+
+            apply_route(ops, ar, t->from);
+            fake_mixer_reset_counts();
+            start = host_now_ns();
+            apply_route(ops, ar, t->to);
+            ns += host_now_ns() - start;
+            writes += fake_mixer_ctl_writes();
+        }
+
+        printf("  %-32s %-8s %6.1f %7u %10.1f\n", t->name, ops->name,
+               (double)writes / ITERATIONS, changed, (double)ns / ITERATIONS);
+        /* more writes than changed values is wasted ioctls */
+        if (writes != (unsigned long long)changed * ITERATIONS)
+            mismatches++;
+    }
+
+    ops->free(ar);
+    return mismatches;
+}
+
+static int bench_card(unsigned int extra_ctls)
+{
+    struct mixer *mixer;
+    int mismatches = 0;
+    unsigned int i;
+
+    fake_mixer_reset();
+    fake_mixer_set_extra_ctls(extra_ctls);
+    mixer = mixer_open(0);
+    printf("route transitions, %u controls, %d iterations\n",
+           mixer_get_num_ctls(mixer), ITERATIONS);
+    mixer_close(mixer);
+
+    printf("  %-32s %-8s %6s %7s %10s\n", "transition", "impl", "writes",
+           "changed", "ns");
+    for (i = 0; i < NUM_ROUTE_OPS; i++)
+        mismatches += bench_transitions(&route_ops[i]);
+
+    return mismatches;
+}
+
+int main(int argc, char **argv)
+{
+    int mismatches;
+
+    if (argc != 2) {
+        fprintf(stderr, "usage: %s <mixer_paths.xml>\n", argv[0]);
+        return 2;
+    }
+
+    if (host_root_init(argv[1]) < 0) {
+        fprintf(stderr, "unable to set up the fake root\n");
+        return 2;
+    }
+
+    mismatches = bench_card(0);
+    mismatches += bench_card(LARGE_CARD_EXTRA_CTLS);
+
+    host_root_remove();
+    if (mismatches) {
+        printf("%d transitions wrote more than they changed\n", mismatches);
+        return 1;
+    }
+    return 0;
+}
@@ -0,0 +1,51 @@
+#!/bin/sh
+#
+# Copyright (C) 2013 The CyanogenMod Project
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#      http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+# Runs the audio HAL host tests against the shipped mixer_paths.xml, each
+# in a fake root of its own. With --bench, runs the benchmarks instead.
+#
+# Build first with: mmm device/asus/tf101/audio/tests
+#
+# Usage: run-host-tests.sh [--bench] [<test>...]
+
+OUT=${ANDROID_HOST_OUT:?"run lunch first, or set ANDROID_HOST_OUT"}
+XML=$(dirname "$0")/../../prebuilt/etc/mixer_paths.xml
+
+TESTS="audio_codec_mode_test audio_mixer_cache_test"
+BENCHES="audio_route_bench audio_mixer_cache_bench audio_out_write_bench"
+
+if [ "$1" = "--bench" ]; then
+    shift
+    [ $# -eq 0 ] && set -- $BENCHES
+else
+    [ $# -eq 0 ] && set -- $TESTS
+fi
+
+failed=0
+for test in "$@"; do
+    if [ ! -x "$OUT/bin/$test" ]; then
+        echo "$OUT/bin/$test not found, build audio/tests first"
+        exit 1
+    fi
+    echo "== $test"
+    "$OUT/bin/$test" "$XML" || failed=1
+done
+
+if [ $failed -ne 0 ]; then
+    echo "FAILED"
+    exit 1
+fi
+echo "PASSED"
@@ -2,11 +2,29 @@ LOCAL_PATH:= $(call my-dir)
 
 include $(CLEAR_VARS)
 LOCAL_MODULE_TAGS := eng
-LOCAL_SRC_FILES := blobpack.cpp
+LOCAL_SRC_FILES := blobpack.cpp crc32.cpp
 LOCAL_CFLAGS += -I. -Ishared -Wall -ggdb
+LOCAL_LDLIBS += -lpthread
 LOCAL_MODULE := blobpack_tf
 LOCAL_MODULE_TAGS := optional
 include $(BUILD_HOST_EXECUTABLE)
 
 $(call dist-for-goals,dist_files,$(LOCAL_BUILT_MODULE))
 
+include $(CLEAR_VARS)
+LOCAL_SRC_FILES := blobunpack.cpp crc32.cpp
+LOCAL_CFLAGS += -I. -Ishared -Wall -ggdb
+LOCAL_LDLIBS += -lpthread
+LOCAL_MODULE := blobunpack_tf
+LOCAL_MODULE_TAGS := optional
+include $(BUILD_HOST_EXECUTABLE)
+
+$(call dist-for-goals,dist_files,$(LOCAL_BUILT_MODULE))
+
+# The fopen/fwrite blobpack, baseline of tests/bench.sh
+include $(CLEAR_VARS)
+LOCAL_SRC_FILES := tests/blobpack_legacy.cpp
+LOCAL_CFLAGS += -I$(LOCAL_PATH)
+LOCAL_MODULE := blobpack_legacy_tf
+LOCAL_MODULE_TAGS := optional
+include $(BUILD_HOST_EXECUTABLE)
@@ -14,35 +14,235 @@
 *   limitations under the License.
 */
 
+#include <errno.h>
+#include <fcntl.h>
+#include <pthread.h>
+#include <stdint.h>
 #include <stdio.h>
 #include <stdlib.h>
 #include <string.h>
+#include <sys/mman.h>
+#include <sys/stat.h>
+#include <unistd.h>
+#ifdef __linux__
+#include <sys/sendfile.h>
+#include <sys/syscall.h>
+#endif
 
 #include "blob.h"
+#include "crc32.h"
+
 typedef struct
 {
   char *part_name;
   char *filename;
+  int fd;
+  unsigned int offset;
+  unsigned int size;
+  uint32_t crc;
+  int error;
 } partition_item;
 
+typedef struct
+{
+  partition_item *partitions;
+  int partnums;
+  int next; // next partition to pick up, guarded by lock
+  int outfd;
+  pthread_mutex_t lock;
+} pack_state;
+
 // Number of required arguments before partition definition, including argv[0]
 #define GENERIC_ARGS 2
 
+// Chunk size for the copy and checksum passes, also the read buffer size
+// when the source can't be mapped
+#define CHUNK_SIZE (8 * 1024 * 1024)
+
+static int
+pwrite_full (int fd, const void *buf, size_t len, off_t offset)
+{
+  const char *p = (const char *) buf;
+
+  while (len > 0)
+  {
+    ssize_t ret = pwrite (fd, p, len, offset);
+    if (ret < 0 && errno == EINTR)
+      continue;
+    if (ret <= 0)
+      return -1;
+    p += ret;
+    len -= ret;
+    offset += ret;
+  }
+  return 0;
+}
+
+// Lets the kernel copy len bytes between the files without bouncing them
+// through userspace. Returns the number of bytes copied, which is short
+// (possibly 0) if the kernel can't do it for these files.
+static size_t
+copy_in_kernel (int infd, off_t inoff, int outfd, off_t outoff, size_t len)
+{
+  size_t done = 0;
+
+#if defined(__linux__) && defined(__NR_copy_file_range)
+  while (done < len)
+  {
+    loff_t in = inoff + done, out = outoff + done;
+    ssize_t ret = syscall (__NR_copy_file_range, infd, &in, outfd, &out,
+                           len - done, 0);
+    if (ret < 0 && errno == EINTR)
+      continue;
+    if (ret <= 0)
+      break;
+    done += ret;
+  }
+#endif
+#ifdef __linux__
+  // sendfile() writes at the file position, so it is only usable while
+  // the output is filled sequentially
+  if (done < len && lseek (outfd, 0, SEEK_CUR) == outoff + (off_t) done)
+  {
+    while (done < len)
+    {
+      off_t in = inoff + done;
+      ssize_t ret = sendfile (outfd, infd, &in, len - done);
+      if (ret < 0 && errno == EINTR)
+        continue;
+      if (ret <= 0)
+        break;
+      done += ret;
+    }
+  }
+#endif
+  return done;
+}
+
+// Checksums a partition and copies it into place in the output
+static int
+pack_partition (partition_item *part, int outfd)
+{
+  char *buffer = NULL;
+  size_t pos = 0;
+  void *map;
+
+  part->crc = 0;
+  if (part->size == 0)
+    return 0;
+
+  map = mmap (NULL, part->size, PROT_READ, MAP_PRIVATE, part->fd, 0);
+  if (map != MAP_FAILED)
+  {
+#ifdef MADV_SEQUENTIAL
+    madvise (map, part->size, MADV_SEQUENTIAL);
+#endif
+    // Checksum and copy chunk by chunk, so the copy reads pages the
+    // checksum just faulted in
+    while (pos < part->size)
+    {
+      size_t len = part->size - pos;
+      if (len > CHUNK_SIZE)
+        len = CHUNK_SIZE;
+      part->crc = blob_crc32 (part->crc, (char *) map + pos, len);
+      if (copy_in_kernel (part->fd, pos, outfd, part->offset + pos, len) != len &&
+          pwrite_full (outfd, (char *) map + pos, len, part->offset + pos) < 0)
+        break;
+      pos += len;
+    }
+    munmap (map, part->size);
+    return pos == part->size ? 0 : -1;
+  }
+
+  // mmap() can still fail on a regular file, e.g. on a filesystem that
+  // doesn't support it or without enough address space, fall back to
+  // reading it. Only regular files get here, see main().
+  buffer = (char *) malloc (CHUNK_SIZE);
+  if (buffer == NULL)
+    return -1;
+  while (pos < part->size)
+  {
+    ssize_t ret = read (part->fd, buffer, CHUNK_SIZE);
+    if (ret < 0 && errno == EINTR)
+      continue;
+    if (ret <= 0 || pos + ret > part->size)
+      break;
+    part->crc = blob_crc32 (part->crc, buffer, ret);
+    if (pwrite_full (outfd, buffer, ret, part->offset + pos) < 0)
+      break;
+    pos += ret;
+  }
+  free (buffer);
+  return pos == part->size ? 0 : -1;
+}
+
+static void *
+pack_worker (void *arg)
+{
+  pack_state *state = (pack_state *) arg;
+
+  for (;;)
+  {
+    partition_item *part;
+
+    pthread_mutex_lock (&state->lock);
+    if (state->next >= state->partnums)
+    {
+      pthread_mutex_unlock (&state->lock);
+      return NULL;
+    }
+    part = &state->partitions[state->next++];
+    pthread_mutex_unlock (&state->lock);
+
+    part->error = pack_partition (part, state->outfd);
+    close (part->fd);
+    part->fd = -1;
+  }
+}
+
+static int
+write_manifest (const char *name, partition_item *partitions, int partnums)
+{
+  FILE *file = fopen (name, "w");
+  int i;
+
+  if (file == NULL)
+    return -1;
+  for (i = 0; i < partnums; i++)
+    fprintf (file, "%.*s %u %08x\n", PART_NAME_LEN, partitions[i].part_name,
+             partitions[i].size, partitions[i].crc);
+  return fclose (file);
+}
+
 int
 main (int argc, char **argv)
 {
   header_type hdr;
-  char *outname;
-  int i, partnums;
+  char *outname, *manifest = NULL;
+  int i, partnums, nthreads = 0, outfd;
   partition_item *partitions,*curr_part;
-  FILE *outfile;
   part_type *parts;
+  pthread_t *threads;
+  pack_state state;
+  uint64_t currentOffset;
 
   memset (&hdr, 0, sizeof (header_type));
 
+  while (argc > 2)
+    {
+      if (strcmp (argv[1], "-c") == 0)
+        manifest = argv[2];
+      else if (strcmp (argv[1], "-j") == 0 && atoi (argv[2]) > 0)
+        nthreads = atoi (argv[2]);
+      else
+        break;
+      argv += 2;
+      argc -= 2;
+    }
+
   if (argc < (GENERIC_ARGS+2)) // Require at least one partition
     {
-      fprintf (stderr,"Usage: %s <outfile> <partitionname> <partitionfile> ...\n", argv[0]);
+      fprintf (stderr,"Usage: %s [-c <checksumfile>] [-j <threads>] <outfile> <partitionname> <partitionfile> ...\n", argv[0]);
       fprintf(stderr, "Any number of partitionname partitionfilename entries can be entered\n");
       return -1;
     }
@@ -66,6 +266,7 @@ main (int argc, char **argv)
     printf("Partname: %s Filename: %s\n", argv[i], argv[i+1]);
     curr_part->part_name = argv[i];
     curr_part->filename = argv[i+1];
+    curr_part->fd = -1;
     curr_part++;
   };
   
@@ -74,49 +275,112 @@ main (int argc, char **argv)
   hdr.size = hdr.part_offset = sizeof(header_type);
   hdr.num_parts = partnums;
 
-
-  outfile = fopen (outname, "wb");
-  fwrite (&hdr, sizeof (header_type), 1, outfile);
   printf ("Size: %d\n", hdr.size);
   printf ("%d partitions starting at offset 0x%X\n", hdr.num_parts,
 	  hdr.part_offset);
 
   parts = (part_type *)calloc (hdr.num_parts, sizeof (part_type));
-  memset(parts, 0, sizeof(part_type)*hdr.num_parts);
-  int currentOffset = sizeof(header_type)+sizeof(part_type)*hdr.num_parts;
-  printf("Offset: %d\n", currentOffset);
+  currentOffset = sizeof(header_type)+sizeof(part_type)*hdr.num_parts;
+  printf("Offset: %d\n", (int) currentOffset);
   for (i = 0; i < (int)hdr.num_parts; i++)
   {
-      FILE *curfile = fopen (partitions[i].filename, "rb");
-      long fsize;
-      memcpy(parts[i].name, partitions[i].part_name, PART_NAME_LEN);
+      struct stat st;
+
+      memcpy(parts[i].name, partitions[i].part_name,
+             strnlen(partitions[i].part_name, PART_NAME_LEN));
       parts[i].version = 1; // Version. OK to stay at 1 always.
       parts[i].offset = currentOffset;
-      
-      if(curfile == NULL)
+
+      partitions[i].fd = open (partitions[i].filename, O_RDONLY);
+      if (partitions[i].fd < 0 || fstat (partitions[i].fd, &st) < 0)
       {
         fprintf(stderr,"Error opening file %s\n", partitions[i].filename);
-        return 0;
+        return -1;
+      }
+      // The size has to be known before anything is copied, which pipes
+      // and devices can't tell (their st_size is 0)
+      if (!S_ISREG (st.st_mode))
+      {
+        fprintf(stderr,"Error: %s is not a regular file\n", partitions[i].filename);
+        return -1;
       }
-      fseek (curfile, 0, SEEK_END);
-      fsize = ftell (curfile);
-      fclose (curfile);
-      parts[i].size = fsize;
-      currentOffset += fsize;
+      // The table only has 32 bits for offsets and sizes
+      if ((uint64_t) st.st_size + currentOffset > UINT32_MAX)
+      {
+        fprintf(stderr,"Partition %s doesn't fit in a blob\n", partitions[i].filename);
+        return -1;
+      }
+      parts[i].size = partitions[i].size = st.st_size;
+      partitions[i].offset = parts[i].offset;
+      currentOffset += st.st_size;
     }
 
-  fwrite (parts, sizeof (part_type), hdr.num_parts, outfile);
-  for (i = 0; i < (int)hdr.num_parts; i++)
+  outfd = open (outname, O_WRONLY | O_CREAT | O_TRUNC, 0644);
+  if (outfd < 0)
   {
-    // TODO: Don't read in full file in one go. Memory usage!!!
-    char *buffer = (char *) malloc (parts[i].size);
-    FILE *currFile = fopen (partitions[i].filename, "rb");	// Read in update file
-    fread (buffer, 1, parts[i].size, currFile);
-    fclose(currFile);
-    fwrite (buffer, 1, parts[i].size, outfile);
-  };
+    fprintf(stderr,"Error opening file %s\n", outname);
+    return -1;
+  }
+  // Size the output up front so the partitions can be written in any
+  // order, and keep the file position at the first partition for
+  // sendfile()
+  if (ftruncate (outfd, currentOffset) < 0 ||
+      lseek (outfd, parts[0].offset, SEEK_SET) < 0)
+  {
+    fprintf(stderr,"Error sizing file %s\n", outname);
+    return -1;
+  }
+
+  // Copy and checksum the partitions in parallel
+  memset (&state, 0, sizeof (state));
+  state.partitions = partitions;
+  state.partnums = partnums;
+  state.outfd = outfd;
+  pthread_mutex_init (&state.lock, NULL);
+
+  if (nthreads == 0)
+    nthreads = sysconf (_SC_NPROCESSORS_ONLN);
+  if (nthreads > partnums)
+    nthreads = partnums;
+  if (nthreads < 1)
+    nthreads = 1;
+  threads = (pthread_t *) calloc (nthreads, sizeof (pthread_t));
+  for (i = 1; i < nthreads; i++)
+    if (pthread_create (&threads[i], NULL, pack_worker, &state) != 0)
+      break;
+  nthreads = i;
+  pack_worker (&state);
+  for (i = 1; i < nthreads; i++)
+    pthread_join (threads[i], NULL);
+
+  for (i = 0; i < partnums; i++)
+  {
+    if (partitions[i].error)
+    {
+      fprintf(stderr,"Error copying file %s\n", partitions[i].filename);
+      return -1;
+    }
+    printf("%.*s: offset 0x%X size %u crc32 %08x\n", PART_NAME_LEN,
+           partitions[i].part_name, parts[i].offset, parts[i].size,
+           partitions[i].crc);
+  }
+
+  // The header and table go in last, so an interrupted run never leaves
+  // something that looks like a complete blob
+  if (pwrite_full (outfd, parts, sizeof (part_type) * hdr.num_parts,
+                   sizeof (header_type)) < 0 ||
+      pwrite_full (outfd, &hdr, sizeof (header_type), 0) < 0 ||
+      close (outfd) < 0)
+  {
+    fprintf(stderr,"Error writing file %s\n", outname);
+    return -1;
+  }
+
+  if (manifest != NULL && write_manifest (manifest, partitions, partnums) < 0)
+  {
+    fprintf(stderr,"Error writing file %s\n", manifest);
+    return -1;
+  }
 
-  fclose (outfile);
   return 0;
 }
-
@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#include <errno.h>
+#include <fcntl.h>
+#include <stdint.h>
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+#include <sys/mman.h>
+#include <sys/stat.h>
+#include <unistd.h>
+
+#include "blob.h"
+#include "crc32.h"
+
+// Checks a blob written by blobpack in place through a read-only mapping,
+// optionally against the checksum file blobpack wrote for it, and unpacks
+// its partitions to <dir>/<name>.img.
+
+static int
+write_full (int fd, const void *buf, size_t len)
+{
+  const char *p = (const char *) buf;
+
+  while (len > 0)
+  {
+    ssize_t ret = write (fd, p, len);
+    if (ret < 0 && errno == EINTR)
+      continue;
+    if (ret <= 0)
+      return -1;
+    p += ret;
+    len -= ret;
+  }
+  return 0;
+}
+
+// Returns the table of a well formed blob, or NULL
+static const part_type *
+check_header (const unsigned char *blob, size_t size)
+{
+  const header_type *hdr = (const header_type *) blob;
+  const part_type *parts;
+  uint64_t expected;
+  unsigned int i;
+
+  if (size >= SEC_MAGIC_SIZE && memcmp (blob, SEC_MAGIC, SEC_MAGIC_SIZE) == 0)
+  {
+    fprintf (stderr, "Signed blobs are not supported\n");
+    return NULL;
+  }
+  if (size < sizeof (header_type) || memcmp (hdr->magic, MAGIC, MAGIC_SIZE) != 0)
+  {
+    fprintf (stderr, "Bad magic\n");
+    return NULL;
+  }
+  if (hdr->version != 0x00010000 || hdr->size != sizeof (header_type) ||
+      hdr->part_offset != sizeof (header_type))
+  {
+    fprintf (stderr, "Unsupported header: version 0x%X size %u offset %u\n",
+             hdr->version, hdr->size, hdr->part_offset);
+    return NULL;
+  }
+  expected = hdr->part_offset + (uint64_t) hdr->num_parts * sizeof (part_type);
+  if (hdr->num_parts == 0 || expected > size)
+  {
+    fprintf (stderr, "Bad partition count %u\n", hdr->num_parts);
+    return NULL;
+  }
+
+  // blobpack lays the partitions out back to back after the table
+  parts = (const part_type *) (blob + hdr->part_offset);
+  for (i = 0; i < hdr->num_parts; i++)
+  {
+    if (parts[i].offset != expected ||
+        (uint64_t) parts[i].offset + parts[i].size > size)
+    {
+      fprintf (stderr, "Partition %.*s: bad offset 0x%X size %u\n",
+               PART_NAME_LEN, parts[i].name, parts[i].offset, parts[i].size);
+      return NULL;
+    }
+    expected += parts[i].size;
+  }
+  if (expected != size)
+  {
+    fprintf (stderr, "%llu trailing bytes\n",
+             (unsigned long long) (size - expected));
+    return NULL;
+  }
+
+  return parts;
+}
+
+// Checks every partition against its "<name> <size> <crc32>" manifest line
+static int
+check_manifest (const char *name, const unsigned char *blob,
+                const part_type *parts, unsigned int num_parts)
+{
+  FILE *file = fopen (name, "r");
+  char part_name[PART_NAME_LEN + 1];
+  unsigned int size, crc, i, checked = 0;
+  int ret = 0;
+
+  if (file == NULL)
+  {
+    fprintf (stderr, "Error opening file %s\n", name);
+    return -1;
+  }
+
+  while (fscanf (file, "%4s %u %x", part_name, &size, &crc) == 3)
+  {
+    for (i = 0; i < num_parts; i++)
+      if (strncmp (parts[i].name, part_name, PART_NAME_LEN) == 0)
+        break;
+    if (i == num_parts)
+    {
+      fprintf (stderr, "Partition %s: missing\n", part_name);
+      ret = -1;
+      continue;
+    }
+    if (parts[i].size != size ||
+        blob_crc32 (0, blob + parts[i].offset, parts[i].size) != crc)
+    {
+      fprintf (stderr, "Partition %s: checksum mismatch\n", part_name);
+      ret = -1;
+      continue;
+    }
+    printf ("Partition %s: OK\n", part_name);
+    checked++;
+  }
+  fclose (file);
+
+  if (checked != num_parts)
+    ret = -1;
+  return ret;
+}
+
+// The name ends up in an output path, so it must be a plain file name
+static int
+valid_part_name (const char *name)
+{
+  size_t len = strnlen (name, PART_NAME_LEN);
+
+  if (len == 0 || memchr (name, '/', len) != NULL)
+    return 0;
+  if (len >= 2 && memmem (name, len, "..", 2) != NULL)
+    return 0;
+  return 1;
+}
+
+static int
+unpack (const char *dir, const unsigned char *blob, const part_type *parts,
+        unsigned int num_parts)
+{
+  char path[4096];
+  unsigned int i;
+
+  for (i = 0; i < num_parts; i++)
+    if (!valid_part_name (parts[i].name))
+    {
+      fprintf (stderr, "Partition %.*s: bad name\n", PART_NAME_LEN,
+               parts[i].name);
+      return -1;
+    }
+
+  for (i = 0; i < num_parts; i++)
+  {
+    int fd;
+
+    snprintf (path, sizeof (path), "%s/%.*s.img", dir, PART_NAME_LEN,
+              parts[i].name);
+    fd = open (path, O_WRONLY | O_CREAT | O_TRUNC, 0644);
+    if (fd < 0 || write_full (fd, blob + parts[i].offset, parts[i].size) < 0)
+    {
+      fprintf (stderr, "Error writing file %s\n", path);
+      if (fd >= 0)
+        close (fd);
+      return -1;
+    }
+    if (close (fd) < 0)
+      return -1;
+    printf ("Wrote %s\n", path);
+  }
+  return 0;
+}
+
+int
+main (int argc, char **argv)
+{
+  const char *blobname = NULL, *manifest = NULL, *outdir = NULL;
+  const unsigned char *blob;
+  const part_type *parts;
+  struct stat st;
+  unsigned int i, num_parts;
+  int fd, ret = 0;
+
+  for (i = 1; i < (unsigned int) argc; i++)
+  {
+    if (strcmp (argv[i], "-c") == 0 && i + 1 < (unsigned int) argc)
+      manifest = argv[++i];
+    else if (strcmp (argv[i], "-x") == 0 && i + 1 < (unsigned int) argc)
+      outdir = argv[++i];
+    else if (blobname == NULL)
+      blobname = argv[i];
+    else
+      blobname = NULL, i = argc;
+  }
+  if (blobname == NULL)
+  {
+    fprintf (stderr, "Usage: %s [-c <checksumfile>] [-x <outdir>] <blobfile>\n", argv[0]);
+    return -1;
+  }
+
+  fd = open (blobname, O_RDONLY);
+  if (fd < 0 || fstat (fd, &st) < 0 || st.st_size == 0)
+  {
+    fprintf (stderr, "Error opening file %s\n", blobname);
+    return -1;
+  }
+  blob = (const unsigned char *) mmap (NULL, st.st_size, PROT_READ, MAP_PRIVATE, fd, 0);
+  close (fd);
+  if (blob == MAP_FAILED)
+  {
+    fprintf (stderr, "Error mapping file %s\n", blobname);
+    return -1;
+  }
+
+  parts = check_header (blob, st.st_size);
+  if (parts == NULL)
+    return 1;
+
+  num_parts = ((const header_type *) blob)->num_parts;
+  for (i = 0; i < num_parts; i++)
+    printf ("%.*s: offset 0x%X size %u version %u\n", PART_NAME_LEN,
+            parts[i].name, parts[i].offset, parts[i].size, parts[i].version);
+
+  if (manifest != NULL && check_manifest (manifest, blob, parts, num_parts) < 0)
+    ret = 1;
+  if (ret == 0 && outdir != NULL && unpack (outdir, blob, parts, num_parts) < 0)
+    ret = 1;
+
+  munmap ((void *) blob, st.st_size);
+  return ret;
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#include <pthread.h>
+
+#include "crc32.h"
+
+static uint32_t crc_table[8][256];
+static pthread_once_t crc_table_once = PTHREAD_ONCE_INIT;
+
+static void
+crc_table_init (void)
+{
+  int i, j;
+
+  for (i = 0; i < 256; i++)
+  {
+    uint32_t c = i;
+    for (j = 0; j < 8; j++)
+      c = (c & 1) ? 0xedb88320 ^ (c >> 1) : c >> 1;
+    crc_table[0][i] = c;
+  }
+  // Tables for slicing by 8 bytes at a time
+  for (i = 0; i < 256; i++)
+    for (j = 1; j < 8; j++)
+      crc_table[j][i] = crc_table[0][crc_table[j - 1][i] & 0xff] ^
+                        (crc_table[j - 1][i] >> 8);
+}
+
+uint32_t
+blob_crc32 (uint32_t crc, const void *data, size_t len)
+{
+  const unsigned char *p = (const unsigned char *) data;
+
+  pthread_once (&crc_table_once, crc_table_init);
+
+  crc = ~crc;
+  while (len >= 8)
+  {
+    uint32_t lo = crc ^ (p[0] | p[1] << 8 | p[2] << 16 | (uint32_t) p[3] << 24);
+    crc = crc_table[7][lo & 0xff] ^ crc_table[6][(lo >> 8) & 0xff] ^
+          crc_table[5][(lo >> 16) & 0xff] ^ crc_table[4][lo >> 24] ^
+          crc_table[3][p[4]] ^ crc_table[2][p[5]] ^
+          crc_table[1][p[6]] ^ crc_table[0][p[7]];
+    p += 8;
+    len -= 8;
+  }
+  while (len--)
+    crc = crc_table[0][(crc ^ *p++) & 0xff] ^ (crc >> 8);
+
+  return ~crc;
+}
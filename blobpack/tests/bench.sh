@@ -0,0 +1,80 @@
+#!/bin/sh
+#
+# Copyright (C) 2013 The CyanogenMod Project
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#      http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+# Packs multi-GB sparse partitions (made with truncate, with a little data
+# at each end) with the fopen/fwrite blobpack_legacy_tf and the streaming
+# blobpack_tf on 1 and on N threads, and reports the time each takes to
+# pack and sync the blob. The blobs must come out identical, the names are
+# kept to 3 characters as the legacy tool copies 4 bytes of each. The peak
+# memory is reported too when GNU time is installed.
+#
+# The blob table has 32 bit offsets, the partitions have to add up to less
+# than 4 GiB. They, and 2 blobs, are written to $BLOB_BENCH_DIR.
+#
+# Usage: bench.sh [<dir with blobpack_tf and blobpack_legacy_tf>]
+
+BIN=${1:-$ANDROID_HOST_OUT/bin}
+SIZES_MB=${BLOB_BENCH_MB:-"1536 1024 1024"}
+TMP=$(mktemp -d "${BLOB_BENCH_DIR:-${TMPDIR:-/tmp}}/blobbench.XXXXXX") || exit 1
+trap 'rm -rf "$TMP"' EXIT
+
+set -- $SIZES_MB
+THREADS=$#
+
+args=""
+i=0
+for mb in $SIZES_MB; do
+    part="$TMP/part$i"
+    truncate -s "${mb}M" "$part" || exit 1
+    head -c 1048576 /dev/urandom | dd of="$part" conv=notrunc 2> /dev/null
+    head -c 1048576 /dev/urandom | dd of="$part" bs=1048576 seek=$((mb - 1)) \
+        conv=notrunc 2> /dev/null
+    args="$args P0$i $part"
+    i=$((i + 1))
+done
+
+now_ms() {
+    echo $(($(date +%s%N) / 1000000))
+}
+
+# run <label> <blob> <command...>
+run() {
+    label=$1
+    blob=$2
+    shift 2
+    rm -f "$blob"
+    sync
+    start=$(now_ms)
+    if [ -x /usr/bin/time ]; then
+        /usr/bin/time -f "%M" -o "$TMP/rss" "$@" > /dev/null || exit 1
+        rss="$(cat "$TMP/rss") KiB peak"
+    else
+        "$@" > /dev/null || exit 1
+        rss=""
+    fi
+    sync
+    echo "  $label: $(($(now_ms) - start)) ms $rss"
+}
+
+echo "packing partitions of $SIZES_MB MiB"
+run "fopen/fwrite" "$TMP/legacy.blob" "$BIN/blobpack_legacy_tf" "$TMP/legacy.blob" $args
+run "streaming, 1 thread" "$TMP/stream.blob" \
+    "$BIN/blobpack_tf" -j 1 "$TMP/stream.blob" $args
+cmp -s "$TMP/legacy.blob" "$TMP/stream.blob" || { echo "FAIL: blobs differ"; exit 1; }
+run "streaming, $THREADS threads" "$TMP/stream.blob" \
+    "$BIN/blobpack_tf" -j $THREADS "$TMP/stream.blob" $args
+cmp -s "$TMP/legacy.blob" "$TMP/stream.blob" || { echo "FAIL: blobs differ"; exit 1; }
+echo "PASS"
@@ -0,0 +1,76 @@
+#!/bin/sh
+#
+# Copyright (C) 2013 The CyanogenMod Project
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#      http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+# Packs blobs with blobpack_tf and checks that blobunpack_tf unpacks the
+# well formed one and refuses partition names that would escape <outdir>,
+# and that blobpack_tf refuses inputs that aren't regular files.
+#
+# Usage: run_tests.sh [<dir with blobpack_tf and blobunpack_tf>]
+
+BIN=${1:-$ANDROID_HOST_OUT/bin}
+TMP=$(mktemp -d) || exit 1
+trap 'rm -rf "$TMP"' EXIT
+failed=0
+
+fail() {
+    echo "FAIL: $1"
+    failed=1
+}
+
+printf 'kernel' > "$TMP/lnx"
+printf 'recovery' > "$TMP/sos"
+
+# Well formed blob, both partitions come back byte for byte
+mkdir "$TMP/good"
+"$BIN/blobpack_tf" -c "$TMP/good.crc" "$TMP/good.blob" LNX "$TMP/lnx" SOS "$TMP/sos" > /dev/null &&
+"$BIN/blobunpack_tf" -c "$TMP/good.crc" -x "$TMP/good" "$TMP/good.blob" > /dev/null &&
+cmp -s "$TMP/lnx" "$TMP/good/LNX.img" && cmp -s "$TMP/sos" "$TMP/good/SOS.img" ||
+    fail "good blob"
+
+# Names with a '/' or '..' are rejected before anything is written
+for name in '../x' 'a/b' '..' '/'; do
+    rm -rf "$TMP/out" "$TMP/bad.blob" "$TMP"/*.img
+    mkdir "$TMP/out"
+    "$BIN/blobpack_tf" "$TMP/bad.blob" LNX "$TMP/lnx" "$name" "$TMP/sos" > /dev/null ||
+        { fail "packing '$name'"; continue; }
+    if "$BIN/blobunpack_tf" -x "$TMP/out" "$TMP/bad.blob" > /dev/null 2>&1; then
+        fail "unpacked '$name'"
+    fi
+    if [ -n "$(ls -A "$TMP/out")" ] || ls "$TMP"/*.img > /dev/null 2>&1; then
+        fail "'$name' wrote files"
+    fi
+done
+
+# Pipes, devices and directories can't tell their size up front, they are
+# rejected before the blob is created
+mkfifo "$TMP/fifo"
+for input in "$TMP/fifo" /dev/null "$TMP/good"; do
+    rm -f "$TMP/in.blob"
+    [ "$input" = "$TMP/fifo" ] && { printf 'kernel' > "$TMP/fifo" & }
+    if "$BIN/blobpack_tf" -j 1 "$TMP/in.blob" LNX "$TMP/lnx" SOS "$input" > /dev/null 2>&1; then
+        fail "packed $input"
+    fi
+    [ -e "$TMP/in.blob" ] && fail "$input created the blob"
+    wait
+done
+
+# The thread count doesn't change the blob
+"$BIN/blobpack_tf" -j 1 -c "$TMP/j1.crc" "$TMP/j1.blob" LNX "$TMP/lnx" SOS "$TMP/sos" > /dev/null &&
+cmp -s "$TMP/good.blob" "$TMP/j1.blob" && cmp -s "$TMP/good.crc" "$TMP/j1.crc" ||
+    fail "single thread blob"
+
+[ $failed -eq 0 ] && echo "PASS"
+exit $failed
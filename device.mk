@@ -78,7 +78,8 @@ $(call inherit-product, $(LOCAL_PATH)/keylayout/l10n/l10n.mk)
 
 PRODUCT_COPY_FILES += \
     $(LOCAL_PATH)/keylayout/asusec.kl:system/usr/keylayout/asusec.kl \
-    $(LOCAL_PATH)/keylayout/gpio-keys.kl:system/usr/keylayout/gpio-keys.kl
+    $(LOCAL_PATH)/keylayout/gpio-keys.kl:system/usr/keylayout/gpio-keys.kl \
+    $(LOCAL_PATH)/keylayout/asusdec_actions.conf:system/usr/keylayout/asusdec_actions.conf
 
 # media
 PRODUCT_COPY_FILES += \
@@ -137,6 +138,7 @@ PRODUCT_PACKAGES += \
     libaudioutils \
     libinvensense_mpl \
     blobpack_tf \
+    blobunpack_tf \
     mischelp \
     libaudioutils \
     tinymix \